@@ -0,0 +1,309 @@
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * The one place bookings are made, whether from the seat map, a batch job or another program. Every operation is a
+ * single atomic change to the {@link SeatInventory} of one train, so it is safe from any thread, never double books a
+ * seat and never waits on bookings for other trains. Changes are reported to the {@link Train.SeatListener}s of the
+ * train on the calling thread; the JavaFX seats remaining count follows on the JavaFX thread by the next pulse.
+ */
+public final class BookingEngine
+{
+	private static final Metrics.Histogram BOOK = Metrics.histogram("booking_duration_seconds", "operation=\"book\"", "Time to make a booking or cancellation, including telling the seat listeners.");
+	private static final Metrics.Histogram BOOK_ALL = Metrics.histogram("booking_duration_seconds", "operation=\"book_all\"", null);
+	private static final Metrics.Histogram BOOK_GROUP = Metrics.histogram("booking_duration_seconds", "operation=\"book_group\"", null);
+	private static final Metrics.Histogram ALLOCATE = Metrics.histogram("booking_duration_seconds", "operation=\"allocate\"", null);
+	private static final Metrics.Histogram CANCEL = Metrics.histogram("booking_duration_seconds", "operation=\"cancel\"", null);
+	private static final Metrics.Histogram CONFIRM = Metrics.histogram("booking_duration_seconds", "operation=\"confirm\"", null);
+	private static final Metrics.Histogram BOOK_LEGS = Metrics.histogram("booking_duration_seconds", "operation=\"book_legs\"", null);
+	private static final Metrics.Histogram ALLOCATE_LEGS = Metrics.histogram("booking_duration_seconds", "operation=\"allocate_legs\"", null);
+	private static final Metrics.Histogram CANCEL_LEGS = Metrics.histogram("booking_duration_seconds", "operation=\"cancel_legs\"", null);
+	private static final Metrics.Counter BOOK_CONFLICTS = Metrics.counter("booking_conflicts_total", "operation=\"book\"", "Bookings and cancellations refused because the seats were already taken or free.");
+	private static final Metrics.Counter BOOK_ALL_CONFLICTS = Metrics.counter("booking_conflicts_total", "operation=\"book_all\"", null);
+	private static final Metrics.Counter BOOK_GROUP_CONFLICTS = Metrics.counter("booking_conflicts_total", "operation=\"book_group\"", null);
+	private static final Metrics.Counter ALLOCATE_CONFLICTS = Metrics.counter("booking_conflicts_total", "operation=\"allocate\"", null);
+	private static final Metrics.Counter CANCEL_CONFLICTS = Metrics.counter("booking_conflicts_total", "operation=\"cancel\"", null);
+	private static final Metrics.Counter CONFIRM_CONFLICTS = Metrics.counter("booking_conflicts_total", "operation=\"confirm\"", null);
+	private static final Metrics.Counter BOOK_LEGS_CONFLICTS = Metrics.counter("booking_conflicts_total", "operation=\"book_legs\"", null);
+	private static final Metrics.Counter ALLOCATE_LEGS_CONFLICTS = Metrics.counter("booking_conflicts_total", "operation=\"allocate_legs\"", null);
+	private static final Metrics.Counter CANCEL_LEGS_CONFLICTS = Metrics.counter("booking_conflicts_total", "operation=\"cancel_legs\"", null);
+	
+	/**
+	 * There is nothing to construct; every operation works on the train it is given.
+	 */
+	private BookingEngine ()
+	{
+	}
+	
+	/**
+	 * Book one seat if it is still available.
+	 *
+	 * @param train The {@link Train} the seat is on.
+	 * @param seat  The index of the seat.
+	 *
+	 * @return True if the seat was available and is now booked by this call.
+	 */
+	public static boolean book (final Train train, final int seat)
+	{
+		final long start = System.nanoTime();
+		return timed(BOOK, BOOK_CONFLICTS, start, train.setSeatAvailable(seat, false));
+	}
+	
+	/**
+	 * Book one seat from one stop to another if it is free for every leg in between; see {@link Train#getStops()} for
+	 * how stops are numbered.
+	 *
+	 * @param train The {@link Train} the seat is on.
+	 * @param seat  The index of the seat.
+	 * @param from  The stop to get on at.
+	 * @param to    The stop to get off at.
+	 *
+	 * @return True if the seat was free and is now booked for those legs by this call.
+	 */
+	public static boolean book (final Train train, final int seat, final int from, final int to)
+	{
+		final long start = System.nanoTime();
+		return timed(BOOK_LEGS, BOOK_LEGS_CONFLICTS, start, train.bookSeat(seat, from, to));
+	}
+	
+	/**
+	 * Book a seat from one stop to another, of the preferred type if there is one and else of the other type; see
+	 * {@link Train#bookNextSeat(boolean, int, int)}.
+	 *
+	 * @param train  The {@link Train} to book on.
+	 * @param window True to prefer a window seat, false to prefer an aisle seat.
+	 * @param from   The stop to get on at.
+	 * @param to     The stop to get off at.
+	 *
+	 * @return The index of the seat booked, or -1 if no seat is free for every leg in between.
+	 */
+	public static int allocate (final Train train, final boolean window, final int from, final int to)
+	{
+		final long start = System.nanoTime();
+		int seat = train.bookNextSeat(window, from, to);
+		if (seat < 0)
+		{
+			seat = train.bookNextSeat(! window, from, to);
+		}
+		timed(ALLOCATE_LEGS, ALLOCATE_LEGS_CONFLICTS, start, seat >= 0);
+		return seat;
+	}
+	
+	/**
+	 * Book several seats on the same train together: either every seat is booked or none is.
+	 *
+	 * @param train The {@link Train} the seats are on.
+	 * @param seats The indices of the seats.
+	 *
+	 * @return True if every seat was available and is now booked by this call.
+	 */
+	public static boolean bookAll (final Train train, final int... seats)
+	{
+		if (seats.length == 0)
+		{
+			throw new IllegalArgumentException("No seats given to book on " + train.getDestination() + " at " + train.getDepartureTime() + ".");
+		}
+		if (seats.length == 1)
+		{
+			return book(train, seats[0]);
+		}
+		final long start = System.nanoTime();
+		return timed(BOOK_ALL, BOOK_ALL_CONFLICTS, start, train.bookSeats(seats));
+	}
+	
+	/**
+	 * Book a group of seats side by side on the same train, e.g. for a family; see {@link Train#bookGroup(int)}.
+	 *
+	 * @param train The {@link Train} to book on.
+	 * @param seats The number of seats wanted together.
+	 *
+	 * @return The index of the first seat of the block booked, or -1 if no block of that many seats is free.
+	 */
+	public static int bookGroup (final Train train, final int seats)
+	{
+		if (seats < 1)
+		{
+			throw new IllegalArgumentException("No seats given to book on " + train.getDestination() + " at " + train.getDepartureTime() + ".");
+		}
+		final long start = System.nanoTime();
+		final int first = train.bookGroup(seats);
+		timed(BOOK_GROUP, BOOK_GROUP_CONFLICTS, start, first >= 0);
+		return first;
+	}
+	
+	/**
+	 * Book a seat of the preferred type, falling back to the other type on the same train and then to any seat on the
+	 * alternative trains in the order given, each with the preferred type first. Full trains are skipped without
+	 * looking at their seats, and within a train the free seat is found through {@link Train#bookNextSeat(boolean)}.
+	 *
+	 * @param train        The {@link Train} the passenger asked for.
+	 * @param window       True to prefer a window seat, false to prefer an aisle seat.
+	 * @param alternatives The {@link Collection} of other {@link Train} objects to offer if the train is full.
+	 *
+	 * @return The {@link Allocation} booked, or empty if there is no seat on any of the trains.
+	 */
+	public static Optional<Allocation> allocate (final Train train, final boolean window, final Collection<? extends Train> alternatives)
+	{
+		final long start = System.nanoTime();
+		Optional<Allocation> allocation = allocate(train, window, train);
+		for (final Train alternative : alternatives)
+		{
+			if (allocation.isPresent())
+			{
+				break;
+			}
+			if (alternative != train)
+			{
+				allocation = allocate(alternative, window, train);
+			}
+		}
+		timed(ALLOCATE, ALLOCATE_CONFLICTS, start, allocation.isPresent());
+		return allocation;
+	}
+	
+	/**
+	 * Book a seat of the preferred type on one train, or else one of the other type.
+	 *
+	 * @param train     The {@link Train} to book on.
+	 * @param window    True to prefer a window seat, false to prefer an aisle seat.
+	 * @param requested The {@link Train} the passenger originally asked for.
+	 *
+	 * @return The {@link Allocation} booked, or empty if the train is full.
+	 */
+	private static Optional<Allocation> allocate (final Train train, final boolean window, final Train requested)
+	{
+		if (train.getInventory().getSeatsRemaining() == 0)
+		{
+			return Optional.empty();
+		}
+		int seat = train.bookNextSeat(window);
+		if (seat < 0)
+		{
+			seat = train.bookNextSeat(! window);
+		}
+		return seat < 0 ? Optional.empty() : Optional.of(new Allocation(train, seat, window, requested));
+	}
+	
+	/**
+	 * Book a seat held by {@link SeatHolds}.
+	 *
+	 * @param hold The {@link SeatHolds.Hold} of the seat.
+	 *
+	 * @return True if the seat is now booked; false if the hold had ended first, e.g. by expiring.
+	 */
+	public static boolean confirm (final SeatHolds.Hold hold)
+	{
+		final long start = System.nanoTime();
+		return timed(CONFIRM, CONFIRM_CONFLICTS, start, hold.confirm());
+	}
+	
+	/**
+	 * Cancel the booking of a seat.
+	 *
+	 * @param train The {@link Train} the seat is on.
+	 * @param seat  The index of the seat.
+	 *
+	 * @return True if the seat was booked and is now available again, or booked for the first on the waitlist, because
+	 * of this call.
+	 */
+	public static boolean cancel (final Train train, final int seat)
+	{
+		final long start = System.nanoTime();
+		return timed(CANCEL, CANCEL_CONFLICTS, start, train.setSeatAvailable(seat, true));
+	}
+	
+	/**
+	 * Cancel the booking of a seat from one stop to another.
+	 *
+	 * @param train The {@link Train} the seat is on.
+	 * @param seat  The index of the seat.
+	 * @param from  The stop the passenger was to get on at.
+	 * @param to    The stop the passenger was to get off at.
+	 *
+	 * @return True if the seat was booked for every leg in between and is now free for them because of this call.
+	 */
+	public static boolean cancel (final Train train, final int seat, final int from, final int to)
+	{
+		final long start = System.nanoTime();
+		return timed(CANCEL_LEGS, CANCEL_LEGS_CONFLICTS, start, train.cancelSeat(seat, from, to));
+	}
+	
+	/**
+	 * Record the time and outcome of an operation.
+	 *
+	 * @param latency   The {@link Metrics.Histogram} of the operation.
+	 * @param conflicts The {@link Metrics.Counter} of its refusals.
+	 * @param start     The {@link System#nanoTime()} the operation started.
+	 * @param done      True if the operation changed the seats.
+	 *
+	 * @return The same outcome, for returning.
+	 */
+	private static boolean timed (final Metrics.Histogram latency, final Metrics.Counter conflicts, final long start, final boolean done)
+	{
+		latency.recordSince(start);
+		if (! done)
+		{
+			conflicts.increment();
+		}
+		return done;
+	}
+	
+	public static final class Allocation
+	{
+		private final Train train;
+		private final int seat;
+		private final boolean preferredType;
+		private final boolean requestedTrain;
+		
+		/**
+		 * Construct the record of a seat booked by {@link #allocate(Train, boolean, Collection)}.
+		 *
+		 * @param train     The {@link Train} the seat was booked on.
+		 * @param seat      The index of the seat.
+		 * @param window    True if a window seat was preferred.
+		 * @param requested The {@link Train} the passenger originally asked for.
+		 */
+		private Allocation (final Train train, final int seat, final boolean window, final Train requested)
+		{
+			this.train = train;
+			this.seat = seat;
+			this.preferredType = SeatInventory.isWindow(seat) == window;
+			this.requestedTrain = train == requested;
+		}
+		
+		public Train getTrain ()
+		{
+			return train;
+		}
+		
+		public int getSeat ()
+		{
+			return seat;
+		}
+		
+		public String getSeatId ()
+		{
+			return SeatInventory.seatId(seat);
+		}
+		
+		/**
+		 * Check whether the seat is of the type asked for, rather than the other type offered instead.
+		 *
+		 * @return True for the preferred type.
+		 */
+		public boolean isPreferredType ()
+		{
+			return preferredType;
+		}
+		
+		/**
+		 * Check whether the seat is on the train asked for, rather than an alternative train.
+		 *
+		 * @return True for the requested train.
+		 */
+		public boolean isRequestedTrain ()
+		{
+			return requestedTrain;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,338 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Books a file of reservation requests, e.g. from a group operator, and writes what became of each one to a report.
+ * Each line of the requests file is: departure time (HH.mm), destination, seat, and optionally the day
+ * (2024-05-31, today if left out). The seat is the name of a seat such as 12W, or W or A for any window or aisle seat,
+ * or blank for any seat at all.
+ * <p>
+ * The file is read in chunks of {@link #CHUNK_LINES} lines. The requests of a chunk are grouped by train and each group
+ * is booked in one {@link Train#batchUpdate(Runnable)}, so the seats remaining of a train are published once per chunk
+ * however many of its seats are booked. Requests are booked in file order within their train. A request that cannot be
+ * booked as asked is offered another seat on the same train, and then a seat on the other trains to the same
+ * destination that day; see {@link BookingEngine#allocate}.
+ * <p>
+ * Each line of the report is: line number, outcome (booked, alternative or rejected), departure day, departure time,
+ * destination and seat booked, and the reason for anything but a booking as asked. The report is only written once
+ * the bookings of the chunk are on disk.
+ */
+public final class BookingImport
+{
+	private static final int CHUNK_LINES = 65536;
+	private static final Metrics.Histogram IMPORT = Metrics.histogram("booking_import_duration_seconds", null, "Time to book a whole file of reservation requests and report on it.");
+	private static final Metrics.Counter BOOKED = Metrics.counter("booking_import_requests_total", "outcome=\"booked\"", "Reservation requests imported from files, by what became of them.");
+	private static final Metrics.Counter ALTERNATIVE = Metrics.counter("booking_import_requests_total", "outcome=\"alternative\"", null);
+	private static final Metrics.Counter REJECTED = Metrics.counter("booking_import_requests_total", "outcome=\"rejected\"", null);
+	
+	private final Schedule schedule;
+	// The trains of each day held for the import, by departure time and destination, and by destination alone.
+	private final Map<LocalDate, Map<String, Train>> trainsByKey = new HashMap<>();
+	private final Map<LocalDate, Map<String, List<Train>>> trainsByDestination = new HashMap<>();
+	private long booked = 0;
+	private long alternatives = 0;
+	private long rejected = 0;
+	
+	/**
+	 * Construct an import into the trains of a schedule.
+	 *
+	 * @param schedule The {@link Schedule} of the trains to book.
+	 */
+	public BookingImport (final Schedule schedule)
+	{
+		this.schedule = schedule;
+	}
+	
+	/**
+	 * Book every request of a file and report on each. The days booked are held for the length of the import.
+	 *
+	 * @param requests The {@link Path} of the requests file.
+	 * @param report   The {@link Path} of the report, replaced if it exists.
+	 *
+	 * @throws IOException          If a file cannot be read or written, or bookings could not be saved.
+	 * @throws InterruptedException If interrupted while waiting for bookings to be saved.
+	 */
+	public void run (final Path requests, final Path report) throws IOException, InterruptedException
+	{
+		final long start = System.nanoTime();
+		try (BufferedReader in = Files.newBufferedReader(requests); BufferedWriter out = Files.newBufferedWriter(report))
+		{
+			int lineNumber = 0;
+			final List<Request> chunk = new ArrayList<>(CHUNK_LINES);
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				lineNumber++;
+				if (! line.isBlank())
+				{
+					chunk.add(parse(lineNumber, line));
+				}
+				if (chunk.size() == CHUNK_LINES)
+				{
+					book(chunk, out);
+					chunk.clear();
+				}
+			}
+			book(chunk, out);
+		}
+		finally
+		{
+			trainsByKey.keySet().forEach(schedule :: release);
+			IMPORT.recordSince(start);
+		}
+	}
+	
+	/**
+	 * Get the number of requests booked as asked so far.
+	 *
+	 * @return The number of requests.
+	 */
+	public long getBooked ()
+	{
+		return booked;
+	}
+	
+	/**
+	 * Get the number of requests booked on another seat or train than asked so far.
+	 *
+	 * @return The number of requests.
+	 */
+	public long getAlternatives ()
+	{
+		return alternatives;
+	}
+	
+	/**
+	 * Get the number of requests that could not be booked at all so far.
+	 *
+	 * @return The number of requests.
+	 */
+	public long getRejected ()
+	{
+		return rejected;
+	}
+	
+	/**
+	 * Book a chunk of requests, one batch per train, wait for them to be on disk and report on them in file order.
+	 *
+	 * @param chunk The {@link List} of {@link Request} objects of the chunk.
+	 * @param out   The {@link BufferedWriter} of the report.
+	 *
+	 * @throws IOException          If the report cannot be written, or bookings could not be saved.
+	 * @throws InterruptedException If interrupted while waiting for bookings to be saved.
+	 */
+	private void book (final List<Request> chunk, final BufferedWriter out) throws IOException, InterruptedException
+	{
+		final Map<Train, List<Request>> byTrain = new LinkedHashMap<>();
+		for (final Request request : chunk)
+		{
+			if (request.train != null)
+			{
+				byTrain.computeIfAbsent(request.train, train -> new ArrayList<>()).add(request);
+			}
+		}
+		byTrain.forEach((train, requests) -> train.batchUpdate(() -> requests.forEach(this :: book)));
+		
+		for (final LocalDate date : trainsByKey.keySet())
+		{
+			schedule.flush(date);
+		}
+		for (final Request request : chunk)
+		{
+			out.write(request.toString());
+			out.newLine();
+		}
+	}
+	
+	/**
+	 * Book one request: the seat asked for, or else a seat of the type asked for, or else any seat on the train or on
+	 * another train to the same destination that day.
+	 *
+	 * @param request The {@link Request} to book.
+	 */
+	private void book (final Request request)
+	{
+		if (request.seat >= 0 && BookingEngine.book(request.train, request.seat))
+		{
+			request.booked(request.train, request.seat, true, null);
+			return;
+		}
+		final List<Train> others = trainsByDestination.get(request.date).get(request.train.getDestination());
+		final Optional<BookingEngine.Allocation> allocation = BookingEngine.allocate(request.train, request.window, others);
+		if (allocation.isEmpty())
+		{
+			request.rejected("No seat is left on any train to " + request.train.getDestination() + " that day.");
+			return;
+		}
+		final BookingEngine.Allocation seat = allocation.get();
+		final boolean asAsked = request.seat < 0 && seat.isRequestedTrain() && (request.any || seat.isPreferredType());
+		request.booked(seat.getTrain(), seat.getSeat(), asAsked, asAsked ? null : request.seat >= 0 ? "Seat " + SeatInventory.seatId(request.seat) + " was taken." : ! seat.isRequestedTrain() ? "The train was full." : "No seat of that type was left.");
+	}
+	
+	/**
+	 * Read one request, finding its train. A request that cannot be read or has no train is rejected straight away.
+	 *
+	 * @param lineNumber The 1-based line number of the request.
+	 * @param line       The {@link String} line.
+	 *
+	 * @return The {@link Request}.
+	 */
+	private Request parse (final int lineNumber, final String line)
+	{
+		final Request request = new Request(lineNumber);
+		try
+		{
+			final int firstComma = line.indexOf(',');
+			final int secondComma = firstComma < 0 ? - 1 : line.indexOf(',', firstComma + 1);
+			final int thirdComma = secondComma < 0 ? - 1 : line.indexOf(',', secondComma + 1);
+			if (secondComma < 0 || (thirdComma >= 0 && line.indexOf(',', thirdComma + 1) >= 0))
+			{
+				throw new IllegalArgumentException("Expected 3 or 4 fields: departure time, destination, seat, day.");
+			}
+			final LocalTime time = Train.parseTime(line, firstComma);
+			final String destination = line.substring(firstComma + 1, secondComma).trim();
+			final String seat = line.substring(secondComma + 1, thirdComma < 0 ? line.length() : thirdComma).trim();
+			request.date = thirdComma < 0 || line.substring(thirdComma + 1).isBlank() ? schedule.getToday() : LocalDate.parse(line.substring(thirdComma + 1).trim());
+			
+			final char type = seat.length() == 1 ? Character.toUpperCase(seat.charAt(0)) : 'W';
+			if (type != 'W' && type != 'A')
+			{
+				throw new IllegalArgumentException("Seat '" + seat + "' is neither a seat such as 12W nor W or A.");
+			}
+			request.any = seat.isEmpty();
+			request.window = type == 'W';
+			if (seat.length() > 1)
+			{
+				request.seat = SeatInventory.seatIndex(seat);
+				request.window = SeatInventory.isWindow(request.seat);
+			}
+			
+			request.train = trains(request.date).get(time + "," + destination);
+			if (request.train == null)
+			{
+				request.rejected("There is no train to " + destination + " at " + time + ".");
+			}
+			else if (request.seat >= request.train.getTotalSeats())
+			{
+				request.train = null;
+				request.rejected("There is no seat " + seat + " on this train.");
+			}
+		}
+		catch (final DateTimeParseException e)
+		{
+			request.rejected("The day is not a date like 2024-05-31.");
+		}
+		catch (final IllegalArgumentException e)
+		{
+			request.rejected(e.getMessage());
+		}
+		catch (final IOException e)
+		{
+			request.rejected("The trains of " + request.date + " could not be loaded: " + e.getMessage());
+		}
+		return request;
+	}
+	
+	/**
+	 * Get the trains of a day by departure time and destination, holding the day for the rest of the import.
+	 *
+	 * @param date The {@link LocalDate} of the day.
+	 *
+	 * @return The {@link Map} of each {@link Train} by its departure time and destination.
+	 *
+	 * @throws IOException              If the day cannot be loaded.
+	 * @throws IllegalArgumentException If the day is not open for booking.
+	 */
+	private Map<String, Train> trains (final LocalDate date) throws IOException
+	{
+		Map<String, Train> byKey = trainsByKey.get(date);
+		if (byKey == null)
+		{
+			final List<Train> trains = schedule.acquire(date);
+			final Map<String, List<Train>> byDestination = new HashMap<>();
+			byKey = new HashMap<>();
+			for (final Train train : trains)
+			{
+				byKey.putIfAbsent(train.getDepartureTime() + "," + train.getDestination(), train);
+				byDestination.computeIfAbsent(train.getDestination(), destination -> new ArrayList<>()).add(train);
+			}
+			trainsByKey.put(date, byKey);
+			trainsByDestination.put(date, byDestination);
+		}
+		return byKey;
+	}
+	
+	private final class Request
+	{
+		private final int lineNumber;
+		private LocalDate date;
+		private Train train;
+		private int seat = - 1;
+		private boolean window;
+		private boolean any;
+		private String result;
+		
+		/**
+		 * Construct a request not yet read.
+		 *
+		 * @param lineNumber The 1-based line number of the request.
+		 */
+		private Request (final int lineNumber)
+		{
+			this.lineNumber = lineNumber;
+		}
+		
+		/**
+		 * Record a seat booked for the request.
+		 *
+		 * @param on     The {@link Train} the seat was booked on.
+		 * @param index  The index of the seat.
+		 * @param asked  True if the seat is what was asked for.
+		 * @param reason The {@link String} reason another seat was booked, or null.
+		 */
+		private void booked (final Train on, final int index, final boolean asked, final String reason)
+		{
+			result = lineNumber + "," + (asked ? "booked" : "alternative") + "," + on.getDepartureDate() + "," + on.getDepartureTime() + "," + on.getDestination() + "," + SeatInventory.seatId(index) + "," + (reason == null ? "" : reason);
+			if (asked)
+			{
+				booked++;
+				BOOKED.increment();
+			}
+			else
+			{
+				alternatives++;
+				ALTERNATIVE.increment();
+			}
+		}
+		
+		/**
+		 * Record that the request could not be booked.
+		 *
+		 * @param reason The {@link String} reason.
+		 */
+		private void rejected (final String reason)
+		{
+			result = lineNumber + ",rejected,,,,," + reason.replace(',', ';');
+			rejected++;
+			REJECTED.increment();
+		}
+		
+		@Override
+		public String toString ()
+		{
+			return result;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,552 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of seat changes so that bookings survive a restart. Each change is queued by the thread that made
+ * it and written by a single journal thread, which syncs every waiting change to disk with one fsync (group commit).
+ * A seat is written as it is when its record is written rather than as the change queued left it, since two changes
+ * racing on a seat may be queued in the other order than they were made; the last record of a seat then always holds
+ * its latest state. The journal is folded into the {@link ScheduleSnapshot} and emptied once it grows large or old enough.
+ * <p>
+ * Each record is: CRC32 of the rest (int), departure minute of day (short), destination length (short) and UTF-8
+ * bytes, seat index (int), available (byte). The top bits of the minute hold the position of the train among the
+ * trains leaving at that minute for that destination, in schedule order, so that such trains are told apart; the 32nd
+ * and later share the last position. An available byte of {@link #LEGS} instead marks a change to the legs of
+ * a train calling at stops on the way, followed by every leg the seat is now booked for (long, bit l for leg l). A
+ * torn record at the end of the file is discarded on replay.
+ */
+public final class BookingJournal implements Train.SeatListener, Closeable
+{
+	private static final long COMPACT_BYTES = 16L << 20;
+	private static final long COMPACT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+	private static final int MAX_BATCH = 8192;
+	private static final byte LEGS = 2;
+	private static final int MINUTE_BITS = 11;
+	private static final int LAST_POSITION = (1 << Short.SIZE - MINUTE_BITS) - 1;
+	
+	private final FileChannel channel;
+	private final Path snapshot;
+	private volatile List<Train> trains;
+	// The position of each train among those with the same key, written into its records.
+	private volatile Map<Train, Integer> positions;
+	private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+	private final Thread writer;
+	private final Object durable = new Object();
+	private long appended = 0;
+	private long synced = 0;
+	private long lastCompaction = System.currentTimeMillis();
+	private volatile boolean running = true;
+	private volatile IOException failure;
+	
+	/**
+	 * Construct a journal that appends to an already replayed journal file.
+	 *
+	 * @param channel  The {@link FileChannel} of the journal, positioned at its end.
+	 * @param snapshot The {@link Path} of the snapshot the journal is compacted into.
+	 * @param trains   The {@link List} of every {@link Train} being journaled.
+	 */
+	private BookingJournal (final FileChannel channel, final Path snapshot, final List<Train> trains)
+	{
+		this.channel = channel;
+		this.snapshot = snapshot;
+		this.trains = trains;
+		this.positions = positions(trains);
+		this.writer = new Thread(this :: run, "booking-journal");
+		this.writer.setDaemon(true);
+	}
+	
+	/**
+	 * Open a journal: replay the changes already in it onto the trains, then start recording every further seat change
+	 * on those trains. Replay writes straight to each {@link SeatInventory}, so no seat listeners are told of it and the
+	 * caller must publish the result with {@link Train#refreshSeatsRemaining()} on the JavaFX thread.
+	 *
+	 * @param journal  The {@link Path} of the journal file, created if missing.
+	 * @param snapshot The {@link Path} of the snapshot the journal is compacted into.
+	 * @param trains   The {@link List} of every {@link Train} to restore and journal.
+	 *
+	 * @return The running {@link BookingJournal}.
+	 *
+	 * @throws IOException If the journal cannot be read or opened for writing.
+	 */
+	public static BookingJournal open (final Path journal, final Path snapshot, final List<Train> trains) throws IOException
+	{
+		final FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try
+		{
+			final long end = replay(channel, trains);
+			channel.truncate(end);
+			channel.position(end);
+		}
+		catch (final IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+		
+		final BookingJournal bookingJournal = new BookingJournal(channel, snapshot, trains);
+		trains.forEach(train -> train.addSeatListener(bookingJournal));
+		bookingJournal.writer.start();
+		return bookingJournal;
+	}
+	
+	/**
+	 * Copy the booked seats of an older copy of the schedule onto a freshly imported one, matching trains by departure
+	 * time and destination, and trains with the same of both by their order. This keeps bookings that were compacted into a snapshot when the CSV file is edited. Seats
+	 * booked for part of the way keep their legs if the stops are unchanged, and are booked for the whole trip if not.
+	 *
+	 * @param from The {@link List} of {@link Train} objects holding the bookings.
+	 * @param to   The {@link List} of {@link Train} objects to restore, written straight to their inventories.
+	 */
+	public static void carryOver (final List<Train> from, final List<Train> to)
+	{
+		final Map<String, Deque<Train>> byKey = new HashMap<>();
+		to.forEach(train -> byKey.computeIfAbsent(key(train), key -> new ArrayDeque<>()).add(train));
+		for (final Train old : from)
+		{
+			final Deque<Train> same = byKey.get(key(old));
+			final Train train = same == null ? null : same.poll();
+			if (train != null)
+			{
+				for (int seat = 0; seat < Math.min(old.getTotalSeats(), train.getTotalSeats()); seat++)
+				{
+					if (! old.isSeatAvailable(seat))
+					{
+						train.getInventory().setAvailable(seat, false);
+						if (old.getLegInventory() != null && old.getStops().equals(train.getStops()))
+						{
+							train.getLegInventory().setLegs(seat, old.getLegInventory().getLegs(seat));
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Apply every intact record of the journal to the trains it names. Records for trains no longer in the schedule
+	 * are skipped.
+	 *
+	 * @param channel The {@link FileChannel} of the journal.
+	 * @param trains  The {@link List} of {@link Train} objects to restore.
+	 *
+	 * @return The byte length of the intact part of the journal.
+	 *
+	 * @throws IOException If the journal cannot be read.
+	 */
+	private static long replay (final FileChannel channel, final List<Train> trains) throws IOException
+	{
+		final Map<String, List<Train>> byKey = new HashMap<>();
+		trains.forEach(train -> byKey.computeIfAbsent(key(train), key -> new ArrayList<>()).add(train));
+		
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1 << 16));
+		final CRC32 crc = new CRC32();
+		byte[] record = new byte[64];
+		long position = 0;
+		while (true)
+		{
+			int length;
+			final int checksum;
+			try
+			{
+				checksum = in.readInt();
+				final int minutes = in.readUnsignedShort();
+				final int nameLength = in.readUnsignedShort();
+				length = Short.BYTES * 2 + nameLength + Integer.BYTES + 1;
+				if (record.length < length + Long.BYTES)
+				{
+					record = new byte[length + Long.BYTES];
+				}
+				ByteBuffer.wrap(record).putShort((short) minutes).putShort((short) nameLength);
+				in.readFully(record, Short.BYTES * 2, length - Short.BYTES * 2);
+				if (record[length - 1] == LEGS)
+				{
+					in.readFully(record, length, Long.BYTES);
+					length += Long.BYTES;
+				}
+			}
+			catch (final EOFException e)
+			{
+				return position;
+			}
+			
+			crc.reset();
+			crc.update(record, 0, length);
+			if ((int) crc.getValue() != checksum)
+			{
+				return position;
+			}
+			
+			final ByteBuffer fields = ByteBuffer.wrap(record, 0, length);
+			final int minutes = fields.getShort() & 0xFFFF;
+			final int nameLength = fields.getShort() & 0xFFFF;
+			final String destination = new String(record, Short.BYTES * 2, nameLength, StandardCharsets.UTF_8);
+			fields.position(Short.BYTES * 2 + nameLength);
+			final int seat = fields.getInt();
+			final byte available = fields.get();
+			
+			final List<Train> same = byKey.get(key(minutes & (1 << MINUTE_BITS) - 1, destination));
+			final int order = minutes >>> MINUTE_BITS;
+			final Train train = same == null || order >= same.size() ? null : same.get(order);
+			if (train != null && seat < train.getTotalSeats())
+			{
+				if (available != LEGS)
+				{
+					train.getInventory().setAvailable(seat, available != 0);
+				}
+				else if (train.getLegInventory() != null)
+				{
+					// Legs past the end of the route are dropped; the seat stays taken for the whole trip.
+					train.getLegInventory().setLegs(seat, fields.getLong());
+				}
+			}
+			position += Integer.BYTES + length;
+		}
+	}
+	
+	/**
+	 * Queue a seat change to be written to the journal. This never waits for the disk.
+	 */
+	@Override
+	public void seatChanged (final Train train, final int index, final boolean available)
+	{
+		synchronized (durable)
+		{
+			appended++;
+		}
+		queue.add(new Entry(train, position(train), index));
+	}
+	
+	/**
+	 * Queue a change to the legs a seat is booked for to be written to the journal.
+	 */
+	@Override
+	public void legsChanged (final Train train, final int index, final long legs)
+	{
+		synchronized (durable)
+		{
+			appended++;
+		}
+		queue.add(new Entry(train, position(train), index, legs));
+	}
+	
+	/**
+	 * Holds are not bookings: a held seat is written as available, and as booked once the hold is confirmed. The seat
+	 * is still queued, so that it is written again after a change read while the hold was half taken or given up.
+	 */
+	@Override
+	public void seatHeld (final Train train, final int index, final boolean held)
+	{
+		seatChanged(train, index, true);
+	}
+	
+	/**
+	 * Journal another list of trains from now on, e.g. because the timetable changed: trains only in the old list are
+	 * no longer journaled, trains only in the new one are, and compaction saves the new list.
+	 *
+	 * @param trains The {@link List} of every {@link Train} to journal.
+	 */
+	public void setTrains (final List<Train> trains)
+	{
+		final Set<Train> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+		kept.addAll(trains);
+		final List<Train> old = this.trains;
+		this.positions = positions(trains);
+		this.trains = trains;
+		old.stream().filter(train -> ! kept.remove(train)).forEach(train -> train.removeSeatListener(this));
+		kept.forEach(train -> train.addSeatListener(this));
+	}
+	
+	/**
+	 * Wait until every seat change queued so far is safely on disk.
+	 *
+	 * @throws IOException          If the journal could not be written.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void flush () throws IOException, InterruptedException
+	{
+		synchronized (durable)
+		{
+			final long target = appended;
+			while (synced < target && failure == null)
+			{
+				durable.wait();
+			}
+		}
+		if (failure != null)
+		{
+			throw failure;
+		}
+	}
+	
+	/**
+	 * Stop journaling: write and sync every queued change, compact the journal into the snapshot and close the file.
+	 *
+	 * @throws IOException If the journal could not be written or compacted.
+	 */
+	@Override
+	public void close () throws IOException
+	{
+		trains.forEach(train -> train.removeSeatListener(this));
+		running = false;
+		try
+		{
+			writer.join();
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		try
+		{
+			if (failure == null)
+			{
+				compact();
+			}
+		}
+		finally
+		{
+			channel.close();
+		}
+		if (failure != null)
+		{
+			throw failure;
+		}
+	}
+	
+	/**
+	 * The journal thread: write whatever has been queued as one batch, sync once, and compact now and then.
+	 */
+	private void run ()
+	{
+		final List<Entry> batch = new ArrayList<>(MAX_BATCH);
+		final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+		final CRC32 crc = new CRC32();
+		try
+		{
+			while (running || ! queue.isEmpty())
+			{
+				final Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first != null)
+				{
+					batch.add(first);
+					queue.drainTo(batch, MAX_BATCH - 1);
+					for (final Entry entry : batch)
+					{
+						if (buffer.remaining() < entry.destination.length + 24)
+						{
+							drain(buffer);
+						}
+						entry.writeTo(buffer, crc);
+					}
+					drain(buffer);
+					channel.force(false);
+					
+					synchronized (durable)
+					{
+						synced += batch.size();
+						durable.notifyAll();
+					}
+					batch.clear();
+				}
+				
+				if (running && (channel.size() >= COMPACT_BYTES || (channel.size() > 0 && System.currentTimeMillis() - lastCompaction >= COMPACT_MILLIS)))
+				{
+					compact();
+				}
+			}
+		}
+		catch (final IOException e)
+		{
+			failure = e;
+		}
+		catch (final InterruptedException e)
+		{
+			failure = new IOException("The booking journal was interrupted.", e);
+		}
+		finally
+		{
+			synchronized (durable)
+			{
+				durable.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Write out the buffered records.
+	 *
+	 * @param buffer The {@link ByteBuffer} of records, left empty and ready for more.
+	 *
+	 * @throws IOException If the journal cannot be written.
+	 */
+	private void drain (final ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	/**
+	 * Save the current state of every train to the snapshot and empty the journal. Only the journal thread (or the
+	 * closing thread once it has stopped) calls this, so every record already written is covered by the snapshot.
+	 * Changes still queued are written to the emptied journal afterwards; replaying them again is harmless because each
+	 * record sets a seat rather than toggling it.
+	 *
+	 * @throws IOException If the snapshot or journal cannot be written.
+	 */
+	private void compact () throws IOException
+	{
+		ScheduleSnapshot.write(snapshot, trains);
+		channel.truncate(0);
+		channel.position(0);
+		channel.force(true);
+		lastCompaction = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Find the position of a train among those with the same key, as written into its records.
+	 *
+	 * @param train The {@link Train}.
+	 *
+	 * @return The position, 0 for the first or only train with its key.
+	 */
+	private int position (final Train train)
+	{
+		return positions.getOrDefault(train, 0);
+	}
+	
+	/**
+	 * Number each train by its position among those with the same key, in list order, up to the last position.
+	 *
+	 * @param trains The {@link List} of {@link Train} objects.
+	 *
+	 * @return The {@link Map} of each {@link Train} to its position.
+	 */
+	private static Map<Train, Integer> positions (final List<Train> trains)
+	{
+		final Map<String, Integer> seen = new HashMap<>();
+		final Map<Train, Integer> positions = new IdentityHashMap<>();
+		for (final Train train : trains)
+		{
+			positions.put(train, Math.min(seen.merge(key(train), 1, Integer :: sum) - 1, LAST_POSITION));
+		}
+		return positions;
+	}
+	
+	/**
+	 * Build the key identifying a train across restarts and schedule edits.
+	 *
+	 * @param train The {@link Train} to identify.
+	 *
+	 * @return The {@link String} key.
+	 */
+	private static String key (final Train train)
+	{
+		return key(train.getDepartureTime().toSecondOfDay() / 60, train.getDestination());
+	}
+	
+	/**
+	 * Build the key identifying a train across restarts and schedule edits.
+	 *
+	 * @param minutes     The departure minute of the day.
+	 * @param destination The {@link String} destination.
+	 *
+	 * @return The {@link String} key.
+	 */
+	private static String key (final int minutes, final String destination)
+	{
+		return minutes + "," + destination;
+	}
+	
+	private static final class Entry
+	{
+		// The inventory of the seat, read when the record is written; null for a change to the legs of the seat.
+		private final SeatInventory inventory;
+		private final short minutes;
+		private final byte[] destination;
+		private final int seat;
+		private final long legs;
+		
+		/**
+		 * Construct a queued seat change, whose availability is read when it is written.
+		 *
+		 * @param train    The {@link Train} the seat belongs to.
+		 * @param position The position of the train among those with the same key.
+		 * @param seat     The index of the seat.
+		 */
+		private Entry (final Train train, final int position, final int seat)
+		{
+			this.inventory = train.getInventory();
+			this.minutes = (short) (train.getDepartureTime().toSecondOfDay() / 60 | position << MINUTE_BITS);
+			this.destination = train.getDestination().getBytes(StandardCharsets.UTF_8);
+			this.seat = seat;
+			this.legs = 0;
+		}
+		
+		/**
+		 * Construct a queued change to the legs of a seat.
+		 *
+		 * @param train    The {@link Train} the seat belongs to.
+		 * @param position The position of the train among those with the same key.
+		 * @param seat     The index of the seat.
+		 * @param legs     The legs the seat is now booked for.
+		 */
+		private Entry (final Train train, final int position, final int seat, final long legs)
+		{
+			this.minutes = (short) (train.getDepartureTime().toSecondOfDay() / 60 | position << MINUTE_BITS);
+			this.destination = train.getDestination().getBytes(StandardCharsets.UTF_8);
+			this.inventory = null;
+			this.seat = seat;
+			this.legs = legs;
+		}
+		
+		/**
+		 * Append this change as a checksummed record.
+		 *
+		 * @param buffer The {@link ByteBuffer} to write to.
+		 * @param crc    A {@link CRC32} to reuse.
+		 */
+		private void writeTo (final ByteBuffer buffer, final CRC32 crc)
+		{
+			final int start = buffer.position();
+			buffer.putInt(0).putShort(minutes).putShort((short) destination.length).put(destination).putInt(seat);
+			if (inventory == null)
+			{
+				buffer.put(LEGS).putLong(legs);
+			}
+			else
+			{
+				buffer.put((byte) (inventory.isAvailable(seat) || inventory.isHeld(seat) ? 1 : 0));
+			}
+			
+			crc.reset();
+			crc.update(buffer.array(), start + Integer.BYTES, buffer.position() - start - Integer.BYTES);
+			buffer.putInt(start, (int) crc.getValue());
+		}
+	}
+}
\ No newline at end of file
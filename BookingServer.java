@@ -0,0 +1,820 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A JSON over HTTP front door to the same trains the window shows, so kiosks and web pages book from one inventory:
+ * <p>
+ * GET    /trains                         every train with its seats remaining, all as of one moment
+ * GET    /trains/{train}                 one train with the names of its available seats, as of one moment
+ * POST   /trains/{train}/seats           book the first free seat, a window seat if any
+ * POST   /trains/{train}/seats/{id}      book a seat, e.g. /trains/3/seats/12W
+ * DELETE /trains/{train}/seats/{id}      cancel a booking
+ * POST   /trains/{train}/groups/{size}   book that many seats side by side, e.g. /trains/3/groups/4
+ * POST   /trains/{train}/seats/{id}/hold hold a seat for a while, answering with the number of the hold
+ * POST   /trains/{train}/holds/{hold}    book a held seat
+ * DELETE /trains/{train}/holds/{hold}    give a held seat back
+ * POST   /trains/{train}/waitlist        wait for a seat, of a type if ?seat=W or ?seat=A, answering with the waiter
+ * GET    /trains/{train}/waitlist/{id}   whether a seat has been booked for a waiter yet, and which
+ * DELETE /trains/{train}/waitlist/{id}   stop waiting
+ * GET    /metrics                        counters and latencies in the Prometheus text format
+ * <p>
+ * The trains are those of today, or of another day of the {@link Schedule} given as ?date=2024-05-31, numbered by
+ * their position in the timetable. A booking or cancellation is only acknowledged once the journal of its day has it
+ * on disk. One train and its seats, the second to fifth above, also take part of the way of a train calling at stops
+ * as ?from=2&to=5, numbered as by {@link Train#getStops()}; without them a booking is for the whole trip. Held seats
+ * are given back by themselves after {@link SeatHolds#DEFAULT_TTL} unless booked first. A seat cancelled or given back
+ * while someone is on the waitlist of its train is booked for them instead; see {@link Waitlist}. Every request runs on
+ * its own virtual thread where the JVM has them, and on a pool of platform threads otherwise.
+ */
+public final class BookingServer implements Closeable
+{
+	private static final int POOL_THREADS = 200;
+	private static final Metrics.Histogram REQUESTS = Metrics.histogram("http_request_duration_seconds", null, "Time from reading a booking API request to having sent its answer.");
+	
+	static
+	{
+		// Send each answer without waiting: otherwise Nagle's algorithm holds the body back until the client has
+		// acknowledged the headers, which delayed acknowledgement can put off by 40 ms. Read once, by the first server.
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+		{
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+	
+	private final Schedule schedule;
+	private final SeatHolds holds = new SeatHolds(SeatHolds.DEFAULT_TTL);
+	private final HttpServer server;
+	private final ExecutorService executor = newExecutor();
+	
+	/**
+	 * Construct a server over a schedule of trains and bind it to an address. Call {@link #start()} to take requests.
+	 *
+	 * @param address  The {@link InetSocketAddress} to listen on; port 0 picks a free port.
+	 * @param schedule The {@link Schedule} of the trains to book.
+	 *
+	 * @throws IOException If the address cannot be bound.
+	 */
+	public BookingServer (final InetSocketAddress address, final Schedule schedule) throws IOException
+	{
+		this.schedule = schedule;
+		this.server = HttpServer.create(address, 0);
+		this.server.createContext("/trains", this :: handle);
+		this.server.createContext("/metrics", BookingServer :: metrics);
+		this.server.setExecutor(executor);
+	}
+	
+	/**
+	 * Start taking requests in the background.
+	 */
+	public void start ()
+	{
+		server.start();
+	}
+	
+	public InetSocketAddress getAddress ()
+	{
+		return server.getAddress();
+	}
+	
+	/**
+	 * Stop taking requests, giving those in progress a second to finish, and give back every seat still held.
+	 */
+	@Override
+	public void close ()
+	{
+		server.stop(1);
+		executor.shutdown();
+		try
+		{
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		holds.close();
+	}
+	
+	/**
+	 * Make the executor that runs requests: a virtual thread per request on Java 21 and later, where blocking on the
+	 * journal costs nothing, or else a fixed pool of platform threads. It is looked up by name because the application
+	 * is built for Java 11.
+	 *
+	 * @return The {@link ExecutorService}.
+	 */
+	private static ExecutorService newExecutor ()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (final ReflectiveOperationException e)
+		{
+			return Executors.newFixedThreadPool(POOL_THREADS);
+		}
+	}
+	
+	/**
+	 * Route a request under /trains to what it asks for and send the answer.
+	 *
+	 * @param exchange The {@link HttpExchange} of the request.
+	 *
+	 * @throws IOException If the answer cannot be sent.
+	 */
+	private void handle (final HttpExchange exchange) throws IOException
+	{
+		final long start = System.nanoTime();
+		try
+		{
+			exchange.getRequestBody().readAllBytes();
+			final String[] path = exchange.getRequestURI().getPath().split("/");
+			final String method = exchange.getRequestMethod();
+			try
+			{
+				final LocalDate date = date(exchange.getRequestURI().getRawQuery());
+				final List<Train> trains = acquire(date);
+				try
+				{
+					route(exchange, path, method, date, trains);
+				}
+				finally
+				{
+					schedule.release(date);
+				}
+			}
+			catch (final RequestException e)
+			{
+				send(exchange, e.status, "{\"error\":" + quote(e.getMessage()) + "}");
+			}
+		}
+		finally
+		{
+			exchange.close();
+			REQUESTS.recordSince(start);
+		}
+	}
+	
+	/**
+	 * Answer a request under /trains from the trains of its day.
+	 *
+	 * @param exchange The {@link HttpExchange} of the request.
+	 * @param path     The parts of the path of the request.
+	 * @param method   The {@link String} method of the request.
+	 * @param date     The {@link LocalDate} of the trains.
+	 * @param trains   The {@link List} of every {@link Train} of the day, held for the request.
+	 *
+	 * @throws IOException      If the answer cannot be sent.
+	 * @throws RequestException If the request cannot be answered as asked.
+	 */
+	private void route (final HttpExchange exchange, final String[] path, final String method, final LocalDate date, final List<Train> trains) throws IOException, RequestException
+	{
+		if (path.length == 2)
+		{
+			expect(method, "GET");
+			send(exchange, 200, listTrains(trains));
+		}
+		else if (path.length == 3)
+		{
+			expect(method, "GET");
+			final int id = number(trains, path[2]);
+			final Train train = trains.get(id);
+			final int[] journey = journey(exchange.getRequestURI().getRawQuery(), train);
+			send(exchange, 200, describe(id, train, journey[0], journey[1]));
+		}
+		else if (path.length == 4 && path[3].equals("seats"))
+		{
+			expect(method, "POST");
+			final Train train = trains.get(number(trains, path[2]));
+			final int[] journey = journey(exchange.getRequestURI().getRawQuery(), train);
+			final int seat = BookingEngine.allocate(train, true, journey[0], journey[1]);
+			if (seat < 0)
+			{
+				throw new RequestException(409, "There is no free seat from stop " + journey[0] + " to stop " + journey[1] + ".");
+			}
+			changeSeat(exchange, date, train, seat, true, "booked", "is already booked");
+		}
+		else if (path.length == 6 && path[3].equals("seats") && path[5].equals("hold"))
+		{
+			expect(method, "POST");
+			final Train train = trains.get(number(trains, path[2]));
+			hold(exchange, date, train, seat(train, path[4]));
+		}
+		else if (path.length == 5 && path[3].equals("groups"))
+		{
+			expect(method, "POST");
+			final Train train = trains.get(number(trains, path[2]));
+			bookGroup(exchange, date, train, path[4]);
+		}
+		else if (path.length == 5 && path[3].equals("holds"))
+		{
+			final Train train = trains.get(number(trains, path[2]));
+			final SeatHolds.Hold hold = hold(train, path[4]);
+			if (method.equals("POST"))
+			{
+				changeSeat(exchange, date, train, hold.getSeat(), BookingEngine.confirm(hold), "booked", "is no longer held");
+			}
+			else
+			{
+				expect(method, "DELETE");
+				if (! hold.release())
+				{
+					throw new RequestException(409, "Seat " + SeatInventory.seatId(hold.getSeat()) + " is no longer held.");
+				}
+				send(exchange, 200, "{\"seat\":" + quote(SeatInventory.seatId(hold.getSeat())) + ",\"released\":true,\"seatsRemaining\":" + train.getInventory().getSeatsRemaining() + "}");
+			}
+		}
+		else if (path.length == 4 && path[3].equals("waitlist"))
+		{
+			expect(method, "POST");
+			final Train train = trains.get(number(trains, path[2]));
+			join(exchange, date, train, parameter(exchange.getRequestURI().getRawQuery(), "seat"));
+		}
+		else if (path.length == 5 && path[3].equals("waitlist"))
+		{
+			final Waitlist.Waiter waiter = waiter(trains.get(number(trains, path[2])), path[4]);
+			if (method.equals("GET"))
+			{
+				send(exchange, 200, "{\"waiter\":" + waiter.getId() + (waiter.isWaiting() ? ",\"waiting\":true}" : ",\"seat\":" + quote(SeatInventory.seatId(waiter.getSeat())) + ",\"booked\":true}"));
+			}
+			else
+			{
+				expect(method, "DELETE");
+				if (! waiter.leave())
+				{
+					throw new RequestException(409, "Seat " + SeatInventory.seatId(waiter.getSeat()) + " has already been booked for waiter " + waiter.getId() + "; cancel it instead.");
+				}
+				schedule.release(date);
+				send(exchange, 200, "{\"waiter\":" + waiter.getId() + ",\"left\":true}");
+			}
+		}
+		else if (path.length == 5 && path[3].equals("seats"))
+		{
+			final Train train = trains.get(number(trains, path[2]));
+			final int seat = seat(train, path[4]);
+			final String query = exchange.getRequestURI().getRawQuery();
+			final boolean wholeTrip = parameter(query, "from") == null && parameter(query, "to") == null;
+			final int[] journey = journey(query, train);
+			if (method.equals("POST"))
+			{
+				changeSeat(exchange, date, train, seat, wholeTrip ? BookingEngine.book(train, seat) : BookingEngine.book(train, seat, journey[0], journey[1]), "booked", "is already booked");
+			}
+			else
+			{
+				expect(method, "DELETE");
+				changeSeat(exchange, date, train, seat, wholeTrip ? BookingEngine.cancel(train, seat) : BookingEngine.cancel(train, seat, journey[0], journey[1]), "cancelled", "is not booked");
+			}
+		}
+		else
+		{
+			throw new RequestException(404, "There is nothing at " + exchange.getRequestURI().getPath() + ".");
+		}
+	}
+	
+	/**
+	 * Read the day a request is about from its query.
+	 *
+	 * @param query The {@link String} query of the request, or null.
+	 *
+	 * @return The {@link LocalDate} given as date=, or today if there is none.
+	 *
+	 * @throws RequestException If the date is not a date.
+	 */
+	private LocalDate date (final String query) throws RequestException
+	{
+		final String date = parameter(query, "date");
+		if (date == null)
+		{
+			return schedule.getToday();
+		}
+		try
+		{
+			return LocalDate.parse(date);
+		}
+		catch (final DateTimeParseException e)
+		{
+			throw new RequestException(400, "The date " + date + " is not a date like 2024-05-31.");
+		}
+	}
+	
+	/**
+	 * Read the part of the way of a train a request is about from its query.
+	 *
+	 * @param query The {@link String} query of the request, or null.
+	 * @param train The {@link Train} the request is about.
+	 *
+	 * @return The stops given as from= and to=, the departure and the destination where not given.
+	 *
+	 * @throws RequestException If the stops are not numbers of stops of the train, in order.
+	 */
+	private static int[] journey (final String query, final Train train) throws RequestException
+	{
+		final String from = parameter(query, "from");
+		final String to = parameter(query, "to");
+		try
+		{
+			final int[] journey = {from == null ? 0 : Integer.parseInt(from), to == null ? train.getStops().size() : Integer.parseInt(to)};
+			if (journey[0] >= 0 && journey[0] < journey[1] && journey[1] <= train.getStops().size())
+			{
+				return journey;
+			}
+		}
+		catch (final NumberFormatException e)
+		{
+			// Fall through to the same answer as for stops the train does not call at.
+		}
+		throw new RequestException(400, "The stops of this train are numbered from 0 at the departure to " + train.getStops().size() + " at the destination; from must come before to.");
+	}
+	
+	/**
+	 * Find a parameter in the query of a request.
+	 *
+	 * @param query The {@link String} query of the request, or null.
+	 * @param name  The {@link String} name of the parameter.
+	 *
+	 * @return The {@link String} value of the first parameter of that name, or null if there is none.
+	 */
+	private static String parameter (final String query, final String name)
+	{
+		if (query != null)
+		{
+			for (final String parameter : query.split("&"))
+			{
+				if (parameter.startsWith(name + "="))
+				{
+					return parameter.substring(name.length() + 1);
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Hold the trains of a day for the length of a request.
+	 *
+	 * @param date The {@link LocalDate} of the day.
+	 *
+	 * @return The {@link List} of every {@link Train} of the day.
+	 *
+	 * @throws RequestException If the day is not open for booking or cannot be loaded.
+	 */
+	private List<Train> acquire (final LocalDate date) throws RequestException
+	{
+		try
+		{
+			return schedule.acquire(date);
+		}
+		catch (final IllegalArgumentException e)
+		{
+			throw new RequestException(404, e.getMessage());
+		}
+		catch (final IOException e)
+		{
+			throw new RequestException(503, "The trains of " + date + " could not be loaded: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Answer a request for the metrics of the application in the Prometheus text format.
+	 *
+	 * @param exchange The {@link HttpExchange} of the request.
+	 *
+	 * @throws IOException If the answer cannot be sent.
+	 */
+	private static void metrics (final HttpExchange exchange) throws IOException
+	{
+		try
+		{
+			exchange.getRequestBody().readAllBytes();
+			final StringBuilder text = new StringBuilder(8192);
+			Metrics.writePrometheus(text);
+			final byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody())
+			{
+				out.write(body);
+			}
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+	
+	/**
+	 * Answer a booking or cancellation, once it is on disk if it changed the seat.
+	 *
+	 * @param exchange The {@link HttpExchange} of the request.
+	 * @param date     The {@link LocalDate} of the train.
+	 * @param train    The {@link Train} the seat is on.
+	 * @param seat     The index of the seat.
+	 * @param changed  True if the request changed the seat.
+	 * @param done     The {@link String} word for the change, e.g. "booked".
+	 * @param conflict The {@link String} reason the seat could not be changed.
+	 *
+	 * @throws IOException      If the answer cannot be sent.
+	 * @throws RequestException If the seat was not changed, or the change could not be saved.
+	 */
+	private void changeSeat (final HttpExchange exchange, final LocalDate date, final Train train, final int seat, final boolean changed, final String done, final String conflict) throws IOException, RequestException
+	{
+		if (! changed)
+		{
+			throw new RequestException(409, "Seat " + SeatInventory.seatId(seat) + " " + conflict + ".");
+		}
+		try
+		{
+			schedule.flush(date);
+		}
+		catch (final IOException | InterruptedException e)
+		{
+			throw new RequestException(503, "Seat " + SeatInventory.seatId(seat) + " was " + done + " but may not survive a restart: " + e.getMessage());
+		}
+		send(exchange, 200, "{\"seat\":" + quote(SeatInventory.seatId(seat)) + ",\"" + done + "\":true,\"seatsRemaining\":" + train.getInventory().getSeatsRemaining() + "}");
+	}
+	
+	/**
+	 * Book a group of seats side by side and answer with their names, once they are on disk.
+	 *
+	 * @param exchange The {@link HttpExchange} of the request.
+	 * @param date     The {@link LocalDate} of the train.
+	 * @param train    The {@link Train} to book on.
+	 * @param size     The {@link String} number of seats wanted together.
+	 *
+	 * @throws IOException      If the answer cannot be sent.
+	 * @throws RequestException If the size is not a number of seats of the train, there is no block that large free,
+	 *                          or the booking could not be saved.
+	 */
+	private void bookGroup (final HttpExchange exchange, final LocalDate date, final Train train, final String size) throws IOException, RequestException
+	{
+		final int seats;
+		try
+		{
+			seats = Integer.parseInt(size);
+		}
+		catch (final NumberFormatException e)
+		{
+			throw new RequestException(400, "The group size " + size + " is not a number.");
+		}
+		if (seats < 1 || seats > train.getTotalSeats())
+		{
+			throw new RequestException(400, "A group on this train is from 1 to " + train.getTotalSeats() + " seats.");
+		}
+		final int first = BookingEngine.bookGroup(train, seats);
+		if (first < 0)
+		{
+			throw new RequestException(409, "There are no " + seats + " free seats side by side; the most is " + train.getLongestFreeRun() + ".");
+		}
+		try
+		{
+			schedule.flush(date);
+		}
+		catch (final IOException | InterruptedException e)
+		{
+			throw new RequestException(503, "The group was booked but may not survive a restart: " + e.getMessage());
+		}
+		final StringBuilder json = new StringBuilder(32 + seats * 8).append("{\"seats\":[");
+		for (int seat = first; seat < first + seats; seat++)
+		{
+			json.append(seat == first ? "" : ",").append(quote(SeatInventory.seatId(seat)));
+		}
+		send(exchange, 200, json.append("],\"booked\":true,\"seatsRemaining\":").append(train.getInventory().getSeatsRemaining()).append('}').toString());
+	}
+	
+	/**
+	 * Hold a seat and answer with the number of the hold. The day of the train stays in memory while the seat is held,
+	 * so the hold is never lost to the day being unloaded.
+	 *
+	 * @param exchange The {@link HttpExchange} of the request.
+	 * @param date     The {@link LocalDate} of the train.
+	 * @param train    The {@link Train} the seat is on.
+	 * @param seat     The index of the seat.
+	 *
+	 * @throws IOException      If the answer cannot be sent.
+	 * @throws RequestException If the seat is taken.
+	 */
+	private void hold (final HttpExchange exchange, final LocalDate date, final Train train, final int seat) throws IOException, RequestException
+	{
+		acquire(date);
+		final SeatHolds.Hold hold = holds.hold(train, seat, () -> schedule.release(date));
+		if (hold == null)
+		{
+			schedule.release(date);
+			throw new RequestException(409, "Seat " + SeatInventory.seatId(seat) + " is already taken.");
+		}
+		send(exchange, 201, "{\"hold\":" + hold.getId() + ",\"seat\":" + quote(SeatInventory.seatId(seat)) + ",\"expiresInSeconds\":" + hold.getTimeLeft().toSeconds() + ",\"seatsRemaining\":" + train.getInventory().getSeatsRemaining() + "}");
+	}
+	
+	/**
+	 * Find a hold on a train by its number.
+	 *
+	 * @param train The {@link Train} the hold must be on.
+	 * @param id    The {@link String} number of the hold.
+	 *
+	 * @return The {@link SeatHolds.Hold}.
+	 *
+	 * @throws RequestException If the train has no such hold, or it has ended.
+	 */
+	private SeatHolds.Hold hold (final Train train, final String id) throws RequestException
+	{
+		try
+		{
+			final SeatHolds.Hold hold = holds.get(Long.parseLong(id));
+			if (hold != null && hold.getTrain() == train)
+			{
+				return hold;
+			}
+		}
+		catch (final NumberFormatException e)
+		{
+			// Fall through to the same answer as for a hold that has ended.
+		}
+		throw new RequestException(404, "There is no hold " + id + " on this train; it may have expired.");
+	}
+	
+	/**
+	 * Join the waitlist of a train and answer with the number of the waiter, or with the seat if one was free. The day
+	 * of the train stays in memory while anyone waits, so the waitlist is never lost to the day being unloaded; it is
+	 * let go once a seat is booked for them, they leave, or the waitlist is closed because the train stopped running.
+	 *
+	 * @param exchange The {@link HttpExchange} of the request.
+	 * @param date     The {@link LocalDate} of the train.
+	 * @param train    The {@link Train} to wait for.
+	 * @param type     The {@link String} seat type wanted, W or A, or null for either.
+	 *
+	 * @throws IOException      If the answer cannot be sent.
+	 * @throws RequestException If the seat type is neither W nor A, the train is no longer running, or a seat booked
+	 *                          straight away could not be saved.
+	 */
+	private void join (final HttpExchange exchange, final LocalDate date, final Train train, final String type) throws IOException, RequestException
+	{
+		if (type != null && ! type.equalsIgnoreCase("W") && ! type.equalsIgnoreCase("A"))
+		{
+			throw new RequestException(400, "The seat type " + type + " is neither W nor A.");
+		}
+		acquire(date);
+		final Waitlist.Waiter waiter = train.getWaitlist().join(type == null ? Waitlist.SeatType.ANY : type.equalsIgnoreCase("W") ? Waitlist.SeatType.WINDOW : Waitlist.SeatType.AISLE, 0, ended -> schedule.release(date));
+		if (waiter == null)
+		{
+			schedule.release(date);
+			throw new RequestException(410, "This train is no longer running.");
+		}
+		if (waiter.isWaiting())
+		{
+			send(exchange, 202, "{\"waiter\":" + waiter.getId() + ",\"waiting\":" + train.getWaitlist().getWaiting() + "}");
+			return;
+		}
+		changeSeat(exchange, date, train, waiter.getSeat(), true, "booked", "is already booked");
+	}
+	
+	/**
+	 * Find a waiter on a train by their number.
+	 *
+	 * @param train The {@link Train} waited for.
+	 * @param id    The {@link String} number of the waiter.
+	 *
+	 * @return The {@link Waitlist.Waiter}.
+	 *
+	 * @throws RequestException If the train has no such waiter still waiting.
+	 */
+	private static Waitlist.Waiter waiter (final Train train, final String id) throws RequestException
+	{
+		try
+		{
+			final Waitlist.Waiter waiter = train.getWaitlist().get(Long.parseLong(id));
+			if (waiter != null)
+			{
+				return waiter;
+			}
+		}
+		catch (final NumberFormatException e)
+		{
+			// Fall through to the same answer as for a waiter who left.
+		}
+		throw new RequestException(404, "There is no waiter " + id + " waiting on this train; a seat may have been booked for them, they may have left, or the train may no longer be running.");
+	}
+	
+	/**
+	 * Describe every train of a day in a JSON array.
+	 *
+	 * @param trains The {@link List} of every {@link Train} of the day.
+	 *
+	 * @return The {@link String} JSON.
+	 */
+	private static String listTrains (final List<Train> trains)
+	{
+		final StringBuilder json = new StringBuilder(trains.size() * 96).append('[');
+		try (SeatVersions.Snapshot snapshot = SeatVersions.open())
+		{
+			for (int i = 0; i < trains.size(); i++)
+			{
+				json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(',');
+				summary(json, trains.get(i), snapshot).append('}');
+			}
+		}
+		return json.append(']').toString();
+	}
+	
+	/**
+	 * Describe one train in a JSON object, including the names of its seats available from one stop to another. For
+	 * the whole trip they are read from a snapshot, so they agree with the seats remaining; part of the way they are
+	 * read live from the legs.
+	 *
+	 * @param id    The number of the train.
+	 * @param train The {@link Train}.
+	 * @param from  The stop to get on at.
+	 * @param to    The stop to get off at.
+	 *
+	 * @return The {@link String} JSON.
+	 */
+	private static String describe (final int id, final Train train, final int from, final int to)
+	{
+		final StringBuilder json = new StringBuilder(96 + train.getTotalSeats() * 8).append("{\"id\":").append(id).append(',');
+		try (SeatVersions.Snapshot snapshot = SeatVersions.open())
+		{
+			summary(json, train, snapshot).append(",\"available\":[");
+			final boolean wholeTrip = from == 0 && to == train.getStops().size();
+			String separator = "";
+			for (int seat = 0; seat < train.getTotalSeats(); seat++)
+			{
+				if (wholeTrip ? snapshot.isSeatAvailable(train, seat) : train.isSeatAvailable(seat, from, to))
+				{
+					json.append(separator).append('"').append(SeatInventory.seatId(seat)).append('"');
+					separator = ",";
+				}
+			}
+		}
+		return json.append("]}").toString();
+	}
+	
+	/**
+	 * Add the fields every description of a train has. The seats remaining are read from a snapshot of the
+	 * inventories, which bookings carry on past, rather than from the JavaFX property, which is only current on the
+	 * JavaFX thread.
+	 *
+	 * @param json     The {@link StringBuilder} to add to.
+	 * @param train    The {@link Train}.
+	 * @param snapshot The {@link SeatVersions.Snapshot} to read the seats remaining from.
+	 *
+	 * @return The {@link StringBuilder}.
+	 */
+	private static StringBuilder summary (final StringBuilder json, final Train train, final SeatVersions.Snapshot snapshot)
+	{
+		return json.append("\"departureDate\":\"").append(train.getDepartureDate())
+				   .append("\",\"departureTime\":\"").append(train.getDepartureTime())
+				   .append("\",\"destination\":").append(quote(train.getDestination()))
+				   .append(",\"stops\":[").append(train.getStops().stream().map(BookingServer :: quote).collect(Collectors.joining(","))).append(']')
+				   .append(",\"totalSeats\":").append(train.getTotalSeats())
+				   .append(",\"seatsRemaining\":").append(snapshot.getSeatsRemaining(train));
+	}
+	
+	/**
+	 * Read the number of a train from a path.
+	 *
+	 * @param trains The {@link List} of every {@link Train} of the day.
+	 * @param id     The {@link String} number of the train.
+	 *
+	 * @return The position of the train in the list.
+	 *
+	 * @throws RequestException If there is no such train.
+	 */
+	private static int number (final List<Train> trains, final String id) throws RequestException
+	{
+		try
+		{
+			final int number = Integer.parseInt(id);
+			if (number >= 0 && number < trains.size())
+			{
+				return number;
+			}
+		}
+		catch (final NumberFormatException e)
+		{
+			// Fall through to the same answer as for a number beyond the end of the list.
+		}
+		throw new RequestException(404, "There is no train " + id + ".");
+	}
+	
+	/**
+	 * Find a seat of a train by its name.
+	 *
+	 * @param train  The {@link Train} the seat is on.
+	 * @param seatId The {@link String} name of the seat.
+	 *
+	 * @return The index of the seat.
+	 *
+	 * @throws RequestException If the train has no such seat.
+	 */
+	private static int seat (final Train train, final String seatId) throws RequestException
+	{
+		try
+		{
+			final int seat = SeatInventory.seatIndex(seatId);
+			if (seat < train.getTotalSeats())
+			{
+				return seat;
+			}
+		}
+		catch (final IllegalArgumentException e)
+		{
+			// Fall through to the same answer as for a seat beyond the end of the train.
+		}
+		throw new RequestException(404, "There is no seat " + seatId + " on this train.");
+	}
+	
+	/**
+	 * Check the method of a request.
+	 *
+	 * @param method   The {@link String} method of the request.
+	 * @param expected The {@link String} method the path supports.
+	 *
+	 * @throws RequestException If the methods differ.
+	 */
+	private static void expect (final String method, final String expected) throws RequestException
+	{
+		if (! method.equals(expected))
+		{
+			throw new RequestException(405, method + " is not supported here; use " + expected + ".");
+		}
+	}
+	
+	/**
+	 * Send a JSON answer.
+	 *
+	 * @param exchange The {@link HttpExchange} of the request.
+	 * @param status   The HTTP status code.
+	 * @param json     The {@link String} JSON body.
+	 *
+	 * @throws IOException If the answer cannot be sent.
+	 */
+	private static void send (final HttpExchange exchange, final int status, final String json) throws IOException
+	{
+		final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(body);
+		}
+	}
+	
+	/**
+	 * Quote a string for JSON.
+	 *
+	 * @param text The {@link String} to quote.
+	 *
+	 * @return The {@link String} JSON string literal.
+	 */
+	static String quote (final String text)
+	{
+		final StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+		for (int i = 0; i < text.length(); i++)
+		{
+			final char c = text.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				json.append('\\').append(c);
+			}
+			else if (c < ' ')
+			{
+				json.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				json.append(c);
+			}
+		}
+		return json.append('"').toString();
+	}
+	
+	private static final class RequestException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int status;
+		
+		/**
+		 * Construct the reason a request cannot be answered as asked.
+		 *
+		 * @param status  The HTTP status code to answer with.
+		 * @param message The {@link String} explanation sent to the client.
+		 */
+		private RequestException (final int status, final String message)
+		{
+			super(message, null, false, false);
+			this.status = status;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,346 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One partition of a fleet split across processes: the trains of the timetable that {@link ClusterRouter#partition}
+ * gives to this node, each on every day of its own {@link Schedule}, booked over a plain socket by a
+ * {@link ClusterRouter}. Start one with "java Driver --node index partitions [port]".
+ * <p>
+ * The protocol is binary and strictly request then answer on each connection. A request is an operation byte, the
+ * day as an epoch day ({@link #TODAY} for the node's today), and for every operation but {@link #TOTAL} the departure
+ * time as seconds of the day, the destination as modified UTF-8 and an int argument: the seat, or 1 for a window seat
+ * when allocating. An answer is a status byte and a long value, followed by a modified UTF-8 message if the status is
+ * {@link #FAILED}. A booking or cancellation is only answered once the journal of its day has it on disk, as over
+ * HTTP. A {@link #TOTAL} counts every train of the node as of one moment; see {@link SeatVersions}. Each connection
+ * is served by a thread of its own, virtual where the JVM has them.
+ */
+public final class ClusterNode implements Closeable
+{
+	static final byte BOOK = 1;
+	static final byte CANCEL = 2;
+	static final byte ALLOCATE = 3;
+	static final byte AVAILABLE = 4;
+	static final byte REMAINING = 5;
+	static final byte TOTAL = 6;
+	static final byte OK = 0;
+	static final byte REFUSED = 1;
+	static final byte NO_TRAIN = 2;
+	static final byte FAILED = 3;
+	static final long TODAY = Long.MIN_VALUE;
+	private static final Metrics.Histogram REQUESTS = Metrics.histogram("cluster_request_duration_seconds", null, "Time for a partition node to answer a request from a router, including saving a booking.");
+	
+	private final Schedule schedule;
+	// The position of each train of the timetable, and so of the same train on every day, by departure time and destination.
+	private final Map<String, Integer> positions = new HashMap<>();
+	private final ServerSocket serverSocket;
+	private final ExecutorService executor = newExecutor();
+	private volatile boolean closed = false;
+	
+	/**
+	 * Construct a node serving the trains of a schedule and bind it to an address. Call {@link #start()} to take
+	 * connections.
+	 *
+	 * @param address   The {@link InetSocketAddress} to listen on; port 0 picks a free port.
+	 * @param schedule  The {@link Schedule} of the trains of this partition.
+	 * @param timetable The {@link List} of {@link Train} objects of the timetable of the schedule, in its order.
+	 *
+	 * @throws IOException If the address cannot be bound.
+	 */
+	public ClusterNode (final InetSocketAddress address, final Schedule schedule, final List<Train> timetable) throws IOException
+	{
+		this.schedule = schedule;
+		for (int i = 0; i < timetable.size(); i++)
+		{
+			positions.putIfAbsent(key(timetable.get(i).getDepartureTime(), timetable.get(i).getDestination()), i);
+		}
+		this.serverSocket = new ServerSocket();
+		this.serverSocket.bind(address);
+	}
+	
+	/**
+	 * Start taking connections in the background, on a thread that keeps the process running until closed.
+	 */
+	public void start ()
+	{
+		new Thread(this :: accept, "cluster-node-acceptor").start();
+	}
+	
+	public InetSocketAddress getAddress ()
+	{
+		return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+	}
+	
+	/**
+	 * Stop taking connections and close those open. The schedule is left open for its owner to close.
+	 */
+	@Override
+	public void close ()
+	{
+		closed = true;
+		try
+		{
+			serverSocket.close();
+		}
+		catch (final IOException e)
+		{
+			// Closing anyway.
+		}
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Make the executor that serves connections: a virtual thread per connection on Java 21 and later, or else a
+	 * platform thread per connection, since a router keeps its connections open. It is looked up by name because the
+	 * application is built for Java 11.
+	 *
+	 * @return The {@link ExecutorService}.
+	 */
+	private static ExecutorService newExecutor ()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (final ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool();
+		}
+	}
+	
+	/**
+	 * Accept connections until closed, serving each on a thread of its own.
+	 */
+	private void accept ()
+	{
+		while (! closed)
+		{
+			try
+			{
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				executor.execute(() -> serve(socket));
+			}
+			catch (final IOException e)
+			{
+				if (! closed)
+				{
+					System.err.println("A router connection could not be accepted: " + e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Answer the requests of one connection in turn until the router closes it.
+	 *
+	 * @param socket The {@link Socket} of the connection.
+	 */
+	private void serve (final Socket socket)
+	{
+		try (socket; DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream())); DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())))
+		{
+			while (true)
+			{
+				final byte operation;
+				try
+				{
+					operation = in.readByte();
+				}
+				catch (final EOFException e)
+				{
+					return;
+				}
+				final long start = System.nanoTime();
+				final long day = in.readLong();
+				final boolean total = operation == TOTAL;
+				// The whole request is read before any of it is checked, so that failing it leaves the connection in step.
+				final int secondOfDay = total ? 0 : in.readInt();
+				final String destination = total ? null : in.readUTF();
+				final int argument = total ? 0 : in.readInt();
+				try
+				{
+					final LocalDate date = day == TODAY ? schedule.getToday() : LocalDate.ofEpochDay(day);
+					final LocalTime time = LocalTime.ofSecondOfDay(secondOfDay);
+					answer(out, date, operation, total ? null : key(time, destination), argument);
+				}
+				catch (final DateTimeException e)
+				{
+					fail(out, "The day or departure time is out of range: " + e.getMessage());
+				}
+				out.flush();
+				REQUESTS.recordSince(start);
+			}
+		}
+		catch (final SocketException e)
+		{
+			// The router went away, or the node is closing.
+		}
+		catch (final IOException e)
+		{
+			if (! closed)
+			{
+				System.err.println("A router connection failed: " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Carry out one request on the trains of its day and write its answer.
+	 *
+	 * @param out       The {@link DataOutputStream} of the connection.
+	 * @param date      The {@link LocalDate} of the train.
+	 * @param operation The operation byte.
+	 * @param key       The {@link String} departure time and destination of the train, or null for {@link #TOTAL}.
+	 * @param argument  The seat, or 1 for a window seat when allocating.
+	 *
+	 * @throws IOException If the answer cannot be written.
+	 */
+	private void answer (final DataOutputStream out, final LocalDate date, final byte operation, final String key, final int argument) throws IOException
+	{
+		final List<Train> trains;
+		try
+		{
+			trains = schedule.acquire(date);
+		}
+		catch (final IllegalArgumentException | IOException e)
+		{
+			fail(out, "The trains of " + date + " could not be loaded: " + e.getMessage());
+			return;
+		}
+		try
+		{
+			if (operation == TOTAL)
+			{
+				long seatsRemaining = 0;
+				try (SeatVersions.Snapshot snapshot = SeatVersions.open())
+				{
+					for (final Train train : trains)
+					{
+						seatsRemaining += snapshot.getSeatsRemaining(train);
+					}
+				}
+				reply(out, OK, seatsRemaining);
+				return;
+			}
+			final Train train = find(trains, key);
+			if (train == null)
+			{
+				reply(out, NO_TRAIN, 0);
+			}
+			else if (operation == ALLOCATE)
+			{
+				final int seat = BookingEngine.allocate(train, argument == 1, 0, train.getStops().size());
+				saved(out, date, seat >= 0, seat);
+			}
+			else if (operation == REMAINING)
+			{
+				reply(out, OK, train.getInventory().getSeatsRemaining());
+			}
+			else if (argument < 0 || argument >= train.getTotalSeats())
+			{
+				fail(out, "There is no seat " + argument + " on a train of " + train.getTotalSeats() + " seats.");
+			}
+			else if (operation == AVAILABLE)
+			{
+				reply(out, train.isSeatAvailable(argument) ? OK : REFUSED, 0);
+			}
+			else if (operation == BOOK || operation == CANCEL)
+			{
+				saved(out, date, operation == BOOK ? BookingEngine.book(train, argument) : BookingEngine.cancel(train, argument), argument);
+			}
+			else
+			{
+				fail(out, "There is no operation " + operation + ".");
+			}
+		}
+		finally
+		{
+			schedule.release(date);
+		}
+	}
+	
+	/**
+	 * Answer a booking or cancellation, once it is on disk if it changed the seat.
+	 *
+	 * @param out     The {@link DataOutputStream} of the connection.
+	 * @param date    The {@link LocalDate} of the train.
+	 * @param changed True if the request changed the seat.
+	 * @param seat    The index of the seat.
+	 *
+	 * @throws IOException If the answer cannot be written.
+	 */
+	private void saved (final DataOutputStream out, final LocalDate date, final boolean changed, final int seat) throws IOException
+	{
+		if (! changed)
+		{
+			reply(out, REFUSED, seat);
+			return;
+		}
+		try
+		{
+			schedule.flush(date);
+			reply(out, OK, seat);
+		}
+		catch (final IOException | InterruptedException e)
+		{
+			fail(out, "Seat " + SeatInventory.seatId(seat) + " was changed but may not survive a restart: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Find a train of a day by its departure time and destination, at its position in the timetable if the day still
+	 * runs it there.
+	 *
+	 * @param trains The {@link List} of every {@link Train} of the day.
+	 * @param key    The {@link String} departure time and destination.
+	 *
+	 * @return The {@link Train}, or null if this node has no such train.
+	 */
+	private Train find (final List<Train> trains, final String key)
+	{
+		final Integer position = positions.get(key);
+		if (position == null)
+		{
+			return null;
+		}
+		if (position < trains.size() && key.equals(key(trains.get(position).getDepartureTime(), trains.get(position).getDestination())))
+		{
+			return trains.get(position);
+		}
+		return trains.stream().filter(train -> key.equals(key(train.getDepartureTime(), train.getDestination()))).findFirst().orElse(null);
+	}
+	
+	private static String key (final LocalTime time, final String destination)
+	{
+		return time + "," + destination;
+	}
+	
+	private static void reply (final DataOutputStream out, final byte status, final long value) throws IOException
+	{
+		out.writeByte(status);
+		out.writeLong(value);
+	}
+	
+	private static void fail (final DataOutputStream out, final String message) throws IOException
+	{
+		reply(out, FAILED, 0);
+		out.writeUTF(message);
+	}
+}
\ No newline at end of file
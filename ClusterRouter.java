@@ -0,0 +1,376 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Books a fleet split across {@link ClusterNode} processes, sending each call to the node that owns its train. A train
+ * is owned by the partition its departure time and destination hash to, so any router finds it without asking. Fleet
+ * totals ask every node at once and add up their answers.
+ * <p>
+ * Each node is reached over a pool of connections, one per call in flight, opened as needed and kept for reuse; a
+ * connection that fails is dropped. Calls may be made from any number of threads.
+ */
+public final class ClusterRouter implements Closeable
+{
+	private static final Metrics.Histogram CALLS = Metrics.histogram("cluster_call_duration_seconds", null, "Time for a router to have a call answered by the node owning its train, or by every node for fleet totals.");
+	
+	private final List<InetSocketAddress> nodes;
+	private final List<ConcurrentLinkedDeque<Connection>> idle = new ArrayList<>();
+	private volatile boolean closed = false;
+	
+	/**
+	 * Construct a router over the nodes of a cluster. No connection is opened until the first call.
+	 *
+	 * @param nodes The {@link List} of the {@link InetSocketAddress} of each node, in partition order.
+	 */
+	public ClusterRouter (final List<InetSocketAddress> nodes)
+	{
+		this.nodes = List.copyOf(nodes);
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			idle.add(new ConcurrentLinkedDeque<>());
+		}
+	}
+	
+	/**
+	 * Find the partition owning a train.
+	 *
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param destination   The {@link String} destination of the train.
+	 * @param partitions    The number of partitions.
+	 *
+	 * @return The partition, from 0 to one less than the number of partitions.
+	 */
+	public static int partition (final LocalTime departureTime, final String destination, final int partitions)
+	{
+		return Math.floorMod(31 * destination.hashCode() + departureTime.toSecondOfDay(), partitions);
+	}
+	
+	/**
+	 * Book a seat.
+	 *
+	 * @param date          The {@link LocalDate} of the train, or null for today.
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param destination   The {@link String} destination of the train.
+	 * @param seat          The index of the seat.
+	 *
+	 * @return True if the seat was available and is now booked and on disk.
+	 *
+	 * @throws IOException If the node cannot be reached or failed the call.
+	 */
+	public boolean book (final LocalDate date, final LocalTime departureTime, final String destination, final int seat) throws IOException
+	{
+		return call(ClusterNode.BOOK, date, departureTime, destination, seat) >= 0;
+	}
+	
+	/**
+	 * Cancel the booking of a seat. A seat someone waits for on its node goes to them; see {@link Waitlist}.
+	 *
+	 * @param date          The {@link LocalDate} of the train, or null for today.
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param destination   The {@link String} destination of the train.
+	 * @param seat          The index of the seat.
+	 *
+	 * @return True if the seat was booked and the cancellation is on disk.
+	 *
+	 * @throws IOException If the node cannot be reached or failed the call.
+	 */
+	public boolean cancel (final LocalDate date, final LocalTime departureTime, final String destination, final int seat) throws IOException
+	{
+		return call(ClusterNode.CANCEL, date, departureTime, destination, seat) >= 0;
+	}
+	
+	/**
+	 * Book the first free seat of a type, or of the other type if none is left; see {@link BookingEngine#allocate}.
+	 *
+	 * @param date          The {@link LocalDate} of the train, or null for today.
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param destination   The {@link String} destination of the train.
+	 * @param window        True for a window seat, false for an aisle seat.
+	 *
+	 * @return The index of the seat now booked and on disk, or -1 if the train is full.
+	 *
+	 * @throws IOException If the node cannot be reached or failed the call.
+	 */
+	public int allocate (final LocalDate date, final LocalTime departureTime, final String destination, final boolean window) throws IOException
+	{
+		return (int) call(ClusterNode.ALLOCATE, date, departureTime, destination, window ? 1 : 0);
+	}
+	
+	/**
+	 * Check whether a seat has not yet been booked.
+	 *
+	 * @param date          The {@link LocalDate} of the train, or null for today.
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param destination   The {@link String} destination of the train.
+	 * @param seat          The index of the seat.
+	 *
+	 * @return True if the seat is available.
+	 *
+	 * @throws IOException If the node cannot be reached or failed the call.
+	 */
+	public boolean isSeatAvailable (final LocalDate date, final LocalTime departureTime, final String destination, final int seat) throws IOException
+	{
+		return call(ClusterNode.AVAILABLE, date, departureTime, destination, seat) >= 0;
+	}
+	
+	/**
+	 * Get the seats remaining on a train.
+	 *
+	 * @param date          The {@link LocalDate} of the train, or null for today.
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param destination   The {@link String} destination of the train.
+	 *
+	 * @return The number of seats.
+	 *
+	 * @throws IOException If the node cannot be reached or failed the call.
+	 */
+	public int getSeatsRemaining (final LocalDate date, final LocalTime departureTime, final String destination) throws IOException
+	{
+		return (int) call(ClusterNode.REMAINING, date, departureTime, destination, 0);
+	}
+	
+	/**
+	 * Get the seats remaining on every train of a day, fleet-wide. The request is sent to every node before any answer
+	 * is read, so the nodes count their trains in parallel and the call takes about as long as the slowest of them.
+	 *
+	 * @param date The {@link LocalDate} of the trains, or null for today.
+	 *
+	 * @return The number of seats.
+	 *
+	 * @throws IOException If a node cannot be reached or failed the call.
+	 */
+	public long getSeatsRemaining (final LocalDate date) throws IOException
+	{
+		final long start = System.nanoTime();
+		final Connection[] connections = new Connection[nodes.size()];
+		try
+		{
+			for (int node = 0; node < connections.length; node++)
+			{
+				connections[node] = borrow(node);
+				connections[node].out.writeByte(ClusterNode.TOTAL);
+				connections[node].out.writeLong(date == null ? ClusterNode.TODAY : date.toEpochDay());
+				connections[node].out.flush();
+			}
+			long seatsRemaining = 0;
+			FailedCall failure = null;
+			for (int node = 0; node < connections.length; node++)
+			{
+				// Every answer is read even after a node fails the call, so that each connection can be kept.
+				try
+				{
+					seatsRemaining += connections[node].read();
+				}
+				catch (final FailedCall e)
+				{
+					failure = failure == null ? e : failure;
+				}
+				giveBack(node, connections[node]);
+				connections[node] = null;
+			}
+			if (failure != null)
+			{
+				throw failure;
+			}
+			return seatsRemaining;
+		}
+		finally
+		{
+			for (final Connection connection : connections)
+			{
+				if (connection != null)
+				{
+					connection.close();
+				}
+			}
+			CALLS.recordSince(start);
+		}
+	}
+	
+	/**
+	 * Close every idle connection. Calls made afterwards fail.
+	 */
+	@Override
+	public void close ()
+	{
+		closed = true;
+		for (final ConcurrentLinkedDeque<Connection> connections : idle)
+		{
+			Connection connection;
+			while ((connection = connections.poll()) != null)
+			{
+				connection.close();
+			}
+		}
+	}
+	
+	/**
+	 * Send a call about one train to the node that owns it and read the answer.
+	 *
+	 * @param operation     The operation byte; see {@link ClusterNode}.
+	 * @param date          The {@link LocalDate} of the train, or null for today.
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param destination   The {@link String} destination of the train.
+	 * @param argument      The seat, or 1 for a window seat when allocating.
+	 *
+	 * @return The value answered, or -1 if the node refused, e.g. because the seat was taken.
+	 *
+	 * @throws IOException              If the node cannot be reached or failed the call.
+	 * @throws IllegalArgumentException If the node has no such train.
+	 */
+	private long call (final byte operation, final LocalDate date, final LocalTime departureTime, final String destination, final int argument) throws IOException
+	{
+		final long start = System.nanoTime();
+		final int node = partition(departureTime, destination, nodes.size());
+		final Connection connection = borrow(node);
+		try
+		{
+			connection.out.writeByte(operation);
+			connection.out.writeLong(date == null ? ClusterNode.TODAY : date.toEpochDay());
+			connection.out.writeInt(departureTime.toSecondOfDay());
+			connection.out.writeUTF(destination);
+			connection.out.writeInt(argument);
+			connection.out.flush();
+			final long value = connection.read();
+			final byte status = connection.status;
+			giveBack(node, connection);
+			if (status == ClusterNode.NO_TRAIN)
+			{
+				throw new IllegalArgumentException("There is no train to " + destination + " at " + departureTime + ".");
+			}
+			return status == ClusterNode.OK ? value : - 1;
+		}
+		catch (final FailedCall e)
+		{
+			// The answer was read in full, so the connection is still good for the next call.
+			giveBack(node, connection);
+			throw e;
+		}
+		catch (final IOException e)
+		{
+			connection.close();
+			throw e;
+		}
+		finally
+		{
+			CALLS.recordSince(start);
+		}
+	}
+	
+	/**
+	 * Take an idle connection to a node, or open one.
+	 *
+	 * @param node The partition of the node.
+	 *
+	 * @return The {@link Connection}, used by the caller alone until given back.
+	 *
+	 * @throws IOException If the router is closed or the node cannot be reached.
+	 */
+	private Connection borrow (final int node) throws IOException
+	{
+		if (closed)
+		{
+			throw new IOException("The router is closed.");
+		}
+		final Connection connection = idle.get(node).pollFirst();
+		return connection != null ? connection : new Connection(nodes.get(node));
+	}
+	
+	/**
+	 * Keep a connection whose last answer was read in full for the next call.
+	 *
+	 * @param node       The partition of the node.
+	 * @param connection The {@link Connection}.
+	 */
+	private void giveBack (final int node, final Connection connection)
+	{
+		idle.get(node).offerFirst(connection);
+		if (closed)
+		{
+			close();
+		}
+	}
+	
+	private static final class Connection
+	{
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+		private byte status;
+		
+		/**
+		 * Construct a connection to a node.
+		 *
+		 * @param address The {@link InetSocketAddress} of the node.
+		 *
+		 * @throws IOException If the node cannot be reached.
+		 */
+		private Connection (final InetSocketAddress address) throws IOException
+		{
+			this.socket = new Socket(address.getAddress(), address.getPort());
+			this.socket.setTcpNoDelay(true);
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+		
+		/**
+		 * Read an answer, keeping its status.
+		 *
+		 * @return The value answered.
+		 *
+		 * @throws FailedCall If the node failed the call; its answer has still been read in full.
+		 * @throws IOException If the answer cannot be read.
+		 */
+		private long read () throws IOException
+		{
+			status = in.readByte();
+			final long value = in.readLong();
+			if (status == ClusterNode.FAILED)
+			{
+				throw new FailedCall(in.readUTF());
+			}
+			return value;
+		}
+		
+		private void close ()
+		{
+			try
+			{
+				socket.close();
+			}
+			catch (final IOException e)
+			{
+				// Dropped anyway.
+			}
+		}
+	}
+	
+	/**
+	 * A call the node answered with {@link ClusterNode#FAILED}, leaving the connection in step.
+	 */
+	private static final class FailedCall extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * Construct the failure of a call.
+		 *
+		 * @param message The {@link String} explanation sent by the node.
+		 */
+		private FailedCall (final String message)
+		{
+			super(message);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,360 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * A front end to the trains typed at a console, for machines without a display. It lists the trains of a day with
+ * their free window and aisle seats, books a window or aisle seat, offering a seat of the other type when one type is
+ * gone and the first train to each other destination when a train is full, and shows and cancels seats. Commands are read a
+ * line at a time, so a file of them can be piped in; type help for the list.
+ * <p>
+ * Nothing here touches JavaFX, and a {@link Train} only makes its JavaFX property once something watches it, so the
+ * console starts without the JavaFX toolkit and runs without its libraries on the class path.
+ */
+public final class Console
+{
+	private static final String HELP = String.join(System.lineSeparator(),
+												   "trains                 list the trains of the day with their free window and aisle seats",
+												   "seats <train>          show the free seats of a train",
+												   "book <train> W|A       book a window or aisle seat, e.g. book 3 W",
+												   "book <train> <seat>    book a seat, e.g. book 3 12W",
+												   "cancel <train> <seat>  cancel the booking of a seat",
+												   "day <date>             show the trains of another day, e.g. day 2024-05-31",
+												   "quit                   save and leave");
+	private static final int SEATS_PER_LINE = 16;
+	
+	private final Schedule schedule;
+	private final BufferedReader in;
+	private final PrintStream out;
+	private final DestinationSummaries summaries = new DestinationSummaries();
+	// The day shown and its trains, held from the schedule until another day is shown or the console ends.
+	private LocalDate date;
+	private List<Train> trains;
+	
+	/**
+	 * Construct a console over the trains of a schedule. Nothing is read until it is run.
+	 *
+	 * @param schedule The {@link Schedule} of the trains to book.
+	 * @param in       The {@link BufferedReader} to read commands and answers from.
+	 * @param out      The {@link PrintStream} to write to.
+	 */
+	public Console (final Schedule schedule, final BufferedReader in, final PrintStream out)
+	{
+		this.schedule = schedule;
+		this.in = in;
+		this.out = out;
+	}
+	
+	/**
+	 * Carry out commands until "quit" or the end of the input, starting on the trains of today.
+	 *
+	 * @throws IOException If the input cannot be read, the trains cannot be loaded or a booking cannot be saved.
+	 */
+	public void run () throws IOException
+	{
+		showDay(schedule.getToday());
+		try
+		{
+			out.println("Type help for the commands.");
+			String line;
+			while ((line = prompt("> ")) != null)
+			{
+				final String[] words = line.trim().split("\\s+");
+				if (words[0].equalsIgnoreCase("quit") || words[0].equalsIgnoreCase("exit"))
+				{
+					return;
+				}
+				try
+				{
+					command(words);
+				}
+				catch (final IllegalArgumentException e)
+				{
+					out.println(e.getMessage());
+				}
+			}
+		}
+		finally
+		{
+			trains.forEach(summaries :: remove);
+			schedule.release(date);
+		}
+	}
+	
+	/**
+	 * Carry out one command.
+	 *
+	 * @param words The words of the command line.
+	 *
+	 * @throws IOException              If the trains cannot be loaded or a booking cannot be saved.
+	 * @throws IllegalArgumentException If the command is not understood, naming what is wrong.
+	 */
+	private void command (final String[] words) throws IOException
+	{
+		final String command = words[0].toLowerCase();
+		if (command.isEmpty())
+		{
+			return;
+		}
+		if (command.equals("help"))
+		{
+			out.println(HELP);
+		}
+		else if (command.equals("trains") && words.length == 1)
+		{
+			listTrains();
+		}
+		else if (command.equals("seats") && words.length == 2)
+		{
+			showSeats(train(words[1]));
+		}
+		else if (command.equals("book") && words.length == 3)
+		{
+			book(train(words[1]), words[2]);
+		}
+		else if (command.equals("cancel") && words.length == 3)
+		{
+			final Train train = train(words[1]);
+			final int seat = seat(train, words[2]);
+			if (BookingEngine.cancel(train, seat))
+			{
+				saved(train);
+				out.println("Cancelled seat " + SeatInventory.seatId(seat) + ".");
+			}
+			else
+			{
+				out.println("Seat " + SeatInventory.seatId(seat) + " is not booked.");
+			}
+		}
+		else if (command.equals("day") && words.length == 2)
+		{
+			try
+			{
+				showDay(LocalDate.parse(words[1]));
+			}
+			catch (final DateTimeParseException e)
+			{
+				throw new IllegalArgumentException("'" + words[1] + "' is not a date such as 2024-05-31.");
+			}
+			listTrains();
+		}
+		else
+		{
+			throw new IllegalArgumentException("'" + String.join(" ", words) + "' is not a command; type help for the list.");
+		}
+	}
+	
+	/**
+	 * List the trains of the day shown, numbered for the other commands.
+	 */
+	private void listTrains ()
+	{
+		out.println("Trains of " + date + ":");
+		for (int i = 0; i < trains.size(); i++)
+		{
+			out.println(describe(i));
+		}
+	}
+	
+	/**
+	 * Show the free seats of a train, window seats and aisle seats apart.
+	 *
+	 * @param train The {@link Train}.
+	 */
+	private void showSeats (final Train train)
+	{
+		for (final boolean window : new boolean[]{true, false})
+		{
+			out.println("Free " + (window ? "window" : "aisle") + " seats: " + train.getInventory().countAvailable(window));
+			final StringBuilder line = new StringBuilder();
+			int onLine = 0;
+			for (int seat = window ? 0 : 1; seat < train.getTotalSeats(); seat += 2)
+			{
+				if (train.isSeatAvailable(seat))
+				{
+					line.append(' ').append(SeatInventory.seatId(seat));
+					if (++onLine == SEATS_PER_LINE)
+					{
+						out.println(line);
+						line.setLength(0);
+						onLine = 0;
+					}
+				}
+			}
+			if (onLine > 0)
+			{
+				out.println(line);
+			}
+		}
+	}
+	
+	/**
+	 * Book a seat of a type, or a seat by its name. If no seat of the type is left the other type is offered, and if
+	 * the train is full the first train with seats left to each other destination is listed instead.
+	 *
+	 * @param train The {@link Train} to book on.
+	 * @param seat  The {@link String} W or A for any window or aisle seat, or the name of a seat such as 12W.
+	 *
+	 * @throws IOException If the booking cannot be saved.
+	 */
+	private void book (final Train train, final String seat) throws IOException
+	{
+		int index;
+		if (seat.equalsIgnoreCase("W") || seat.equalsIgnoreCase("A"))
+		{
+			final boolean window = seat.equalsIgnoreCase("W");
+			index = train.bookNextSeat(window);
+			if (index < 0 && train.getInventory().getSeatsRemaining() > 0)
+			{
+				final String answer = prompt("There are no " + (window ? "window" : "aisle") + " seats left on this train. Book " + (window ? "an aisle" : "a window") + " seat instead? [y/n] ");
+				if (answer == null || ! answer.trim().toLowerCase().startsWith("y"))
+				{
+					return;
+				}
+				index = train.bookNextSeat(! window);
+			}
+		}
+		else
+		{
+			index = seat(train, seat);
+			if (! BookingEngine.book(train, index))
+			{
+				out.println("Seat " + SeatInventory.seatId(index) + " is already taken; type seats " + trains.indexOf(train) + " for the free ones.");
+				return;
+			}
+		}
+		
+		if (index >= 0)
+		{
+			saved(train);
+			out.println("Booked seat " + SeatInventory.seatId(index) + " on the " + train.getDepartureTime() + " train to " + train.getDestination() + ".");
+			return;
+		}
+		final List<DestinationSummaries.Summary> elsewhere = summaries.elsewhere(train.getDestination());
+		out.println("This train is full. The first train with seats left to each other destination:");
+		for (final DestinationSummaries.Summary summary : elsewhere)
+		{
+			out.println(describe(trains.indexOf(summary.getEarliestWithSpace())) + String.format("  (%d window, %d aisle on %d train(s))", summary.getWindowFree(), summary.getAisleFree(), summary.getTrainsWithSpace()));
+		}
+		out.println(elsewhere.isEmpty() ? "None; every train of the day is full." : "Type book <train> W or A to book one.");
+	}
+	
+	/**
+	 * Describe a train of the day on one line.
+	 *
+	 * @param number The number of the train.
+	 *
+	 * @return The {@link String} line.
+	 */
+	private String describe (final int number)
+	{
+		final Train train = trains.get(number);
+		return String.format("%4d  %s  %-24s %5d window %5d aisle free", number, train.getDepartureTime(), train.getDestination(), train.getInventory().countAvailable(true), train.getInventory().countAvailable(false));
+	}
+	
+	/**
+	 * Make sure a change is on disk before it is reported.
+	 *
+	 * @param train The {@link Train} changed.
+	 *
+	 * @throws IOException If the change cannot be saved.
+	 */
+	private void saved (final Train train) throws IOException
+	{
+		try
+		{
+			schedule.flush(date);
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while saving the " + train.getDepartureTime() + " train to " + train.getDestination() + ".", e);
+		}
+	}
+	
+	/**
+	 * Hold the trains of a day in place of those shown so far, which are released, and summarise them by destination.
+	 *
+	 * @param day The {@link LocalDate} of the day.
+	 *
+	 * @throws IOException              If the trains cannot be loaded.
+	 * @throws IllegalArgumentException If the day has departed or is beyond the horizon.
+	 */
+	private void showDay (final LocalDate day) throws IOException
+	{
+		final List<Train> held = schedule.acquire(day);
+		if (date != null)
+		{
+			trains.forEach(summaries :: remove);
+			schedule.release(date);
+		}
+		date = day;
+		trains = held;
+		trains.forEach(summaries :: add);
+	}
+	
+	/**
+	 * Find a train of the day shown by its number.
+	 *
+	 * @param number The {@link String} number of the train, as listed.
+	 *
+	 * @return The {@link Train}.
+	 *
+	 * @throws IllegalArgumentException If there is no such train.
+	 */
+	private Train train (final String number)
+	{
+		try
+		{
+			final int index = Integer.parseInt(number);
+			if (index >= 0 && index < trains.size())
+			{
+				return trains.get(index);
+			}
+		}
+		catch (final NumberFormatException e)
+		{
+			// Fall through to the same answer as for a number out of range.
+		}
+		throw new IllegalArgumentException("There is no train " + number + "; type trains for the list.");
+	}
+	
+	/**
+	 * Find a seat of a train by its name.
+	 *
+	 * @param train  The {@link Train}.
+	 * @param seatId The {@link String} name of the seat such as 12W.
+	 *
+	 * @return The index of the seat.
+	 *
+	 * @throws IllegalArgumentException If the train has no such seat.
+	 */
+	private static int seat (final Train train, final String seatId)
+	{
+		final int index = SeatInventory.seatIndex(seatId);
+		if (index >= train.getTotalSeats())
+		{
+			throw new IllegalArgumentException("There is no seat " + seatId + " on a train of " + train.getTotalSeats() + " seats.");
+		}
+		return index;
+	}
+	
+	/**
+	 * Ask for a line of input.
+	 *
+	 * @param text The {@link String} prompt.
+	 *
+	 * @return The {@link String} line, or null at the end of the input.
+	 *
+	 * @throws IOException If the input cannot be read.
+	 */
+	private String prompt (final String text) throws IOException
+	{
+		out.print(text);
+		out.flush();
+		return in.readLine();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The free seats of each destination across a list of trains: the window and aisle seats free, the trains with a seat
+ * left and the earliest of them to leave. The counts are read from totals kept per destination rather than by looking
+ * at every seat of every train, and the earliest train from a tree of the trains with a seat left.
+ * <p>
+ * Each train is followed by a {@link Train.SeatListener} that only marks the train stale when one of its seats
+ * changes, so booking costs a flag that is usually set already. The next query recounts just the stale trains from
+ * their {@link SeatInventory}, 64 seats at a time, and applies the difference to their destination. Recounting reads
+ * the inventory rather than trusting the order listeners run in, so concurrent bookings and cancellations always leave
+ * the totals as the inventories end up. Queries and adding or removing trains take the lock of the summaries; seat
+ * changes do not. Nothing here needs JavaFX.
+ */
+public final class DestinationSummaries
+{
+	private static final Comparator<Entry> BY_DEPARTURE = Comparator.comparing((Entry entry) -> entry.train.getDepartureTime()).thenComparingLong(entry -> entry.order);
+	
+	private final NavigableMap<String, Tally> byDestination = new TreeMap<>();
+	private final Map<Train, Entry> entries = new IdentityHashMap<>();
+	// The trains changed since they were last counted, each queued at most once until it is recounted.
+	private final ConcurrentLinkedQueue<Entry> stale = new ConcurrentLinkedQueue<>();
+	private long added = 0;
+	
+	/**
+	 * Start following a train. It is counted at the next query.
+	 *
+	 * @param train The {@link Train} to add; adding it again does nothing.
+	 */
+	public synchronized void add (final Train train)
+	{
+		if (entries.containsKey(train))
+		{
+			return;
+		}
+		final Tally tally = byDestination.computeIfAbsent(key(train.getDestination()), key -> new Tally(train.getDestination()));
+		final Entry entry = new Entry(train, tally, added++);
+		tally.trains++;
+		entries.put(train, entry);
+		// Listening before the first count, so that no change made meanwhile is missed.
+		train.addSeatListener(entry);
+		entry.invalidate();
+	}
+	
+	/**
+	 * Stop following a train and take its seats out of its destination.
+	 *
+	 * @param train The {@link Train} to remove.
+	 */
+	public synchronized void remove (final Train train)
+	{
+		final Entry entry = entries.remove(train);
+		if (entry == null)
+		{
+			return;
+		}
+		train.removeSeatListener(entry);
+		entry.removed = true;
+		entry.count(0, 0);
+		if (--entry.tally.trains == 0)
+		{
+			byDestination.remove(key(train.getDestination()));
+		}
+	}
+	
+	/**
+	 * Summarise the trains to a destination.
+	 *
+	 * @param destination The {@link String} destination, ignoring case.
+	 *
+	 * @return The {@link Summary}, or null if no train goes there.
+	 */
+	public synchronized Summary get (final String destination)
+	{
+		recountStale();
+		final Tally tally = byDestination.get(key(destination));
+		return tally == null ? null : tally.summary();
+	}
+	
+	/**
+	 * Summarise every destination but one that has a train with a seat left, to offer instead of a full train. Only
+	 * the destinations are looked at, not their trains.
+	 *
+	 * @param destination The {@link String} destination to leave out, ignoring case.
+	 *
+	 * @return The {@link List} of {@link Summary} objects in order of destination.
+	 */
+	public synchronized List<Summary> elsewhere (final String destination)
+	{
+		recountStale();
+		final String excluded = key(destination);
+		final List<Summary> found = new ArrayList<>();
+		for (final Map.Entry<String, Tally> tally : byDestination.entrySet())
+		{
+			if (! tally.getKey().equals(excluded) && ! tally.getValue().withSpace.isEmpty())
+			{
+				found.add(tally.getValue().summary());
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Recount the trains changed since the last query. No more trains are recounted than are followed, so trains
+	 * booked on without pause cannot keep the query going; any still queued are recounted by the next one.
+	 */
+	private void recountStale ()
+	{
+		Entry entry;
+		int left = entries.size();
+		while (left > 0 && (entry = stale.poll()) != null)
+		{
+			// Cleared before counting, so a change made during the count queues the train again.
+			entry.stale.set(false);
+			if (! entry.removed)
+			{
+				final SeatInventory inventory = entry.train.getInventory();
+				entry.count(inventory.countAvailable(true), inventory.countAvailable(false));
+				left--;
+			}
+		}
+	}
+	
+	/**
+	 * Build the case-insensitive key of a destination, as the {@link TrainIndex} does.
+	 *
+	 * @param destination The {@link String} destination.
+	 *
+	 * @return The {@link String} key.
+	 */
+	private static String key (final String destination)
+	{
+		return destination.trim().toLowerCase(Locale.ROOT);
+	}
+	
+	/**
+	 * One train and the free seats it was last counted with.
+	 */
+	private final class Entry implements Train.SeatListener
+	{
+		private final Train train;
+		private final Tally tally;
+		// Breaks ties between trains leaving at the same time, in the order they were added.
+		private final long order;
+		private final AtomicBoolean stale = new AtomicBoolean();
+		private int window = 0;
+		private int aisle = 0;
+		private boolean removed = false;
+		
+		/**
+		 * Construct an entry with no seats counted yet.
+		 *
+		 * @param train The {@link Train}.
+		 * @param tally The {@link Tally} of its destination.
+		 * @param order The number of trains added before it.
+		 */
+		private Entry (final Train train, final Tally tally, final long order)
+		{
+			this.train = train;
+			this.tally = tally;
+			this.order = order;
+		}
+		
+		/**
+		 * Mark the train stale on the thread that changed the seat.
+		 *
+		 * @param train     The {@link Train} the seat belongs to.
+		 * @param index     Ignored; the whole train is recounted.
+		 * @param available Ignored; the inventory is read instead.
+		 */
+		@Override
+		public void seatChanged (final Train train, final int index, final boolean available)
+		{
+			invalidate();
+		}
+		
+		/**
+		 * Queue the train to be recounted, unless it is queued already.
+		 */
+		private void invalidate ()
+		{
+			if (! stale.get() && stale.compareAndSet(false, true))
+			{
+				DestinationSummaries.this.stale.add(this);
+			}
+		}
+		
+		/**
+		 * Replace the counts of the train, moving its destination by the difference.
+		 *
+		 * @param windowFree The window seats now free.
+		 * @param aisleFree  The aisle seats now free.
+		 */
+		private void count (final int windowFree, final int aisleFree)
+		{
+			final boolean hadSpace = window + aisle > 0;
+			tally.windowFree += windowFree - window;
+			tally.aisleFree += aisleFree - aisle;
+			window = windowFree;
+			aisle = aisleFree;
+			if (hadSpace && window + aisle == 0)
+			{
+				tally.withSpace.remove(this);
+			}
+			else if (! hadSpace && window + aisle > 0)
+			{
+				tally.withSpace.add(this);
+			}
+		}
+	}
+	
+	/**
+	 * The running totals of one destination.
+	 */
+	private static final class Tally
+	{
+		private final String destination;
+		private final NavigableSet<Entry> withSpace = new TreeSet<>(BY_DEPARTURE);
+		private int trains = 0;
+		private long windowFree = 0;
+		private long aisleFree = 0;
+		
+		/**
+		 * Construct the totals of a destination with no trains.
+		 *
+		 * @param destination The {@link String} destination as its first train spells it.
+		 */
+		private Tally (final String destination)
+		{
+			this.destination = destination;
+		}
+		
+		/**
+		 * Copy the totals out.
+		 *
+		 * @return The {@link Summary}.
+		 */
+		private Summary summary ()
+		{
+			return new Summary(destination, windowFree, aisleFree, trains, withSpace.size(), withSpace.isEmpty() ? null : withSpace.first().train);
+		}
+	}
+	
+	/**
+	 * The free seats of one destination at the time it was asked for.
+	 */
+	public static final class Summary
+	{
+		private final String destination;
+		private final long windowFree;
+		private final long aisleFree;
+		private final int trains;
+		private final int trainsWithSpace;
+		private final Train earliestWithSpace;
+		
+		/**
+		 * Construct a summary.
+		 *
+		 * @param destination       The {@link String} destination.
+		 * @param windowFree        The window seats free on every train there.
+		 * @param aisleFree         The aisle seats free on every train there.
+		 * @param trains            The trains there.
+		 * @param trainsWithSpace   The trains there with a seat left.
+		 * @param earliestWithSpace The first {@link Train} to leave with a seat left, or null if there is none.
+		 */
+		private Summary (final String destination, final long windowFree, final long aisleFree, final int trains, final int trainsWithSpace, final Train earliestWithSpace)
+		{
+			this.destination = destination;
+			this.windowFree = windowFree;
+			this.aisleFree = aisleFree;
+			this.trains = trains;
+			this.trainsWithSpace = trainsWithSpace;
+			this.earliestWithSpace = earliestWithSpace;
+		}
+		
+		public String getDestination ()
+		{
+			return destination;
+		}
+		
+		public long getWindowFree ()
+		{
+			return windowFree;
+		}
+		
+		public long getAisleFree ()
+		{
+			return aisleFree;
+		}
+		
+		public int getTrains ()
+		{
+			return trains;
+		}
+		
+		public int getTrainsWithSpace ()
+		{
+			return trainsWithSpace;
+		}
+		
+		public Train getEarliestWithSpace ()
+		{
+			return earliestWithSpace;
+		}
+	}
+}
\ No newline at end of file
@@ -1,14 +1,28 @@
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 /**
@@ -43,61 +57,673 @@ import java.util.stream.Collectors;
  * <p>
  * 5) The solution must contain build files to build it either in the Eclipse IDE, Ant or Maven.
  */
-public class Driver extends Application
+public class Driver
 {
 	static Path INPUT_FILE = Path.of("Train Data.txt");//.resolve("Train Data.txt");
+	static Path SNAPSHOT_FILE = Path.of("Train Data.bin");
+	static Path JOURNAL_FILE = Path.of("Train Data.journal");
+	static Path DAYS_DIRECTORY = Path.of("Train Data.days");
+	static Path METRICS_FILE = Path.of("Train Data.metrics");
+	static int SERVER_PORT = 8080;
+	static int NODE_PORT = 9090;
+	
+	private static boolean headless = false;
+	
+	private volatile Schedule schedule;
+	private TimetableWatcher watcher;
+	// Only used on the thread that owns the list of trains shown.
+	private LocalDate shownDate;
 	
 	/**
-	 * This is effectively the main method of a JavaFx application; this is where the fun begins.
-	 *
-	 * @param stage The window that the user will see when the application opens for the first time.
+	 * The JavaFX application. It is kept apart from {@link Driver} because the java launcher starts the JavaFX toolkit
+	 * before calling main whenever the main class is an {@link Application}, which fails on a machine without a display
+	 * even when no window is wanted.
 	 */
-	@Override
-	public void start (final Stage stage)
+	public static final class Window extends Application
 	{
-		// Populate the stage with a Train Selection Window of the trains passed in via CSV file.
-		stage.setScene(new Scene(new SelectTrainWindow(ingestData(INPUT_FILE))));
+		private final Driver driver = new Driver();
+		private final SeatHolds seatHolds = new SeatHolds(SeatHolds.DEFAULT_TTL);
 		
-		// Make the window pretty.
-		stage.setTitle("Glory Global Candidate Programming Test");
-		stage.getIcons().add(new Image("train.png"));
-		stage.setResizable(false);
-		stage.getScene().getStylesheets().add("style.css");
+		/**
+		 * This is effectively the main method of a JavaFx application; this is where the fun begins.
+		 *
+		 * @param stage The window that the user will see when the application opens for the first time.
+		 */
+		@Override
+		public void start (final Stage stage)
+		{
+			// Bookings made off the JavaFX thread reach the screen once per pulse rather than once per seat.
+			PulseUpdater.install();
+			
+			// Populate the stage with a Train Selection Window that fills up as trains are read from disk.
+			final ObservableList<Train> trains = FXCollections.observableArrayList();
+			stage.setScene(new Scene(new SelectTrainWindow(trains, seatHolds)));
+			PulseMonitor.install(stage.getScene());
+			
+			// Make the window pretty.
+			stage.setTitle("Glory Global Candidate Programming Test");
+			stage.getIcons().add(new Image("train.png"));
+			stage.setResizable(false);
+			stage.getScene().getStylesheets().add("style.css");
+			
+			// Present the screen to the user.
+			stage.show();
+			
+			// Load the trains off the JavaFX thread so the window stays responsive.
+			final Thread loader = new Thread(() -> driver.loadData(INPUT_FILE, SNAPSHOT_FILE, trains, Platform :: runLater), "train-loader");
+			loader.setDaemon(true);
+			loader.start();
+		}
 		
-		// Present the screen to the user.
-		stage.show();
+		/**
+		 * Called when the JavaFX app exits.
+		 */
+		@Override
+		public void stop ()
+		{
+			PulseMonitor.uninstall();
+			PulseUpdater.uninstall();
+			seatHolds.close();
+			driver.closeSchedule();
+			exportMetrics();
+		}
+	}
+	
+	/**
+	 * Make sure every booking is on disk and folded into the snapshot of its day.
+	 */
+	private void closeSchedule ()
+	{
+		if (schedule != null)
+		{
+			try
+			{
+				if (watcher != null)
+				{
+					watcher.close();
+				}
+				schedule.close();
+			}
+			catch (final IOException e)
+			{
+				System.err.println("The bookings in " + DAYS_DIRECTORY + " could not be saved: " + e.getMessage());
+			}
+		}
 	}
 	
 	/**
-	 * Collect the data from a CSV formatted file and turn each record into a Train object.
+	 * Save the metrics gathered while running, alerting the user on the console if that is not possible; the window is
+	 * gone by then.
+	 */
+	private static void exportMetrics ()
+	{
+		try
+		{
+			Metrics.export(METRICS_FILE);
+		}
+		catch (final IOException e)
+		{
+			System.err.println("The metrics " + METRICS_FILE + " could not be written: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Collect the data from a CSV formatted file and turn each record into a Train object, calling at any stops on the
+	 * way the record lists; see {@link Train#parse(String)}.
 	 *
 	 * @param file The file path + file name + file extension of the file to be ingested.
 	 *
-	 * @return The List of Trains derived from each row in the CSV file.
+	 * @return The List of Trains derived from each well formed row in the CSV file.
+	 *
+	 * @throws IOException If the file cannot be read.
 	 */
-	public static List<Train> ingestData (final Path file)
+	public static List<Train> ingestData (final Path file) throws IOException
 	{
-		// Create a reader object to be used reading the file.
-		try (BufferedReader data = Files.newBufferedReader(file))
+		final List<Train> trains = new ArrayList<>();
+		new TrainLoader(file).load(trains :: addAll);
+		return trains;
+	}
+	
+	/**
+	 * Collect the trains of today into a list shown on screen, and keep showing the trains of the current day from then
+	 * on. The timetable is read from a binary snapshot when it is newer than the CSV file; otherwise the CSV file is
+	 * imported, adding trains on the JavaFX thread as each batch is parsed so there is something to look at, and a
+	 * fresh snapshot is written for next time. Any rows that could not be imported are reported to the user. Finally
+	 * the schedule of dated trains is opened, the list switches to the trains of today, and the CSV file is watched
+	 * for edits.
+	 *
+	 * @param file     The file path + file name + file extension of the CSV file to be ingested.
+	 * @param snapshot The file path of the binary snapshot of the CSV file.
+	 * @param trains   The {@link ObservableList} to add the trains to.
+	 * @param owner    The {@link Executor} that runs changes to the trains on the thread that owns them: the JavaFX
+	 *                 thread when there is a window, or the calling thread when headless.
+	 */
+	private void loadData (final Path file, final Path snapshot, final ObservableList<Train> trains, final Executor owner)
+	{
+		final List<Train> timetable = loadTimetable(file, snapshot, trains, owner);
+		if (timetable == null)
+		{
+			return;
+		}
+		try
 		{
-			// Return a List of new trains per each line of the file.
-			return data.lines().map(Train :: new).collect(Collectors.toList());
+			schedule = Schedule.open(timetable, file, DAYS_DIRECTORY);
+			moveUndatedBookings(file, snapshot, timetable);
 		}
 		catch (final IOException e)
 		{
-			// Return an empty list if anything went ary.
-			return Collections.emptyList();
+			showError("Unreadable", "The bookings in " + DAYS_DIRECTORY + " could not be opened: " + e.getMessage());
+			return;
+		}
+		showDay(schedule.getToday(), trains, owner);
+		schedule.setOnNewDay(date -> showDay(date, trains, owner));
+		try
+		{
+			watcher = TimetableWatcher.start(file, reload -> reloadTimetable(reload, file, snapshot, trains, owner));
+		}
+		catch (final IOException e)
+		{
+			showError("Unwatched", "Changes to " + file + " will only be loaded on restart: " + e.getMessage());
 		}
 	}
 	
 	/**
-	 * The main method called when the file is run. All this does is launch the JavaFX app.
+	 * Put an edited timetable into service. Trains that kept their departure time, destination and size carry on as
+	 * they are, resized trains keep the bookings of the seats they still have, and the list shown is changed only
+	 * where trains came or went, so the rows of unchanged trains are neither rebuilt nor deselected.
 	 *
-	 * @param args There should be no command line argument.
+	 * @param reload   The {@link TimetableWatcher.Reload} of the edited CSV file.
+	 * @param file     The file path of the CSV file.
+	 * @param snapshot The file path of the binary snapshot of the CSV file.
+	 * @param trains   The {@link ObservableList} showing the trains.
+	 * @param owner    The {@link Executor} that runs changes to the list on the thread that owns it.
 	 */
-	public static void main (final String[] args)
+	private void reloadTimetable (final TimetableWatcher.Reload reload, final Path file, final Path snapshot, final ObservableList<Train> trains, final Executor owner)
 	{
+		final int dropped = schedule.setTimetable(reload.getTrains());
+		if (reload.getErrors().isEmpty())
+		{
+			writeSnapshot(snapshot, reload.getTrains());
+		}
+		else
+		{
+			showSkippedRows(file, reload.getErrors());
+		}
+		if (dropped > 0)
+		{
+			showError("Cancelled Bookings", dropped + " booking(s) were cancelled because their trains were removed from " + file + " or lost seats.");
+		}
+		
+		owner.execute(() ->
+					  {
+						  final LocalDate date = shownDate;
+						  if (date == null)
+						  {
+							  return;
+						  }
+						  final List<Train> day;
+						  try
+						  {
+							  day = schedule.acquire(date);
+						  }
+						  catch (final IOException e)
+						  {
+							  showError("Unreadable", "The trains of " + date + " could not be loaded from " + DAYS_DIRECTORY + ": " + e.getMessage());
+							  return;
+						  }
+						  try
+						  {
+							  final Set<Train> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+							  kept.addAll(day);
+							  trains.removeIf(train -> ! kept.contains(train));
+							  for (int i = 0; i < day.size(); i++)
+							  {
+								  if (i == trains.size() || trains.get(i) != day.get(i))
+								  {
+									  // A kept train further down moved up because the lines of the file were reordered.
+									  if (kept.contains(day.get(i)))
+									  {
+										  trains.remove(day.get(i));
+									  }
+									  day.get(i).refreshSeatsRemaining();
+									  trains.add(i, day.get(i));
+								  }
+							  }
+						  }
+						  finally
+						  {
+							  schedule.release(date);
+						  }
+					  });
+	}
+	
+	/**
+	 * Read the timetable from its snapshot, or else import it from the CSV file.
+	 *
+	 * @param file     The file path + file name + file extension of the CSV file to be ingested.
+	 * @param snapshot The file path of the binary snapshot of the CSV file.
+	 * @param trains   The {@link ObservableList} to show imported trains in while the import goes on.
+	 * @param owner    The {@link Executor} that runs changes to the list on the thread that owns it.
+	 *
+	 * @return The {@link List} of every {@link Train} of the timetable, or null if neither file could be read.
+	 */
+	private static List<Train> loadTimetable (final Path file, final Path snapshot, final ObservableList<Train> trains, final Executor owner)
+	{
+		if (ScheduleSnapshot.isCurrent(snapshot, file))
+		{
+			try
+			{
+				return ScheduleSnapshot.open(snapshot);
+			}
+			catch (final IOException e)
+			{
+				// Fall back to importing the CSV file, which will also replace the unreadable snapshot.
+			}
+		}
+		
+		final TrainLoader loader = new TrainLoader(file);
+		final List<Train> imported = new ArrayList<>();
+		try
+		{
+			loader.load(batch ->
+						{
+							imported.addAll(batch);
+							owner.execute(() -> trains.addAll(batch));
+						});
+			if (Files.exists(snapshot))
+			{
+				// Snapshots written before trains had dates also hold bookings; keep them for moveUndatedBookings.
+				BookingJournal.carryOver(ScheduleSnapshot.open(snapshot), imported);
+			}
+			if (loader.getErrors().isEmpty())
+			{
+				writeSnapshot(snapshot, imported);
+			}
+			else
+			{
+				showSkippedRows(file, loader.getErrors());
+			}
+			return imported;
+		}
+		catch (final IOException e)
+		{
+			showError("Unreadable", "The train data " + file + " could not be read: " + e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Move the bookings kept by versions without dates, in the timetable snapshot and {@link #JOURNAL_FILE}, onto the
+	 * trains of today, then remove them from the timetable. This only finds anything on the first run of this version.
+	 *
+	 * @param file      The file path of the CSV file of the timetable.
+	 * @param snapshot  The file path of the binary snapshot of the timetable.
+	 * @param timetable The {@link List} of every {@link Train} of the timetable.
+	 *
+	 * @throws IOException If the bookings could not be moved.
+	 */
+	private void moveUndatedBookings (final Path file, final Path snapshot, final List<Train> timetable) throws IOException
+	{
+		if (Files.exists(JOURNAL_FILE))
+		{
+			BookingJournal.open(JOURNAL_FILE, snapshot, timetable).close();
+		}
+		if (timetable.stream().allMatch(train -> train.getInventory().getSeatsRemaining() == train.getTotalSeats()))
+		{
+			Files.deleteIfExists(JOURNAL_FILE);
+			return;
+		}
+		
+		final LocalDate today = schedule.getToday();
+		final Map<String, Train> byKey = new HashMap<>();
+		schedule.acquire(today).forEach(train -> byKey.putIfAbsent(train.getDepartureTime() + "," + train.getDestination(), train));
+		try
+		{
+			for (final Train undated : timetable)
+			{
+				final Train train = byKey.get(undated.getDepartureTime() + "," + undated.getDestination());
+				for (int seat = 0; train != null && seat < Math.min(undated.getTotalSeats(), train.getTotalSeats()); seat++)
+				{
+					if (! undated.isSeatAvailable(seat))
+					{
+						BookingEngine.book(train, seat);
+					}
+				}
+			}
+			schedule.flush(today);
+		}
+		catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while saving the bookings moved onto " + today + ".", e);
+		}
+		finally
+		{
+			schedule.release(today);
+		}
+		
+		// A snapshot of an import with skipped rows is not current, and is dropped so that the rows are shown again.
+		final List<Train> unbooked = new ArrayList<>(timetable.size());
+		timetable.forEach(train -> unbooked.add(train.copy(null)));
+		if (ScheduleSnapshot.isCurrent(snapshot, file))
+		{
+			ScheduleSnapshot.write(snapshot, unbooked);
+		}
+		else
+		{
+			Files.deleteIfExists(snapshot);
+		}
+		Files.deleteIfExists(JOURNAL_FILE);
+	}
+	
+	/**
+	 * Show the trains of a day in place of those shown so far, which are released.
+	 *
+	 * @param date   The {@link LocalDate} of the day.
+	 * @param trains The {@link ObservableList} showing the trains.
+	 * @param owner  The {@link Executor} that runs changes to the list on the thread that owns it.
+	 */
+	private void showDay (final LocalDate date, final ObservableList<Train> trains, final Executor owner)
+	{
+		try
+		{
+			final List<Train> day = schedule.acquire(date);
+			owner.execute(() ->
+						  {
+							  day.forEach(Train :: refreshSeatsRemaining);
+							  trains.setAll(day);
+							  if (shownDate != null)
+							  {
+								  schedule.release(shownDate);
+							  }
+							  shownDate = date;
+						  });
+		}
+		catch (final IOException e)
+		{
+			showError("Unreadable", "The trains of " + date + " could not be loaded from " + DAYS_DIRECTORY + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Save trains to a binary snapshot, alerting the user if that is not possible.
+	 *
+	 * @param snapshot The file path of the binary snapshot.
+	 * @param trains   The {@link List} of {@link Train} objects to save.
+	 */
+	private static void writeSnapshot (final Path snapshot, final List<Train> trains)
+	{
+		try
+		{
+			ScheduleSnapshot.write(snapshot, trains);
+		}
+		catch (final IOException e)
+		{
+			showError("Unsaved", "The train snapshot " + snapshot + " could not be written: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Alert the user of the first few rows of the CSV file that could not be loaded.
+	 *
+	 * @param file   The file path of the CSV file.
+	 * @param errors The {@link List} of rows that could not be loaded.
+	 */
+	private static void showSkippedRows (final Path file, final List<TrainLoader.LoadError> errors)
+	{
+		final String rows = errors.stream().limit(10).map(TrainLoader.LoadError :: toString).collect(Collectors.joining("\n"));
+		final int more = errors.size() - 10;
+		showError("Skipped Rows", errors.size() + " row(s) of " + file + " could not be loaded:\n" + rows + (more > 0 ? "\n... and " + more + " more." : ""));
+	}
+	
+	/**
+	 * Alert the user of a problem from any thread, or print it when there is no window.
+	 *
+	 * @param title   The {@link String} title of the alert.
+	 * @param message The {@link String} body of the alert.
+	 */
+	private static void showError (final String title, final String message)
+	{
+		if (headless)
+		{
+			System.err.println(title + ": " + message);
+			return;
+		}
+		Platform.runLater(() ->
+						  {
+							  final Alert alert = new Alert(Alert.AlertType.NONE, message, ButtonType.OK);
+							  alert.setTitle(title);
+							  final Stage stage = (Stage) alert.getDialogPane().getScene().getWindow();
+							  stage.getIcons().add(new Image("train.png"));
+							  alert.show();
+						  });
+	}
+	
+	/**
+	 * Run without a window, booking through a {@link BookingServer} until the process is stopped. The trains are
+	 * loaded and journaled exactly as for the window.
+	 *
+	 * @param port The port to listen on.
+	 *
+	 * @throws IOException If the port cannot be bound.
+	 */
+	private static void serve (final int port) throws IOException
+	{
+		headless = true;
+		final Driver driver = new Driver();
+		final ObservableList<Train> trains = FXCollections.observableArrayList();
+		driver.loadData(INPUT_FILE, SNAPSHOT_FILE, trains, Runnable :: run);
+		if (driver.schedule == null)
+		{
+			throw new IOException("There are no trains to serve.");
+		}
+		
+		final BookingServer server = new BookingServer(new InetSocketAddress(port), driver.schedule);
+		Runtime.getRuntime().addShutdownHook(new Thread(() ->
+														{
+															server.close();
+															driver.closeSchedule();
+															exportMetrics();
+														}, "server-shutdown"));
+		server.start();
+		System.out.println("Serving " + trains.size() + " trains a day for " + Schedule.HORIZON_DAYS + " days at http://localhost:" + server.getAddress().getPort() + "/trains, with metrics at /metrics");
+	}
+	
+	/**
+	 * Run without a window as one partition of a cluster until the process is stopped: only the trains of the timetable
+	 * that {@link ClusterRouter#partition} gives to this node are loaded, and booked through a {@link ClusterNode}. Each
+	 * node journals its days in a directory of its own and saves its metrics to a file of its own, and reads the CSV
+	 * file without writing the snapshot, so the nodes of a cluster can start together from one folder. Edits to the CSV
+	 * file are picked up on restart.
+	 *
+	 * @param index      The partition of this node, from 0.
+	 * @param partitions The number of partitions of the cluster.
+	 * @param port       The port to listen on.
+	 *
+	 * @throws IOException If the trains cannot be loaded or the port cannot be bound.
+	 */
+	private static void serveNode (final int index, final int partitions, final int port) throws IOException
+	{
+		if (index < 0 || index >= partitions)
+		{
+			throw new IllegalArgumentException("Node " + index + " is not one of partitions 0 to " + (partitions - 1) + ".");
+		}
+		headless = true;
+		final List<Train> timetable = ingestData(INPUT_FILE).stream().filter(train -> ClusterRouter.partition(train.getDepartureTime(), train.getDestination(), partitions) == index).collect(Collectors.toList());
+		final Path directory = Path.of(DAYS_DIRECTORY + "." + index + "-of-" + partitions);
+		METRICS_FILE = Path.of(METRICS_FILE + "." + index + "-of-" + partitions);
+		final Schedule schedule = Schedule.open(timetable, INPUT_FILE, directory);
+		
+		final ClusterNode node = new ClusterNode(new InetSocketAddress(port), schedule, timetable);
+		Runtime.getRuntime().addShutdownHook(new Thread(() ->
+														{
+															node.close();
+															try
+															{
+																schedule.close();
+															}
+															catch (final IOException e)
+															{
+																System.err.println("The bookings in " + directory + " could not be saved: " + e.getMessage());
+															}
+															exportMetrics();
+														}, "node-shutdown"));
+		node.start();
+		System.out.println("Serving partition " + index + " of " + partitions + ", " + timetable.size() + " trains a day, at localhost:" + node.getAddress().getPort());
+	}
+	
+	/**
+	 * Run without a window, booking a file of reservation requests through a {@link BookingImport} and then exiting.
+	 * The trains are loaded and journaled exactly as for the window.
+	 *
+	 * @param requests The {@link Path} of the requests file.
+	 * @param report   The {@link Path} to write the outcome of each request to.
+	 *
+	 * @throws IOException If the files cannot be read or written, or the bookings could not be saved.
+	 */
+	private static void importBookings (final Path requests, final Path report) throws IOException
+	{
+		headless = true;
+		final Driver driver = new Driver();
+		driver.loadData(INPUT_FILE, SNAPSHOT_FILE, FXCollections.observableArrayList(), Runnable :: run);
+		if (driver.schedule == null)
+		{
+			throw new IOException("There are no trains to book.");
+		}
+		
+		final BookingImport bookingImport = new BookingImport(driver.schedule);
+		final long start = System.nanoTime();
+		try
+		{
+			bookingImport.run(requests, report);
+		}
+		catch (final InterruptedException e)
+		{
+			throw new IOException("The import was interrupted.", e);
+		}
+		finally
+		{
+			driver.closeSchedule();
+			exportMetrics();
+		}
+		final long requestCount = bookingImport.getBooked() + bookingImport.getAlternatives() + bookingImport.getRejected();
+		System.out.printf("Imported %d requests in %.1f s: %d booked, %d on another seat or train, %d rejected. See %s%n", requestCount, (System.nanoTime() - start) / 1e9, bookingImport.getBooked(), bookingImport.getAlternatives(), bookingImport.getRejected(), report);
+	}
+	
+	/**
+	 * Run without a window, taking commands typed at the console through a {@link Console} until "quit". The timetable
+	 * is read from its snapshot, or else from the CSV file, and the bookings are journaled exactly as for the window,
+	 * but nothing of JavaFX is loaded: this runs without its libraries on the class path.
+	 *
+	 * @throws IOException If the trains cannot be loaded or the bookings cannot be saved.
+	 */
+	private static void console () throws IOException
+	{
+		headless = true;
+		List<Train> timetable = null;
+		if (ScheduleSnapshot.isCurrent(SNAPSHOT_FILE, INPUT_FILE))
+		{
+			try
+			{
+				timetable = ScheduleSnapshot.open(SNAPSHOT_FILE);
+			}
+			catch (final IOException e)
+			{
+				// Fall back to importing the CSV file.
+			}
+		}
+		if (timetable == null)
+		{
+			timetable = ingestData(INPUT_FILE);
+		}
+		final Schedule schedule = Schedule.open(timetable, INPUT_FILE, DAYS_DIRECTORY);
+		try
+		{
+			new Console(schedule, new BufferedReader(new InputStreamReader(System.in)), System.out).run();
+		}
+		finally
+		{
+			schedule.close();
+			exportMetrics();
+		}
+	}
+	
+	/**
+	 * Run without a window, writing how full the trains of a day are to a file through an {@link OccupancyReport} and
+	 * then exiting. Bookings made by other processes since the last start are in the journal and so in the report.
+	 *
+	 * @param report The {@link Path} of the report, CSV unless it ends in .json.
+	 * @param date   The {@link LocalDate} of the trains, or null for today.
+	 *
+	 * @throws IOException If the trains cannot be loaded or the report cannot be written.
+	 */
+	private static void writeReport (final Path report, final LocalDate date) throws IOException
+	{
+		headless = true;
+		final Driver driver = new Driver();
+		driver.loadData(INPUT_FILE, SNAPSHOT_FILE, FXCollections.observableArrayList(), Runnable :: run);
+		if (driver.schedule == null)
+		{
+			throw new IOException("There are no trains to report on.");
+		}
+		
+		final LocalDate day = date == null ? driver.schedule.getToday() : date;
+		final long start = System.nanoTime();
+		try
+		{
+			OccupancyReport.write(driver.schedule, day, report);
+		}
+		finally
+		{
+			driver.closeSchedule();
+			exportMetrics();
+		}
+		System.out.printf("Reported on the trains of %s in %.1f s. See %s%n", day, (System.nanoTime() - start) / 1e9, report);
+	}
+	
+	/**
+	 * The main method called when the file is run. This launches the JavaFX app, with "--server [port]" serves
+	 * bookings over HTTP instead, with "--node index partitions [port]" serves one partition of a cluster, with
+	 * "--import requests [report]" books a file of requests, with "--report file [date]" writes an occupancy report, or
+	 * with "--console" takes commands typed at the console.
+	 *
+	 * @param args Nothing for the window, "--server" optionally followed by a port, "--node" followed by the partition
+	 *             of the node, the number of partitions and optionally a port, "--import" followed by the requests
+	 *             file and optionally the report file, which is the requests file with .report added if left out, or
+	 *             "--report" followed by the report file and optionally the day, today if left out, or "--console".
+	 *
+	 * @throws IOException If the server or node cannot be started, the import or report fails, or the console cannot
+	 *                     load or save the trains.
+	 */
+	public static void main (final String[] args) throws IOException
+	{
+		if (args.length > 0 && args[0].equals("--server"))
+		{
+			serve(args.length > 1 ? Integer.parseInt(args[1]) : SERVER_PORT);
+			return;
+		}
+		if (args.length > 2 && args[0].equals("--node"))
+		{
+			serveNode(Integer.parseInt(args[1]), Integer.parseInt(args[2]), args.length > 3 ? Integer.parseInt(args[3]) : NODE_PORT + Integer.parseInt(args[1]));
+			return;
+		}
+		if (args.length > 1 && args[0].equals("--import"))
+		{
+			importBookings(Path.of(args[1]), Path.of(args.length > 2 ? args[2] : args[1] + ".report"));
+			return;
+		}
+		if (args.length > 1 && args[0].equals("--report"))
+		{
+			writeReport(Path.of(args[1]), args.length > 2 ? LocalDate.parse(args[2]) : null);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--console"))
+		{
+			console();
+			return;
+		}
+		
 		// Launch the JavaFX app.
-		launch(args);
+		Application.launch(Window.class, args);
 	}
 }
\ No newline at end of file
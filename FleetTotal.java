@@ -0,0 +1,81 @@
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+/**
+ * The seats remaining on every train in a list, kept current as seats are booked and trains come and go. The total is
+ * kept by applying the change of each train rather than re-summing every train, and a {@link TrainIndex} and the
+ * {@link DestinationSummaries} over the same trains are kept current with it. Nothing here needs the JavaFX toolkit to
+ * be running.
+ */
+public final class FleetTotal
+{
+	private final ReadOnlyIntegerWrapper seatsRemaining;
+	private final TrainIndex index = new TrainIndex();
+	private final DestinationSummaries summaries = new DestinationSummaries();
+	
+	/**
+	 * Construct a running total over a list of trains. Trains may be added to or removed from the list afterwards.
+	 *
+	 * @param trains The {@link ObservableList} of {@link Train} objects to total.
+	 */
+	public FleetTotal (final ObservableList<Train> trains)
+	{
+		this.seatsRemaining = new ReadOnlyIntegerWrapper(this, "seatsRemaining", trains.stream().mapToInt(train -> train.seatsRemainingProperty().get()).sum());
+		
+		final ChangeListener<Number> delta = (observable, oldValue, newValue) ->
+		{
+			seatsRemaining.set(seatsRemaining.get() + newValue.intValue() - oldValue.intValue());
+			index.update((Train) ((ReadOnlyProperty<?>) observable).getBean());
+		};
+		trains.forEach(train ->
+					   {
+						   train.seatsRemainingProperty().addListener(delta);
+						   index.add(train);
+						   summaries.add(train);
+					   });
+		trains.addListener((ListChangeListener<Train>) change ->
+						   {
+							   while (change.next())
+							   {
+								   for (final Train train : change.getRemoved())
+								   {
+									   train.seatsRemainingProperty().removeListener(delta);
+									   seatsRemaining.set(seatsRemaining.get() - train.getSeatsRemaining());
+									   index.remove(train);
+									   summaries.remove(train);
+								   }
+								   for (final Train train : change.getAddedSubList())
+								   {
+									   train.seatsRemainingProperty().addListener(delta);
+									   seatsRemaining.set(seatsRemaining.get() + train.getSeatsRemaining());
+									   index.add(train);
+									   summaries.add(train);
+								   }
+							   }
+						   });
+	}
+	
+	public int getSeatsRemaining ()
+	{
+		return seatsRemaining.get();
+	}
+	
+	public ReadOnlyIntegerProperty seatsRemainingProperty ()
+	{
+		return seatsRemaining.getReadOnlyProperty();
+	}
+	
+	public TrainIndex getIndex ()
+	{
+		return index;
+	}
+	
+	public DestinationSummaries getSummaries ()
+	{
+		return summaries;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,266 @@
+/**
+ * The seats of one train booked for part of its route, as one bitmap per leg: leg l runs from stop l to stop l + 1,
+ * where stop 0 is the station the train leaves from. A seat booked from stop a to stop b has its bit set in the maps of
+ * legs a to b - 1, so it can be sold again for the legs either side. The maps lie leg after leg, 64 seats to a word.
+ * <p>
+ * A seat booked for any legs is also taken in the {@link SeatInventory} of the train, which keeps whole trip bookings
+ * and holds off it without knowing about legs. Whether a seat is free from stop a to stop b is then, for 64 seats at
+ * once: not taken at all, or taken only for legs outside a to b. Both are a handful of bitwise operations per word
+ * rather than a test per seat. Changes and queries take the lock of the inventory.
+ */
+public final class LegInventory
+{
+	public static final int MAX_LEGS = Long.SIZE;
+	
+	private static final long WINDOW_BITS = 0x5555555555555555L;
+	
+	private final int totalSeats;
+	private final int legs;
+	private final int words;
+	// The map of leg l starts at word l * words.
+	private final long[] booked;
+	
+	/**
+	 * Construct an inventory of legs where no seat is booked for any.
+	 *
+	 * @param totalSeats The total number of seats on the train.
+	 * @param legs       The number of legs of the route, from 1 to {@link #MAX_LEGS}.
+	 */
+	public LegInventory (final int totalSeats, final int legs)
+	{
+		this(totalSeats, legs, new long[legs * ((totalSeats + 63) >>> 6)]);
+	}
+	
+	/**
+	 * Construct an inventory of legs from previously saved maps.
+	 *
+	 * @param totalSeats The total number of seats on the train.
+	 * @param legs       The number of legs of the route, from 1 to {@link #MAX_LEGS}.
+	 * @param booked     The maps of every leg, as given by {@link #toBookedWords()}.
+	 */
+	public LegInventory (final int totalSeats, final int legs, final long[] booked)
+	{
+		if (legs < 1 || legs > MAX_LEGS)
+		{
+			throw new IllegalArgumentException("A route has from 1 to " + MAX_LEGS + " legs, not " + legs + ".");
+		}
+		if (booked.length != legs * ((totalSeats + 63) >>> 6))
+		{
+			throw new IllegalArgumentException("Maps of " + booked.length + " words do not fit " + legs + " legs of " + totalSeats + " seats.");
+		}
+		this.totalSeats = totalSeats;
+		this.legs = legs;
+		this.words = (totalSeats + 63) >>> 6;
+		this.booked = booked.clone();
+	}
+	
+	public int getLegs ()
+	{
+		return legs;
+	}
+	
+	/**
+	 * Get the legs a seat is booked for.
+	 *
+	 * @param seat The index of the seat.
+	 *
+	 * @return The legs as a mask, bit l for leg l; 0 if the seat is booked for none.
+	 */
+	public synchronized long getLegs (final int seat)
+	{
+		final int word = checkIndex(seat) >>> 6;
+		long mask = 0;
+		for (int leg = 0; leg < legs; leg++)
+		{
+			mask |= (booked[leg * words + word] >>> seat & 1) << leg;
+		}
+		return mask;
+	}
+	
+	/**
+	 * Set the legs a seat is booked for. This does not touch the {@link SeatInventory}; see {@link Train} for bookings.
+	 *
+	 * @param seat The index of the seat.
+	 * @param mask The legs, bit l for leg l; bits beyond the last leg are ignored.
+	 */
+	public synchronized void setLegs (final int seat, final long mask)
+	{
+		final int word = checkIndex(seat) >>> 6;
+		for (int leg = 0; leg < legs; leg++)
+		{
+			if ((mask >>> leg & 1) != 0)
+			{
+				booked[leg * words + word] |= 1L << seat;
+			}
+			else
+			{
+				booked[leg * words + word] &= ~ (1L << seat);
+			}
+		}
+	}
+	
+	/**
+	 * Get the mask of a run of legs.
+	 *
+	 * @param from The stop the run starts at.
+	 * @param to   The stop the run ends at, after from.
+	 *
+	 * @return The legs between the two stops, bit l for leg l.
+	 */
+	public static long mask (final int from, final int to)
+	{
+		return (to == Long.SIZE ? - 1L : (1L << to) - 1) & - (1L << from);
+	}
+	
+	/**
+	 * Check whether a seat can be booked from one stop to another.
+	 *
+	 * @param inventory The {@link SeatInventory} of the train.
+	 * @param seat      The index of the seat.
+	 * @param from      The stop to get on at.
+	 * @param to        The stop to get off at.
+	 *
+	 * @return True if the seat is free for every leg in between.
+	 */
+	public synchronized boolean isFree (final SeatInventory inventory, final int seat, final int from, final int to)
+	{
+		return (free(inventory, checkIndex(seat) >>> 6, from, to) & 1L << seat) != 0;
+	}
+	
+	/**
+	 * Count the seats that can be booked from one stop to another.
+	 *
+	 * @param inventory The {@link SeatInventory} of the train.
+	 * @param from      The stop to get on at.
+	 * @param to        The stop to get off at.
+	 *
+	 * @return The number of seats free for every leg in between.
+	 */
+	public synchronized int countFree (final SeatInventory inventory, final int from, final int to)
+	{
+		int count = 0;
+		for (int word = 0; word < words; word++)
+		{
+			count += Long.bitCount(free(inventory, word, from, to));
+		}
+		return count;
+	}
+	
+	/**
+	 * Find a seat of a type that can be booked from one stop to another. Seats already booked for other legs are
+	 * preferred, so that seats free for the whole trip are kept for those travelling the whole way.
+	 *
+	 * @param inventory The {@link SeatInventory} of the train.
+	 * @param window    True for a window seat, false for an aisle seat.
+	 * @param from      The stop to get on at.
+	 * @param to        The stop to get off at.
+	 *
+	 * @return The index of a free seat, or -1 if there is none of that type.
+	 */
+	public synchronized int nextFree (final SeatInventory inventory, final boolean window, final int from, final int to)
+	{
+		final long type = window ? WINDOW_BITS : ~ WINDOW_BITS;
+		int fallback = - 1;
+		for (int word = 0; word < words; word++)
+		{
+			final long free = free(inventory, word, from, to) & type;
+			final long shared = free & owned(word);
+			if (shared != 0)
+			{
+				return word << 6 | Long.numberOfTrailingZeros(shared);
+			}
+			if (free != 0 && fallback < 0)
+			{
+				fallback = word << 6 | Long.numberOfTrailingZeros(free);
+			}
+		}
+		return fallback;
+	}
+	
+	/**
+	 * Work out which of 64 seats can be booked from one stop to another: those not taken in the inventory, and those
+	 * taken only because they are booked for legs outside the journey.
+	 *
+	 * @param inventory The {@link SeatInventory} of the train.
+	 * @param word      The index of the word.
+	 * @param from      The stop to get on at.
+	 * @param to        The stop to get off at.
+	 *
+	 * @return The bits of the seats of the word that are free.
+	 */
+	private long free (final SeatInventory inventory, final int word, final int from, final int to)
+	{
+		long taken = 0;
+		for (int leg = from; leg < to; leg++)
+		{
+			taken |= booked[leg * words + word];
+		}
+		final int seats = totalSeats - (word << 6);
+		return (~ inventory.getTakenWord(word) | (owned(word) & ~ taken)) & (seats >= 64 ? - 1L : (1L << seats) - 1);
+	}
+	
+	/**
+	 * Find which of 64 seats are booked for any leg.
+	 *
+	 * @param word The index of the word.
+	 *
+	 * @return The bits of the seats of the word booked for at least one leg.
+	 */
+	private long owned (final int word)
+	{
+		long owned = 0;
+		for (int leg = 0; leg < legs; leg++)
+		{
+			owned |= booked[leg * words + word];
+		}
+		return owned;
+	}
+	
+	/**
+	 * Copy out the maps of every leg, leg after leg, 64 seats to a word.
+	 *
+	 * @return A copy of the maps.
+	 */
+	public synchronized long[] toBookedWords ()
+	{
+		return booked.clone();
+	}
+	
+	/**
+	 * Copy this inventory for a train of another size, keeping the legs of the seats both sizes have.
+	 *
+	 * @param totalSeats The total number of seats of the copy.
+	 *
+	 * @return The new {@link LegInventory}.
+	 */
+	public synchronized LegInventory resize (final int totalSeats)
+	{
+		final int newWords = (totalSeats + 63) >>> 6;
+		final long[] copy = new long[legs * newWords];
+		for (int leg = 0; leg < legs; leg++)
+		{
+			System.arraycopy(booked, leg * words, copy, leg * newWords, Math.min(words, newWords));
+			if ((totalSeats & 63) != 0 && newWords <= words)
+			{
+				copy[leg * newWords + newWords - 1] &= (1L << totalSeats) - 1;
+			}
+		}
+		return new LegInventory(totalSeats, legs, copy);
+	}
+	
+	/**
+	 * Ensure a seat index falls within this train.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return The same index, for chaining.
+	 */
+	private int checkIndex (final int index)
+	{
+		if (index < 0 || index >= totalSeats)
+		{
+			throw new IndexOutOfBoundsException("Seat " + index + " is not on a train of " + totalSeats + " seats.");
+		}
+		return index;
+	}
+}
\ No newline at end of file
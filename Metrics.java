@@ -0,0 +1,445 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * The counters, gauges and latency histograms of the application, exported in the Prometheus text format. Metrics are
+ * registered once, typically into a static final field, and then recorded without locks or allocation, so they can be
+ * left on everywhere. Latencies are recorded in nanoseconds and exported in seconds.
+ */
+public final class Metrics
+{
+	private static final Map<String, Metric> REGISTRY = new ConcurrentSkipListMap<>();
+	private static final Map<String, String> HELP = new ConcurrentHashMap<>();
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+	
+	/**
+	 * There is one registry per application; every method is static.
+	 */
+	private Metrics ()
+	{
+	}
+	
+	/**
+	 * Register a counter, or find the one already registered under the same name and labels.
+	 *
+	 * @param name   The {@link String} Prometheus name, ending in "_total".
+	 * @param labels The {@link String} Prometheus labels such as {@code operation="book"}, or null for none.
+	 * @param help   The {@link String} description of what is counted, or null if another metric of the name has it.
+	 *
+	 * @return The {@link Counter}.
+	 */
+	public static Counter counter (final String name, final String labels, final String help)
+	{
+		return (Counter) REGISTRY.computeIfAbsent(key(name, labels), key -> new Counter(name, labels, help));
+	}
+	
+	/**
+	 * Register a latency histogram, or find the one already registered under the same name and labels.
+	 *
+	 * @param name   The {@link String} Prometheus name, ending in "_seconds".
+	 * @param labels The {@link String} Prometheus labels such as {@code operation="book"}, or null for none.
+	 * @param help   The {@link String} description of what is timed, or null if another metric of the name has it.
+	 *
+	 * @return The {@link Histogram}.
+	 */
+	public static Histogram histogram (final String name, final String labels, final String help)
+	{
+		return (Histogram) REGISTRY.computeIfAbsent(key(name, labels), key -> new Histogram(name, labels, help));
+	}
+	
+	/**
+	 * Register a gauge read whenever the metrics are exported, replacing any gauge of the same name.
+	 *
+	 * @param name  The {@link String} Prometheus name.
+	 * @param help  The {@link String} description of what is measured.
+	 * @param value The {@link LongSupplier} of the current value; it is called on the exporting thread.
+	 */
+	public static void gauge (final String name, final String help, final LongSupplier value)
+	{
+		REGISTRY.put(key(name, null), new Gauge(name, help, value));
+	}
+	
+	/**
+	 * Write every metric in the Prometheus text exposition format.
+	 *
+	 * @param out The {@link Appendable} to write to.
+	 *
+	 * @throws IOException If writing fails.
+	 */
+	public static void writePrometheus (final Appendable out) throws IOException
+	{
+		String family = null;
+		for (final Metric metric : REGISTRY.values())
+		{
+			if (! metric.name.equals(family))
+			{
+				family = metric.name;
+				out.append("# HELP ").append(metric.name).append(' ').append(HELP.getOrDefault(metric.name, metric.name)).append('\n');
+				out.append("# TYPE ").append(metric.name).append(' ').append(metric.type()).append('\n');
+			}
+			metric.writeTo(out);
+		}
+	}
+	
+	/**
+	 * Write every metric to a file in the Prometheus text format, replacing it in one step.
+	 *
+	 * @param file The {@link Path} of the file.
+	 *
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void export (final Path file) throws IOException
+	{
+		final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter out = Files.newBufferedWriter(temp))
+		{
+			writePrometheus(out);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Build the registry key of a metric; sorting by it keeps each family together.
+	 *
+	 * @param name   The {@link String} name.
+	 * @param labels The {@link String} labels, or null.
+	 *
+	 * @return The {@link String} key.
+	 */
+	private static String key (final String name, final String labels)
+	{
+		return labels == null ? name : name + '{' + labels + '}';
+	}
+	
+	/**
+	 * Format a number the way Prometheus reads it.
+	 *
+	 * @param value The number.
+	 *
+	 * @return The {@link String} number.
+	 */
+	private static String number (final double value)
+	{
+		return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : String.format(Locale.ROOT, "%.6g", value);
+	}
+	
+	private abstract static class Metric
+	{
+		private final String name;
+		private final String labels;
+		
+		/**
+		 * Construct the parts every metric has.
+		 *
+		 * @param name   The {@link String} name.
+		 * @param labels The {@link String} labels, or null.
+		 * @param help   The {@link String} description.
+		 */
+		private Metric (final String name, final String labels, final String help)
+		{
+			this.name = name;
+			this.labels = labels;
+			if (help != null)
+			{
+				HELP.putIfAbsent(name, help);
+			}
+		}
+		
+		/**
+		 * Get the Prometheus type of the metric.
+		 *
+		 * @return The {@link String} type.
+		 */
+		abstract String type ();
+		
+		/**
+		 * Write the samples of the metric.
+		 *
+		 * @param out The {@link Appendable} to write to.
+		 *
+		 * @throws IOException If writing fails.
+		 */
+		abstract void writeTo (Appendable out) throws IOException;
+		
+		/**
+		 * Write one sample line.
+		 *
+		 * @param out    The {@link Appendable} to write to.
+		 * @param suffix The {@link String} added to the name, e.g. "_sum", or empty.
+		 * @param extra  The {@link String} label added to those of the metric, or null.
+		 * @param value  The value.
+		 *
+		 * @throws IOException If writing fails.
+		 */
+		final void sample (final Appendable out, final String suffix, final String extra, final double value) throws IOException
+		{
+			out.append(name).append(suffix);
+			if (labels != null || extra != null)
+			{
+				out.append('{').append(labels == null ? extra : extra == null ? labels : labels + ',' + extra).append('}');
+			}
+			out.append(' ').append(number(value)).append('\n');
+		}
+	}
+	
+	public static final class Counter extends Metric
+	{
+		private final AtomicLong count = new AtomicLong();
+		
+		/**
+		 * Construct a counter at zero.
+		 *
+		 * @param name   The {@link String} name.
+		 * @param labels The {@link String} labels, or null.
+		 * @param help   The {@link String} description.
+		 */
+		private Counter (final String name, final String labels, final String help)
+		{
+			super(name, labels, help);
+		}
+		
+		/**
+		 * Count one more.
+		 */
+		public void increment ()
+		{
+			count.incrementAndGet();
+		}
+		
+		/**
+		 * Count several more.
+		 *
+		 * @param amount How many more to count.
+		 */
+		public void add (final long amount)
+		{
+			count.addAndGet(amount);
+		}
+		
+		public long get ()
+		{
+			return count.get();
+		}
+		
+		@Override
+		String type ()
+		{
+			return "counter";
+		}
+		
+		@Override
+		void writeTo (final Appendable out) throws IOException
+		{
+			sample(out, "", null, count.get());
+		}
+	}
+	
+	public static final class Histogram extends Metric
+	{
+		// 16 buckets per power of two bound the error of any quantile to 1/16 of its value, from 1 ns to 292 years.
+		private static final int SUB_BITS = 4;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+		private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) << SUB_BITS;
+		
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+		
+		/**
+		 * Construct an empty histogram.
+		 *
+		 * @param name   The {@link String} name.
+		 * @param labels The {@link String} labels, or null.
+		 * @param help   The {@link String} description.
+		 */
+		private Histogram (final String name, final String labels, final String help)
+		{
+			super(name, labels, help);
+		}
+		
+		/**
+		 * Record a latency.
+		 *
+		 * @param nanos The latency in nanoseconds.
+		 */
+		public void record (final long nanos)
+		{
+			final long value = Math.max(nanos, 0);
+			counts.incrementAndGet(bucket(value));
+			sum.addAndGet(value);
+			long highest = max.get();
+			while (value > highest && ! max.compareAndSet(highest, value))
+			{
+				highest = max.get();
+			}
+		}
+		
+		/**
+		 * Record the time since a start, e.g. {@code histogram.recordSince(start)} after
+		 * {@code final long start = System.nanoTime()}.
+		 *
+		 * @param startNanos The {@link System#nanoTime()} at the start.
+		 */
+		public void recordSince (final long startNanos)
+		{
+			record(System.nanoTime() - startNanos);
+		}
+		
+		/**
+		 * Get the number of latencies recorded.
+		 *
+		 * @return The count.
+		 */
+		public long count ()
+		{
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				count += counts.get(i);
+			}
+			return count;
+		}
+		
+		/**
+		 * Estimate a quantile of the latencies recorded, as the upper end of the bucket holding it.
+		 *
+		 * @param quantile The quantile, from 0 to 1.
+		 *
+		 * @return The latency in nanoseconds, or 0 if nothing was recorded.
+		 */
+		public long quantile (final double quantile)
+		{
+			final long[] snapshot = new long[BUCKETS];
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				snapshot[i] = counts.get(i);
+				count += snapshot[i];
+			}
+			return quantile(snapshot, count, quantile);
+		}
+		
+		/**
+		 * Find a quantile in a snapshot of the buckets.
+		 *
+		 * @param snapshot The bucket counts.
+		 * @param count    The sum of the bucket counts.
+		 * @param quantile The quantile, from 0 to 1.
+		 *
+		 * @return The latency in nanoseconds, never above the highest recorded.
+		 */
+		private long quantile (final long[] snapshot, final long count, final double quantile)
+		{
+			final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				seen += snapshot[i];
+				if (seen >= rank)
+				{
+					return Math.min(highest(i), max.get());
+				}
+			}
+			return 0;
+		}
+		
+		/**
+		 * Find the bucket of a latency.
+		 *
+		 * @param value The latency in nanoseconds, not negative.
+		 *
+		 * @return The index of the bucket.
+		 */
+		private static int bucket (final long value)
+		{
+			if (value < SUB_BUCKETS)
+			{
+				return (int) value;
+			}
+			final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+			return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+		}
+		
+		/**
+		 * Find the highest latency in a bucket.
+		 *
+		 * @param bucket The index of the bucket.
+		 *
+		 * @return The latency in nanoseconds.
+		 */
+		private static long highest (final int bucket)
+		{
+			final int group = bucket >>> SUB_BITS;
+			if (group == 0)
+			{
+				return bucket;
+			}
+			final int shift = group - 1;
+			return ((long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift) + (1L << shift) - 1;
+		}
+		
+		@Override
+		String type ()
+		{
+			return "summary";
+		}
+		
+		@Override
+		void writeTo (final Appendable out) throws IOException
+		{
+			final long[] snapshot = new long[BUCKETS];
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				snapshot[i] = counts.get(i);
+				count += snapshot[i];
+			}
+			for (final double quantile : QUANTILES)
+			{
+				sample(out, "", "quantile=\"" + quantile + '"', count == 0 ? Double.NaN : quantile(snapshot, count, quantile) / 1e9);
+			}
+			sample(out, "_sum", null, sum.get() / 1e9);
+			sample(out, "_count", null, count);
+		}
+	}
+	
+	private static final class Gauge extends Metric
+	{
+		private final LongSupplier value;
+		
+		/**
+		 * Construct a gauge over a source of values.
+		 *
+		 * @param name  The {@link String} name.
+		 * @param help  The {@link String} description.
+		 * @param value The {@link LongSupplier} of the current value.
+		 */
+		private Gauge (final String name, final String help, final LongSupplier value)
+		{
+			super(name, null, help);
+			this.value = value;
+		}
+		
+		@Override
+		String type ()
+		{
+			return "gauge";
+		}
+		
+		@Override
+		void writeTo (final Appendable out) throws IOException
+		{
+			sample(out, "", null, value.getAsLong());
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,309 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Writes how full the trains of a day are to a CSV or JSON file: a row for each train in timetable order, then one for
+ * each destination and one for each hour of departure, each with its seats taken and its window and aisle seats taken
+ * as a share of those there are. Held seats count as taken. No time is kept of when seats were booked, so the hours
+ * are those of departure.
+ * <p>
+ * The seats are read 64 at a time from one {@link SeatVersions.Snapshot}, so the report is of a single moment and
+ * bookings carry on while it is written, and the counting is shared out over the common fork/join pool by
+ * destination. Nothing is kept per seat: only two counts per train and the totals of each destination and hour. The
+ * rows are written as they are made, whatever the size of the fleet.
+ * <p>
+ * Each CSV row is: record (train, destination or hour), date, departure time, destination, trains, seats, taken,
+ * occupancy, window seats, window taken, window fill, aisle seats, aisle taken and aisle fill, the shares from 0 to 1.
+ * The JSON is an object of the date and the arrays "trains", "destinations" and "departureHours" of objects with the
+ * same fields.
+ */
+public final class OccupancyReport
+{
+	private static final long WINDOW_BITS = 0x5555555555555555L;
+	private static final String HEADER = "record,date,departureTime,destination,trains,seats,taken,occupancy,windowSeats,windowTaken,windowFill,aisleSeats,aisleTaken,aisleFill";
+	private static final Metrics.Histogram REPORT = Metrics.histogram("occupancy_report_duration_seconds", null, "Time to count the seats of every train of a day and write the occupancy report.");
+	
+	public enum Format
+	{
+		CSV,
+		JSON;
+		
+		/**
+		 * Pick the format of a file from its extension.
+		 *
+		 * @param file The {@link Path} of the file.
+		 *
+		 * @return JSON for a .json file, and CSV for anything else.
+		 */
+		public static Format of (final Path file)
+		{
+			return file.getFileName().toString().toLowerCase().endsWith(".json") ? JSON : CSV;
+		}
+	}
+	
+	private final LocalDate date;
+	private final List<Train> trains;
+	private final Format format;
+	// The seats taken on each train, and the window seats among them, by position in the list.
+	private final int[] taken;
+	private final int[] windowTaken;
+	private boolean firstRow;
+	
+	/**
+	 * Construct a report on the trains of a day. Nothing is read until it is written.
+	 *
+	 * @param date   The {@link LocalDate} of the trains.
+	 * @param trains The {@link List} of every {@link Train} of the day, held until the report is written.
+	 * @param format The {@link Format} to write.
+	 */
+	public OccupancyReport (final LocalDate date, final List<Train> trains, final Format format)
+	{
+		this.date = date;
+		this.trains = trains;
+		this.format = format;
+		this.taken = new int[trains.size()];
+		this.windowTaken = new int[trains.size()];
+	}
+	
+	/**
+	 * Write the report of the trains of a day of a schedule to a file, in the format of its extension.
+	 *
+	 * @param schedule The {@link Schedule} of the trains.
+	 * @param date     The {@link LocalDate} of the trains.
+	 * @param file     The {@link Path} of the report, replaced if it exists.
+	 *
+	 * @throws IOException If the trains cannot be loaded or the file cannot be written.
+	 */
+	public static void write (final Schedule schedule, final LocalDate date, final Path file) throws IOException
+	{
+		final List<Train> trains = schedule.acquire(date);
+		try (BufferedWriter out = Files.newBufferedWriter(file))
+		{
+			new OccupancyReport(date, trains, Format.of(file)).write(out);
+		}
+		finally
+		{
+			schedule.release(date);
+		}
+	}
+	
+	/**
+	 * Count the seats of every train and write the report. The writer is flushed but left open.
+	 *
+	 * @param out The {@link Writer} to write to; buffer it.
+	 *
+	 * @throws IOException If the report cannot be written.
+	 */
+	public void write (final Writer out) throws IOException
+	{
+		final long start = System.nanoTime();
+		final Map<String, Tally> destinations = new TreeMap<>();
+		try (SeatVersions.Snapshot snapshot = SeatVersions.open())
+		{
+			// A share of the destinations per task, a few per thread so one busy destination does not hold up the rest.
+			final int shares = ForkJoinPool.getCommonPoolParallelism() * 4;
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			final CompletableFuture<Map<String, Tally>>[] counted = new CompletableFuture[shares];
+			for (int share = 0; share < shares; share++)
+			{
+				final int mine = share;
+				counted[share] = CompletableFuture.supplyAsync(() -> count(snapshot, mine, shares));
+			}
+			for (final CompletableFuture<Map<String, Tally>> share : counted)
+			{
+				// Each destination is counted by one share alone, so the totals need no adding up.
+				destinations.putAll(share.join());
+			}
+		}
+		
+		final Tally[] hours = new Tally[24];
+		begin(out, "trains");
+		for (int i = 0; i < trains.size(); i++)
+		{
+			final Train train = trains.get(i);
+			final Tally tally = new Tally();
+			tally.add(train.getTotalSeats(), taken[i], windowTaken[i]);
+			row(out, "train", train.getDepartureTime().toString(), train.getDestination(), tally);
+			final int hour = train.getDepartureTime().getHour();
+			if (hours[hour] == null)
+			{
+				hours[hour] = new Tally();
+			}
+			hours[hour].add(train.getTotalSeats(), taken[i], windowTaken[i]);
+		}
+		next(out, "destinations");
+		for (final Map.Entry<String, Tally> destination : destinations.entrySet())
+		{
+			row(out, "destination", "", destination.getKey(), destination.getValue());
+		}
+		next(out, "departureHours");
+		for (int hour = 0; hour < hours.length; hour++)
+		{
+			if (hours[hour] != null)
+			{
+				row(out, "hour", String.format(Locale.ROOT, "%02d:00", hour), "", hours[hour]);
+			}
+		}
+		if (format == Format.JSON)
+		{
+			out.write("]}\n");
+		}
+		out.flush();
+		REPORT.recordSince(start);
+	}
+	
+	/**
+	 * Count the seats taken on the trains of one share of the destinations.
+	 *
+	 * @param snapshot The {@link SeatVersions.Snapshot} to read the seats from.
+	 * @param share    The share to count, from 0.
+	 * @param shares   The number of shares.
+	 *
+	 * @return The {@link Map} of the {@link Tally} of each destination of the share, by destination.
+	 */
+	private Map<String, Tally> count (final SeatVersions.Snapshot snapshot, final int share, final int shares)
+	{
+		final Map<String, Tally> destinations = new HashMap<>();
+		for (int i = 0; i < trains.size(); i++)
+		{
+			final Train train = trains.get(i);
+			if (Math.floorMod(train.getDestination().hashCode(), shares) != share)
+			{
+				continue;
+			}
+			final SeatInventory inventory = train.getInventory();
+			int seats = 0;
+			int window = 0;
+			for (int word = 0; word << 6 < inventory.getTotalSeats(); word++)
+			{
+				final long bits = snapshot.getTakenWord(inventory, word);
+				seats += Long.bitCount(bits);
+				window += Long.bitCount(bits & WINDOW_BITS);
+			}
+			taken[i] = seats;
+			windowTaken[i] = window;
+			destinations.computeIfAbsent(train.getDestination(), destination -> new Tally()).add(train.getTotalSeats(), seats, window);
+		}
+		return destinations;
+	}
+	
+	/**
+	 * Start the report and its first section.
+	 *
+	 * @param out     The {@link Writer} to write to.
+	 * @param section The {@link String} name of the section in JSON.
+	 *
+	 * @throws IOException If the report cannot be written.
+	 */
+	private void begin (final Writer out, final String section) throws IOException
+	{
+		out.write(format == Format.JSON ? "{\"date\":\"" + date + "\",\"" + section + "\":[" : HEADER + "\n");
+		firstRow = true;
+	}
+	
+	/**
+	 * Start the next section of the report; rows just follow on in CSV.
+	 *
+	 * @param out     The {@link Writer} to write to.
+	 * @param section The {@link String} name of the section in JSON.
+	 *
+	 * @throws IOException If the report cannot be written.
+	 */
+	private void next (final Writer out, final String section) throws IOException
+	{
+		if (format == Format.JSON)
+		{
+			out.write("],\"" + section + "\":[");
+		}
+		firstRow = true;
+	}
+	
+	/**
+	 * Write one row of the report.
+	 *
+	 * @param out           The {@link Writer} to write to.
+	 * @param record        The {@link String} kind of row: train, destination or hour.
+	 * @param departureTime The {@link String} departure time, or the hour, or blank for a destination.
+	 * @param destination   The {@link String} destination, or blank for an hour.
+	 * @param tally         The {@link Tally} of the row.
+	 *
+	 * @throws IOException If the report cannot be written.
+	 */
+	private void row (final Writer out, final String record, final String departureTime, final String destination, final Tally tally) throws IOException
+	{
+		final long windowSeats = tally.windowSeats;
+		final long aisleSeats = tally.seats - windowSeats;
+		final long aisleTaken = tally.taken - tally.windowTaken;
+		if (format == Format.CSV)
+		{
+			out.write(record + "," + date + "," + departureTime + "," + csv(destination) + "," + tally.trains + "," + tally.seats + "," + tally.taken + "," + share(tally.taken, tally.seats) + "," + windowSeats + "," + tally.windowTaken + "," + share(tally.windowTaken, windowSeats) + "," + aisleSeats + "," + aisleTaken + "," + share(aisleTaken, aisleSeats) + "\n");
+			return;
+		}
+		out.write((firstRow ? "" : ",") + "{" + (departureTime.isEmpty() ? "" : "\"departureTime\":\"" + departureTime + "\",") + (destination.isEmpty() ? "" : "\"destination\":" + BookingServer.quote(destination) + ",") + "\"trains\":" + tally.trains + ",\"seats\":" + tally.seats + ",\"taken\":" + tally.taken + ",\"occupancy\":" + share(tally.taken, tally.seats) + ",\"windowSeats\":" + windowSeats + ",\"windowTaken\":" + tally.windowTaken + ",\"windowFill\":" + share(tally.windowTaken, windowSeats) + ",\"aisleSeats\":" + aisleSeats + ",\"aisleTaken\":" + aisleTaken + ",\"aisleFill\":" + share(aisleTaken, aisleSeats) + "}\n");
+		firstRow = false;
+	}
+	
+	/**
+	 * Format a share to four places, or 0 if there is nothing to share.
+	 *
+	 * @param part  The part.
+	 * @param whole The whole.
+	 *
+	 * @return The {@link String} share from 0 to 1.
+	 */
+	private static String share (final long part, final long whole)
+	{
+		return whole == 0 ? "0" : String.format(Locale.ROOT, "%.4f", part / (double) whole);
+	}
+	
+	/**
+	 * Quote a field for CSV if it holds a comma, quote or line break.
+	 *
+	 * @param text The {@link String} field.
+	 *
+	 * @return The {@link String} as it goes in the file.
+	 */
+	private static String csv (final String text)
+	{
+		return text.chars().anyMatch(c -> c == ',' || c == '"' || c == '\n' || c == '\r') ? '"' + text.replace("\"", "\"\"") + '"' : text;
+	}
+	
+	/**
+	 * The seats of one or more trains, and how many of them are taken.
+	 */
+	private static final class Tally
+	{
+		private int trains = 0;
+		private long seats = 0;
+		private long windowSeats = 0;
+		private long taken = 0;
+		private long windowTaken = 0;
+		
+		/**
+		 * Add a train to the tally. Even seats are window seats, so a train has half its seats by the window, rounded up.
+		 *
+		 * @param totalSeats   The number of seats of the train.
+		 * @param seatsTaken   The number of them taken.
+		 * @param windowsTaken The number of window seats taken.
+		 */
+		private void add (final int totalSeats, final int seatsTaken, final int windowsTaken)
+		{
+			trains++;
+			seats += totalSeats;
+			windowSeats += (totalSeats + 1) / 2;
+			taken += seatsTaken;
+			windowTaken += windowsTaken;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+import javafx.application.Platform;
+import javafx.scene.Scene;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Watches how busy the JavaFX thread is. Each pulse of a watched scene is timed from before its CSS and layout to after
+ * them, and a probe posted to the JavaFX thread every {@link #PROBE_MILLIS} ms measures how long tasks wait there: the
+ * wait grows with the queue ahead of them, which JavaFX does not expose, and shows any pulse or handler hogging the
+ * thread. A probe is only posted once the previous one has run, so a stalled thread is not flooded with probes.
+ */
+public final class PulseMonitor
+{
+	private static final long PROBE_MILLIS = 100;
+	private static final Metrics.Histogram LAYOUT = Metrics.histogram("fx_pulse_layout_duration_seconds", null, "Time each pulse of the main window spends on CSS and layout.");
+	private static final Metrics.Counter PULSES = Metrics.counter("fx_pulses_total", null, "Pulses in which the main window was laid out.");
+	private static final Metrics.Histogram QUEUE_DELAY = Metrics.histogram("fx_event_queue_delay_seconds", null, "Time a task posted to the JavaFX thread waits before it runs, sampled every " + PROBE_MILLIS + " ms.");
+	
+	private static PulseMonitor installed;
+	
+	private final ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(task ->
+																							   {
+																								   final Thread thread = new Thread(task, "pulse-monitor");
+																								   thread.setDaemon(true);
+																								   return thread;
+																							   });
+	private final AtomicBoolean probing = new AtomicBoolean(false);
+	private final Runnable probe = this :: probed;
+	private volatile long posted;
+	private long layoutStart;
+	
+	/**
+	 * There is one monitor per JavaFX application; see {@link #install(Scene)}.
+	 */
+	private PulseMonitor ()
+	{
+	}
+	
+	/**
+	 * Start watching the JavaFX thread and the pulses of a scene. Call on the JavaFX thread.
+	 *
+	 * @param scene The {@link Scene} of the main window.
+	 */
+	public static void install (final Scene scene)
+	{
+		final PulseMonitor monitor = new PulseMonitor();
+		installed = monitor;
+		scene.addPreLayoutPulseListener(() -> monitor.layoutStart = System.nanoTime());
+		scene.addPostLayoutPulseListener(() ->
+										 {
+											 LAYOUT.recordSince(monitor.layoutStart);
+											 PULSES.increment();
+										 });
+		monitor.prober.scheduleWithFixedDelay(monitor :: post, PROBE_MILLIS, PROBE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Stop probing the JavaFX thread, e.g. because the application is exiting. Call on the JavaFX thread.
+	 */
+	public static void uninstall ()
+	{
+		if (installed != null)
+		{
+			installed.prober.shutdownNow();
+			installed = null;
+		}
+	}
+	
+	/**
+	 * Post a probe to the JavaFX thread unless the last one is still waiting.
+	 */
+	private void post ()
+	{
+		if (probing.compareAndSet(false, true))
+		{
+			posted = System.nanoTime();
+			Platform.runLater(probe);
+		}
+	}
+	
+	/**
+	 * Record how long the probe waited, on the JavaFX thread.
+	 */
+	private void probed ()
+	{
+		QUEUE_DELAY.recordSince(posted);
+		probing.set(false);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Carries changes made off the JavaFX thread onto it, at most once per animation pulse. A change is posted under a key,
+ * such as the train whose seats changed, with an update that brings the screen up to date by reading the current state;
+ * however often a key is posted between two pulses, its update runs once at the next pulse. Bookings at any rate so
+ * cost the JavaFX thread at most one update per train per frame, instead of one {@link Platform#runLater} per booking.
+ * <p>
+ * Posting never waits: changes are posted from under the locks of trains and waitlists, which the JavaFX thread takes
+ * too, so a producer waiting for the screen could wait forever. The queue holds one update per key, so it is no larger
+ * than the trains and seat maps waiting to be shown, and a pulse runs at most {@link #PER_PULSE} updates, leaving the
+ * rest for the next one. Changes made on the JavaFX thread, or when there is no window at all, are applied
+ * immediately.
+ */
+public final class PulseUpdater
+{
+	private static final int PER_PULSE = 1 << 14;
+	private static final Metrics.Histogram APPLY = Metrics.histogram("fx_pulse_updates_duration_seconds", null, "Time the JavaFX thread spends per pulse running the updates posted to it, with every listener they set off.");
+	private static final Metrics.Counter APPLIED = Metrics.counter("fx_pulse_updates_total", null, "Updates run on the JavaFX thread by the pulse updater.");
+	private static final Metrics.Counter COALESCED = Metrics.counter("fx_pulse_updates_coalesced_total", null, "Updates posted while one for the same key was already waiting, and so not run again.");
+	
+	private static volatile PulseUpdater installed;
+	
+	private final Map<Object, Runnable> pending = new ConcurrentHashMap<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final AnimationTimer timer = new AnimationTimer()
+	{
+		@Override
+		public void handle (final long now)
+		{
+			applyPending();
+		}
+	};
+	
+	/**
+	 * There is one updater per JavaFX application; see {@link #install()}.
+	 */
+	private PulseUpdater ()
+	{
+	}
+	
+	/**
+	 * Start carrying changes made off the JavaFX thread onto it. Until this is called, and after {@link #uninstall()},
+	 * changes are applied on whatever thread makes them, which is right when there is no window.
+	 */
+	public static void install ()
+	{
+		final PulseUpdater updater = new PulseUpdater();
+		installed = updater;
+		Metrics.gauge("fx_pending_updates", "Updates waiting for the next pulse.", updater.pending :: size);
+	}
+	
+	/**
+	 * Stop carrying changes onto the JavaFX thread, e.g. because the application is exiting.
+	 */
+	public static void uninstall ()
+	{
+		final PulseUpdater updater = installed;
+		installed = null;
+		if (updater != null)
+		{
+			updater.timer.stop();
+		}
+	}
+	
+	/**
+	 * Bring the screen up to date with a change: right away on the JavaFX thread, or else at the next pulse.
+	 *
+	 * @param key    The {@link Object} the change is about; updates waiting under an equal key are run only once.
+	 * @param update The {@link Runnable} that updates the screen from the current state; it must not depend on which
+	 *               change triggered it.
+	 */
+	public static void post (final Object key, final Runnable update)
+	{
+		final PulseUpdater updater = installed;
+		if (updater == null || Platform.isFxApplicationThread())
+		{
+			update.run();
+		}
+		else
+		{
+			updater.enqueue(key, update);
+		}
+	}
+	
+	/**
+	 * Queue an update for the next pulse unless one is already waiting under the key. This never waits.
+	 *
+	 * @param key    The {@link Object} the change is about.
+	 * @param update The {@link Runnable} updating the screen.
+	 */
+	private void enqueue (final Object key, final Runnable update)
+	{
+		if (pending.containsKey(key) || pending.putIfAbsent(key, update) != null)
+		{
+			COALESCED.increment();
+			return;
+		}
+		if (scheduled.compareAndSet(false, true))
+		{
+			Platform.runLater(timer :: start);
+		}
+	}
+	
+	/**
+	 * Run the waiting updates on the JavaFX thread, at most {@link #PER_PULSE} of them. Each key is taken off the queue
+	 * before its update runs, so a change made while it runs is posted again for the next pulse rather than lost. The
+	 * timer stops once nothing is waiting, so an idle application does not ask for pulses.
+	 */
+	private void applyPending ()
+	{
+		final long start = System.nanoTime();
+		int applied = 0;
+		for (final Object key : pending.keySet())
+		{
+			if (applied == PER_PULSE)
+			{
+				break;
+			}
+			final Runnable update = pending.remove(key);
+			if (update != null)
+			{
+				update.run();
+				applied++;
+			}
+		}
+		if (applied > 0)
+		{
+			APPLY.recordSince(start);
+			APPLIED.add(applied);
+		}
+		
+		if (pending.isEmpty())
+		{
+			timer.stop();
+			scheduled.set(false);
+			// A key posted between the check and the reset would otherwise wait for the next post.
+			if (! pending.isEmpty() && scheduled.compareAndSet(false, true))
+			{
+				timer.start();
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,738 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The trains of every day from today until {@link #HORIZON_DAYS} days ahead. Every day runs the same timetable, but
+ * each has its own seats, kept as a partition of its own: a snapshot and a booking journal named after the date. A day
+ * is only loaded when it is first asked for, and at most {@link #RESIDENT_DAYS} days stay in memory; when another is
+ * needed, the least recently used day that nobody holds is saved and dropped. Once a day has departed it is saved into
+ * the archive directory and never loaded again.
+ * <p>
+ * A day is held from {@link #acquire(LocalDate)} until {@link #release(LocalDate)}; its trains are only booked while
+ * it is held, since a dropped day no longer journals the bookings made on it. Days are loaded, and the days dropped to
+ * make room for them saved, without the lock of the schedule, so a day coming off disk holds up nobody but those who
+ * asked for it.
+ */
+public final class Schedule implements Closeable
+{
+	public static final int HORIZON_DAYS = 90;
+	private static final int RESIDENT_DAYS = 8;
+	private static final long MAINTENANCE_SECONDS = 60;
+	private static final String SNAPSHOT = ".bin";
+	private static final String JOURNAL = ".journal";
+	private static final Metrics.Counter LOADED = Metrics.counter("schedule_days_loaded_total", null, "Days of trains loaded into memory.");
+	private static final Metrics.Counter EVICTED = Metrics.counter("schedule_days_evicted_total", null, "Days of trains saved and dropped from memory to make room for another.");
+	private static final Metrics.Counter ARCHIVED = Metrics.counter("schedule_days_archived_total", null, "Departed days of trains moved into the archive.");
+	
+	private List<Train> timetable;
+	private final Path source;
+	private final Path directory;
+	// Iterated from the least to the most recently used day; a day being loaded is in here already.
+	private final Map<LocalDate, Day> resident = new LinkedHashMap<>(16, 0.75f, true);
+	// Days dropped from memory whose files are still being written, which must be done before they are loaded again.
+	private final Map<LocalDate, CompletableFuture<Void>> saving = new HashMap<>();
+	private boolean closed = false;
+	private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(task ->
+																									{
+																										final Thread thread = new Thread(task, "schedule-maintenance");
+																										thread.setDaemon(true);
+																										return thread;
+																									});
+	private LocalDate today = LocalDate.now();
+	private Consumer<LocalDate> onNewDay = date -> {};
+	
+	/**
+	 * Construct a schedule; see {@link #open(List, Path, Path)}.
+	 *
+	 * @param timetable The {@link List} of {@link Train} objects that run every day.
+	 * @param source    The {@link Path} of the CSV file of the timetable, or null.
+	 * @param directory The {@link Path} of the directory of the days, or null.
+	 */
+	private Schedule (final List<Train> timetable, final Path source, final Path directory)
+	{
+		this.timetable = timetable;
+		this.source = source;
+		this.directory = directory;
+	}
+	
+	/**
+	 * Open the schedule of a timetable. Days that departed while the application was not running are archived first,
+	 * and then once a minute the schedule checks for a new day and archives the day gone by.
+	 *
+	 * @param timetable The {@link List} of {@link Train} objects that run every day; only their times, destinations
+	 *                  and sizes are used.
+	 * @param source    The {@link Path} of the CSV file of the timetable; a day saved before it last changed is brought
+	 *                  in line with it when loaded, keeping its bookings. Null if there is no such file.
+	 * @param directory The {@link Path} of the directory holding a snapshot and journal per day, created if missing;
+	 *                  null to keep every day in memory only.
+	 *
+	 * @return The running {@link Schedule}.
+	 *
+	 * @throws IOException If the directory cannot be created or the departed days cannot be archived.
+	 */
+	public static Schedule open (final List<Train> timetable, final Path source, final Path directory) throws IOException
+	{
+		final Schedule schedule = new Schedule(timetable, source, directory);
+		if (directory != null)
+		{
+			Files.createDirectories(directory.resolve("archive"));
+			schedule.archiveDeparted();
+		}
+		Metrics.gauge("schedule_days_resident", "Days of trains held in memory.", schedule :: residentDays);
+		schedule.maintenance.scheduleWithFixedDelay(schedule :: maintain, MAINTENANCE_SECONDS, MAINTENANCE_SECONDS, TimeUnit.SECONDS);
+		return schedule;
+	}
+	
+	public synchronized LocalDate getToday ()
+	{
+		return today;
+	}
+	
+	/**
+	 * Set what to do when the date changes, e.g. showing the trains of the new day. It is called on the maintenance
+	 * thread shortly after midnight.
+	 *
+	 * @param onNewDay The {@link Consumer} given the new date.
+	 */
+	public synchronized void setOnNewDay (final Consumer<LocalDate> onNewDay)
+	{
+		this.onNewDay = onNewDay;
+	}
+	
+	/**
+	 * Hold the trains of a day, loading them if they are not in memory. The first to ask for a day loads it, after
+	 * saving any days dropped to make room; anyone else asking meanwhile waits for that, and nobody else does.
+	 *
+	 * @param date The {@link LocalDate} of the day.
+	 *
+	 * @return The {@link List} of every {@link Train} of the day, in timetable order.
+	 *
+	 * @throws IllegalArgumentException If the day has departed or is beyond the horizon.
+	 * @throws IOException              If the day cannot be loaded, or a day making room for it cannot be saved.
+	 */
+	public List<Train> acquire (final LocalDate date) throws IOException
+	{
+		final Day day;
+		final List<Map.Entry<LocalDate, Day>> evicted;
+		synchronized (this)
+		{
+			if (date.isBefore(today) || ! date.isBefore(today.plusDays(HORIZON_DAYS)))
+			{
+				throw new IllegalArgumentException("There are no trains on " + date + "; bookings are open from " + today + " for " + HORIZON_DAYS + " days.");
+			}
+			final Day found = resident.get(date);
+			if (found == null)
+			{
+				evicted = evictLeastRecentlyUsed();
+				day = new Day(timetable);
+				resident.put(date, day);
+			}
+			else
+			{
+				evicted = null;
+				day = found;
+			}
+			day.users++;
+		}
+		
+		if (evicted != null)
+		{
+			loadInto(date, day, evicted);
+		}
+		try
+		{
+			day.loaded.join();
+		}
+		catch (final CompletionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			throw (IOException) e.getCause();
+		}
+		return day.trains;
+	}
+	
+	/**
+	 * Save the days dropped to make room, then load a day and put its trains in place, all without the lock of the
+	 * schedule. If the timetable changed meanwhile the day is brought in line with it; if loading fails, the day is
+	 * taken out of memory again and everyone waiting for it is given the failure.
+	 *
+	 * @param date    The {@link LocalDate} of the day.
+	 * @param day     The {@link Day} put in memory for it, not yet loaded.
+	 * @param evicted The {@link List} of each date and {@link Day} dropped to make room, to be saved first.
+	 */
+	private void loadInto (final LocalDate date, final Day day, final List<Map.Entry<LocalDate, Day>> evicted)
+	{
+		try
+		{
+			IOException failure = null;
+			for (final Map.Entry<LocalDate, Day> dropped : evicted)
+			{
+				try
+				{
+					save(dropped.getValue());
+				}
+				catch (final IOException e)
+				{
+					failure = failure == null ? e : failure;
+				}
+				finally
+				{
+					saved(dropped.getKey());
+				}
+			}
+			if (failure != null)
+			{
+				throw failure;
+			}
+			
+			final CompletableFuture<Void> previous;
+			synchronized (this)
+			{
+				previous = saving.get(date);
+			}
+			if (previous != null)
+			{
+				previous.join();
+			}
+			
+			load(date, day);
+			final boolean saveNow;
+			synchronized (this)
+			{
+				if (day.timetable != timetable)
+				{
+					// Nobody has had the trains yet, so nobody can be waiting on those the new timetable retires.
+					retime(date, day, new ArrayList<>());
+				}
+				saveNow = closed;
+				day.loaded.complete(null);
+			}
+			if (saveNow)
+			{
+				save(day);
+			}
+		}
+		catch (final IOException | RuntimeException e)
+		{
+			synchronized (this)
+			{
+				resident.remove(date, day);
+				day.loaded.completeExceptionally(e);
+			}
+		}
+	}
+	
+	/**
+	 * Mark a day dropped from memory as saved, so it may be loaded again.
+	 *
+	 * @param date The {@link LocalDate} of the day.
+	 */
+	private synchronized void saved (final LocalDate date)
+	{
+		saving.remove(date).complete(null);
+	}
+	
+	/**
+	 * Stop holding the trains of a day, letting them be dropped from memory when room is needed.
+	 *
+	 * @param date The {@link LocalDate} of the day, as given to {@link #acquire(LocalDate)}.
+	 */
+	public synchronized void release (final LocalDate date)
+	{
+		final Day day = resident.get(date);
+		if (day != null && day.users > 0)
+		{
+			day.users--;
+		}
+	}
+	
+	/**
+	 * Run another timetable from now on, e.g. because its file was edited, changing the days in memory in place. A
+	 * train with the same departure time, destination, stops and size as before is kept as it is, bookings and all. A
+	 * train whose size or stops changed is replaced by one of the new size holding the bookings that still fit, and the
+	 * old one is retired; if the stops changed, seats booked for part of the way stay booked for the whole trip. Other
+	 * trains are added or removed. Days on disk are brought in line when they are next loaded. Anyone waiting for a seat
+	 * on a retired train is turned away, letting go of the day they held.
+	 *
+	 * @param timetable The {@link List} of {@link Train} objects that run every day.
+	 *
+	 * @return The number of bookings dropped because their train was removed or lost the seat.
+	 */
+	public int setTimetable (final List<Train> timetable)
+	{
+		final List<Train> retired = new ArrayList<>();
+		int dropped = 0;
+		synchronized (this)
+		{
+			this.timetable = timetable;
+			for (final Map.Entry<LocalDate, Day> day : resident.entrySet())
+			{
+				// A day still loading is brought in line by its loader.
+				if (day.getValue().loaded.isDone())
+				{
+					dropped += retime(day.getKey(), day.getValue(), retired);
+				}
+			}
+		}
+		closeWaitlists(retired);
+		return dropped;
+	}
+	
+	/**
+	 * Turn away everyone waiting for a seat on trains that no longer run. This is done without the lock of the
+	 * schedule: a waitlist is locked while a seat is given back, and a waiter booked then releases the day of the train.
+	 *
+	 * @param trains The {@link List} of {@link Train} objects retired or departed.
+	 */
+	private static void closeWaitlists (final List<Train> trains)
+	{
+		for (final Train train : trains)
+		{
+			train.getWaitlist().close();
+		}
+	}
+	
+	/**
+	 * Bring the trains of a day in memory in line with the timetable; see {@link #setTimetable(List)}.
+	 *
+	 * @param date    The {@link LocalDate} of the day.
+	 * @param day     The {@link Day} to change.
+	 * @param retired The {@link List} to add each {@link Train} retired to.
+	 *
+	 * @return The number of bookings dropped.
+	 */
+	private int retime (final LocalDate date, final Day day, final List<Train> retired)
+	{
+		final Map<String, Deque<Train>> old = new HashMap<>();
+		day.trains.forEach(train -> old.computeIfAbsent(key(train), key -> new ArrayDeque<>()).add(train));
+		
+		int dropped = 0;
+		final List<Train> trains = new ArrayList<>(timetable.size());
+		for (final Train entry : timetable)
+		{
+			final Deque<Train> same = old.get(key(entry));
+			final Train existing = same == null ? null : same.poll();
+			if (existing != null && existing.getTotalSeats() == entry.getTotalSeats() && existing.getStops().equals(entry.getStops()))
+			{
+				trains.add(existing);
+			}
+			else if (existing != null)
+			{
+				// Retired before the copy, which then holds every booking the old train will ever have.
+				existing.retire();
+				retired.add(existing);
+				final SeatInventory inventory = existing.getInventory().resize(entry.getTotalSeats());
+				dropped += booked(existing.getInventory()) - booked(inventory);
+				// Seats booked for part of the way keep their legs while the stops stay the same, else the whole trip.
+				final LegInventory legs = existing.getLegInventory() != null && existing.getStops().equals(entry.getStops()) ? existing.getLegInventory().resize(entry.getTotalSeats()) : null;
+				trains.add(new Train(date, entry.getDepartureTime(), entry.getStops(), inventory, legs));
+			}
+			else
+			{
+				trains.add(entry.copy(date));
+			}
+		}
+		for (final Deque<Train> removed : old.values())
+		{
+			for (final Train train : removed)
+			{
+				train.retire();
+				retired.add(train);
+				dropped += booked(train.getInventory());
+			}
+		}
+		
+		day.trains = Collections.unmodifiableList(trains);
+		if (day.journal != null)
+		{
+			day.journal.setTrains(day.trains);
+		}
+		return dropped;
+	}
+	
+	/**
+	 * Count the booked seats of an inventory, leaving out held seats, which are not bookings and are never copied.
+	 *
+	 * @param inventory The {@link SeatInventory}.
+	 *
+	 * @return The number of booked seats.
+	 */
+	private static int booked (final SeatInventory inventory)
+	{
+		int booked = 0;
+		for (final long word : inventory.toBookedWords())
+		{
+			booked += Long.bitCount(word);
+		}
+		return booked;
+	}
+	
+	/**
+	 * Build the key matching a train across timetables, as the booking journal does.
+	 *
+	 * @param train The {@link Train} to identify.
+	 *
+	 * @return The {@link String} key.
+	 */
+	private static String key (final Train train)
+	{
+		return train.getDepartureTime() + "," + train.getDestination();
+	}
+	
+	/**
+	 * Wait until every booking made so far on a held day is safely on disk.
+	 *
+	 * @param date The {@link LocalDate} of the day.
+	 *
+	 * @throws IOException          If the journal of the day could not be written.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void flush (final LocalDate date) throws IOException, InterruptedException
+	{
+		final Day day;
+		synchronized (this)
+		{
+			day = resident.get(date);
+		}
+		if (day != null && day.journal != null)
+		{
+			day.journal.flush();
+		}
+	}
+	
+	/**
+	 * Stop the maintenance and save every day in memory. A day still loading is saved by its loader once it is loaded.
+	 *
+	 * @throws IOException If a day could not be saved; the others are still saved.
+	 */
+	@Override
+	public synchronized void close () throws IOException
+	{
+		maintenance.shutdownNow();
+		closed = true;
+		IOException failure = null;
+		for (final Day day : resident.values())
+		{
+			try
+			{
+				if (day.loaded.isDone())
+				{
+					save(day);
+				}
+			}
+			catch (final IOException e)
+			{
+				failure = failure == null ? e : failure;
+			}
+		}
+		resident.clear();
+		if (failure != null)
+		{
+			throw failure;
+		}
+	}
+	
+	/**
+	 * Count the days held in memory.
+	 *
+	 * @return The number of days.
+	 */
+	private synchronized long residentDays ()
+	{
+		return resident.size();
+	}
+	
+	/**
+	 * Load the trains of a day: from its snapshot if it has one, or else fresh from the timetable, then replaying its
+	 * journal. This reads only the directory and the given day, so it is done without the lock of the schedule.
+	 *
+	 * @param date The {@link LocalDate} of the day.
+	 * @param day  The {@link Day} to fill in, journaling its bookings if the schedule has a directory.
+	 *
+	 * @throws IOException If the snapshot or journal cannot be read.
+	 */
+	private void load (final LocalDate date, final Day day) throws IOException
+	{
+		LOADED.increment();
+		if (directory == null)
+		{
+			day.trains = runOn(date, day.timetable);
+			return;
+		}
+		
+		final Path snapshot = file(date, SNAPSHOT);
+		final List<Train> trains;
+		if (! Files.exists(snapshot))
+		{
+			trains = runOn(date, day.timetable);
+		}
+		else if (source != null && ! ScheduleSnapshot.isCurrent(snapshot, source))
+		{
+			trains = runOn(date, day.timetable);
+			BookingJournal.carryOver(ScheduleSnapshot.open(snapshot, date), trains);
+		}
+		else
+		{
+			trains = ScheduleSnapshot.open(snapshot, date);
+		}
+		day.journal = BookingJournal.open(file(date, JOURNAL), snapshot, trains);
+		day.trains = trains;
+	}
+	
+	/**
+	 * Build the trains of a timetable running on a day, with every seat available.
+	 *
+	 * @param date      The {@link LocalDate} of the day.
+	 * @param timetable The {@link List} of {@link Train} objects that run every day.
+	 *
+	 * @return The {@link List} of new {@link Train} objects.
+	 */
+	private static List<Train> runOn (final LocalDate date, final List<Train> timetable)
+	{
+		final List<Train> trains = new ArrayList<>(timetable.size());
+		for (final Train train : timetable)
+		{
+			trains.add(train.copy(date));
+		}
+		return trains;
+	}
+	
+	/**
+	 * Save a day to its snapshot, emptying its journal. Its trains no longer record bookings, so they are retired first:
+	 * anything still showing one, such as an open seat map, is refused rather than booking a seat that is never saved.
+	 *
+	 * @param day The {@link Day} to save.
+	 *
+	 * @throws IOException If the day could not be saved.
+	 */
+	private static void save (final Day day) throws IOException
+	{
+		day.trains.forEach(Train :: retire);
+		if (day.journal != null)
+		{
+			day.journal.close();
+		}
+	}
+	
+	/**
+	 * Drop the least recently used days that nobody holds until there is room for one more. Each is marked as being
+	 * saved until {@link #saved(LocalDate)}, so that it is not loaded again from files half written.
+	 *
+	 * @return The {@link List} of each date and {@link Day} dropped, for the caller to save without the lock.
+	 */
+	private List<Map.Entry<LocalDate, Day>> evictLeastRecentlyUsed ()
+	{
+		final List<Map.Entry<LocalDate, Day>> evicted = new ArrayList<>();
+		final Iterator<Map.Entry<LocalDate, Day>> days = resident.entrySet().iterator();
+		while (resident.size() >= RESIDENT_DAYS && days.hasNext())
+		{
+			final Map.Entry<LocalDate, Day> day = days.next();
+			// A day still loading has its loader as a user.
+			if (day.getValue().users == 0)
+			{
+				days.remove();
+				EVICTED.increment();
+				saving.put(day.getKey(), new CompletableFuture<>());
+				evicted.add(Map.entry(day.getKey(), day.getValue()));
+			}
+		}
+		return evicted;
+	}
+	
+	/**
+	 * Check for a new day and archive the days gone by, reporting rather than throwing any problem since this runs in
+	 * the background.
+	 */
+	private void maintain ()
+	{
+		final LocalDate now = LocalDate.now();
+		final Consumer<LocalDate> newDay;
+		synchronized (this)
+		{
+			newDay = now.isAfter(today) ? onNewDay : null;
+			today = now.isAfter(today) ? now : today;
+		}
+		if (newDay != null)
+		{
+			newDay.accept(now);
+		}
+		
+		// A departed day is held for as long as anyone waits on one of its trains, so the waits end first.
+		final List<Train> departed = new ArrayList<>();
+		synchronized (this)
+		{
+			for (final Map.Entry<LocalDate, Day> day : resident.entrySet())
+			{
+				if (day.getKey().isBefore(today) && day.getValue().loaded.isDone())
+				{
+					departed.addAll(day.getValue().trains);
+				}
+			}
+		}
+		closeWaitlists(departed);
+		try
+		{
+			archiveDeparted();
+		}
+		catch (final IOException e)
+		{
+			System.err.println("The departed days of " + directory + " could not be archived: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Drop every departed day that nobody holds from memory and, if the schedule has a directory, move it into the
+	 * archive with any journal folded into its snapshot. Only choosing the days takes the lock of the schedule; a
+	 * departed day cannot be loaded again, so the files are saved and moved without it.
+	 *
+	 * @throws IOException If a day could not be saved or moved.
+	 */
+	private void archiveDeparted () throws IOException
+	{
+		final TreeSet<LocalDate> departed = new TreeSet<>();
+		final List<Day> dropped = new ArrayList<>();
+		final Set<LocalDate> busy = new HashSet<>();
+		final List<Train> timetable;
+		final LocalDate departedBefore;
+		synchronized (this)
+		{
+			departedBefore = today;
+			final Iterator<Map.Entry<LocalDate, Day>> days = resident.entrySet().iterator();
+			while (days.hasNext())
+			{
+				final Map.Entry<LocalDate, Day> day = days.next();
+				if (day.getKey().isBefore(departedBefore) && day.getValue().users == 0)
+				{
+					days.remove();
+					dropped.add(day.getValue());
+					departed.add(day.getKey());
+				}
+			}
+			// Days still held, or dropped to make room and being saved by whoever dropped them, are left for later.
+			busy.addAll(resident.keySet());
+			busy.addAll(saving.keySet());
+			timetable = this.timetable;
+		}
+		for (final Day day : dropped)
+		{
+			save(day);
+		}
+		if (directory == null)
+		{
+			return;
+		}
+		
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*{" + SNAPSHOT + "," + JOURNAL + "}"))
+		{
+			for (final Path file : files)
+			{
+				final String name = file.getFileName().toString();
+				try
+				{
+					final LocalDate date = LocalDate.parse(name.substring(0, name.indexOf('.')));
+					if (date.isBefore(departedBefore) && ! busy.contains(date))
+					{
+						departed.add(date);
+					}
+				}
+				catch (final DateTimeParseException e)
+				{
+					// Not the file of a day.
+				}
+			}
+		}
+		for (final LocalDate date : departed)
+		{
+			archive(date, timetable);
+		}
+	}
+	
+	/**
+	 * Move the files of a departed day that is not in memory into the archive. A journal left over from a run that did
+	 * not close cleanly is folded into the snapshot first.
+	 *
+	 * @param date      The {@link LocalDate} of the day.
+	 * @param timetable The {@link List} of {@link Train} objects to build the day from if it has no snapshot.
+	 *
+	 * @throws IOException If the day could not be folded or moved.
+	 */
+	private void archive (final LocalDate date, final List<Train> timetable) throws IOException
+	{
+		final Path journal = file(date, JOURNAL);
+		if (Files.exists(journal) && Files.size(journal) > 0)
+		{
+			final Day day = new Day(timetable);
+			load(date, day);
+			save(day);
+		}
+		final Path snapshot = file(date, SNAPSHOT);
+		if (Files.exists(snapshot))
+		{
+			Files.move(snapshot, directory.resolve("archive").resolve(snapshot.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+		}
+		Files.deleteIfExists(journal);
+		ARCHIVED.increment();
+	}
+	
+	/**
+	 * Find a file of a day.
+	 *
+	 * @param date      The {@link LocalDate} of the day.
+	 * @param extension The {@link String} extension of the file, e.g. ".bin".
+	 *
+	 * @return The {@link Path} of the file in the directory.
+	 */
+	private Path file (final LocalDate date, final String extension)
+	{
+		return directory.resolve(date + extension);
+	}
+	
+	private static final class Day
+	{
+		// The timetable the day is built from if it has no snapshot, as it was when the day was asked for.
+		private final List<Train> timetable;
+		// Completed under the lock of the schedule once the trains are in place, or with the reason they are not.
+		private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+		private List<Train> trains;
+		// Null if the day is not saved.
+		private BookingJournal journal;
+		private int users = 0;
+		
+		/**
+		 * Construct a day still to be loaded.
+		 *
+		 * @param timetable The {@link List} of {@link Train} objects running when it was asked for.
+		 */
+		private Day (final List<Train> timetable)
+		{
+			this.timetable = timetable;
+		}
+	}
+}
\ No newline at end of file
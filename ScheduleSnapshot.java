@@ -0,0 +1,265 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A compact binary copy of a schedule that can be opened without parsing any text. The file is laid out as:
+ * <p>
+ * header: magic, version, train count, string count (4 ints)
+ * strings: per distinct destination or list of stops on the way, its UTF-8 length (int) then bytes
+ * records: per train, departure minute of day (short), destination string index, stops string index or -1, total
+ * seats, bitmap word offset (ints)
+ * bitmaps: the booked seat bitmap of every train, 64 seats to a long, followed for a train with stops on the way by
+ * the map of each of its legs; see {@link LegInventory}
+ * <p>
+ * The stops on the way are kept as one string separated by '|'. Version 1 snapshots, which have no stops string index,
+ * are still read.
+ */
+public final class ScheduleSnapshot extends AbstractList<Train> implements RandomAccess
+{
+	private static final int MAGIC = 0x54524E53; // "TRNS"
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTES = 4 * Integer.BYTES;
+	private static final int RECORD_BYTES = Short.BYTES + 4 * Integer.BYTES;
+	private static final int VERSION_1_RECORD_BYTES = Short.BYTES + 3 * Integer.BYTES;
+	
+	private final ByteBuffer buffer;
+	private final LocalDate date;
+	private final String[] destinations;
+	private final int recordBytes;
+	private final int recordsStart;
+	private final int bitmapsStart;
+	private final Train[] trains;
+	
+	/**
+	 * Construct a view over a mapped snapshot. Only the header and destination table are read up front; each train is
+	 * read from the mapping the first time it is asked for.
+	 *
+	 * @param buffer The {@link ByteBuffer} holding the whole snapshot.
+	 * @param date   The {@link LocalDate} the trains run on, or null for the timetable.
+	 *
+	 * @throws IOException If the buffer does not hold a snapshot this version understands.
+	 */
+	private ScheduleSnapshot (final ByteBuffer buffer, final LocalDate date) throws IOException
+	{
+		this.buffer = buffer;
+		this.date = date;
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) < 1 || buffer.getInt(4) > VERSION)
+		{
+			throw new IOException("Not a version 1 to " + VERSION + " schedule snapshot.");
+		}
+		this.recordBytes = buffer.getInt(4) == 1 ? VERSION_1_RECORD_BYTES : RECORD_BYTES;
+		this.trains = new Train[buffer.getInt(8)];
+		this.destinations = new String[buffer.getInt(12)];
+		
+		int position = HEADER_BYTES;
+		for (int i = 0; i < destinations.length; i++)
+		{
+			final byte[] bytes = new byte[buffer.getInt(position)];
+			buffer.duplicate().position(position + Integer.BYTES).get(bytes);
+			destinations[i] = new String(bytes, StandardCharsets.UTF_8);
+			position += Integer.BYTES + bytes.length;
+		}
+		this.recordsStart = position;
+		this.bitmapsStart = position + trains.length * recordBytes;
+	}
+	
+	/**
+	 * Map a snapshot of the timetable into memory.
+	 *
+	 * @param file The {@link Path} of the snapshot.
+	 *
+	 * @return The {@link List} of {@link Train} objects in the snapshot, materialised lazily on first access.
+	 *
+	 * @throws IOException If the file cannot be read or is not a snapshot.
+	 */
+	public static List<Train> open (final Path file) throws IOException
+	{
+		return open(file, null);
+	}
+	
+	/**
+	 * Map a snapshot of the trains of one day into memory. The file does not record the day; it is named after it.
+	 *
+	 * @param file The {@link Path} of the snapshot.
+	 * @param date The {@link LocalDate} the trains run on, or null for the timetable.
+	 *
+	 * @return The {@link List} of {@link Train} objects in the snapshot, materialised lazily on first access.
+	 *
+	 * @throws IOException If the file cannot be read or is not a snapshot.
+	 */
+	public static List<Train> open (final Path file, final LocalDate date) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file))
+		{
+			// The mapping stays valid after the channel is closed.
+			return new ScheduleSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), date);
+		}
+	}
+	
+	/**
+	 * Check whether a snapshot exists and was written after the text file it was imported from last changed.
+	 *
+	 * @param snapshot The {@link Path} of the snapshot.
+	 * @param source   The {@link Path} of the CSV file.
+	 *
+	 * @return True if the snapshot can be used in place of the CSV file.
+	 */
+	public static boolean isCurrent (final Path snapshot, final Path source)
+	{
+		try
+		{
+			return Files.getLastModifiedTime(snapshot).compareTo(Files.getLastModifiedTime(source)) > 0;
+		}
+		catch (final IOException e)
+		{
+			return false;
+		}
+	}
+	
+	/**
+	 * Write trains, including which of their seats are booked, to a snapshot file. The file is written aside, synced to
+	 * disk and then moved into place so that a reader never sees a half written snapshot.
+	 *
+	 * @param file   The {@link Path} of the snapshot.
+	 * @param trains The {@link List} of {@link Train} objects to save.
+	 *
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void write (final Path file, final List<? extends Train> trains) throws IOException
+	{
+		final Map<String, Integer> strings = new LinkedHashMap<>();
+		trains.forEach(train -> strings.putIfAbsent(train.getDestination(), strings.size()));
+		trains.stream().filter(train -> train.getStops().size() > 1).forEach(train -> strings.putIfAbsent(onTheWay(train), strings.size()));
+		
+		final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(trains.size());
+			out.writeInt(strings.size());
+			
+			for (final String string : strings.keySet())
+			{
+				final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			
+			int wordOffset = 0;
+			for (final Train train : trains)
+			{
+				out.writeShort(train.getDepartureTime().getHour() * 60 + train.getDepartureTime().getMinute());
+				out.writeInt(strings.get(train.getDestination()));
+				out.writeInt(train.getStops().size() > 1 ? strings.get(onTheWay(train)) : - 1);
+				out.writeInt(train.getTotalSeats());
+				out.writeInt(wordOffset);
+				wordOffset += (train.getLegInventory() == null ? 1 : 1 + train.getStops().size()) * ((train.getTotalSeats() + 63) >>> 6);
+			}
+			
+			for (final Train train : trains)
+			{
+				for (final long word : train.getInventory().toBookedWords())
+				{
+					out.writeLong(word);
+				}
+				if (train.getLegInventory() != null)
+				{
+					for (final long word : train.getLegInventory().toBookedWords())
+					{
+						out.writeLong(word);
+					}
+				}
+			}
+			out.flush();
+			channel.force(true);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Join the stops of a train on the way to its destination.
+	 *
+	 * @param train The {@link Train}, calling at one stop or more before its destination.
+	 *
+	 * @return The {@link String} stops separated by '|'.
+	 */
+	private static String onTheWay (final Train train)
+	{
+		return String.join("|", train.getStops().subList(0, train.getStops().size() - 1));
+	}
+	
+	/**
+	 * Get a train, reading it from the mapping the first time it is asked for.
+	 *
+	 * @param index The index of the train within the snapshot.
+	 *
+	 * @return The {@link Train} at the index; the same object on every call.
+	 */
+	@Override
+	public synchronized Train get (final int index)
+	{
+		if (trains[index] == null)
+		{
+			final int record = recordsStart + index * recordBytes;
+			final int minutes = buffer.getShort(record);
+			// Version 1 records have no stops string index, so their later fields start one int sooner.
+			final int fields = record + recordBytes - 2 * Integer.BYTES;
+			final int onTheWay = recordBytes == RECORD_BYTES ? buffer.getInt(record + Short.BYTES + Integer.BYTES) : - 1;
+			final int totalSeats = buffer.getInt(fields);
+			final int bitmap = bitmapsStart + buffer.getInt(fields + Integer.BYTES) * Long.BYTES;
+			
+			final List<String> stops = new ArrayList<>();
+			if (onTheWay >= 0)
+			{
+				stops.addAll(Arrays.asList(destinations[onTheWay].split("\\|")));
+			}
+			stops.add(destinations[buffer.getInt(record + Short.BYTES)]);
+			
+			final int words = (totalSeats + 63) >>> 6;
+			final long[] booked = new long[words];
+			for (int i = 0; i < booked.length; i++)
+			{
+				booked[i] = buffer.getLong(bitmap + i * Long.BYTES);
+			}
+			LegInventory legs = null;
+			if (stops.size() > 1)
+			{
+				final long[] legWords = new long[stops.size() * words];
+				for (int i = 0; i < legWords.length; i++)
+				{
+					legWords[i] = buffer.getLong(bitmap + (words + i) * Long.BYTES);
+				}
+				legs = new LegInventory(totalSeats, stops.size(), legWords);
+			}
+			
+			trains[index] = new Train(date, LocalTime.of(minutes / 60, minutes % 60), stops, new SeatInventory(totalSeats, booked), legs);
+		}
+		return trains[index];
+	}
+	
+	@Override
+	public int size ()
+	{
+		return trains.length;
+	}
+}
\ No newline at end of file
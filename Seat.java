@@ -1,11 +1,8 @@
-import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ObjectProperty;
-import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
 import javafx.scene.Cursor;
 import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
 import javafx.scene.image.Image;
 import javafx.scene.layout.StackPane;
@@ -17,31 +14,42 @@ import javafx.stage.Stage;
 
 public class Seat
 {
-	private final BooleanProperty available = new SimpleBooleanProperty(true);
-	private final StringProperty seatId;
+	private final Train train;
+	private final int index;
 	
 	/**
-	 * Construct a new seat object with the default availability of true.
+	 * Construct a lightweight view of a single seat. The seat holds no state of its own; its availability lives in the
+	 * {@link SeatInventory} of the train, so seats only need to exist while something is looking at them.
 	 *
-	 * @param seatId The {@link String} name for this specific seat.
+	 * @param train The {@link Train} this seat belongs to.
+	 * @param index The index of this seat within the train.
 	 */
-	public Seat (final String seatId)
+	Seat (final Train train, final int index)
 	{
-		this.seatId = new SimpleStringProperty(seatId);
+		this.train = train;
+		this.index = index;
 	}
 	
-	public final class SeatPane extends StackPane
+	public static final class SeatPane extends StackPane
 	{
 		private final ObjectProperty<Color> color = new SimpleObjectProperty<>(Color.GREEN);
+		private final SeatText seatText = new SeatText();
+		private final Train.SeatSelectionPane selection;
+		private Seat seat;
 		
 		/**
-		 * Construct the outline and text of this seat. Color code, set events, and stack them.
+		 * Construct the outline and text of a seat. Color code, set events, and stack them. The pane shows nothing until
+		 * pointed at a seat with {@link #show(Seat)}, and can be pointed at another at any time so a scrolling seat map
+		 * can reuse it.
+		 *
+		 * @param selection The {@link Train.SeatSelectionPane} that holds the seats selected.
 		 */
-		public SeatPane ()
+		public SeatPane (final Train.SeatSelectionPane selection)
 		{
 			super();
 			
-			final SeatText seatText = new SeatText(Seat.this.seatId.get());
+			this.selection = selection;
+			
 			final SeatOutline seatOutline = new SeatOutline();
 			
 			seatOutline.strokeProperty().bind(this.color);
@@ -53,17 +61,49 @@ public class Seat
 			
 			this.getChildren().addAll(seatOutline, seatText);
 		}
-
+		
+		/**
+		 * Show a seat in this pane: its name and its current availability, highlighted if the mouse is over it.
+		 *
+		 * @param seat The {@link Seat} to show.
+		 */
+		public void show (final Seat seat)
+		{
+			this.seat = seat;
+			this.seatText.setText(seat.getSeatId());
+			showColor(this.isHover());
+		}
+		
+		/**
+		 * Color the seat: green if available, orange if held by this seat map, and red if taken by anyone else, in a
+		 * brighter shade under the mouse.
+		 *
+		 * @param hover True if the mouse is over the seat.
+		 */
+		private void showColor (final boolean hover)
+		{
+			if (selection.isHeld(seat.index))
+			{
+				this.color.set(hover ? Color.DARKORANGE : Color.ORANGE);
+			}
+			else if (seat.isAvailable())
+			{
+				this.color.set(hover ? Color.CHARTREUSE : Color.GREEN);
+			}
+			else
+			{
+				this.color.set(hover ? Color.DARKRED : Color.RED);
+			}
+		}
+		
 		private final class SeatText extends Text
 		{
 			/**
 			 * Construct the text of the seat.
-			 *
-			 * @param text The {@link String} text to identify this seat.
 			 */
-			private SeatText (final String text)
+			private SeatText ()
 			{
-				super(text);
+				super();
 				this.setFont(new Font(10));
 			}
 		}
@@ -91,8 +131,12 @@ public class Seat
 		 */
 		private void handleOnMouseEntered ()
 		{
+			if (seat == null)
+			{
+				return;
+			}
 			this.getScene().setCursor(Cursor.HAND);
-			this.color.set(Seat.this.isAvailable() ? Color.CHARTREUSE : Color.DARKRED);
+			showColor(true);
 		}
 		
 		/**
@@ -100,43 +144,63 @@ public class Seat
 		 */
 		private void handleOnMouseExited ()
 		{
+			if (seat == null)
+			{
+				return;
+			}
 			this.getScene().setCursor(Cursor.DEFAULT);
-			this.color.set(Seat.this.isAvailable() ? Color.GREEN : Color.RED);
+			showColor(false);
 		}
 		
 		/**
-		 * When the user clicks a seat, check if available. If so, mark as unavailable and color-code it; else, alert.
+		 * When the user clicks a seat, hold it, or give it up if already held. If that worked, color-code it; else it was
+		 * taken, so alert, offering to cancel its booking. A cancelled seat goes to the first on the waitlist, if any.
 		 */
 		private void handleOnMouseClicked ()
 		{
-			if (Seat.this.isAvailable())
+			if (seat == null)
+			{
+				return;
+			}
+			if (selection.toggleHold(seat.index))
 			{
-				Seat.this.setAvailable(false);
-				this.color.set(Color.DARKRED);
+				showColor(true);
 			}
 			else
 			{
-				final Alert alert = new Alert(Alert.AlertType.NONE, "This seat is already booked. Please select a different seat.", ButtonType.OK);
+				final ButtonType cancel = new ButtonType("Cancel Booking", ButtonBar.ButtonData.NO);
+				final Alert alert = new Alert(Alert.AlertType.NONE, "This seat is already booked. Please select a different seat.", cancel, ButtonType.OK);
 				alert.setTitle("Occupied");
 				final Stage stage = (Stage) alert.getDialogPane().getScene().getWindow();
 				stage.getIcons().add(new Image("train.png"));
-				alert.show();
+				alert.showAndWait().filter(cancel :: equals).ifPresent(button -> BookingEngine.cancel(seat.train, seat.index));
+				showColor(this.isHover());
 			}
 		}
 	}
 	
-	public boolean isAvailable ()
+	public int getIndex ()
+	{
+		return index;
+	}
+	
+	public String getSeatId ()
 	{
-		return available.get();
+		return SeatInventory.seatId(index);
 	}
 	
-	public BooleanProperty availableProperty ()
+	public boolean isWindow ()
+	{
+		return SeatInventory.isWindow(index);
+	}
+	
+	public boolean isAvailable ()
 	{
-		return available;
+		return train.isSeatAvailable(index);
 	}
 	
-	public void setAvailable (final boolean available)
+	public boolean setAvailable (final boolean available)
 	{
-		this.available.set(available);
+		return train.setSeatAvailable(index, available);
 	}
 }
@@ -0,0 +1,353 @@
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Seats taken for a while without being booked, e.g. while a passenger makes up their mind, which are given back by
+ * themselves if they are neither booked nor released in time. Any number of passengers may hold seats on the same
+ * train at once; a held seat is simply taken as far as everyone else is concerned.
+ * <p>
+ * Expiry is driven by a hashed timing wheel rather than a timer per hold: a ring of {@link #WHEEL_SLOTS} lists, one per
+ * {@link #TICK_MILLIS} ms tick, turned by one thread. A hold is pushed onto a lock-free stack in O(1) and moved by the
+ * wheel into the list of the tick it expires in; holds due more than one turn ahead wait in their list for later turns.
+ * Confirming or releasing a hold is a single compare-and-set, also O(1); the wheel drops the ended hold from its list
+ * when the slot comes round. Holds expire up to one tick late.
+ */
+public final class SeatHolds implements Closeable
+{
+	public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+	
+	private static final long TICK_MILLIS = 100;
+	private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+	private static final int WHEEL_SLOTS = 512;
+	private static final int HELD = 0;
+	private static final int CONFIRMED = 1;
+	private static final int RELEASED = 2;
+	private static final int EXPIRED = 3;
+	private static final Metrics.Counter PLACED = Metrics.counter("seat_holds_total", "outcome=\"placed\"", "Seats held, and how their holds ended.");
+	private static final Metrics.Counter CONFIRMED_TOTAL = Metrics.counter("seat_holds_total", "outcome=\"confirmed\"", null);
+	private static final Metrics.Counter RELEASED_TOTAL = Metrics.counter("seat_holds_total", "outcome=\"released\"", null);
+	private static final Metrics.Counter EXPIRED_TOTAL = Metrics.counter("seat_holds_total", "outcome=\"expired\"", null);
+	private static final VarHandle STATE;
+	// Every set of holds not yet closed, whose wheels keep them alive meanwhile anyway.
+	private static final Set<SeatHolds> OPEN = ConcurrentHashMap.newKeySet();
+	
+	static
+	{
+		try
+		{
+			STATE = MethodHandles.lookup().findVarHandle(Hold.class, "state", int.class);
+		}
+		catch (final ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+		Metrics.gauge("seat_holds_active", "Seats held and neither booked, released nor expired yet.", SeatHolds :: countActive);
+	}
+	
+	private final long ttlNanos;
+	private final long startNanos = System.nanoTime();
+	private final AtomicLong ids = new AtomicLong();
+	private final Map<Long, Hold> active = new ConcurrentHashMap<>();
+	// Holds placed since the wheel last turned, newest first, linked through Hold.next.
+	private final AtomicReference<Hold> placed = new AtomicReference<>();
+	// Only used on the wheel thread: the list of holds due in each slot, linked through Hold.next, and the last tick run.
+	private final Hold[] wheel = new Hold[WHEEL_SLOTS];
+	private long tick = 0;
+	private final ScheduledExecutorService turner = Executors.newSingleThreadScheduledExecutor(task ->
+																							   {
+																								   final Thread thread = new Thread(task, "seat-hold-wheel");
+																								   thread.setDaemon(true);
+																								   return thread;
+																							   });
+	
+	/**
+	 * Construct a set of holds and start its wheel turning.
+	 *
+	 * @param ttl The {@link Duration} a hold lasts unless confirmed or released first.
+	 */
+	public SeatHolds (final Duration ttl)
+	{
+		this.ttlNanos = ttl.toNanos();
+		this.turner.scheduleAtFixedRate(this :: turn, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+		OPEN.add(this);
+	}
+	
+	/**
+	 * Hold a seat if it is available.
+	 *
+	 * @param train The {@link Train} the seat is on.
+	 * @param seat  The index of the seat.
+	 *
+	 * @return The {@link Hold}, or null if the seat is taken.
+	 */
+	public Hold hold (final Train train, final int seat)
+	{
+		return hold(train, seat, () -> { });
+	}
+	
+	/**
+	 * Hold a seat if it is available, and be told when the hold ends.
+	 *
+	 * @param train The {@link Train} the seat is on.
+	 * @param seat  The index of the seat.
+	 * @param onEnd The {@link Runnable} run once the hold is confirmed, released or expired, on the thread ending it.
+	 *
+	 * @return The {@link Hold}, or null if the seat is taken.
+	 */
+	public Hold hold (final Train train, final int seat, final Runnable onEnd)
+	{
+		if (! train.holdSeat(seat))
+		{
+			return null;
+		}
+		final long expiresNanos = System.nanoTime() + ttlNanos;
+		final Hold hold = new Hold(ids.incrementAndGet(), train, seat, expiresNanos, (expiresNanos - startNanos + TICK_NANOS - 1) / TICK_NANOS, onEnd);
+		active.put(hold.id, hold);
+		Hold head;
+		do
+		{
+			head = placed.get();
+			hold.next = head;
+		}
+		while (! placed.compareAndSet(head, hold));
+		PLACED.increment();
+		return hold;
+	}
+	
+	/**
+	 * Find a hold that has not ended by its number.
+	 *
+	 * @param id The number of the hold; see {@link Hold#getId()}.
+	 *
+	 * @return The {@link Hold}, or null if there is none or it has ended.
+	 */
+	public Hold get (final long id)
+	{
+		return active.get(id);
+	}
+	
+	/**
+	 * Stop the wheel and release every hold still held.
+	 */
+	@Override
+	public void close ()
+	{
+		turner.shutdownNow();
+		active.values().forEach(Hold :: release);
+		OPEN.remove(this);
+	}
+	
+	/**
+	 * Count the holds of every set of holds open, so that one gauge covers them all.
+	 *
+	 * @return The number of seats held.
+	 */
+	private static long countActive ()
+	{
+		return OPEN.stream().mapToLong(holds -> holds.active.size()).sum();
+	}
+	
+	/**
+	 * Turn the wheel up to the current tick, on the wheel thread: file the holds placed since the last turn into their
+	 * slots, then expire those due in each slot passed. A late turn catches up on every tick it missed.
+	 */
+	private void turn ()
+	{
+		final long now = (System.nanoTime() - startNanos) / TICK_NANOS;
+		Hold hold = placed.getAndSet(null);
+		while (hold != null)
+		{
+			final Hold next = hold.next;
+			// A hold already due goes in the next slot to run rather than a full turn later.
+			file(hold, Math.max(hold.tick, tick + 1));
+			hold = next;
+		}
+		while (tick < now)
+		{
+			tick++;
+			final int slot = (int) (tick & (WHEEL_SLOTS - 1));
+			hold = wheel[slot];
+			wheel[slot] = null;
+			while (hold != null)
+			{
+				final Hold next = hold.next;
+				if (hold.tick > tick)
+				{
+					// Due on a later turn of the wheel.
+					file(hold, hold.tick);
+				}
+				else if (hold.end(EXPIRED))
+				{
+					EXPIRED_TOTAL.increment();
+				}
+				hold = next;
+			}
+		}
+	}
+	
+	/**
+	 * Add a hold to the list of the slot of a tick, on the wheel thread. Holds that have ended are dropped instead.
+	 *
+	 * @param hold The {@link Hold}.
+	 * @param due  The tick to file it under.
+	 */
+	private void file (final Hold hold, final long due)
+	{
+		if (hold.isActive())
+		{
+			final int slot = (int) (due & (WHEEL_SLOTS - 1));
+			hold.next = wheel[slot];
+			wheel[slot] = hold;
+		}
+		else
+		{
+			hold.next = null;
+		}
+	}
+	
+	public final class Hold
+	{
+		private final long id;
+		private final Train train;
+		private final int seat;
+		private final long expiresNanos;
+		private final long tick;
+		private final Runnable onEnd;
+		private volatile int state = HELD;
+		// The next hold in the same list, either the stack of those placed or a slot of the wheel.
+		private Hold next;
+		
+		/**
+		 * Construct the record of a seat just held; see {@link SeatHolds#hold(Train, int, Runnable)}.
+		 *
+		 * @param id           The number of the hold.
+		 * @param train        The {@link Train} the seat is on.
+		 * @param seat         The index of the seat.
+		 * @param expiresNanos The {@link System#nanoTime()} the hold expires at.
+		 * @param tick         The tick of the wheel the hold expires in.
+		 * @param onEnd        The {@link Runnable} run once the hold ends.
+		 */
+		private Hold (final long id, final Train train, final int seat, final long expiresNanos, final long tick, final Runnable onEnd)
+		{
+			this.id = id;
+			this.train = train;
+			this.seat = seat;
+			this.expiresNanos = expiresNanos;
+			this.tick = tick;
+			this.onEnd = onEnd;
+		}
+		
+		public long getId ()
+		{
+			return id;
+		}
+		
+		public Train getTrain ()
+		{
+			return train;
+		}
+		
+		public int getSeat ()
+		{
+			return seat;
+		}
+		
+		/**
+		 * Get the time left before the hold expires.
+		 *
+		 * @return The {@link Duration}, never negative.
+		 */
+		public Duration getTimeLeft ()
+		{
+			return Duration.ofNanos(Math.max(0, expiresNanos - System.nanoTime()));
+		}
+		
+		/**
+		 * Check whether the seat is still held, i.e. the hold has been neither confirmed, released nor expired.
+		 *
+		 * @return True if the seat is held.
+		 */
+		public boolean isActive ()
+		{
+			return state == HELD;
+		}
+		
+		/**
+		 * Book the held seat; bookings go through {@link BookingEngine#confirm(Hold)}.
+		 *
+		 * @return True if the seat is now booked; false if the hold had already ended or the train was taken out of
+		 * service meanwhile.
+		 */
+		boolean confirm ()
+		{
+			if (! STATE.compareAndSet(this, HELD, CONFIRMED))
+			{
+				return false;
+			}
+			active.remove(id);
+			try
+			{
+				final boolean booked = train.confirmHeldSeat(seat);
+				if (booked)
+				{
+					CONFIRMED_TOTAL.increment();
+				}
+				return booked;
+			}
+			finally
+			{
+				onEnd.run();
+			}
+		}
+		
+		/**
+		 * Give the held seat back.
+		 *
+		 * @return True if the seat is available again because of this call.
+		 */
+		public boolean release ()
+		{
+			if (! end(RELEASED))
+			{
+				return false;
+			}
+			RELEASED_TOTAL.increment();
+			return true;
+		}
+		
+		/**
+		 * End the hold without booking the seat, unless it has already ended some other way, and give the seat back.
+		 *
+		 * @param outcome How the hold ends: {@link #RELEASED} or {@link #EXPIRED}.
+		 *
+		 * @return True if this call ended the hold.
+		 */
+		private boolean end (final int outcome)
+		{
+			if (! STATE.compareAndSet(this, HELD, outcome))
+			{
+				return false;
+			}
+			active.remove(id);
+			try
+			{
+				train.releaseHeldSeat(seat);
+			}
+			finally
+			{
+				onEnd.run();
+			}
+			return true;
+		}
+	}
+}
\ No newline at end of file
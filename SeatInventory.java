@@ -0,0 +1,595 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * The booked seats of one train as a bitmap, 64 seats to a word. Every change is made with a single atomic operation
+ * on the word holding the seat, so any number of threads may book and cancel at once without locks and without ever
+ * booking the same seat twice. Threads working on different trains never touch the same memory. While a
+ * {@link SeatVersions.Snapshot} is open, a word is kept as it was before it first changes, so the snapshot can still
+ * read it.
+ */
+public final class SeatInventory
+{
+	private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+	private static final VarHandle KEPT = MethodHandles.arrayElementVarHandle(SeatVersions.Version[].class);
+	private static final VarHandle VERSIONS;
+	private static final VarHandle REMAINING;
+	private static final VarHandle WINDOW_HINT;
+	private static final VarHandle AISLE_HINT;
+	private static final long WINDOW_BITS = 0x5555555555555555L;
+	
+	static
+	{
+		try
+		{
+			VERSIONS = MethodHandles.lookup().findVarHandle(SeatInventory.class, "versions", SeatVersions.Version[].class);
+			REMAINING = MethodHandles.lookup().findVarHandle(SeatInventory.class, "seatsRemaining", int.class);
+			WINDOW_HINT = MethodHandles.lookup().findVarHandle(SeatInventory.class, "windowHint", int.class);
+			AISLE_HINT = MethodHandles.lookup().findVarHandle(SeatInventory.class, "aisleHint", int.class);
+		}
+		catch (final ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	private final int totalSeats;
+	private final long[] booked;
+	// Seats taken by a hold rather than a booking; each is also set in booked, which is what keeps others off it.
+	private final long[] held;
+	private volatile int seatsRemaining;
+	// The first word that may still hold a free seat of each type; only ever too low, never too high.
+	private volatile int windowHint = 0;
+	private volatile int aisleHint = 0;
+	// The newest kept version of each word for open snapshots, made when a snapshot first needs one.
+	private volatile SeatVersions.Version[] versions;
+	// Read inside every change, after it has counted itself in; see retire().
+	private volatile boolean retired = false;
+	
+	/**
+	 * Construct an inventory of seats where every seat starts out available. Seats are identified purely by index:
+	 * even indices are window seats and odd indices are aisle seats, two to a row.
+	 *
+	 * @param totalSeats The total number of seats (both available or otherwise) on the train.
+	 */
+	public SeatInventory (final int totalSeats)
+	{
+		this.totalSeats = totalSeats;
+		this.booked = new long[(totalSeats + 63) >>> 6];
+		this.held = new long[this.booked.length];
+		this.seatsRemaining = totalSeats;
+	}
+	
+	/**
+	 * Construct an inventory of seats from a previously saved bitmap of booked seats.
+	 *
+	 * @param totalSeats The total number of seats (both available or otherwise) on the train.
+	 * @param booked     The bitmap of booked seats, one bit per seat index, as given by {@link #toBookedWords()}.
+	 */
+	public SeatInventory (final int totalSeats, final long[] booked)
+	{
+		if (booked.length != (totalSeats + 63) >>> 6)
+		{
+			throw new IllegalArgumentException("A bitmap of " + booked.length + " words does not fit " + totalSeats + " seats.");
+		}
+		this.totalSeats = totalSeats;
+		this.booked = booked.clone();
+		this.held = new long[booked.length];
+		
+		int count = 0;
+		for (final long word : booked)
+		{
+			count += Long.bitCount(word);
+		}
+		this.seatsRemaining = totalSeats - count;
+	}
+	
+	/**
+	 * Check whether a seat is a window seat. Seats alternate window/aisle starting with the window.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return True if the seat at the index is a window seat, false if it is an aisle seat.
+	 */
+	public static boolean isWindow (final int index)
+	{
+		return (index & 1) == 0;
+	}
+	
+	/**
+	 * Build the human readable name of a seat, i.e. its row followed by W for window or A for aisle.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return The {@link String} name of the seat such as "3W".
+	 */
+	public static String seatId (final int index)
+	{
+		return (index >> 1) + (isWindow(index) ? "W" : "A");
+	}
+	
+	/**
+	 * Find the index of a seat from its human readable name; the reverse of {@link #seatId(int)}.
+	 *
+	 * @param seatId The {@link String} name of the seat such as "3W", ignoring case.
+	 *
+	 * @return The index of the seat. It may still be beyond the seats of a particular train.
+	 *
+	 * @throws IllegalArgumentException If the name is not a row followed by W or A.
+	 */
+	public static int seatIndex (final String seatId)
+	{
+		final int last = seatId.length() - 1;
+		if (last < 1 || last > 9 || ! seatId.substring(0, last).chars().allMatch(c -> c >= '0' && c <= '9'))
+		{
+			throw new IllegalArgumentException("Seat '" + seatId + "' is not a row followed by W or A.");
+		}
+		final long row = Long.parseLong(seatId.substring(0, last));
+		final char type = Character.toUpperCase(seatId.charAt(last));
+		if ((type != 'W' && type != 'A') || row > Integer.MAX_VALUE >> 1)
+		{
+			throw new IllegalArgumentException("Seat '" + seatId + "' is not a row followed by W or A.");
+		}
+		return (int) (row << 1) + (type == 'W' ? 0 : 1);
+	}
+	
+	/**
+	 * Check whether a seat has not yet been booked.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return True if the seat is available.
+	 */
+	public boolean isAvailable (final int index)
+	{
+		return ((long) WORDS.getVolatile(booked, checkIndex(index) >>> 6) & (1L << index)) == 0;
+	}
+	
+	/**
+	 * Check whether a seat is held rather than booked.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return True if the seat is held.
+	 */
+	public boolean isHeld (final int index)
+	{
+		return ((long) WORDS.getVolatile(held, checkIndex(index) >>> 6) & (1L << index)) != 0;
+	}
+	
+	/**
+	 * Atomically mark a seat as available or booked. When several threads race to book the same seat exactly one of
+	 * them sees true. The count of remaining seats is adjusted by one rather than recounted.
+	 *
+	 * @param index     The index of the seat.
+	 * @param available The new availability of the seat.
+	 *
+	 * @return True if this call changed the availability of the seat; false if it was already so or the inventory is
+	 * retired.
+	 */
+	public boolean setAvailable (final int index, final boolean available)
+	{
+		final int word = checkIndex(index) >>> 6;
+		final long mask = 1L << index;
+		final long generation = SeatVersions.enter();
+		try
+		{
+			if (retired)
+			{
+				return false;
+			}
+			keep(word, generation);
+			final long old = available ? (long) WORDS.getAndBitwiseAnd(booked, word, ~ mask) : (long) WORDS.getAndBitwiseOr(booked, word, mask);
+			if (((old & mask) == 0) == available)
+			{
+				return false;
+			}
+		}
+		finally
+		{
+			SeatVersions.exit(generation);
+		}
+		REMAINING.getAndAdd(this, available ? 1 : - 1);
+		if (available)
+		{
+			lowerHint(index);
+		}
+		return true;
+	}
+	
+	/**
+	 * Find the first available seat of a type. Each type keeps a hint of the first word that may hold such a seat;
+	 * the search starts there and moves the hint past full words, and cancelling a seat moves it back. Repeatedly
+	 * taking the next seat is therefore amortised O(1) rather than a scan of the whole train.
+	 *
+	 * @param window True for a window seat, false for an aisle seat.
+	 *
+	 * @return The index of an available seat of that type, or -1 if there is none.
+	 */
+	public int nextAvailable (final boolean window)
+	{
+		final VarHandle hint = window ? WINDOW_HINT : AISLE_HINT;
+		final long type = window ? WINDOW_BITS : ~ WINDOW_BITS;
+		final int start = (int) hint.getVolatile(this);
+		for (int word = start; word < booked.length; word++)
+		{
+			final long free = ~ (long) WORDS.getVolatile(booked, word) & type & seatsIn(word);
+			if (free != 0)
+			{
+				advanceHint(hint, type, start, word);
+				return word << 6 | Long.numberOfTrailingZeros(free);
+			}
+		}
+		advanceHint(hint, type, start, booked.length);
+		return - 1;
+	}
+	
+	/**
+	 * Move a search hint past the full words just scanned, unless a cancellation has moved it back meanwhile. A seat
+	 * freed in one of those words before the hint moved found the hint not past it and left it alone, so the words are
+	 * looked at again once the hint has moved, and the hint is moved back to the first with a free seat.
+	 *
+	 * @param hint  The {@link VarHandle} of the hint.
+	 * @param type  The bits of the seats of the type.
+	 * @param start The word the scan started at, as read from the hint.
+	 * @param word  The first word not found full.
+	 */
+	private void advanceHint (final VarHandle hint, final long type, final int start, final int word)
+	{
+		if (word == start || ! hint.compareAndSet(this, start, word))
+		{
+			return;
+		}
+		for (int passed = start; passed < word; passed++)
+		{
+			if ((~ (long) WORDS.getVolatile(booked, passed) & type & seatsIn(passed)) != 0)
+			{
+				lowerHint(hint, passed);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Count the available seats of a type, 64 seats at a time.
+	 *
+	 * @param window True for window seats, false for aisle seats.
+	 *
+	 * @return The number of seats of that type neither booked nor held.
+	 */
+	public int countAvailable (final boolean window)
+	{
+		final long type = window ? WINDOW_BITS : ~ WINDOW_BITS;
+		int free = 0;
+		for (int word = 0; word < booked.length; word++)
+		{
+			free += Long.bitCount(~ (long) WORDS.getVolatile(booked, word) & type & seatsIn(word));
+		}
+		return free;
+	}
+	
+	/**
+	 * Get the bits of a word that stand for real seats; only the last word can be partly used.
+	 *
+	 * @param word The index of the word.
+	 *
+	 * @return The mask of bits in use.
+	 */
+	private long seatsIn (final int word)
+	{
+		final int seats = totalSeats - (word << 6);
+		return seats >= 64 ? - 1L : (1L << seats) - 1;
+	}
+	
+	/**
+	 * Move the search hint for the type of a freed seat back to its word if it is past it.
+	 *
+	 * @param index The index of the freed seat.
+	 */
+	private void lowerHint (final int index)
+	{
+		lowerHint(isWindow(index) ? WINDOW_HINT : AISLE_HINT, index >>> 6);
+	}
+	
+	/**
+	 * Move a search hint back to a word if it is past it.
+	 *
+	 * @param hint The {@link VarHandle} of the hint.
+	 * @param word The index of the word.
+	 */
+	private void lowerHint (final VarHandle hint, final int word)
+	{
+		int current;
+		do
+		{
+			current = (int) hint.getVolatile(this);
+		}
+		while (current > word && ! hint.compareAndSet(this, current, word));
+	}
+	
+	/**
+	 * Atomically book several seats, all or nothing. Seats sharing a word are claimed with one compare-and-set; if any
+	 * seat turns out to be taken, the words already claimed by this call are released again and nothing is booked. A
+	 * claimed seat looks booked until then, so the caller must keep cancellations of the seats out meanwhile, or one
+	 * would free a seat that the release then takes from whoever booked it next; a {@link Train} holds the lock of its
+	 * waitlist.
+	 *
+	 * @param indices The indices of the seats; duplicates are ignored.
+	 *
+	 * @return True if every seat was available and is now booked by this call; false if nothing was booked.
+	 */
+	public boolean bookAll (final int... indices)
+	{
+		final int[] sorted = indices.clone();
+		Arrays.sort(sorted);
+		
+		int claimedUpTo = 0;
+		int seats = 0;
+		// One generation for the whole booking, so a snapshot sees all of it or none of it.
+		final long generation = SeatVersions.enter();
+		try
+		{
+			if (retired)
+			{
+				return false;
+			}
+			for (int i = 0; i < sorted.length; )
+			{
+				// Gather every requested seat in the same word into one mask.
+				final int word = checkIndex(sorted[i]) >>> 6;
+				long mask = 0;
+				for (; i < sorted.length && sorted[i] >>> 6 == word; i++)
+				{
+					mask |= 1L << checkIndex(sorted[i]);
+				}
+				
+				keep(word, generation);
+				long current;
+				do
+				{
+					current = (long) WORDS.getVolatile(booked, word);
+					if ((current & mask) != 0)
+					{
+						release(sorted, claimedUpTo);
+						return false;
+					}
+				}
+				while (! WORDS.compareAndSet(booked, word, current, current | mask));
+				
+				claimedUpTo = i;
+				seats += Long.bitCount(mask);
+			}
+		}
+		finally
+		{
+			SeatVersions.exit(generation);
+		}
+		REMAINING.getAndAdd(this, - seats);
+		return true;
+	}
+	
+	/**
+	 * Undo the claim of a partly successful {@link #bookAll(int...)}.
+	 *
+	 * @param sorted The sorted indices of the seats being booked.
+	 * @param end    The position in sorted up to which seats were claimed.
+	 */
+	private void release (final int[] sorted, final int end)
+	{
+		for (int i = 0; i < end; i++)
+		{
+			WORDS.getAndBitwiseAnd(booked, sorted[i] >>> 6, ~ (1L << sorted[i]));
+			lowerHint(sorted[i]);
+		}
+	}
+	
+	/**
+	 * Atomically take a seat for a while without booking it. The seat is taken exactly as a booking takes it, so no
+	 * other booking or hold can have it, until the hold is confirmed or released. It is taken before it is marked held,
+	 * so the caller must keep cancellations of the seat out meanwhile; a {@link Train} holds the lock of its waitlist.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return True if the seat was available and is now held by this call; false if it was taken or the inventory is
+	 * retired.
+	 */
+	public boolean hold (final int index)
+	{
+		final int word = checkIndex(index) >>> 6;
+		final long mask = 1L << index;
+		final long generation = SeatVersions.enter();
+		try
+		{
+			if (retired)
+			{
+				return false;
+			}
+			keep(word, generation);
+			if (((long) WORDS.getAndBitwiseOr(booked, word, mask) & mask) != 0)
+			{
+				return false;
+			}
+			WORDS.getAndBitwiseOr(held, word, mask);
+		}
+		finally
+		{
+			SeatVersions.exit(generation);
+		}
+		REMAINING.getAndAdd(this, - 1);
+		return true;
+	}
+	
+	/**
+	 * Turn a held seat into a booked one.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return True if the seat was held and is now booked by this call; false if it was not held or the inventory is
+	 * retired.
+	 */
+	public boolean confirm (final int index)
+	{
+		final long mask = 1L << index;
+		final long generation = SeatVersions.enter();
+		try
+		{
+			return ! retired && ((long) WORDS.getAndBitwiseAnd(held, checkIndex(index) >>> 6, ~ mask) & mask) != 0;
+		}
+		finally
+		{
+			SeatVersions.exit(generation);
+		}
+	}
+	
+	/**
+	 * Refuse every change from now on, and wait for the changes already under way to finish, so that the seats can be
+	 * copied knowing none is still to change; see {@link #resize(int)}.
+	 */
+	public void retire ()
+	{
+		retired = true;
+		SeatVersions.settle();
+	}
+	
+	public int getSeatsRemaining ()
+	{
+		return seatsRemaining;
+	}
+	
+	/**
+	 * Read one word of the bitmap, in which held seats are taken like booked ones.
+	 *
+	 * @param word The index of the word, i.e. the seat index divided by 64.
+	 *
+	 * @return The bits of the 64 seats of the word, set for each seat taken.
+	 */
+	public long getTakenWord (final int word)
+	{
+		return (long) WORDS.getVolatile(booked, word);
+	}
+	
+	/**
+	 * Get the newest version of a word kept for open snapshots; see {@link SeatVersions.Snapshot#getTakenWord}.
+	 *
+	 * @param word The index of the word.
+	 *
+	 * @return The newest {@link SeatVersions.Version}, or null if none is kept.
+	 */
+	SeatVersions.Version getVersion (final int word)
+	{
+		final SeatVersions.Version[] kept = versions;
+		return kept == null ? null : (SeatVersions.Version) KEPT.getVolatile(kept, word);
+	}
+	
+	/**
+	 * Keep a word as it is before its first change in a generation, if an open snapshot may still read it. Of the
+	 * changes in a generation only the first to swap its version in reads the word, and every change to the word waits
+	 * for that, so the version kept holds none of them.
+	 *
+	 * @param word       The index of the word about to change.
+	 * @param generation The generation of the change; see {@link SeatVersions#enter()}.
+	 */
+	private void keep (final int word, final long generation)
+	{
+		if (! SeatVersions.mustKeep(generation))
+		{
+			return;
+		}
+		SeatVersions.Version[] kept = versions;
+		if (kept == null)
+		{
+			VERSIONS.compareAndSet(this, null, new SeatVersions.Version[booked.length]);
+			kept = versions;
+		}
+		SeatVersions.Version newest;
+		do
+		{
+			newest = (SeatVersions.Version) KEPT.getVolatile(kept, word);
+			if (newest != null && newest.generation == generation)
+			{
+				return;
+			}
+		}
+		while (! KEPT.compareAndSet(kept, word, newest, new SeatVersions.Version(generation, (long) WORDS.getVolatile(booked, word), SeatVersions.trim(newest))));
+		SeatVersions.kept(this);
+	}
+	
+	/**
+	 * Drop the kept versions no open snapshot can read any more.
+	 *
+	 * @return True if some are still needed.
+	 */
+	boolean trimVersions ()
+	{
+		final SeatVersions.Version[] kept = versions;
+		boolean needed = false;
+		for (int word = 0; kept != null && word < kept.length; word++)
+		{
+			SeatVersions.Version newest;
+			SeatVersions.Version trimmed;
+			do
+			{
+				newest = (SeatVersions.Version) KEPT.getVolatile(kept, word);
+				trimmed = SeatVersions.trim(newest);
+			}
+			while (trimmed != newest && ! KEPT.compareAndSet(kept, word, newest, trimmed));
+			needed |= trimmed != null;
+		}
+		return needed;
+	}
+	
+	/**
+	 * Copy out the bitmap of booked seats, one bit per seat index, 64 seats to a word. Held seats are not booked and
+	 * are left out, though one being taken or released at that very moment may be copied as booked.
+	 *
+	 * @return A copy of the booked seat bitmap.
+	 */
+	public long[] toBookedWords ()
+	{
+		final long[] words = new long[booked.length];
+		for (int i = 0; i < words.length; i++)
+		{
+			words[i] = (long) WORDS.getVolatile(booked, i) & ~ (long) WORDS.getVolatile(held, i);
+		}
+		return words;
+	}
+	
+	public int getTotalSeats ()
+	{
+		return totalSeats;
+	}
+	
+	/**
+	 * Copy this inventory for a train of another size, keeping the bookings of the seats both sizes have.
+	 *
+	 * @param totalSeats The total number of seats of the copy.
+	 *
+	 * @return The new {@link SeatInventory}.
+	 */
+	public SeatInventory resize (final int totalSeats)
+	{
+		final long[] words = Arrays.copyOf(toBookedWords(), (totalSeats + 63) >>> 6);
+		if ((totalSeats & 63) != 0)
+		{
+			words[words.length - 1] &= (1L << totalSeats) - 1;
+		}
+		return new SeatInventory(totalSeats, words);
+	}
+	
+	/**
+	 * Ensure a seat index falls within this train.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return The same index, for chaining.
+	 */
+	private int checkIndex (final int index)
+	{
+		if (index < 0 || index >= totalSeats)
+		{
+			throw new IndexOutOfBoundsException("Seat " + index + " is not on a train of " + totalSeats + " seats.");
+		}
+		return index;
+	}
+}
\ No newline at end of file
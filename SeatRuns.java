@@ -0,0 +1,156 @@
+/**
+ * The runs of free seats on one train, as a segment tree over seat indices: each node keeps the free seats at the start
+ * of its range, at the end of it, and the longest run anywhere in it. The longest run on the train is read from the
+ * root, and the first run of at least k seats is found by a single walk down the tree; a seat changing updates one
+ * leaf and its ancestors. All three are O(log n) in the seats of the train.
+ * <p>
+ * The tree follows the {@link SeatInventory} as a {@link Train.SeatListener}. Each change re-reads the seat from the
+ * inventory rather than trusting the order listeners run in, so concurrent bookings and cancellations of a seat
+ * always leave the tree as the inventory ends up. Changes and queries take the lock of the tree.
+ */
+public final class SeatRuns implements Train.SeatListener
+{
+	private final SeatInventory inventory;
+	// Leaves start at size, a power of two; the leaves past the last seat count as taken.
+	private final int size;
+	private final int[] prefix;
+	private final int[] suffix;
+	private final int[] longest;
+	
+	/**
+	 * Construct the tree of an inventory with every seat taken. Register it as a seat listener of the train and then
+	 * {@link #rebuild()} it, so that no change is missed in between.
+	 *
+	 * @param inventory The {@link SeatInventory} of the train.
+	 */
+	public SeatRuns (final SeatInventory inventory)
+	{
+		this.inventory = inventory;
+		this.size = Integer.highestOneBit(Math.max(1, inventory.getTotalSeats() - 1)) << 1;
+		this.prefix = new int[2 * size];
+		this.suffix = new int[2 * size];
+		this.longest = new int[2 * size];
+	}
+	
+	/**
+	 * Read every seat from the inventory again, building the tree bottom up in O(n).
+	 */
+	public synchronized void rebuild ()
+	{
+		for (int seat = 0; seat < inventory.getTotalSeats(); seat++)
+		{
+			setLeaf(size + seat, inventory.isAvailable(seat));
+		}
+		for (int node = size - 1; node > 0; node--)
+		{
+			combine(node);
+		}
+	}
+	
+	/**
+	 * Bring a seat up to date with the inventory.
+	 *
+	 * @param train     The {@link Train} the seat belongs to.
+	 * @param index     The index of the seat.
+	 * @param available Ignored; the inventory is read instead.
+	 */
+	@Override
+	public void seatChanged (final Train train, final int index, final boolean available)
+	{
+		refresh(index, index + 1);
+	}
+	
+	/**
+	 * Bring a range of seats up to date with the inventory, e.g. after failing to book seats the tree had as free.
+	 *
+	 * @param from The index of the first seat.
+	 * @param to   The index just past the last seat.
+	 */
+	public synchronized void refresh (final int from, final int to)
+	{
+		for (int seat = from; seat < to; seat++)
+		{
+			setLeaf(size + seat, inventory.isAvailable(seat));
+			for (int node = (size + seat) >>> 1; node > 0; node >>>= 1)
+			{
+				combine(node);
+			}
+		}
+	}
+	
+	/**
+	 * Get the longest run of free seats.
+	 *
+	 * @return The number of seats in the longest run, or 0 if the train is full.
+	 */
+	public synchronized int longestRun ()
+	{
+		return longest[1];
+	}
+	
+	/**
+	 * Find the first run of free seats long enough for a group.
+	 *
+	 * @param seats The number of seats wanted together.
+	 *
+	 * @return The index of the first seat of the first free block of that many seats, or -1 if there is none.
+	 */
+	public synchronized int firstRun (final int seats)
+	{
+		if (seats < 1 || longest[1] < seats)
+		{
+			return - 1;
+		}
+		int node = 1;
+		int start = 0;
+		int length = size;
+		while (node < size)
+		{
+			final int left = 2 * node;
+			length >>>= 1;
+			if (longest[left] >= seats)
+			{
+				node = left;
+			}
+			else if (suffix[left] + prefix[left + 1] >= seats)
+			{
+				return start + length - suffix[left];
+			}
+			else
+			{
+				node = left + 1;
+				start += length;
+			}
+		}
+		return start;
+	}
+	
+	/**
+	 * Set a leaf to one free seat or none.
+	 *
+	 * @param leaf The index of the leaf node.
+	 * @param free True if the seat is available.
+	 */
+	private void setLeaf (final int leaf, final boolean free)
+	{
+		final int run = free ? 1 : 0;
+		prefix[leaf] = run;
+		suffix[leaf] = run;
+		longest[leaf] = run;
+	}
+	
+	/**
+	 * Work out the runs of a node from those of its two children.
+	 *
+	 * @param node The index of the node.
+	 */
+	private void combine (final int node)
+	{
+		final int left = 2 * node;
+		final int right = left + 1;
+		final int half = size >>> (31 - Integer.numberOfLeadingZeros(node)) >>> 1;
+		prefix[node] = prefix[left] == half ? half + prefix[right] : prefix[left];
+		suffix[node] = suffix[right] == half ? half + suffix[left] : suffix[right];
+		longest[node] = Math.max(Math.max(longest[left], longest[right]), suffix[left] + prefix[right]);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,340 @@
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Consistent views of the seats of every train at one moment, read while bookings carry on. Bookings are counted in
+ * generations: opening a {@link Snapshot} starts a new generation and waits for the bookings of the old one to finish,
+ * which takes as long as the few already under way. The snapshot then sees every booking of the old generations and
+ * none of the new, on every train at once, so a booking of several seats is seen whole or not at all.
+ * <p>
+ * While any snapshot is open, the first change to a word of a {@link SeatInventory} in a generation keeps the word as
+ * it was, copy-on-write, so a snapshot reads the current word unless it changed since, and then the oldest copy made
+ * after the snapshot opened. Words nobody changes are never copied. Copies no open snapshot can read are dropped when
+ * the word next changes, and from every inventory once the oldest snapshot closes. With no snapshot open a booking
+ * only counts itself in and out of its generation.
+ */
+public final class SeatVersions
+{
+	// Bookings under way in each of the two latest generations, spread over cache lines by thread.
+	private static final int STRIPES = 64;
+	private static final int PADDING = 8;
+	private static final AtomicLongArray WRITERS = new AtomicLongArray(2 * STRIPES * PADDING);
+	private static final Metrics.Counter KEPT = Metrics.counter("seat_versions_kept_total", null, "Words of seat bitmaps copied before a change because an open snapshot could still read them.");
+	private static final Metrics.Histogram OPEN = Metrics.histogram("seat_snapshot_open_duration_seconds", null, "Time to open a snapshot of every seat, waiting for the bookings under way to finish.");
+	private static final Set<SeatInventory> DIRTY = ConcurrentHashMap.newKeySet();
+	// The number of snapshots open at each generation; guarded by the class.
+	private static final TreeMap<Long, Integer> OPEN_SNAPSHOTS = new TreeMap<>();
+	
+	private static volatile long generation = 0;
+	// The latest generation whose bookings have all finished.
+	private static volatile long settled = - 1;
+	private static volatile long oldestOpen = Long.MAX_VALUE;
+	
+	static
+	{
+		Metrics.gauge("seat_snapshots_open", "Snapshots of the seats of every train open for reading.", SeatVersions :: countOpen);
+	}
+	
+	private SeatVersions ()
+	{
+	}
+	
+	/**
+	 * Open a snapshot of every seat of every train as of now. Close it once read, so the copies it needs can go.
+	 *
+	 * @return The {@link Snapshot}.
+	 */
+	public static Snapshot open ()
+	{
+		final long start = System.nanoTime();
+		final long opened;
+		synchronized (SeatVersions.class)
+		{
+			opened = generation;
+			OPEN_SNAPSHOTS.merge(opened, 1, Integer :: sum);
+			oldestOpen = OPEN_SNAPSHOTS.firstKey();
+			advance();
+		}
+		OPEN.recordSince(start);
+		return new Snapshot(opened);
+	}
+	
+	/**
+	 * Wait for every change to the seats already under way to finish, without opening a snapshot. A change starting
+	 * after this is called sees whatever was written before, e.g. that its inventory has been retired.
+	 */
+	static synchronized void settle ()
+	{
+		advance();
+	}
+	
+	/**
+	 * Start a new generation and wait for the changes of the old one to finish. The caller holds the lock of the class.
+	 */
+	private static void advance ()
+	{
+		final long old = generation;
+		generation = old + 1;
+		for (int stripe = 0; stripe < STRIPES; stripe++)
+		{
+			for (int spins = 0; WRITERS.get(slot(old, stripe)) != 0; spins++)
+			{
+				pause(spins);
+			}
+		}
+		settled = Math.max(settled, old);
+	}
+	
+	/**
+	 * Count a change to the seats in, in the current generation. Every change to a bitmap is made between this and
+	 * {@link #exit(long)}.
+	 *
+	 * @return The generation of the change.
+	 */
+	static long enter ()
+	{
+		final int stripe = stripe();
+		while (true)
+		{
+			final long current = generation;
+			WRITERS.getAndIncrement(slot(current, stripe));
+			if (generation == current)
+			{
+				return current;
+			}
+			// A snapshot opened meanwhile and may already have found this generation finished.
+			WRITERS.getAndDecrement(slot(current, stripe));
+		}
+	}
+	
+	/**
+	 * Count a change to the seats out again.
+	 *
+	 * @param changed The generation given by {@link #enter()}.
+	 */
+	static void exit (final long changed)
+	{
+		WRITERS.getAndDecrement(slot(changed, stripe()));
+	}
+	
+	/**
+	 * Check whether a change in a generation must keep the word it changes first, i.e. whether a snapshot is open.
+	 * A change in a generation still settling waits for it first, so the word kept holds every change of the
+	 * generations before.
+	 *
+	 * @param changed The generation of the change.
+	 *
+	 * @return True if the word must be kept.
+	 */
+	static boolean mustKeep (final long changed)
+	{
+		if (oldestOpen >= changed)
+		{
+			return false;
+		}
+		for (int spins = 0; settled < changed - 1; spins++)
+		{
+			pause(spins);
+		}
+		return true;
+	}
+	
+	/**
+	 * Note a word kept by an inventory, so its copies are dropped once no snapshot can read them.
+	 *
+	 * @param inventory The {@link SeatInventory} that kept the word.
+	 */
+	static void kept (final SeatInventory inventory)
+	{
+		KEPT.increment();
+		DIRTY.add(inventory);
+	}
+	
+	/**
+	 * Drop the copies that no open snapshot can read from a chain.
+	 *
+	 * @param newest The newest {@link Version} of a word, or null.
+	 *
+	 * @return The newest {@link Version} still needed, or null if none is.
+	 */
+	static Version trim (final Version newest)
+	{
+		if (newest == null || newest.generation <= oldestOpen)
+		{
+			return null;
+		}
+		final Version older = trim(newest.older);
+		return older == newest.older ? newest : new Version(newest.generation, newest.bits, older);
+	}
+	
+	private static synchronized long countOpen ()
+	{
+		return OPEN_SNAPSHOTS.values().stream().mapToLong(Integer :: longValue).sum();
+	}
+	
+	/**
+	 * Close a snapshot, dropping the copies of every inventory that only it could read. The sweep holds the lock, so
+	 * a snapshot opening meanwhile cannot need a copy the sweep has judged stale; bookings are never held up by it.
+	 *
+	 * @param opened The generation of the snapshot.
+	 */
+	private static synchronized void close (final long opened)
+	{
+		final int left = OPEN_SNAPSHOTS.get(opened) - 1;
+		if (left > 0)
+		{
+			OPEN_SNAPSHOTS.put(opened, left);
+			return;
+		}
+		OPEN_SNAPSHOTS.remove(opened);
+		final long oldest = OPEN_SNAPSHOTS.isEmpty() ? Long.MAX_VALUE : OPEN_SNAPSHOTS.firstKey();
+		if (oldest == oldestOpen)
+		{
+			return;
+		}
+		oldestOpen = oldest;
+		for (final SeatInventory inventory : DIRTY)
+		{
+			// Taken off first, so an inventory keeping a word meanwhile is put back for the next sweep.
+			DIRTY.remove(inventory);
+			if (inventory.trimVersions())
+			{
+				DIRTY.add(inventory);
+			}
+		}
+	}
+	
+	/**
+	 * Wait a moment for a booking under way on another thread. Spin briefly, then give the core up, since the booking
+	 * waited for may be on a thread that is not running.
+	 *
+	 * @param spins The number of times waited so far.
+	 */
+	private static void pause (final int spins)
+	{
+		if (spins < 100)
+		{
+			Thread.onSpinWait();
+		}
+		else
+		{
+			Thread.yield();
+		}
+	}
+	
+	private static int stripe ()
+	{
+		return (int) Thread.currentThread().getId() & (STRIPES - 1);
+	}
+	
+	private static int slot (final long changed, final int stripe)
+	{
+		return ((int) (changed & 1) * STRIPES + stripe) * PADDING;
+	}
+	
+	/**
+	 * A word of a bitmap as it was before the first change to it in a generation.
+	 */
+	static final class Version
+	{
+		final long generation;
+		final long bits;
+		final Version older;
+		
+		Version (final long generation, final long bits, final Version older)
+		{
+			this.generation = generation;
+			this.bits = bits;
+			this.older = older;
+		}
+	}
+	
+	/**
+	 * The seats of every train as of the moment it was opened. It may be read from any thread, and must be closed.
+	 */
+	public static final class Snapshot implements AutoCloseable
+	{
+		private final long opened;
+		private boolean closed = false;
+		
+		/**
+		 * Construct a snapshot; see {@link SeatVersions#open()}.
+		 *
+		 * @param opened The last generation the snapshot sees.
+		 */
+		private Snapshot (final long opened)
+		{
+			this.opened = opened;
+		}
+		
+		/**
+		 * Read one word of the bitmap of a train as of the snapshot.
+		 *
+		 * @param inventory The {@link SeatInventory} of the train.
+		 * @param word      The index of the word, i.e. the seat index divided by 64.
+		 *
+		 * @return The bits of the 64 seats of the word, set for each seat taken.
+		 */
+		public long getTakenWord (final SeatInventory inventory, final int word)
+		{
+			// The word first: a change after it was read is kept before it is made, and so found below.
+			final long current = inventory.getTakenWord(word);
+			Version seen = null;
+			for (Version version = inventory.getVersion(word); version != null && version.generation > opened; version = version.older)
+			{
+				seen = version;
+			}
+			return seen == null ? current : seen.bits;
+		}
+		
+		/**
+		 * Check whether a seat was available as of the snapshot.
+		 *
+		 * @param train The {@link Train} of the seat.
+		 * @param index The index of the seat.
+		 *
+		 * @return True if the seat was neither booked nor held.
+		 */
+		public boolean isSeatAvailable (final Train train, final int index)
+		{
+			if (index < 0 || index >= train.getTotalSeats())
+			{
+				throw new IndexOutOfBoundsException("Seat " + index + " is not on a train of " + train.getTotalSeats() + " seats.");
+			}
+			return (getTakenWord(train.getInventory(), index >>> 6) & (1L << index)) == 0;
+		}
+		
+		/**
+		 * Count the seats of a train available as of the snapshot, 64 seats at a time.
+		 *
+		 * @param train The {@link Train} to count.
+		 *
+		 * @return The number of seats neither booked nor held.
+		 */
+		public int getSeatsRemaining (final Train train)
+		{
+			final SeatInventory inventory = train.getInventory();
+			int taken = 0;
+			for (int word = 0; word << 6 < inventory.getTotalSeats(); word++)
+			{
+				taken += Long.bitCount(getTakenWord(inventory, word));
+			}
+			return inventory.getTotalSeats() - taken;
+		}
+		
+		/**
+		 * Let the copies kept for this snapshot go. Closing it again does nothing.
+		 */
+		@Override
+		public synchronized void close ()
+		{
+			if (! closed)
+			{
+				closed = true;
+				SeatVersions.close(opened);
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -1,7 +1,10 @@
 import javafx.beans.property.IntegerProperty;
 import javafx.geometry.Pos;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
-import javafx.scene.control.ScrollPane;
+import javafx.scene.image.Image;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
@@ -9,31 +12,65 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
+import javafx.stage.Stage;
 
 public final class SelectSeatWindow extends BorderPane
 {
+	private final Train.SeatSelectionPane seatSelectionPane;
+	
 	/**
 	 * Construct a window for selecting seats on the selected train. This window is a border pane with directions on
-	 * top, seat selections in the center, and total remaining seats on the bottom.
+	 * top, seat selections in the center with the button to book them beside, and total remaining seats on the
+	 * bottom. Selected seats are held for the passenger while others book the same train.
 	 *
-	 * @param train The {@link Train} selected within which to choose seats.
+	 * @param train     The {@link Train} selected within which to choose seats.
+	 * @param seatHolds The {@link SeatHolds} to hold selected seats with.
 	 */
-	public SelectSeatWindow (final Train train)
+	public SelectSeatWindow (final Train train, final SeatHolds seatHolds)
 	{
 		super();
 		
-		final ScrollPane scrollPane = new ScrollPane(train.new SeatSelectionPane());
-		scrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.ALWAYS);
+		// The seat map scrolls by itself, creating nodes only for the rows in view.
+		this.seatSelectionPane = train.new SeatSelectionPane(seatHolds);
+		this.seatSelectionPane.setPrefSize(195, 460);
+		
+		final Button book = new Button("Book");
+		book.setFont(new Font(30));
+		book.setOnAction(event -> handleOnBook());
 		
 		this.setTop(new Top());
 		this.setLeft(new Rectangle(202.5, 460, Color.LIGHTYELLOW));
-		this.setCenter(scrollPane);
-		this.setRight(new Rectangle(202.5, 460, Color.LIGHTYELLOW));
+		this.setCenter(seatSelectionPane);
+		this.setRight(new StackPane(new Rectangle(202.5, 460, Color.LIGHTYELLOW), book));
 		this.setBottom(new Bottom(train.seatsRemainingProperty()));
 		
 		this.setMaxSize(600, 600);
 	}
 	
+	/**
+	 * Give up the seats selected but not booked, e.g. because the window is closing.
+	 */
+	public void releaseHolds ()
+	{
+		seatSelectionPane.releaseHolds();
+	}
+	
+	/**
+	 * When the user books, turn every seat selected into a booking, alerting if any were held too long and let go.
+	 */
+	private void handleOnBook ()
+	{
+		final int expired = seatSelectionPane.confirmHolds();
+		if (expired > 0)
+		{
+			final Alert alert = new Alert(Alert.AlertType.NONE, expired + " selected seat(s) were held for over " + SeatHolds.DEFAULT_TTL.toMinutes() + " minutes and given up. Please select them again.", ButtonType.OK);
+			alert.setTitle("Expired");
+			final Stage stage = (Stage) alert.getDialogPane().getScene().getWindow();
+			stage.getIcons().add(new Image("train.png"));
+			alert.show();
+		}
+	}
+	
 	private static final class Top extends StackPane
 	{
 		/**
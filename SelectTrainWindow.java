@@ -1,22 +1,28 @@
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
 import javafx.geometry.Pos;
 import javafx.scene.Cursor;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableRow;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.Image;
 import javafx.scene.input.MouseButton;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
@@ -25,32 +31,106 @@ import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 
 import java.time.LocalTime;
-import java.util.Collection;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 public final class SelectTrainWindow extends BorderPane
 {
 	/**
-	 * Construct a window for selecting a train.
+	 * Construct a window for selecting a train. Trains may be added to or removed from the list while it is shown.
 	 *
-	 * @param trains The {@link java.util.Collection} of {@link Train} objects from which to select.
+	 * @param trains    The {@link ObservableList} of {@link Train} objects from which to select.
+	 * @param seatHolds The {@link SeatHolds} holding the seats selected in every seat window.
 	 */
-	public SelectTrainWindow (final Collection<? extends Train> trains)
+	public SelectTrainWindow (final ObservableList<Train> trains, final SeatHolds seatHolds)
 	{
 		super();
 		
-		final IntegerProperty seatsRemaining = new SimpleIntegerProperty(trains.stream().mapToInt(Train :: getSeatsRemaining).sum());
-		trains.forEach(train -> train.seatsRemainingProperty().addListener((observable, oldValue, newValue) -> seatsRemaining.set(trains.stream().mapToInt(Train :: getSeatsRemaining).sum())));
+		// The total listens to the list first, so its index is current by the time the filter box re-applies.
+		final FleetTotal total = new FleetTotal(trains);
 		
-		final ScrollPane scrollPane = new ScrollPane(new TrainSelectionPane(trains));
+		final TrainSelectionPane table = new TrainSelectionPane(trains, total.getSummaries(), seatHolds);
+		final FilterBox filter = new FilterBox(total.getIndex(), trains, table);
+		trains.addListener((ListChangeListener<Train>) change -> filter.apply());
+		
+		final ScrollPane scrollPane = new ScrollPane(table);
 		scrollPane.setHbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
 		
 		this.setMaxSize(600, 600);
 		
 		this.setTop(new Top());
 		this.setLeft(new Rectangle(50, 460, Color.LIGHTYELLOW));
-		this.setCenter(scrollPane);
+		this.setCenter(new VBox(filter, scrollPane));
 		this.setRight(new Rectangle(50, 460, Color.LIGHTYELLOW));
-		this.setBottom(new Bottom(seatsRemaining));
+		this.setBottom(new Bottom(total.seatsRemainingProperty()));
+	}
+	
+	private static final class FilterBox extends TextField
+	{
+		private final TrainIndex index;
+		private final ObservableList<Train> trains;
+		private final TableView<Train> table;
+		
+		/**
+		 * Construct a text box that narrows the table to the trains matching what is typed, e.g. "seattle 14.00 2" for
+		 * trains to a destination starting with "seattle" leaving at or after 14:00 with at least 2 seats remaining.
+		 * Each part is optional and the search is answered by the {@link TrainIndex} rather than by checking every row.
+		 *
+		 * @param index  The {@link TrainIndex} over every train.
+		 * @param trains The {@link ObservableList} of every {@link Train}, shown when the box is empty.
+		 * @param table  The {@link TableView} whose rows are filtered.
+		 */
+		private FilterBox (final TrainIndex index, final ObservableList<Train> trains, final TableView<Train> table)
+		{
+			super();
+			
+			this.index = index;
+			this.trains = trains;
+			this.table = table;
+			
+			this.setPromptText("Filter: destination, departing after HH.mm, seats needed");
+			this.textProperty().addListener(observable -> apply());
+		}
+		
+		/**
+		 * Show the trains matching the current text, or every train if the box is empty.
+		 */
+		private void apply ()
+		{
+			if (this.getText().isBlank())
+			{
+				table.setItems(trains);
+				return;
+			}
+			
+			// Numbers with a dot or colon are a time, plain numbers a seat count, and anything else the destination.
+			final List<String> destination = new ArrayList<>();
+			LocalTime after = LocalTime.MIN;
+			int minSeats = 0;
+			for (final String word : this.getText().trim().split("\\s+"))
+			{
+				if (word.length() < 10 && word.chars().allMatch(Character :: isDigit))
+				{
+					minSeats = Integer.parseInt(word);
+				}
+				else
+				{
+					try
+					{
+						after = LocalTime.parse((word.length() == 4 ? "0" : "") + word.replace('.', ':'));
+					}
+					catch (final DateTimeParseException e)
+					{
+						destination.add(word);
+					}
+				}
+			}
+			table.setItems(FXCollections.observableArrayList(index.search(String.join(" ", destination), after, minSeats)));
+		}
 	}
 	
 	private static final class Top extends StackPane
@@ -80,13 +160,15 @@ public final class SelectTrainWindow extends BorderPane
 		 * Construct the actual Train selection table. Displays rows of trains in the following order:
 		 * [departure_time, destination, seats_available]
 		 *
-		 * @param trains The {@link java.util.Collection} of {@link Train} objects from which to select.
+		 * @param trains    The {@link ObservableList} of {@link Train} objects from which to select.
+		 * @param summaries The {@link DestinationSummaries} of the same trains, to offer others when one is full.
+		 * @param seatHolds The {@link SeatHolds} holding the seats selected in the seat windows opened.
 		 */
-		private TrainSelectionPane (final Collection<? extends Train> trains)
+		private TrainSelectionPane (final ObservableList<Train> trains, final DestinationSummaries summaries, final SeatHolds seatHolds)
 		{
-			super(FXCollections.observableArrayList(trains));
+			super(trains);
 			
-			this.setPrefSize(500, 457);
+			this.setPrefSize(500, 432);
 			
 			final TableColumn<Train, LocalTime> departureTimeCol = new TableColumn<>("Departure Time");
 			final TableColumn<Train, String> destinationCol = new TableColumn<>("Destination");
@@ -123,7 +205,7 @@ public final class SelectTrainWindow extends BorderPane
 														 {
 															 if (! row.isEmpty() && event.getButton() == MouseButton.PRIMARY)
 															 {
-																 handleOnMouseClicked(row.getItem());
+																 handleOnMouseClicked(row.getItem(), summaries, seatHolds);
 															 }
 														 });
 								   return row;
@@ -147,50 +229,113 @@ public final class SelectTrainWindow extends BorderPane
 		}
 		
 		/**
-		 * When the user clicks a row, open the seat selection window only if the train is not full or busy already.
+		 * When the user clicks a row, open a seat selection window only if the train is not full, and otherwise offer to
+		 * join its waitlist or to pick a train to another destination with seats left. Any number of windows may book the
+		 * same train at once; the seats each selects are held for it.
 		 *
-		 * @param train The {@link Train} to check and then open.
+		 * @param train     The {@link Train} to check and then open.
+		 * @param summaries The {@link DestinationSummaries} to find other destinations in.
+		 * @param seatHolds The {@link SeatHolds} to hold selected seats with.
 		 */
-		private static void handleOnMouseClicked (final Train train)
+		private static void handleOnMouseClicked (final Train train, final DestinationSummaries summaries, final SeatHolds seatHolds)
 		{
-			if (train.isBooking())
+			if (0 == train.getSeatsRemaining())
 			{
-				final Alert alert = new Alert(Alert.AlertType.NONE, "This train is already booking. Please wait.", ButtonType.OK);
-				alert.setTitle("Busy");
-				final Stage stage = (Stage) alert.getDialogPane().getScene().getWindow();
-				stage.getIcons().add(new Image("train.png"));
-				alert.show();
-			}
-			else if (0 == train.getSeatsRemaining())
-			{
-				final Alert alert = new Alert(Alert.AlertType.NONE, "This train is already booked. Please select a different train.", ButtonType.OK);
+				final List<DestinationSummaries.Summary> elsewhere = summaries.elsewhere(train.getDestination());
+				final ButtonType join = new ButtonType("Join Waitlist", ButtonBar.ButtonData.YES);
+				final ButtonType other = new ButtonType("Other Destination", ButtonBar.ButtonData.OTHER);
+				final Alert alert = elsewhere.isEmpty()
+									? new Alert(Alert.AlertType.NONE, "This train is already booked. Please select a different train, or join the waitlist to be booked the next seat given back.", join, ButtonType.OK)
+									: new Alert(Alert.AlertType.NONE, "This train is already booked. Please select a different train, pick one to another destination, or join the waitlist to be booked the next seat given back.", join, other, ButtonType.OK);
 				alert.setTitle("Full");
 				final Stage stage = (Stage) alert.getDialogPane().getScene().getWindow();
 				stage.getIcons().add(new Image("train.png"));
-				alert.show();
+				final Optional<ButtonType> answer = alert.showAndWait();
+				answer.filter(join :: equals).ifPresent(button -> joinWaitlist(train));
+				answer.filter(other :: equals).ifPresent(button -> pickElsewhere(elsewhere, summaries, seatHolds));
 			}
 			else
 			{
-				train.setBooking(true);
+				final SelectSeatWindow window = new SelectSeatWindow(train, seatHolds);
 				final Stage stage = new Stage();
-				stage.setTitle("Booking Train: " + train.getDepartureTime().toString() + " - " + train.getDestination());
-				stage.setScene(new Scene(new SelectSeatWindow(train)));
+				stage.setTitle("Booking Train: " + (train.getDepartureDate() == null ? "" : train.getDepartureDate() + " ") + train.getDepartureTime() + " - " + train.getDestination());
+				stage.setScene(new Scene(window));
 				stage.setResizable(false);
-				stage.getScene().getWindow().addEventFilter(WindowEvent.WINDOW_CLOSE_REQUEST, event -> train.setBooking(false));
+				stage.getScene().getWindow().addEventFilter(WindowEvent.WINDOW_CLOSE_REQUEST, event -> window.releaseHolds());
 				stage.getIcons().add(new Image("train.png"));
 				stage.show();
 			}
 		}
 	}
 	
+	/**
+	 * Offer the earliest train with seats left to each other destination, from the summaries rather than the seats of
+	 * every train, and open the one picked as if its row had been clicked.
+	 *
+	 * @param elsewhere The {@link List} of the {@link DestinationSummaries.Summary} of each other destination with seats.
+	 * @param summaries The {@link DestinationSummaries} to pass on should the train picked be full by now.
+	 * @param seatHolds The {@link SeatHolds} to hold selected seats with.
+	 */
+	private static void pickElsewhere (final List<DestinationSummaries.Summary> elsewhere, final DestinationSummaries summaries, final SeatHolds seatHolds)
+	{
+		final Map<String, Train> choices = new LinkedHashMap<>();
+		for (final DestinationSummaries.Summary summary : elsewhere)
+		{
+			final Train train = summary.getEarliestWithSpace();
+			choices.put(train.getDepartureTime() + " " + summary.getDestination() + " (" + summary.getWindowFree() + " window, " + summary.getAisleFree() + " aisle seats on " + summary.getTrainsWithSpace() + " train(s))", train);
+		}
+		final ChoiceDialog<String> dialog = new ChoiceDialog<>(choices.keySet().iterator().next(), choices.keySet());
+		dialog.setTitle("Other Destination");
+		dialog.setHeaderText("The first train with seats left to each other destination:");
+		final Stage stage = (Stage) dialog.getDialogPane().getScene().getWindow();
+		stage.getIcons().add(new Image("train.png"));
+		dialog.showAndWait().map(choices :: get).ifPresent(train -> TrainSelectionPane.handleOnMouseClicked(train, summaries, seatHolds));
+	}
+	
+	/**
+	 * Wait for a seat of any type on a full train, alerting once one is booked. A seat may also have been given back
+	 * since the train was shown as full, in which case it is booked straight away.
+	 *
+	 * @param train The {@link Train} to wait for.
+	 */
+	private static void joinWaitlist (final Train train)
+	{
+		final Waitlist.Waiter waiter = train.getWaitlist().join(Waitlist.SeatType.ANY, 0, booked -> Platform.runLater(() -> showBooked(booked)));
+		if (waiter != null && waiter.isWaiting())
+		{
+			final Alert alert = new Alert(Alert.AlertType.NONE, "You are on the waitlist, behind " + (train.getWaitlist().getWaiting() - 1) + " other(s). You will be told here when a seat is booked for you.", ButtonType.OK);
+			alert.setTitle("Waitlist");
+			final Stage stage = (Stage) alert.getDialogPane().getScene().getWindow();
+			stage.getIcons().add(new Image("train.png"));
+			alert.show();
+		}
+	}
+	
+	/**
+	 * Alert that a seat has been booked from the waitlist, or that the wait is over because the train no longer runs.
+	 *
+	 * @param waiter The {@link Waitlist.Waiter} whose wait ended.
+	 */
+	private static void showBooked (final Waitlist.Waiter waiter)
+	{
+		final Train train = waiter.getTrain();
+		final boolean booked = waiter.getSeat() >= 0;
+		final String text = booked ? "Seat " + SeatInventory.seatId(waiter.getSeat()) + " has been booked for you on the " + train.getDepartureTime() + " train to " + train.getDestination() + "." : "The " + train.getDepartureTime() + " train to " + train.getDestination() + " is no longer running, so you are no longer on its waitlist.";
+		final Alert alert = new Alert(Alert.AlertType.NONE, text, ButtonType.OK);
+		alert.setTitle(booked ? "Booked" : "Waitlist Ended");
+		final Stage stage = (Stage) alert.getDialogPane().getScene().getWindow();
+		stage.getIcons().add(new Image("train.png"));
+		alert.show();
+	}
+	
 	private static final class Bottom extends StackPane
 	{
 		/**
 		 * Construct a Rectangle beneath a label dictating the sum all all train seats remaining.
 		 *
-		 * @param seatsRemaining The {@link javafx.beans.property.IntegerProperty} listing seat remaining count.
+		 * @param seatsRemaining The {@link ReadOnlyIntegerProperty} listing seat remaining count.
 		 */
-		private Bottom (final IntegerProperty seatsRemaining)
+		private Bottom (final ReadOnlyIntegerProperty seatsRemaining)
 		{
 			super();
 			
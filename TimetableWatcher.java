@@ -0,0 +1,269 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the CSV file of the timetable and reloads it whenever it is saved, so the schedule can change without a
+ * restart. Only the lines that changed are parsed again: the lines before the first difference and after the last one
+ * keep the trains parsed from them last time. The file is parsed once in the background when watching starts, so
+ * that even the first edit has something to compare with.
+ */
+public final class TimetableWatcher implements Closeable
+{
+	// Editors often save in several writes; wait for them to settle before reading.
+	private static final long SETTLE_MILLIS = 200;
+	private static final Metrics.Histogram RELOAD = Metrics.histogram("timetable_reload_duration_seconds", null, "Time to read and parse an edited timetable file.");
+	private static final Metrics.Counter LINES_PARSED = Metrics.counter("timetable_reload_lines_parsed_total", null, "Lines of edited timetable files parsed again; unchanged lines are not.");
+	
+	private final Path file;
+	private final Consumer<Reload> onReload;
+	private final WatchService watcher;
+	private final Thread thread;
+	// Only used on the watching thread: the lines last read, and what each parsed to.
+	private List<String> lines;
+	private List<Object> parsed;
+	
+	/**
+	 * Construct a watcher; see {@link #start(Path, Consumer)}.
+	 *
+	 * @param file     The {@link Path} of the CSV file.
+	 * @param onReload The {@link Consumer} given each reload.
+	 * @param watcher  The {@link WatchService} watching the directory of the file.
+	 */
+	private TimetableWatcher (final Path file, final Consumer<Reload> onReload, final WatchService watcher)
+	{
+		this.file = file;
+		this.onReload = onReload;
+		this.watcher = watcher;
+		this.thread = new Thread(this :: run, "timetable-watcher");
+		this.thread.setDaemon(true);
+	}
+	
+	/**
+	 * Start watching a CSV file of trains.
+	 *
+	 * @param file     The {@link Path} of the CSV file.
+	 * @param onReload The {@link Consumer} given the new timetable every time the file is saved, on the watching thread.
+	 *
+	 * @return The running {@link TimetableWatcher}.
+	 *
+	 * @throws IOException If the directory of the file cannot be watched.
+	 */
+	public static TimetableWatcher start (final Path file, final Consumer<Reload> onReload) throws IOException
+	{
+		final Path directory = file.toAbsolutePath().getParent();
+		final WatchService watcher = FileSystems.getDefault().newWatchService();
+		try
+		{
+			directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		catch (final IOException e)
+		{
+			watcher.close();
+			throw e;
+		}
+		final TimetableWatcher timetableWatcher = new TimetableWatcher(file, onReload, watcher);
+		timetableWatcher.thread.start();
+		return timetableWatcher;
+	}
+	
+	/**
+	 * Stop watching the file.
+	 *
+	 * @throws IOException If the watch service cannot be closed.
+	 */
+	@Override
+	public void close () throws IOException
+	{
+		watcher.close();
+	}
+	
+	/**
+	 * The watching thread: parse the file as it is, then wait for it to change, let the writes settle, and reload it.
+	 */
+	private void run ()
+	{
+		try
+		{
+			lines = Files.readAllLines(file);
+			parsed = new ArrayList<>(lines.size());
+			lines.forEach(line -> parsed.add(parse(line)));
+		}
+		catch (final IOException e)
+		{
+			// The first reload parses the whole file instead.
+			lines = null;
+			parsed = null;
+		}
+		try
+		{
+			while (true)
+			{
+				WatchKey key = watcher.take();
+				boolean changed = false;
+				while (key != null)
+				{
+					changed |= touches(key);
+					key.reset();
+					key = changed ? watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS) : null;
+				}
+				if (changed)
+				{
+					reload();
+				}
+			}
+		}
+		catch (final ClosedWatchServiceException | InterruptedException e)
+		{
+			// Closed; stop watching.
+		}
+	}
+	
+	/**
+	 * Check whether any event of a key is about the file.
+	 *
+	 * @param key The {@link WatchKey} of the directory.
+	 *
+	 * @return True if the file changed, or events may have been lost.
+	 */
+	private boolean touches (final WatchKey key)
+	{
+		boolean touched = false;
+		for (final WatchEvent<?> event : key.pollEvents())
+		{
+			touched |= event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context());
+		}
+		return touched;
+	}
+	
+	/**
+	 * Read the file, parse the lines that differ from last time and hand over the resulting timetable. A file that
+	 * cannot be read, e.g. because it is being replaced, is left for its next change.
+	 */
+	private void reload ()
+	{
+		final long start = System.nanoTime();
+		final List<String> read;
+		try
+		{
+			read = Files.readAllLines(file);
+		}
+		catch (final IOException e)
+		{
+			return;
+		}
+		
+		// Lines [same, read.size() - sameAtEnd) are new; the rest are unchanged from last time.
+		final int old = lines == null ? 0 : lines.size();
+		int same = 0;
+		while (same < old && same < read.size() && lines.get(same).equals(read.get(same)))
+		{
+			same++;
+		}
+		int sameAtEnd = 0;
+		while (sameAtEnd < old - same && sameAtEnd < read.size() - same && lines.get(old - 1 - sameAtEnd).equals(read.get(read.size() - 1 - sameAtEnd)))
+		{
+			sameAtEnd++;
+		}
+		if (lines != null && same + sameAtEnd == old && old == read.size())
+		{
+			return;
+		}
+		
+		final List<Object> results = new ArrayList<>(read.size());
+		if (parsed != null)
+		{
+			results.addAll(parsed.subList(0, same));
+		}
+		for (int i = same; i < read.size() - sameAtEnd; i++)
+		{
+			results.add(parse(read.get(i)));
+		}
+		if (parsed != null)
+		{
+			results.addAll(parsed.subList(old - sameAtEnd, old));
+		}
+		LINES_PARSED.add(read.size() - sameAtEnd - same);
+		lines = read;
+		parsed = results;
+		
+		final List<Train> trains = new ArrayList<>(results.size());
+		final List<TrainLoader.LoadError> errors = new ArrayList<>(0);
+		for (int i = 0; i < results.size(); i++)
+		{
+			if (results.get(i) instanceof Train)
+			{
+				trains.add((Train) results.get(i));
+			}
+			else if (results.get(i) != null)
+			{
+				errors.add(new TrainLoader.LoadError(i + 1, read.get(i), (String) results.get(i)));
+			}
+		}
+		RELOAD.recordSince(start);
+		onReload.accept(new Reload(trains, errors));
+	}
+	
+	/**
+	 * Parse one line of the file.
+	 *
+	 * @param line The {@link String} line.
+	 *
+	 * @return The {@link Train} of the line, the {@link String} reason it is not one, or null for a blank line.
+	 */
+	private static Object parse (final String line)
+	{
+		if (line.isBlank())
+		{
+			return null;
+		}
+		try
+		{
+			return Train.parse(line);
+		}
+		catch (final IllegalArgumentException e)
+		{
+			return e.getMessage();
+		}
+	}
+	
+	public static final class Reload
+	{
+		private final List<Train> trains;
+		private final List<TrainLoader.LoadError> errors;
+		
+		/**
+		 * Construct the outcome of reading the file again.
+		 *
+		 * @param trains The {@link List} of every {@link Train} in the file, in file order.
+		 * @param errors The {@link List} of rows that could not be turned into trains.
+		 */
+		private Reload (final List<Train> trains, final List<TrainLoader.LoadError> errors)
+		{
+			this.trains = Collections.unmodifiableList(trains);
+			this.errors = Collections.unmodifiableList(errors);
+		}
+		
+		public List<Train> getTrains ()
+		{
+			return trains;
+		}
+		
+		public List<TrainLoader.LoadError> getErrors ()
+		{
+			return errors;
+		}
+	}
+}
\ No newline at end of file
@@ -1,106 +1,527 @@
-import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.CornerRadii;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.scene.shape.Rectangle;
 
+import java.time.LocalDate;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 public final class Train
 {
+	private static final SeatListener[] NO_LISTENERS = {};
+	private static final Metrics.Histogram SEAT_MAP_BUILD = Metrics.histogram("seat_map_build_duration_seconds", null, "Time from opening a seat map to its first rows being laid out.");
+	private static final Metrics.Histogram PUBLISH = Metrics.histogram("seats_remaining_publish_duration_seconds", null, "Time to publish the seats remaining of a train to the JavaFX properties and their listeners.");
+	
+	private final LocalDate departureDate;
 	private final LocalTime departureTime;
-	private final StringProperty destination;
-	private final IntegerProperty totalSeats;
-	private final IntegerProperty seatsRemaining;
-	private final BooleanProperty booking = new SimpleBooleanProperty(false);
-	private final ObservableList<Seat> seats = FXCollections.observableArrayList();
+	private final String destination;
+	private final List<String> stops;
+	private final SeatInventory inventory;
+	// Only kept for trains calling at stops on the way; null for those going straight to their destination.
+	private final LegInventory legs;
+	// Made when something first watches the count, so that a train used without a window never loads JavaFX.
+	private volatile IntegerProperty seatsRemaining;
+	private final Runnable publishSeatsRemaining = this :: refreshSeatsRemaining;
+	// Shared by every thread: a change made during anyone's batch is published when the last batch running ends.
+	private final AtomicInteger batchDepth = new AtomicInteger();
+	private volatile boolean retired = false;
+	private volatile SeatListener[] seatListeners = NO_LISTENERS;
+	// Only built once a group is booked, since keeping it current costs every booking a lock.
+	private volatile SeatRuns seatRuns;
+	// Its lock is taken by every change freeing a seat, so that the seat can go straight to a waiter.
+	private final Waitlist waitlist = new Waitlist(this);
+	
+	/**
+	 * Construct a train object of the timetable, which runs every day, with the provided parameters.
+	 *
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param destination   The {@link String} location the train will stop at.
+	 * @param totalSeats    The total seats (both available or otherwise) on the train.
+	 */
+	public Train (final LocalTime departureTime, final String destination, final int totalSeats)
+	{
+		this(null, departureTime, destination, new SeatInventory(totalSeats));
+	}
+	
+	/**
+	 * Construct a train object running on one day with the provided parameters.
+	 *
+	 * @param departureDate The {@link LocalDate} the train departs.
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param destination   The {@link String} location the train will stop at.
+	 * @param totalSeats    The total seats (both available or otherwise) on the train.
+	 */
+	public Train (final LocalDate departureDate, final LocalTime departureTime, final String destination, final int totalSeats)
+	{
+		this(departureDate, departureTime, destination, new SeatInventory(totalSeats));
+	}
+	
+	/**
+	 * Construct a train object of the timetable that calls at stops on the way to its destination, and whose seats can
+	 * be booked for part of the way.
+	 *
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param stops         The {@link List} of {@link String} stops after the departure, in order, ending with the
+	 *                      destination.
+	 * @param totalSeats    The total seats (both available or otherwise) on the train.
+	 */
+	public Train (final LocalTime departureTime, final List<String> stops, final int totalSeats)
+	{
+		this(null, departureTime, stops, new SeatInventory(totalSeats), null);
+	}
 	
 	/**
-	 * Construct a train object with the provided parameters.
+	 * Construct a train object around an existing inventory of seats, such as one restored from disk.
 	 *
-	 * @param departureTime The {@link String} time the train departs.
+	 * @param departureDate The {@link LocalDate} the train departs, or null for a train of the timetable.
+	 * @param departureTime The {@link LocalTime} the train departs.
 	 * @param destination   The {@link String} location the train will stop at.
-	 * @param totalSeats    The {@link String} total seats (both available or otherwise) on the train.
+	 * @param inventory     The {@link SeatInventory} holding which seats are booked.
+	 */
+	Train (final LocalDate departureDate, final LocalTime departureTime, final String destination, final SeatInventory inventory)
+	{
+		this(departureDate, departureTime, List.of(destination), inventory, null);
+	}
+	
+	/**
+	 * Construct a train object calling at stops on the way around existing inventories, such as ones restored from
+	 * disk.
+	 *
+	 * @param departureDate The {@link LocalDate} the train departs, or null for a train of the timetable.
+	 * @param departureTime The {@link LocalTime} the train departs.
+	 * @param stops         The {@link List} of {@link String} stops after the departure, ending with the destination.
+	 * @param inventory     The {@link SeatInventory} holding which seats are taken for the whole trip or any part of it.
+	 * @param legs          The {@link LegInventory} holding which seats are booked for which legs, or null to start
+	 *                      with none booked for part of the way.
 	 */
-	private Train (final String departureTime, final String destination, final String totalSeats)
+	Train (final LocalDate departureDate, final LocalTime departureTime, final List<String> stops, final SeatInventory inventory, final LegInventory legs)
 	{
-		this.departureTime = LocalTime.parse(departureTime.trim(), DateTimeFormatter.ofPattern("HH.mm"));
-		this.destination = new SimpleStringProperty(destination.trim());
-		this.totalSeats = new SimpleIntegerProperty(Integer.parseInt(totalSeats.trim()));
-		this.seatsRemaining = new SimpleIntegerProperty(this.totalSeats.get());
+		if (stops.isEmpty() || stops.size() > LegInventory.MAX_LEGS)
+		{
+			throw new IllegalArgumentException("A train calls at from 1 to " + LegInventory.MAX_LEGS + " stops, not " + stops.size() + ".");
+		}
+		this.departureDate = departureDate;
+		this.departureTime = departureTime;
+		this.destination = stops.get(stops.size() - 1);
+		this.stops = List.copyOf(stops);
+		this.inventory = inventory;
+		this.legs = stops.size() == 1 ? null : legs != null ? legs : new LegInventory(inventory.getTotalSeats(), stops.size());
+	}
+	
+	/**
+	 * Construct a train of the same route and size as this one with every seat available.
+	 *
+	 * @param departureDate The {@link LocalDate} the copy departs, or null for a train of the timetable.
+	 *
+	 * @return The new {@link Train}.
+	 */
+	Train copy (final LocalDate departureDate)
+	{
+		return new Train(departureDate, departureTime, stops, new SeatInventory(getTotalSeats()), null);
+	}
+	
+	/**
+	 * Construct a train object from a single line in CSV format: departure time (HH.mm), destination, total seats, and
+	 * optionally the stops on the way separated by '|', e.g. "07.15,Portland,24,Sacramento|Redding|Eugene". The line is
+	 * read in one pass without splitting or regular expressions.
+	 *
+	 * @param line The {@link String} CSV formatted line to be broken up and used to construct a train object.
+	 *
+	 * @return The new {@link Train}.
+	 *
+	 * @throws IllegalArgumentException If the line is not a well formed train record.
+	 */
+	public static Train parse (final String line)
+	{
+		final int firstComma = line.indexOf(',');
+		final int secondComma = firstComma < 0 ? - 1 : line.indexOf(',', firstComma + 1);
+		final int thirdComma = secondComma < 0 ? - 1 : line.indexOf(',', secondComma + 1);
+		if (secondComma < 0 || (thirdComma >= 0 && line.indexOf(',', thirdComma + 1) >= 0))
+		{
+			throw new IllegalArgumentException("Expected 3 or 4 fields: departure time, destination, total seats, stops on the way.");
+		}
 		
-		// Load into the seats object a new seat as needed and identified per their position+window/aisle.
-		for (int rowIndex = 0; rowIndex < this.totalSeats.get() / 2; rowIndex++)
+		final String destination = line.substring(firstComma + 1, secondComma).trim();
+		if (destination.isEmpty())
 		{
-			this.seats.add(new Seat(rowIndex + "W"));
-			this.seats.add(new Seat(rowIndex + "A"));
+			throw new IllegalArgumentException("Destination is empty.");
 		}
-		// Add 1 more seat if total seats is odd.
-		if (this.totalSeats.get() > this.seats.size())
+		
+		final int seats = parseSeats(line, secondComma + 1, thirdComma < 0 ? line.length() : thirdComma);
+		if (thirdComma < 0)
 		{
-			this.seats.add(new Seat(this.getSeats().size() + "W"));
+			return new Train(parseTime(line, firstComma), destination, seats);
+		}
+		return new Train(parseTime(line, firstComma), parseStops(line, thirdComma + 1, destination), seats);
+	}
+	
+	/**
+	 * Read an HH.mm time from the start of a line up to the end index, ignoring surrounding whitespace.
+	 *
+	 * @param line The {@link String} line holding the time.
+	 * @param end  The index just past the time field.
+	 *
+	 * @return The parsed {@link LocalTime}.
+	 */
+	static LocalTime parseTime (final String line, final int end)
+	{
+		int start = 0;
+		int stop = end;
+		while (start < stop && Character.isWhitespace(line.charAt(start)))
+		{
+			start++;
+		}
+		while (stop > start && Character.isWhitespace(line.charAt(stop - 1)))
+		{
+			stop--;
 		}
 		
-		this.seats.forEach(seat -> seat.availableProperty().addListener(observable -> this.seatsRemaining.set(Math.toIntExact(this.seats.stream().filter(Seat :: isAvailable).count()))));
+		if (stop - start != 5 || line.charAt(start + 2) != '.')
+		{
+			throw new IllegalArgumentException("Departure time '" + line.substring(start, stop) + "' is not in HH.mm format.");
+		}
+		final int hour = digit(line, start) * 10 + digit(line, start + 1);
+		final int minute = digit(line, start + 3) * 10 + digit(line, start + 4);
+		if (hour > 23 || minute > 59)
+		{
+			throw new IllegalArgumentException("Departure time '" + line.substring(start, stop) + "' is out of range.");
+		}
+		return LocalTime.of(hour, minute);
 	}
 	
 	/**
-	 * Construct a train object by passing in a single string in CSV format.
+	 * Read a non-negative seat count from the start index up to the end index, ignoring surrounding whitespace.
+	 *
+	 * @param line  The {@link String} line holding the seat count.
+	 * @param start The index of the first character of the seat count field.
+	 * @param end   The index just past the seat count field.
 	 *
-	 * @param line The {@link String} CSV formatting line to be broken up an used to construct a train object.
+	 * @return The parsed total number of seats.
 	 */
-	public Train (final String line)
+	private static int parseSeats (final String line, final int start, final int end)
 	{
-		this(line.split(",")[0], line.split(",")[1], line.split(",")[2]);
+		int index = start;
+		int stop = end;
+		while (index < stop && Character.isWhitespace(line.charAt(index)))
+		{
+			index++;
+		}
+		while (stop > index && Character.isWhitespace(line.charAt(stop - 1)))
+		{
+			stop--;
+		}
+		if (index == stop)
+		{
+			throw new IllegalArgumentException("Total seats is empty.");
+		}
+		
+		long seats = 0;
+		for (; index < stop; index++)
+		{
+			seats = seats * 10 + digit(line, index);
+			if (seats > Integer.MAX_VALUE)
+			{
+				throw new IllegalArgumentException("Total seats is too large.");
+			}
+		}
+		return (int) seats;
+	}
+	
+	/**
+	 * Read the stops on the way from the start index to the end of a line, separated by '|' and ignoring whitespace
+	 * around each. A blank field means the train calls nowhere on the way.
+	 *
+	 * @param line        The {@link String} line holding the stops.
+	 * @param start       The index of the first character of the stops field.
+	 * @param destination The {@link String} destination, added as the last stop.
+	 *
+	 * @return The {@link List} of every stop after the departure, ending with the destination.
+	 */
+	private static List<String> parseStops (final String line, final int start, final String destination)
+	{
+		final List<String> stops = new ArrayList<>();
+		if (! line.substring(start).isBlank())
+		{
+			for (int from = start; from <= line.length(); )
+			{
+				final int bar = line.indexOf('|', from);
+				final int end = bar < 0 ? line.length() : bar;
+				final String stop = line.substring(from, end).trim();
+				if (stop.isEmpty())
+				{
+					throw new IllegalArgumentException("Stop " + (stops.size() + 1) + " on the way is empty.");
+				}
+				stops.add(stop);
+				from = end + 1;
+			}
+		}
+		stops.add(destination);
+		if (stops.size() > LegInventory.MAX_LEGS)
+		{
+			throw new IllegalArgumentException("A train calls at no more than " + LegInventory.MAX_LEGS + " stops.");
+		}
+		return stops;
+	}
+	
+	/**
+	 * Read a single decimal digit.
+	 *
+	 * @param line  The {@link String} line holding the digit.
+	 * @param index The index of the digit.
+	 *
+	 * @return The value of the digit.
+	 */
+	private static int digit (final String line, final int index)
+	{
+		final char c = line.charAt(index);
+		if (c < '0' || c > '9')
+		{
+			throw new IllegalArgumentException("Unexpected character '" + c + "' at column " + (index + 1) + ".");
+		}
+		return c - '0';
+	}
+	
+	/**
+	 * Makes the JavaFX properties of a train. They are made in a class of their own so that {@link Train} itself only
+	 * names their types: the bytecode verifier loads JavaFX to check that a {@link SimpleIntegerProperty} is an
+	 * {@link IntegerProperty} wherever one is made.
+	 */
+	private static final class Properties
+	{
+		private Properties ()
+		{
+		}
+		
+		/**
+		 * Make the seats remaining property of a train.
+		 *
+		 * @param train The {@link Train} the property belongs to.
+		 *
+		 * @return The {@link IntegerProperty}, at 0 until set.
+		 */
+		private static IntegerProperty seatsRemaining (final Train train)
+		{
+			return new SimpleIntegerProperty(train, "seatsRemaining", 0);
+		}
 	}
 	
-	public final class SeatSelectionPane extends GridPane
+	public final class SeatSelectionPane extends ListView<Integer>
 	{
+		private final List<Seat> seats = Train.this.getSeats();
+		private final List<Row> rows = new ArrayList<>();
+		private final SeatListener seatListener = (train, index, available) -> PulseUpdater.post(this, this :: seatsChanged);
+		private final SeatHolds seatHolds;
+		// The seats this list holds, by index; only used on the JavaFX thread. A hold may have expired since.
+		private final Map<Integer, SeatHolds.Hold> holds = new HashMap<>();
+		private long buildStart = System.nanoTime();
+		
+		/**
+		 * Construct the GUI of the seats to select as a scrolling list of rows, 2 seats per row. Only the rows in view
+		 * have nodes; they are recycled as the list scrolls, so a train of any size opens quickly. Seats booked elsewhere
+		 * while the list is shown change color at the next pulse. Selecting a seat holds it until the selection is
+		 * booked with {@link #confirmHolds()}, so others may book the rest of the train meanwhile.
+		 *
+		 * @param seatHolds The {@link SeatHolds} to hold selected seats with.
+		 */
+		public SeatSelectionPane (final SeatHolds seatHolds)
+		{
+			super(FXCollections.observableList(new AbstractList<>()
+			{
+				@Override
+				public Integer get (final int index)
+				{
+					return index;
+				}
+				
+				@Override
+				public int size ()
+				{
+					return (Train.this.getTotalSeats() + 1) / 2;
+				}
+			}));
+			
+			this.seatHolds = seatHolds;
+			this.setCellFactory(listView ->
+								{
+									final Row row = new Row();
+									rows.add(row);
+									return row;
+								});
+			this.setFixedCellSize(50);
+			this.setFocusTraversable(false);
+			this.setBackground(new Background(new BackgroundFill(Color.GREY, CornerRadii.EMPTY, Insets.EMPTY)));
+			
+			addSeatListener(seatListener);
+		}
+		
+		/**
+		 * Lay out the rows in view. The first layout is when the rows are built, so it ends the build time of the map.
+		 */
+		@Override
+		protected void layoutChildren ()
+		{
+			super.layoutChildren();
+			if (buildStart != 0 && ! rows.isEmpty())
+			{
+				SEAT_MAP_BUILD.recordSince(buildStart);
+				buildStart = 0;
+			}
+		}
+		
+		/**
+		 * Check whether this list holds a seat.
+		 *
+		 * @param index The index of the seat.
+		 *
+		 * @return True if the seat is held by this list and the hold has not expired.
+		 */
+		public boolean isHeld (final int index)
+		{
+			final SeatHolds.Hold hold = holds.get(index);
+			return hold != null && hold.isActive();
+		}
+		
+		/**
+		 * Hold a seat, or give it up if this list already holds it.
+		 *
+		 * @param index The index of the seat.
+		 *
+		 * @return False if the seat was taken by someone else, true otherwise.
+		 */
+		public boolean toggleHold (final int index)
+		{
+			final SeatHolds.Hold held = holds.remove(index);
+			if (held != null && held.release())
+			{
+				return true;
+			}
+			final SeatHolds.Hold hold = seatHolds.hold(Train.this, index);
+			if (hold == null)
+			{
+				return false;
+			}
+			holds.put(index, hold);
+			return true;
+		}
+		
+		/**
+		 * Book every seat this list holds.
+		 *
+		 * @return The number of seats that could not be booked because their holds had expired.
+		 */
+		public int confirmHolds ()
+		{
+			int expired = 0;
+			for (final SeatHolds.Hold hold : holds.values())
+			{
+				if (! BookingEngine.confirm(hold))
+				{
+					expired++;
+				}
+			}
+			holds.clear();
+			rows.forEach(Row :: showSeats);
+			return expired;
+		}
+		
+		/**
+		 * Give up every seat this list holds, e.g. because its window is closing.
+		 */
+		public void releaseHolds ()
+		{
+			holds.values().forEach(SeatHolds.Hold :: release);
+			holds.clear();
+		}
+		
 		/**
-		 * Construct the GUI of the seats to select. Creates a row in the following order:
-		 * [window, window_seat, aisle_seat, aisle, window]
+		 * Show the current state of the seats in view. Once the list is no longer on screen it stops listening instead;
+		 * it is not told when its window closes.
 		 */
-		public SeatSelectionPane ()
+		private void seatsChanged ()
+		{
+			if (this.getScene() == null || this.getScene().getWindow() == null || ! this.getScene().getWindow().isShowing())
+			{
+				removeSeatListener(seatListener);
+				return;
+			}
+			rows.forEach(Row :: showSeats);
+		}
+		
+		private final class Row extends ListCell<Integer>
 		{
-			super();
+			private final Seat.SeatPane windowSeat = new Seat.SeatPane(SeatSelectionPane.this);
+			private final Seat.SeatPane aisleSeat = new Seat.SeatPane(SeatSelectionPane.this);
+			private final HBox row = new HBox(5, new Window(), windowSeat, aisleSeat, new Aisle(), new Window());
 			
-			// Generate 1 row at a time based on half the number of seats since 2 seats per row.
-			int seatIndex = 0;
-			for (int rowIndex = 0; rowIndex < Train.this.getTotalSeats() / 2; rowIndex++)
+			/**
+			 * Construct a reusable row in the following order: [window, window_seat, aisle_seat, aisle, window]
+			 */
+			private Row ()
 			{
-				this.add(new Window(), 0, rowIndex);
-				this.add(seats.get(seatIndex++).new SeatPane(), 1, rowIndex);
-				this.add(seats.get(seatIndex++).new SeatPane(), 2, rowIndex);
-				this.add(new Aisle(), 3, rowIndex);
-				this.add(new Window(), 4, rowIndex);
+				super();
+				
+				// Inline so that the grey wins over the selection and hover colors of the default style sheet.
+				this.setStyle("-fx-background-color: grey; -fx-padding: 0;");
 			}
-			// Add 1 more if odd number of total seats.
-			if (seatIndex < Train.this.getSeats().size())
+			
+			/**
+			 * Point the row at the seats of another row of the train. The aisle seat is hidden on the last row of a train
+			 * with an odd number of seats.
+			 *
+			 * @param rowIndex The index of the row to show.
+			 * @param empty    True if the cell has no row to show.
+			 */
+			@Override
+			protected void updateItem (final Integer rowIndex, final boolean empty)
 			{
-				this.add(new Window(), 0, Train.this.getSeats().size());
-				this.add(seats.get(seatIndex).new SeatPane(), 1, Train.this.getSeats().size());
-				this.add(new Aisle(), 3, Train.this.getSeats().size());
-				this.add(new Window(), 4, Train.this.getSeats().size());
+				super.updateItem(rowIndex, empty);
+				
+				if (empty || rowIndex == null)
+				{
+					this.setGraphic(null);
+					return;
+				}
+				
+				showSeats();
+				this.setGraphic(row);
 			}
 			
-			this.setHgap(5);
-			this.setBackground(new Background(new BackgroundFill(Color.GREY, CornerRadii.EMPTY, Insets.EMPTY)));
+			/**
+			 * Show the current state of the seats of the row in view, if any.
+			 */
+			private void showSeats ()
+			{
+				if (this.isEmpty() || this.getItem() == null)
+				{
+					return;
+				}
+				
+				final int seatIndex = this.getItem() * 2;
+				windowSeat.show(seats.get(seatIndex));
+				aisleSeat.setVisible(seatIndex + 1 < seats.size());
+				if (aisleSeat.isVisible())
+				{
+					aisleSeat.show(seats.get(seatIndex + 1));
+				}
+			}
 		}
 		
 		private final class Window extends StackPane
@@ -128,6 +549,16 @@ public final class Train
 		}
 	}
 	
+	/**
+	 * Get the day the train departs.
+	 *
+	 * @return The {@link LocalDate}, or null for a train of the timetable, which runs every day.
+	 */
+	public LocalDate getDepartureDate ()
+	{
+		return departureDate;
+	}
+	
 	public LocalTime getDepartureTime ()
 	{
 		return departureTime;
@@ -135,36 +566,723 @@ public final class Train
 	
 	public String getDestination ()
 	{
-		return destination.get();
+		return destination;
+	}
+	
+	/**
+	 * Get the stops the train calls at. Stops are numbered from 0 for the station the train departs from, so stop i is
+	 * at index i - 1 of the list, and the train has one leg between each pair of stops.
+	 *
+	 * @return The {@link List} of {@link String} stops after the departure, in order, ending with the destination.
+	 */
+	public List<String> getStops ()
+	{
+		return stops;
 	}
 	
 	public int getTotalSeats ()
 	{
-		return totalSeats.get();
+		return inventory.getTotalSeats();
 	}
 	
+	/**
+	 * Get the seats remaining: as last published to {@link #seatsRemainingProperty()} once anything watches it, which
+	 * is only current on the JavaFX thread, and straight from the inventory until then, e.g. when there is no window.
+	 *
+	 * @return The number of seats remaining.
+	 */
 	public int getSeatsRemaining ()
 	{
-		return seatsRemaining.get();
+		final IntegerProperty property = seatsRemaining;
+		return property == null ? inventory.getSeatsRemaining() : property.get();
 	}
 	
+	/**
+	 * Get the seats remaining as a JavaFX property, kept current on the JavaFX thread from the first call on. Call it on
+	 * the JavaFX thread.
+	 *
+	 * @return The {@link IntegerProperty}.
+	 */
 	public IntegerProperty seatsRemainingProperty ()
 	{
-		return seatsRemaining;
+		IntegerProperty property = seatsRemaining;
+		if (property == null)
+		{
+			synchronized (this)
+			{
+				property = seatsRemaining;
+				if (property == null)
+				{
+					// Published before the count is read, so a booking meanwhile either sees it and posts or is counted.
+					property = Properties.seatsRemaining(this);
+					seatsRemaining = property;
+					property.set(inventory.getSeatsRemaining());
+				}
+			}
+		}
+		return property;
+	}
+	
+	SeatInventory getInventory ()
+	{
+		return inventory;
+	}
+	
+	/**
+	 * Get the seats booked for part of the way.
+	 *
+	 * @return The {@link LegInventory}, or null if the train calls nowhere on the way.
+	 */
+	LegInventory getLegInventory ()
+	{
+		return legs;
+	}
+	
+	/**
+	 * Get the passengers waiting for a seat once the train is full. A train replacing this one starts with nobody
+	 * waiting.
+	 *
+	 * @return The {@link Waitlist} of this train.
+	 */
+	public Waitlist getWaitlist ()
+	{
+		return waitlist;
+	}
+	
+	/**
+	 * Check whether a seat on this train has not yet been booked.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return True if the seat is available.
+	 */
+	public boolean isSeatAvailable (final int index)
+	{
+		return inventory.isAvailable(index);
+	}
+	
+	/**
+	 * Atomically mark a seat on this train as available or booked, keeping the seats remaining count up to date. Inside
+	 * a {@link #batchUpdate(Runnable)} the count is only published once the batch finishes. A seat cancelled while
+	 * someone waits for one of its type is booked for them instead; see {@link Waitlist}.
+	 *
+	 * @param index     The index of the seat.
+	 * @param available The new availability of the seat.
+	 *
+	 * @return True if this call changed the seat or gave it to a waiter; false if it was already in that state or the
+	 * train is retired.
+	 */
+	public boolean setSeatAvailable (final int index, final boolean available)
+	{
+		if (available && legs != null)
+		{
+			// A seat booked for part of the way is given back leg by leg instead; see cancelSeat(int, int, int).
+			synchronized (legs)
+			{
+				return legs.getLegs(index) == 0 && changeSeat(index, true);
+			}
+		}
+		return changeSeat(index, available);
+	}
+	
+	/**
+	 * Mark a seat as available or booked; see {@link #setSeatAvailable(int, boolean)}.
+	 *
+	 * @param index     The index of the seat.
+	 * @param available The new availability of the seat.
+	 *
+	 * @return True if this call changed the seat.
+	 */
+	private boolean changeSeat (final int index, final boolean available)
+	{
+		if (available)
+		{
+			return freeSeat(index);
+		}
+		if (retired || ! inventory.setAvailable(index, false))
+		{
+			return false;
+		}
+		seatChanged(index, false);
+		publishSeatsRemaining();
+		return true;
+	}
+	
+	/**
+	 * Give back a booked seat: to the first waiter for a seat of its type, or else to everyone. A seat handed to a waiter
+	 * stays booked throughout, so its listeners are not told. A held seat is only given back by its hold.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return True if the seat was booked and is now free or booked for a waiter; false if it was free or held.
+	 */
+	private boolean freeSeat (final int index)
+	{
+		synchronized (waitlist)
+		{
+			if (retired || inventory.isAvailable(index) || inventory.isHeld(index))
+			{
+				return false;
+			}
+			final Waitlist.Waiter waiter = waitlist.next(SeatInventory.isWindow(index));
+			if (waiter != null)
+			{
+				waiter.book(index);
+				return true;
+			}
+			if (! inventory.setAvailable(index, true))
+			{
+				return false;
+			}
+		}
+		seatChanged(index, true);
+		publishSeatsRemaining();
+		return true;
+	}
+	
+	/**
+	 * Book the first available seat of a type without scanning the seats; see {@link SeatInventory#nextAvailable}.
+	 *
+	 * @param window True for a window seat, false for an aisle seat.
+	 *
+	 * @return The index of the seat now booked, or -1 if no seat of that type is left or the train is retired.
+	 */
+	public int bookNextSeat (final boolean window)
+	{
+		// Checked on every try: once the train is retired a free seat is refused forever, and would be found again.
+		while (! retired)
+		{
+			final int index = inventory.nextAvailable(window);
+			if (index < 0 || setSeatAvailable(index, false))
+			{
+				return index;
+			}
+		}
+		return - 1;
+	}
+	
+	/**
+	 * Atomically book several seats on this train, all or nothing.
+	 *
+	 * @param indices The indices of the seats.
+	 *
+	 * @return True if every seat was available and is now booked; false if nothing was booked, e.g. because the train
+	 * is retired.
+	 */
+	public boolean bookSeats (final int... indices)
+	{
+		// A booking that fails part way gives back the seats it claimed, which a cancellation in between would free.
+		synchronized (waitlist)
+		{
+			if (retired || ! inventory.bookAll(indices))
+			{
+				return false;
+			}
+		}
+		Arrays.stream(indices).distinct().forEach(index -> seatChanged(index, false));
+		publishSeatsRemaining();
+		return true;
+	}
+	
+	/**
+	 * Check whether a seat can be booked from one stop to another; see {@link #getStops()} for how stops are numbered.
+	 * Only the words of the seat are read, whatever the number of stops.
+	 *
+	 * @param index The index of the seat.
+	 * @param from  The stop to get on at.
+	 * @param to    The stop to get off at.
+	 *
+	 * @return True if the seat is free for every leg in between.
+	 */
+	public boolean isSeatAvailable (final int index, final int from, final int to)
+	{
+		checkStops(from, to);
+		return isWholeTrip(from, to) ? inventory.isAvailable(index) : legs.isFree(inventory, index, from, to);
+	}
+	
+	/**
+	 * Count the seats that can be booked from one stop to another, 64 seats at a time.
+	 *
+	 * @param from The stop to get on at.
+	 * @param to   The stop to get off at.
+	 *
+	 * @return The number of seats free for every leg in between.
+	 */
+	public int getSeatsRemaining (final int from, final int to)
+	{
+		checkStops(from, to);
+		return isWholeTrip(from, to) ? inventory.getSeatsRemaining() : legs.countFree(inventory, from, to);
+	}
+	
+	/**
+	 * Book a seat from one stop to another. A booking of the whole trip is an ordinary booking; one of part of the way
+	 * also takes the seat in the {@link SeatInventory} if it is the first of the seat, so that it is only sold for the
+	 * whole trip again once every leg is free.
+	 *
+	 * @param index The index of the seat.
+	 * @param from  The stop to get on at.
+	 * @param to    The stop to get off at.
+	 *
+	 * @return True if the seat was free for every leg in between and is now booked for them; false if it was taken or
+	 * the train is retired.
+	 */
+	public boolean bookSeat (final int index, final int from, final int to)
+	{
+		checkStops(from, to);
+		if (isWholeTrip(from, to))
+		{
+			return setSeatAvailable(index, false);
+		}
+		synchronized (legs)
+		{
+			final long booked = legs.getLegs(index);
+			final long wanted = LegInventory.mask(from, to);
+			if (retired || (booked & wanted) != 0 || (booked == 0 && ! changeSeat(index, false)))
+			{
+				return false;
+			}
+			legs.setLegs(index, booked | wanted);
+			legsChanged(index, booked | wanted);
+			return true;
+		}
+	}
+	
+	/**
+	 * Book the first seat of a type free from one stop to another, preferring seats already booked for other legs; see
+	 * {@link LegInventory#nextFree}.
+	 *
+	 * @param window True for a window seat, false for an aisle seat.
+	 * @param from   The stop to get on at.
+	 * @param to     The stop to get off at.
+	 *
+	 * @return The index of the seat now booked, or -1 if no seat of that type is free for the legs in between.
+	 */
+	public int bookNextSeat (final boolean window, final int from, final int to)
+	{
+		checkStops(from, to);
+		if (isWholeTrip(from, to))
+		{
+			return bookNextSeat(window);
+		}
+		synchronized (legs)
+		{
+			while (! retired)
+			{
+				// Only a booking of the whole trip or a hold can take the seat meanwhile, and then it is not found again.
+				final int index = legs.nextFree(inventory, window, from, to);
+				if (index < 0 || bookSeat(index, from, to))
+				{
+					return index;
+				}
+			}
+			return - 1;
+		}
+	}
+	
+	/**
+	 * Cancel the booking of a seat from one stop to another. Once no leg of the seat is booked, it is available for the
+	 * whole trip again.
+	 *
+	 * @param index The index of the seat.
+	 * @param from  The stop the passenger was to get on at.
+	 * @param to    The stop the passenger was to get off at.
+	 *
+	 * @return True if the seat was booked for every leg in between and is now free for them because of this call.
+	 */
+	public boolean cancelSeat (final int index, final int from, final int to)
+	{
+		checkStops(from, to);
+		if (legs == null)
+		{
+			return setSeatAvailable(index, true);
+		}
+		synchronized (legs)
+		{
+			final long booked = legs.getLegs(index);
+			final long wanted = LegInventory.mask(from, to);
+			if (booked == 0)
+			{
+				return isWholeTrip(from, to) && changeSeat(index, true);
+			}
+			if (retired || (booked & wanted) != wanted)
+			{
+				return false;
+			}
+			legs.setLegs(index, booked & ~ wanted);
+			legsChanged(index, booked & ~ wanted);
+			if (booked == wanted)
+			{
+				changeSeat(index, true);
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * Check whether a journey is the whole trip, which needs nothing but the {@link SeatInventory}.
+	 *
+	 * @param from The stop to get on at.
+	 * @param to   The stop to get off at.
+	 *
+	 * @return True if the journey is from the departure to the destination.
+	 */
+	private boolean isWholeTrip (final int from, final int to)
+	{
+		return from == 0 && to == stops.size();
+	}
+	
+	/**
+	 * Ensure a journey runs forwards between stops of this train.
+	 *
+	 * @param from The stop to get on at.
+	 * @param to   The stop to get off at.
+	 */
+	private void checkStops (final int from, final int to)
+	{
+		if (from < 0 || from >= to || to > stops.size())
+		{
+			throw new IllegalArgumentException("There is no journey from stop " + from + " to stop " + to + " on a train calling at " + stops.size() + " stops.");
+		}
+	}
+	
+	/**
+	 * Book a group of seats side by side, all or nothing: the first block of free seats long enough, moved along by a
+	 * seat where that starts it at a window seat so that the group fills whole rows. Blocks are found through the
+	 * {@link SeatRuns} of the train rather than by scanning its seats. If another booking takes part of the block
+	 * first, the next block is tried.
+	 *
+	 * @param seats The number of seats wanted together.
+	 *
+	 * @return The index of the first seat of the block now booked, or -1 if no block of that many seats is free.
+	 */
+	public int bookGroup (final int seats)
+	{
+		final SeatRuns runs = getSeatRuns();
+		while (! retired)
+		{
+			int start = runs.firstRun(seats);
+			if (start < 0)
+			{
+				return - 1;
+			}
+			if (! SeatInventory.isWindow(start) && start + seats < getTotalSeats() && inventory.isAvailable(start + seats))
+			{
+				start++;
+			}
+			if (bookSeats(IntStream.range(start, start + seats).toArray()))
+			{
+				return start;
+			}
+			// Taken since the runs were last told; catch them up before looking again.
+			runs.refresh(start, start + seats);
+		}
+		return - 1;
+	}
+	
+	/**
+	 * Get the longest run of free seats side by side, i.e. the largest group that can still sit together.
+	 *
+	 * @return The number of seats.
+	 */
+	public int getLongestFreeRun ()
+	{
+		return getSeatRuns().longestRun();
+	}
+	
+	/**
+	 * Get the runs of free seats, building them on first use. They listen from before they are built, so no change made
+	 * meanwhile is missed.
+	 *
+	 * @return The {@link SeatRuns} of this train.
+	 */
+	private SeatRuns getSeatRuns ()
+	{
+		SeatRuns runs = seatRuns;
+		if (runs == null)
+		{
+			synchronized (this)
+			{
+				runs = seatRuns;
+				if (runs == null)
+				{
+					runs = new SeatRuns(inventory);
+					addSeatListener(runs);
+					runs.rebuild();
+					seatRuns = runs;
+				}
+			}
+		}
+		return runs;
+	}
+	
+	/**
+	 * Take a seat for a while without booking it; see {@link SeatHolds}. Listeners are told through
+	 * {@link SeatListener#seatHeld(Train, int, boolean)}.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return True if the seat was available and is now held; false if it was taken or the train is retired.
+	 */
+	boolean holdSeat (final int index)
+	{
+		// A hold takes the seat before marking it held, so a seat given back in between would look booked and be freed.
+		synchronized (waitlist)
+		{
+			if (retired || ! inventory.hold(index))
+			{
+				return false;
+			}
+		}
+		seatHeld(index, true);
+		publishSeatsRemaining();
+		return true;
 	}
 	
-	public boolean isBooking ()
+	/**
+	 * Book a held seat. Its seat listeners are told of the booking as if the seat had been booked just now.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return True if the seat was held and is now booked; false if it was not held or the train is retired, in which
+	 * case any hold is released.
+	 */
+	boolean confirmHeldSeat (final int index)
 	{
-		return booking.get();
+		if (retired)
+		{
+			releaseHeldSeat(index);
+			return false;
+		}
+		if (! inventory.confirm(index))
+		{
+			return false;
+		}
+		seatChanged(index, false);
+		return true;
 	}
 	
-	public void setBooking (final boolean booking)
+	/**
+	 * Make a held seat available again, or book it for the first waiter for a seat of its type.
+	 *
+	 * @param index The index of the seat.
+	 *
+	 * @return True if the seat was held and is now available or booked for a waiter.
+	 */
+	boolean releaseHeldSeat (final int index)
 	{
-		this.booking.set(booking);
+		synchronized (waitlist)
+		{
+			// Booked first, so that the seat is never free while a waiter is looked for.
+			if (! inventory.confirm(index))
+			{
+				return false;
+			}
+			final Waitlist.Waiter waiter = retired ? null : waitlist.next(SeatInventory.isWindow(index));
+			if (waiter != null)
+			{
+				seatChanged(index, false);
+				waiter.book(index);
+				return true;
+			}
+			inventory.setAvailable(index, true);
+		}
+		seatHeld(index, false);
+		publishSeatsRemaining();
+		return true;
+	}
+	
+	/**
+	 * Stop taking bookings and cancellations because the train has been taken off the timetable or replaced by one of
+	 * another size. Anything still showing the train, such as an open seat map, is then refused rather than booking a
+	 * seat nobody keeps. Its seats no longer change once this returns, even by a booking already under way.
+	 */
+	void retire ()
+	{
+		retired = true;
+		inventory.retire();
+	}
+	
+	boolean isRetired ()
+	{
+		return retired;
+	}
+	
+	/**
+	 * Tell every seat listener of a change.
+	 *
+	 * @param index     The index of the seat.
+	 * @param available The new availability of the seat.
+	 */
+	private void seatChanged (final int index, final boolean available)
+	{
+		for (final SeatListener listener : seatListeners)
+		{
+			listener.seatChanged(this, index, available);
+		}
+	}
+	
+	/**
+	 * Tell every seat listener of a seat booked for other legs.
+	 *
+	 * @param index  The index of the seat.
+	 * @param booked The legs the seat is now booked for, bit l for leg l.
+	 */
+	private void legsChanged (final int index, final long booked)
+	{
+		for (final SeatListener listener : seatListeners)
+		{
+			listener.legsChanged(this, index, booked);
+		}
+	}
+	
+	/**
+	 * Tell every seat listener of a hold being taken or given up.
+	 *
+	 * @param index The index of the seat.
+	 * @param held  True if the seat is now held, false if it is available again.
+	 */
+	private void seatHeld (final int index, final boolean held)
+	{
+		for (final SeatListener listener : seatListeners)
+		{
+			listener.seatHeld(this, index, held);
+		}
 	}
 	
+	/**
+	 * Publish the seats remaining count unless a batch is in progress. Off the JavaFX thread the count is published at
+	 * the next pulse, once however many seats changed by then; see {@link PulseUpdater}.
+	 */
+	private void publishSeatsRemaining ()
+	{
+		if (batchDepth.get() == 0 && seatsRemaining != null)
+		{
+			PulseUpdater.post(this, publishSeatsRemaining);
+		}
+	}
+	
+	/**
+	 * Run a group of seat changes as one update so that listeners of the seats remaining count are told once at the
+	 * end rather than once per seat. Batches may be nested, or run on several threads at once; only the last to finish
+	 * publishes, and it reads the count then, so it covers the changes of the others.
+	 *
+	 * @param update The {@link Runnable} making the seat changes.
+	 */
+	public void batchUpdate (final Runnable update)
+	{
+		batchDepth.incrementAndGet();
+		try
+		{
+			update.run();
+		}
+		finally
+		{
+			if (batchDepth.decrementAndGet() == 0 && seatsRemaining != null)
+			{
+				PulseUpdater.post(this, publishSeatsRemaining);
+			}
+		}
+	}
+	
+	/**
+	 * Publish the seats remaining count after the {@link SeatInventory} has been changed directly, e.g. by replaying
+	 * saved bookings, bypassing {@link #setSeatAvailable(int, boolean)}. Nothing is published before anything watches.
+	 */
+	void refreshSeatsRemaining ()
+	{
+		final IntegerProperty property = seatsRemaining;
+		if (property == null)
+		{
+			return;
+		}
+		// Setting the property runs every listener of it, such as the fleet total and the table, before returning.
+		final long start = System.nanoTime();
+		property.set(inventory.getSeatsRemaining());
+		PUBLISH.recordSince(start);
+	}
+	
+	/**
+	 * Register a listener to be told of every seat on this train that changes availability.
+	 *
+	 * @param listener The {@link SeatListener} to add.
+	 */
+	public synchronized void addSeatListener (final SeatListener listener)
+	{
+		final SeatListener[] listeners = Arrays.copyOf(seatListeners, seatListeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		seatListeners = listeners;
+	}
+	
+	/**
+	 * Stop telling a listener of seat changes on this train.
+	 *
+	 * @param listener The {@link SeatListener} to remove.
+	 */
+	public synchronized void removeSeatListener (final SeatListener listener)
+	{
+		seatListeners = Arrays.stream(seatListeners).filter(other -> other != listener).toArray(SeatListener[] :: new);
+	}
+	
+	/**
+	 * Get a read-only list of the seats on this train. The list holds no seats itself; each {@link Seat} is a
+	 * lightweight view over the {@link SeatInventory} created on access, so only seats being shown ever exist.
+	 *
+	 * @return The {@link List} of {@link Seat} views in index order.
+	 */
 	public List<Seat> getSeats ()
 	{
-		return Collections.unmodifiableList(seats);
+		return new AbstractList<>()
+		{
+			@Override
+			public Seat get (final int index)
+			{
+				return new Seat(Train.this, index);
+			}
+			
+			@Override
+			public int size ()
+			{
+				return inventory.getTotalSeats();
+			}
+		};
+	}
+	
+	@FunctionalInterface
+	public interface SeatListener
+	{
+		/**
+		 * Called after a seat has changed availability, on the thread that changed it.
+		 *
+		 * @param train     The {@link Train} the seat belongs to.
+		 * @param index     The index of the seat.
+		 * @param available The new availability of the seat.
+		 */
+		void seatChanged (Train train, int index, boolean available);
+		
+		/**
+		 * Called after a seat has been held or its hold given up, on the thread that did so. By default a hold is
+		 * treated like a booking, which is right for anything showing which seats can be taken.
+		 *
+		 * @param train The {@link Train} the seat belongs to.
+		 * @param index The index of the seat.
+		 * @param held  True if the seat is now held, false if it is available again.
+		 */
+		default void seatHeld (final Train train, final int index, final boolean held)
+		{
+			seatChanged(train, index, ! held);
+		}
+		
+		/**
+		 * Called after the legs a seat is booked for have changed, on the thread that changed them and before the seat
+		 * is made available if no leg is left. By default nothing happens, which is right for anything only showing
+		 * whole trips: the seat was taken by {@link #seatChanged} when its first legs were booked.
+		 *
+		 * @param train The {@link Train} the seat belongs to.
+		 * @param index The index of the seat.
+		 * @param legs  The legs the seat is now booked for, bit l for leg l; 0 if none.
+		 */
+		default void legsChanged (final Train train, final int index, final long legs)
+		{
+		}
 	}
 }
\ No newline at end of file
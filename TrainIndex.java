@@ -0,0 +1,322 @@
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * A search index over trains by destination and departure time. Every destination has its own {@link Timetable}, and
+ * so does the fleet as a whole. A timetable buckets its trains by departure minute under a tree of the most seats
+ * remaining on any train below each node, which answers "the next train at or after a time with at least so many
+ * seats" in O(log minutes-per-day) without looking at full trains. Destinations are kept sorted, so a prefix of a
+ * destination finds every matching timetable in O(log destinations).
+ * <p>
+ * The index does not watch the trains itself; call {@link #update(Train)} whenever the seats remaining of an indexed
+ * train changes.
+ */
+public final class TrainIndex
+{
+	private final NavigableMap<String, Timetable> byDestination = new TreeMap<>();
+	private final Timetable all = new Timetable();
+	
+	/**
+	 * Add a train to the index.
+	 *
+	 * @param train The {@link Train} to add.
+	 */
+	public void add (final Train train)
+	{
+		all.add(train);
+		byDestination.computeIfAbsent(key(train.getDestination()), destination -> new Timetable()).add(train);
+	}
+	
+	/**
+	 * Remove a train from the index.
+	 *
+	 * @param train The {@link Train} to remove.
+	 */
+	public void remove (final Train train)
+	{
+		all.remove(train);
+		final Timetable timetable = byDestination.get(key(train.getDestination()));
+		if (timetable != null && timetable.remove(train) && timetable.isEmpty())
+		{
+			byDestination.remove(key(train.getDestination()));
+		}
+	}
+	
+	/**
+	 * Bring the index up to date after the seats remaining of a train changed.
+	 *
+	 * @param train The {@link Train} that changed.
+	 */
+	public void update (final Train train)
+	{
+		all.update(train);
+		final Timetable timetable = byDestination.get(key(train.getDestination()));
+		if (timetable != null)
+		{
+			timetable.update(train);
+		}
+	}
+	
+	/**
+	 * Find the first train to a destination leaving at or after a time with enough seats.
+	 *
+	 * @param destination The {@link String} destination, ignoring case, or null for any destination.
+	 * @param after       The earliest {@link LocalTime} of departure.
+	 * @param minSeats    The fewest seats remaining acceptable.
+	 *
+	 * @return The earliest matching {@link Train}, or empty if there is none.
+	 */
+	public Optional<Train> next (final String destination, final LocalTime after, final int minSeats)
+	{
+		final Timetable timetable = destination == null ? all : byDestination.get(key(destination));
+		return timetable == null ? Optional.empty() : Optional.ofNullable(timetable.next(minute(after), minSeats));
+	}
+	
+	/**
+	 * Find every train whose destination starts with a prefix, leaving at or after a time with enough seats.
+	 *
+	 * @param prefix   The {@link String} start of the destination, ignoring case; empty for any destination.
+	 * @param after    The earliest {@link LocalTime} of departure.
+	 * @param minSeats The fewest seats remaining acceptable.
+	 *
+	 * @return The {@link List} of matching {@link Train} objects in order of departure.
+	 */
+	public List<Train> search (final String prefix, final LocalTime after, final int minSeats)
+	{
+		final List<Train> found = new ArrayList<>();
+		if (prefix.isEmpty())
+		{
+			all.collect(minute(after), minSeats, found);
+			return found;
+		}
+		
+		final String from = key(prefix);
+		final NavigableMap<String, Timetable> matches = byDestination.subMap(from, true, from + Character.MAX_VALUE, false);
+		matches.values().forEach(timetable -> timetable.collect(minute(after), minSeats, found));
+		if (matches.size() > 1)
+		{
+			found.sort(Comparator.comparing(Train :: getDepartureTime));
+		}
+		return found;
+	}
+	
+	/**
+	 * Build the case-insensitive key of a destination.
+	 *
+	 * @param destination The {@link String} destination.
+	 *
+	 * @return The {@link String} key.
+	 */
+	private static String key (final String destination)
+	{
+		return destination.trim().toLowerCase(Locale.ROOT);
+	}
+	
+	/**
+	 * Get the minute of the day of a time.
+	 *
+	 * @param time The {@link LocalTime}.
+	 *
+	 * @return The minute of the day, 0 to 1439.
+	 */
+	private static int minute (final LocalTime time)
+	{
+		return time.getHour() * 60 + time.getMinute();
+	}
+	
+	private static final class Timetable
+	{
+		private static final int MINUTES = 24 * 60;
+		private static final int LEAVES = Integer.highestOneBit(MINUTES - 1) << 1;
+		
+		private final List<List<Train>> buckets = new ArrayList<>(MINUTES);
+		private final int[] mostSeats = new int[LEAVES * 2];
+		private int size = 0;
+		
+		/**
+		 * Construct an empty timetable; every node starts below any real seat count.
+		 */
+		private Timetable ()
+		{
+			for (int minute = 0; minute < MINUTES; minute++)
+			{
+				buckets.add(null);
+			}
+			Arrays.fill(mostSeats, - 1);
+		}
+		
+		/**
+		 * Put a train in the bucket of its departure minute.
+		 *
+		 * @param train The {@link Train} to add.
+		 */
+		private void add (final Train train)
+		{
+			final int minute = minute(train.getDepartureTime());
+			if (buckets.get(minute) == null)
+			{
+				buckets.set(minute, new ArrayList<>(1));
+			}
+			buckets.get(minute).add(train);
+			size++;
+			refresh(minute);
+		}
+		
+		/**
+		 * Take a train out of the bucket of its departure minute.
+		 *
+		 * @param train The {@link Train} to remove.
+		 *
+		 * @return True if the train was in this timetable.
+		 */
+		private boolean remove (final Train train)
+		{
+			final int minute = minute(train.getDepartureTime());
+			final List<Train> bucket = buckets.get(minute);
+			if (bucket == null || ! bucket.remove(train))
+			{
+				return false;
+			}
+			size--;
+			refresh(minute);
+			return true;
+		}
+		
+		/**
+		 * Bring the tree up to date after the seats remaining of a train changed.
+		 *
+		 * @param train The {@link Train} that changed.
+		 */
+		private void update (final Train train)
+		{
+			refresh(minute(train.getDepartureTime()));
+		}
+		
+		/**
+		 * Check whether any train is left in this timetable.
+		 *
+		 * @return True if there are no trains.
+		 */
+		private boolean isEmpty ()
+		{
+			return size == 0;
+		}
+		
+		/**
+		 * Recompute the leaf of a minute from its trains, then every node above it.
+		 *
+		 * @param minute The minute of the day that changed.
+		 */
+		private void refresh (final int minute)
+		{
+			int most = - 1;
+			final List<Train> bucket = buckets.get(minute);
+			if (bucket != null)
+			{
+				for (final Train train : bucket)
+				{
+					most = Math.max(most, train.getSeatsRemaining());
+				}
+			}
+			
+			int node = LEAVES + minute;
+			mostSeats[node] = most;
+			for (node >>= 1; node > 0; node >>= 1)
+			{
+				mostSeats[node] = Math.max(mostSeats[2 * node], mostSeats[2 * node + 1]);
+			}
+		}
+		
+		/**
+		 * Find the first minute at or after a given one with a train that has enough seats.
+		 *
+		 * @param from     The earliest minute of the day.
+		 * @param minSeats The fewest seats remaining acceptable.
+		 *
+		 * @return The minute, or -1 if there is none.
+		 */
+		private int firstMinute (final int from, final int minSeats)
+		{
+			return firstMinute(1, 0, LEAVES - 1, from, minSeats);
+		}
+		
+		/**
+		 * Descend the tree for the leftmost leaf at or after a minute holding enough seats.
+		 *
+		 * @param node     The index of the node in the tree.
+		 * @param low      The first minute under the node.
+		 * @param high     The last minute under the node.
+		 * @param from     The earliest minute of the day.
+		 * @param minSeats The fewest seats remaining acceptable.
+		 *
+		 * @return The minute, or -1 if there is none under the node.
+		 */
+		private int firstMinute (final int node, final int low, final int high, final int from, final int minSeats)
+		{
+			if (high < from || mostSeats[node] < minSeats)
+			{
+				return - 1;
+			}
+			if (low == high)
+			{
+				return low;
+			}
+			final int middle = (low + high) >>> 1;
+			final int left = firstMinute(2 * node, low, middle, from, minSeats);
+			return left >= 0 ? left : firstMinute(2 * node + 1, middle + 1, high, from, minSeats);
+		}
+		
+		/**
+		 * Find the first train at or after a minute with enough seats.
+		 *
+		 * @param from     The earliest minute of the day.
+		 * @param minSeats The fewest seats remaining acceptable.
+		 *
+		 * @return The {@link Train}, or null if there is none.
+		 */
+		private Train next (final int from, final int minSeats)
+		{
+			final int minute = firstMinute(from, Math.max(minSeats, 0));
+			if (minute < 0)
+			{
+				return null;
+			}
+			for (final Train train : buckets.get(minute))
+			{
+				if (train.getSeatsRemaining() >= minSeats)
+				{
+					return train;
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * Add every train at or after a minute with enough seats, skipping empty and full stretches of the day.
+		 *
+		 * @param from     The earliest minute of the day.
+		 * @param minSeats The fewest seats remaining acceptable.
+		 * @param found    The {@link List} to add the trains to, in order of departure.
+		 */
+		private void collect (final int from, final int minSeats, final List<Train> found)
+		{
+			for (int minute = firstMinute(from, Math.max(minSeats, 0)); minute >= 0 && minute < MINUTES; minute = firstMinute(minute + 1, Math.max(minSeats, 0)))
+			{
+				for (final Train train : buckets.get(minute))
+				{
+					if (train.getSeatsRemaining() >= minSeats)
+					{
+						found.add(train);
+					}
+				}
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,297 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Passengers waiting for a seat on a full train, in order of priority and then of joining. Every seat given back on the
+ * train, whether cancelled, released from a hold or freed by the last of its legs, goes to the first waiter who will
+ * take a seat of its type, within the same locked step as the cancellation: the seat stays booked throughout, so no
+ * other booking can take it in between.
+ * <p>
+ * Waiters wanting a window seat, an aisle seat, or either are kept in three heaps, so a freed seat is matched by
+ * comparing the heads of two of them and taken off in O(log n) without looking at anyone else. A waiter who leaves is
+ * only marked, and dropped when they reach the head. Joining a train with a seat of the type free books it at once.
+ * Changes take the lock of the waitlist; bookings never do. Once the train is retired or has departed the waitlist is
+ * closed, turning everyone still waiting away.
+ */
+public final class Waitlist
+{
+	private static final Metrics.Counter JOINED = Metrics.counter("waitlist_total", "outcome=\"joined\"", "Passengers joining a waitlist, and how their wait ended.");
+	private static final Metrics.Counter BOOKED = Metrics.counter("waitlist_total", "outcome=\"booked\"", null);
+	private static final Metrics.Counter LEFT = Metrics.counter("waitlist_total", "outcome=\"left\"", null);
+	private static final Comparator<Waiter> ORDER = Comparator.<Waiter> comparingInt(waiter -> waiter.priority).thenComparingLong(waiter -> waiter.id);
+	
+	public enum SeatType
+	{
+		WINDOW,
+		AISLE,
+		ANY
+	}
+	
+	private final Train train;
+	private final AtomicLong ids = new AtomicLong();
+	private final Map<Long, Waiter> waiters = new ConcurrentHashMap<>();
+	// One heap per seat type, built when someone first waits for that type.
+	private final PriorityQueue<Waiter>[] queues;
+	private int waiting = 0;
+	private boolean closed = false;
+	
+	/**
+	 * Construct the empty waitlist of a train.
+	 *
+	 * @param train The {@link Train} waited for.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	Waitlist (final Train train)
+	{
+		this.train = train;
+		this.queues = new PriorityQueue[SeatType.values().length];
+	}
+	
+	/**
+	 * Wait for a seat of a type, or book one straight away if one is free.
+	 *
+	 * @param type     The {@link SeatType} wanted.
+	 * @param priority The priority of the waiter; lower numbers are served first, and equal ones in order of joining.
+	 * @param onEnded  The {@link Consumer} told of the {@link Waiter} once their wait ends without their leaving: when a
+	 *                 seat is booked for them, on the thread that freed the seat and while the waitlist is locked, or
+	 *                 when the waitlist is closed, with no seat. It should only hand the news on.
+	 *
+	 * @return The {@link Waiter}, already booked if a seat was free, or null if the train is retired or the waitlist is
+	 * closed.
+	 */
+	public synchronized Waiter join (final SeatType type, final int priority, final Consumer<? super Waiter> onEnded)
+	{
+		if (closed)
+		{
+			return null;
+		}
+		final Waiter waiter = new Waiter(ids.incrementAndGet(), type, priority, onEnded);
+		// Every seat freed from here on comes through this lock, so a seat is either found now or offered later.
+		int seat = type == SeatType.AISLE ? - 1 : train.bookNextSeat(true);
+		if (seat < 0 && type != SeatType.WINDOW)
+		{
+			seat = train.bookNextSeat(false);
+		}
+		if (seat < 0 && train.isRetired())
+		{
+			return null;
+		}
+		JOINED.increment();
+		if (seat >= 0)
+		{
+			waiter.book(seat);
+			return waiter;
+		}
+		waiters.put(waiter.id, waiter);
+		if (queues[type.ordinal()] == null)
+		{
+			queues[type.ordinal()] = new PriorityQueue<>(ORDER);
+		}
+		queues[type.ordinal()].add(waiter);
+		waiting++;
+		return waiter;
+	}
+	
+	/**
+	 * Find a waiter still waiting by their number. A waiter is forgotten once their wait ends, so that a long-running
+	 * train does not keep everyone who ever waited for it.
+	 *
+	 * @param id The number of the waiter; see {@link Waiter#getId()}.
+	 *
+	 * @return The {@link Waiter}, or null if there is none, they left or were turned away, or a seat has been booked for
+	 * them.
+	 */
+	public Waiter get (final long id)
+	{
+		return waiters.get(id);
+	}
+	
+	/**
+	 * Get the number of passengers still waiting.
+	 *
+	 * @return The number of waiters neither booked nor gone.
+	 */
+	public synchronized int getWaiting ()
+	{
+		return waiting;
+	}
+	
+	/**
+	 * Turn away everyone still waiting and anyone who joins later, because the train has been retired or has departed.
+	 * Each waiter turned away leaves, and is told as they would have been of a seat, with none booked. They are told
+	 * once the lock of the waitlist is let go, so that telling them may take other locks.
+	 */
+	public void close ()
+	{
+		final List<Waiter> dismissed = new ArrayList<>();
+		synchronized (this)
+		{
+			closed = true;
+			// Only waiters still waiting are kept, so every one of them is turned away.
+			for (final Waiter waiter : waiters.values())
+			{
+				waiter.seat = Waiter.LEFT;
+				dismissed.add(waiter);
+				LEFT.increment();
+			}
+			waiters.clear();
+			waiting = 0;
+			Arrays.fill(queues, null);
+		}
+		for (final Waiter waiter : dismissed)
+		{
+			waiter.onEnded.accept(waiter);
+		}
+	}
+	
+	/**
+	 * Take the first waiter who will have a seat of a type off the waitlist. Only called by the {@link Train} freeing the
+	 * seat, holding this lock for the whole of the cancellation.
+	 *
+	 * @param window True for a window seat, false for an aisle seat.
+	 *
+	 * @return The {@link Waiter}, or null if nobody is waiting for such a seat.
+	 */
+	Waiter next (final boolean window)
+	{
+		if (waiting == 0)
+		{
+			return null;
+		}
+		final PriorityQueue<Waiter> typed = queues[(window ? SeatType.WINDOW : SeatType.AISLE).ordinal()];
+		final PriorityQueue<Waiter> any = queues[SeatType.ANY.ordinal()];
+		final Waiter first = head(typed);
+		final Waiter other = head(any);
+		if (first == null && other == null)
+		{
+			return null;
+		}
+		waiting--;
+		return other == null || (first != null && ORDER.compare(first, other) < 0) ? typed.poll() : any.poll();
+	}
+	
+	/**
+	 * Get the first waiter of a heap still waiting, dropping those who left ahead of them.
+	 *
+	 * @param queue The {@link PriorityQueue} of one seat type, or null if nobody ever waited for it.
+	 *
+	 * @return The {@link Waiter} at the head, or null if the heap is empty.
+	 */
+	private static Waiter head (final PriorityQueue<Waiter> queue)
+	{
+		if (queue == null)
+		{
+			return null;
+		}
+		while (! queue.isEmpty() && queue.peek().seat != Waiter.WAITING)
+		{
+			queue.poll();
+		}
+		return queue.peek();
+	}
+	
+	public final class Waiter
+	{
+		private static final int WAITING = - 1;
+		private static final int LEFT = - 2;
+		
+		private final long id;
+		private final SeatType type;
+		private final int priority;
+		private final Consumer<? super Waiter> onEnded;
+		// The seat booked, or WAITING or LEFT; only changed under the lock of the waitlist.
+		private volatile int seat = WAITING;
+		
+		/**
+		 * Construct a waiter who has just joined; see {@link Waitlist#join(SeatType, int, Consumer)}.
+		 *
+		 * @param id       The number of the waiter.
+		 * @param type     The {@link SeatType} wanted.
+		 * @param priority The priority of the waiter.
+		 * @param onEnded  The {@link Consumer} told once a seat is booked or the waitlist is closed.
+		 */
+		private Waiter (final long id, final SeatType type, final int priority, final Consumer<? super Waiter> onEnded)
+		{
+			this.id = id;
+			this.type = type;
+			this.priority = priority;
+			this.onEnded = onEnded;
+		}
+		
+		public long getId ()
+		{
+			return id;
+		}
+		
+		public Train getTrain ()
+		{
+			return train;
+		}
+		
+		public SeatType getType ()
+		{
+			return type;
+		}
+		
+		/**
+		 * Get the seat booked for the waiter.
+		 *
+		 * @return The index of the seat, or -1 while still waiting or after leaving.
+		 */
+		public int getSeat ()
+		{
+			return Math.max(- 1, seat);
+		}
+		
+		/**
+		 * Check whether the waiter is still waiting for a seat.
+		 *
+		 * @return True if neither booked nor gone.
+		 */
+		public boolean isWaiting ()
+		{
+			return seat == WAITING;
+		}
+		
+		/**
+		 * Stop waiting. A seat already booked for the waiter stays booked; cancel it like any other.
+		 *
+		 * @return True if the waiter was waiting and has now left.
+		 */
+		public boolean leave ()
+		{
+			synchronized (Waitlist.this)
+			{
+				if (seat != WAITING)
+				{
+					return false;
+				}
+				seat = LEFT;
+				waiting--;
+				waiters.remove(id);
+				Waitlist.LEFT.increment();
+				return true;
+			}
+		}
+		
+		/**
+		 * Record the seat booked for the waiter and tell them, under the lock of the waitlist.
+		 *
+		 * @param index The index of the seat.
+		 */
+		void book (final int index)
+		{
+			seat = index;
+			waiters.remove(id);
+			BOOKED.increment();
+			onEnded.accept(this);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,342 @@
+package bench;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.collections.ObservableList;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * The entry points of the application that the benchmarks call. The application lives in the default package, which
+ * code in a named package cannot refer to, and JMH will not generate benchmarks in the default package; so each entry
+ * point is looked up once as a method handle. Held in static final fields the handles are inlined by the JIT like
+ * direct calls, so they add nothing to what is measured.
+ */
+final class App
+{
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+	
+	private static final Class<?> DRIVER = type("Driver");
+	private static final Class<?> TRAIN = type("Train");
+	private static final Class<?> SEAT = type("Seat");
+	private static final Class<?> FLEET_TOTAL = type("FleetTotal");
+	private static final Class<?> BOOKING_SERVER = type("BookingServer");
+	private static final Class<?> SCHEDULE = type("Schedule");
+	private static final Class<?> CLUSTER_ROUTER = type("ClusterRouter");
+	
+	private static final MethodHandle INGEST_DATA = findStatic(DRIVER, "ingestData", List.class, Path.class);
+	private static final MethodHandle PARSE = findStatic(TRAIN, "parse", TRAIN, String.class);
+	private static final MethodHandle NEW_TRAIN = findConstructor(TRAIN, LocalTime.class, String.class, int.class);
+	private static final MethodHandle GET_SEATS = findVirtual(TRAIN, "getSeats", List.class);
+	private static final MethodHandle SET_SEAT_AVAILABLE = findVirtual(TRAIN, "setSeatAvailable", boolean.class, int.class, boolean.class);
+	private static final MethodHandle IS_SEAT_AVAILABLE = findVirtual(TRAIN, "isSeatAvailable", boolean.class, int.class);
+	private static final MethodHandle BOOK_SEATS = findVirtual(TRAIN, "bookSeats", boolean.class, int[].class);
+	private static final MethodHandle BOOK_NEXT_SEAT = findVirtual(TRAIN, "bookNextSeat", int.class, boolean.class);
+	private static final MethodHandle GET_SEATS_REMAINING = findVirtual(TRAIN, "getSeatsRemaining", int.class);
+	private static final MethodHandle BATCH_UPDATE = findVirtual(TRAIN, "batchUpdate", void.class, Runnable.class);
+	private static final MethodHandle SEATS_REMAINING_PROPERTY = findVirtual(TRAIN, "seatsRemainingProperty", IntegerProperty.class);
+	private static final MethodHandle SEAT_SET_AVAILABLE = findVirtual(SEAT, "setAvailable", boolean.class, boolean.class);
+	private static final MethodHandle NEW_FLEET_TOTAL = findConstructor(FLEET_TOTAL, ObservableList.class);
+	private static final MethodHandle FLEET_SEATS_REMAINING = findVirtual(FLEET_TOTAL, "getSeatsRemaining", int.class);
+	private static final MethodHandle OPEN_SCHEDULE = findStatic(SCHEDULE, "open", SCHEDULE, List.class, Path.class, Path.class);
+	private static final MethodHandle GET_TODAY = findVirtual(SCHEDULE, "getToday", LocalDate.class);
+	private static final MethodHandle ACQUIRE = findVirtual(SCHEDULE, "acquire", List.class, LocalDate.class);
+	private static final MethodHandle RELEASE = findVirtual(SCHEDULE, "release", void.class, LocalDate.class);
+	private static final MethodHandle SET_TIMETABLE = findVirtual(SCHEDULE, "setTimetable", int.class, List.class);
+	private static final MethodHandle FLUSH = findVirtual(SCHEDULE, "flush", void.class, LocalDate.class);
+	private static final MethodHandle NEW_BOOKING_SERVER = findConstructor(BOOKING_SERVER, InetSocketAddress.class, SCHEDULE);
+	private static final MethodHandle SERVER_ADDRESS = findVirtual(BOOKING_SERVER, "getAddress", InetSocketAddress.class);
+	private static final MethodHandle START_SERVER = findVirtual(BOOKING_SERVER, "start", void.class);
+	private static final MethodHandle NEW_CLUSTER_ROUTER = findConstructor(CLUSTER_ROUTER, List.class);
+	private static final MethodHandle ROUTER_BOOK = findVirtual(CLUSTER_ROUTER, "book", boolean.class, LocalDate.class, LocalTime.class, String.class, int.class);
+	private static final MethodHandle ROUTER_CANCEL = findVirtual(CLUSTER_ROUTER, "cancel", boolean.class, LocalDate.class, LocalTime.class, String.class, int.class);
+	private static final MethodHandle ROUTER_FLEET_SEATS_REMAINING = findVirtual(CLUSTER_ROUTER, "getSeatsRemaining", long.class, LocalDate.class);
+	
+	private App ()
+	{
+	}
+	
+	static List<?> ingestData (final Path file) throws Throwable
+	{
+		return (List<?>) INGEST_DATA.invokeExact(file);
+	}
+	
+	static Object parse (final String line) throws Throwable
+	{
+		return (Object) PARSE.invokeExact(line);
+	}
+	
+	static Object newTrain (final LocalTime departureTime, final String destination, final int totalSeats) throws Throwable
+	{
+		return (Object) NEW_TRAIN.invokeExact(departureTime, destination, totalSeats);
+	}
+	
+	static List<?> getSeats (final Object train) throws Throwable
+	{
+		return (List<?>) GET_SEATS.invokeExact(train);
+	}
+	
+	static boolean setSeatAvailable (final Object train, final int index, final boolean available) throws Throwable
+	{
+		return (boolean) SET_SEAT_AVAILABLE.invokeExact(train, index, available);
+	}
+	
+	static boolean isSeatAvailable (final Object train, final int index) throws Throwable
+	{
+		return (boolean) IS_SEAT_AVAILABLE.invokeExact(train, index);
+	}
+	
+	static boolean bookSeats (final Object train, final int[] indices) throws Throwable
+	{
+		return (boolean) BOOK_SEATS.invokeExact(train, indices);
+	}
+	
+	static int bookNextSeat (final Object train, final boolean window) throws Throwable
+	{
+		return (int) BOOK_NEXT_SEAT.invokeExact(train, window);
+	}
+	
+	static int getSeatsRemaining (final Object train) throws Throwable
+	{
+		return (int) GET_SEATS_REMAINING.invokeExact(train);
+	}
+	
+	static void batchUpdate (final Object train, final Runnable update) throws Throwable
+	{
+		BATCH_UPDATE.invokeExact(train, update);
+	}
+	
+	static IntegerProperty seatsRemainingProperty (final Object train) throws Throwable
+	{
+		return (IntegerProperty) SEATS_REMAINING_PROPERTY.invokeExact(train);
+	}
+	
+	static boolean setAvailable (final Object seat, final boolean available) throws Throwable
+	{
+		return (boolean) SEAT_SET_AVAILABLE.invokeExact(seat, available);
+	}
+	
+	static Object newFleetTotal (final ObservableList<?> trains) throws Throwable
+	{
+		return (Object) NEW_FLEET_TOTAL.invokeExact(trains);
+	}
+	
+	static int fleetSeatsRemaining (final Object fleetTotal) throws Throwable
+	{
+		return (int) FLEET_SEATS_REMAINING.invokeExact(fleetTotal);
+	}
+	
+	/**
+	 * Construct a server booking the trains of a timetable on each day, keeping every day in memory only.
+	 *
+	 * @param address   The {@link InetSocketAddress} to listen on.
+	 * @param timetable The {@link List} of trains of the timetable.
+	 *
+	 * @return The server, not yet started.
+	 *
+	 * @throws Throwable If the address cannot be bound.
+	 */
+	static Closeable newBookingServer (final InetSocketAddress address, final List<?> timetable) throws Throwable
+	{
+		final Object schedule = (Object) OPEN_SCHEDULE.invokeExact(timetable, (Path) null, (Path) null);
+		return (Closeable) (Object) NEW_BOOKING_SERVER.invokeExact(address, schedule);
+	}
+	
+	/**
+	 * Open a schedule of the trains of a timetable on each day, keeping every day in memory only.
+	 *
+	 * @param timetable The {@link List} of trains of the timetable.
+	 *
+	 * @return The schedule.
+	 *
+	 * @throws Throwable If it cannot be opened.
+	 */
+	static Object openSchedule (final List<?> timetable) throws Throwable
+	{
+		return (Object) OPEN_SCHEDULE.invokeExact(timetable, (Path) null, (Path) null);
+	}
+	
+	/**
+	 * Open a schedule of the trains of a timetable on each day, saving the days in a directory.
+	 *
+	 * @param timetable The {@link List} of trains of the timetable.
+	 * @param directory The {@link Path} of the directory, created if need be.
+	 *
+	 * @return The schedule, closed to save every day in memory.
+	 *
+	 * @throws Throwable If it cannot be opened.
+	 */
+	static Closeable openSchedule (final List<?> timetable, final Path directory) throws Throwable
+	{
+		return (Closeable) (Object) OPEN_SCHEDULE.invokeExact(timetable, (Path) null, directory);
+	}
+	
+	static LocalDate getToday (final Object schedule) throws Throwable
+	{
+		return (LocalDate) GET_TODAY.invokeExact(schedule);
+	}
+	
+	static List<?> acquire (final Object schedule, final LocalDate date) throws Throwable
+	{
+		return (List<?>) ACQUIRE.invokeExact(schedule, date);
+	}
+	
+	static void release (final Object schedule, final LocalDate date) throws Throwable
+	{
+		RELEASE.invokeExact(schedule, date);
+	}
+	
+	static int setTimetable (final Object schedule, final List<?> timetable) throws Throwable
+	{
+		return (int) SET_TIMETABLE.invokeExact(schedule, timetable);
+	}
+	
+	static void flush (final Object schedule, final LocalDate date) throws Throwable
+	{
+		FLUSH.invokeExact(schedule, date);
+	}
+	
+	static InetSocketAddress serverAddress (final Object server) throws Throwable
+	{
+		return (InetSocketAddress) SERVER_ADDRESS.invokeExact(server);
+	}
+	
+	static void startServer (final Object server) throws Throwable
+	{
+		START_SERVER.invokeExact(server);
+	}
+	
+	static Closeable newClusterRouter (final List<InetSocketAddress> nodes) throws Throwable
+	{
+		return (Closeable) (Object) NEW_CLUSTER_ROUTER.invokeExact(nodes);
+	}
+	
+	static boolean routerBook (final Object router, final LocalDate date, final LocalTime departureTime, final String destination, final int seat) throws Throwable
+	{
+		return (boolean) ROUTER_BOOK.invokeExact(router, date, departureTime, destination, seat);
+	}
+	
+	static boolean routerCancel (final Object router, final LocalDate date, final LocalTime departureTime, final String destination, final int seat) throws Throwable
+	{
+		return (boolean) ROUTER_CANCEL.invokeExact(router, date, departureTime, destination, seat);
+	}
+	
+	static long routerFleetSeatsRemaining (final Object router, final LocalDate date) throws Throwable
+	{
+		return (long) ROUTER_FLEET_SEATS_REMAINING.invokeExact(router, date);
+	}
+	
+	/**
+	 * Find a class of the application.
+	 *
+	 * @param name The {@link String} name of the class in the default package.
+	 *
+	 * @return The {@link Class}.
+	 */
+	private static Class<?> type (final String name)
+	{
+		try
+		{
+			return Class.forName(name);
+		}
+		catch (final ClassNotFoundException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	/**
+	 * Find a static method, with every application class in its type replaced by {@link Object}.
+	 *
+	 * @param owner      The {@link Class} declaring the method.
+	 * @param name       The {@link String} name of the method.
+	 * @param returnType The {@link Class} the method returns.
+	 * @param parameters The {@link Class} of each parameter.
+	 *
+	 * @return The {@link MethodHandle}.
+	 */
+	private static MethodHandle findStatic (final Class<?> owner, final String name, final Class<?> returnType, final Class<?>... parameters)
+	{
+		try
+		{
+			return erase(LOOKUP.findStatic(owner, name, MethodType.methodType(returnType, parameters)));
+		}
+		catch (final ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	/**
+	 * Find an instance method, with every application class in its type replaced by {@link Object}.
+	 *
+	 * @param owner      The {@link Class} declaring the method.
+	 * @param name       The {@link String} name of the method.
+	 * @param returnType The {@link Class} the method returns.
+	 * @param parameters The {@link Class} of each parameter after the receiver.
+	 *
+	 * @return The {@link MethodHandle}.
+	 */
+	private static MethodHandle findVirtual (final Class<?> owner, final String name, final Class<?> returnType, final Class<?>... parameters)
+	{
+		try
+		{
+			return erase(LOOKUP.findVirtual(owner, name, MethodType.methodType(returnType, parameters)));
+		}
+		catch (final ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	/**
+	 * Find a constructor, with every application class in its type replaced by {@link Object}.
+	 *
+	 * @param owner      The {@link Class} to construct.
+	 * @param parameters The {@link Class} of each parameter.
+	 *
+	 * @return The {@link MethodHandle}.
+	 */
+	private static MethodHandle findConstructor (final Class<?> owner, final Class<?>... parameters)
+	{
+		try
+		{
+			return erase(LOOKUP.findConstructor(owner, MethodType.methodType(void.class, parameters)));
+		}
+		catch (final ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	/**
+	 * Replace every application class in the type of a handle by {@link Object}, so it can be invoked exactly from here.
+	 *
+	 * @param handle The {@link MethodHandle} as found.
+	 *
+	 * @return The {@link MethodHandle} adapted to the erased type.
+	 */
+	private static MethodHandle erase (final MethodHandle handle)
+	{
+		MethodType type = handle.type();
+		for (int i = 0; i < type.parameterCount(); i++)
+		{
+			if (type.parameterType(i).getPackageName().isEmpty())
+			{
+				type = type.changeParameterType(i, Object.class);
+			}
+		}
+		if (type.returnType().getPackageName().isEmpty())
+		{
+			type = type.changeReturnType(Object.class);
+		}
+		return handle.asType(type);
+	}
+}
\ No newline at end of file
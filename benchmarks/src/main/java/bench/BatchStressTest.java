@@ -0,0 +1,190 @@
+package bench;
+
+import javafx.beans.property.IntegerProperty;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stress test of batches of seat changes on one train from many threads at once. Each round makes a small train,
+ * watches its seats remaining, and has every thread book and cancel seats at random, some inside batches and some not.
+ * Then it changes one more seat outside any batch and checks that the count watched has caught up with the train: a
+ * batch left open by a lost update would keep the count from ever being published again. No window is shown, so the
+ * count is published on the thread that changes it. Run it with:
+ * <p>
+ * java -cp benchmarks/target/benchmarks.jar bench.BatchStressTest [threads] [seconds]
+ * <p>
+ * The defaults are twice the cores, at least 4, for 10 s in rounds of 100 ms on trains of 256 seats. It exits with 1 if
+ * anything was found wrong.
+ */
+public final class BatchStressTest
+{
+	private static final int SEATS = 256;
+	private static final Duration ROUND = Duration.ofMillis(100);
+	
+	private final Object train;
+	private final IntegerProperty seatsRemaining;
+	private final AtomicLong calls;
+	private final long stopAt;
+	
+	/**
+	 * Construct one round on a new train with every seat free and its seats remaining watched.
+	 *
+	 * @param calls The {@link AtomicLong} counting the calls of every round.
+	 *
+	 * @throws Throwable If the train cannot be made.
+	 */
+	private BatchStressTest (final AtomicLong calls) throws Throwable
+	{
+		this.train = App.newTrain(LocalTime.NOON, "Batch", SEATS);
+		this.seatsRemaining = App.seatsRemainingProperty(train);
+		this.calls = calls;
+		this.stopAt = System.nanoTime() + ROUND.toNanos();
+	}
+	
+	/**
+	 * Run rounds until the time is up and print what was found.
+	 *
+	 * @param args The number of threads (twice the cores, at least 4) and the seconds to run for (10).
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	public static void main (final String[] args) throws Throwable
+	{
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		final Duration duration = Duration.ofSeconds(args.length > 1 ? Integer.parseInt(args[1]) : 10);
+		System.out.println("Booking in batches with " + threads + " threads on trains of " + SEATS + " seats for " + duration.toSeconds() + " s...");
+		
+		final AtomicLong calls = new AtomicLong();
+		final long end = System.nanoTime() + duration.toNanos();
+		int rounds = 0;
+		int failed = 0;
+		while (System.nanoTime() < end)
+		{
+			final BatchStressTest round = new BatchStressTest(calls);
+			round.run(threads);
+			final String problem = round.check();
+			rounds++;
+			if (problem != null)
+			{
+				failed++;
+				System.out.println("Round " + rounds + ": " + problem);
+			}
+		}
+		System.out.printf("rounds: %d, calls: %d, rounds with problems: %d%n", rounds, calls.get(), failed);
+		if (failed > 0)
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Book and cancel from every thread until the round is over.
+	 *
+	 * @param threads The number of threads.
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	private void run (final int threads) throws Throwable
+	{
+		final List<Thread> running = new ArrayList<>(threads);
+		final Throwable[] failure = new Throwable[1];
+		for (int i = 0; i < threads; i++)
+		{
+			final Thread thread = new Thread(() ->
+											 {
+												 try
+												 {
+													 work();
+												 }
+												 catch (final Throwable e)
+												 {
+													 failure[0] = e;
+												 }
+											 });
+			thread.start();
+			running.add(thread);
+		}
+		for (final Thread thread : running)
+		{
+			thread.join();
+		}
+		if (failure[0] != null)
+		{
+			throw failure[0];
+		}
+	}
+	
+	/**
+	 * Change random seats, half the time in a batch of up to three of them. Short batches start and end often, which is
+	 * when threads meet on the depth of batches.
+	 *
+	 * @throws Throwable If a call fails.
+	 */
+	private void work () throws Throwable
+	{
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		long made = 0;
+		while (System.nanoTime() < stopAt)
+		{
+			if (random.nextBoolean())
+			{
+				final int changes = random.nextInt(4);
+				App.batchUpdate(train, () ->
+				{
+					for (int i = 0; i < changes; i++)
+					{
+						change(random);
+					}
+				});
+			}
+			else
+			{
+				change(random);
+			}
+			made++;
+		}
+		calls.addAndGet(made);
+	}
+	
+	/**
+	 * Book or cancel a random seat.
+	 *
+	 * @param random The {@link ThreadLocalRandom} of the thread.
+	 */
+	private void change (final ThreadLocalRandom random)
+	{
+		try
+		{
+			App.setSeatAvailable(train, random.nextInt(SEATS), random.nextBoolean());
+		}
+		catch (final Throwable e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Change one more seat outside any batch and compare the count watched with the train.
+	 *
+	 * @return The {@link String} problem found, or null if none.
+	 *
+	 * @throws Throwable If a call fails.
+	 */
+	private String check () throws Throwable
+	{
+		for (int seat = 0; seat < SEATS; seat++)
+		{
+			if (App.setSeatAvailable(train, seat, ! App.isSeatAvailable(train, seat)))
+			{
+				break;
+			}
+		}
+		final int actual = App.getSeatsRemaining(train);
+		return seatsRemaining.get() == actual ? null : "the seats remaining watched are " + seatsRemaining.get() + " but the train has " + actual;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of booking seats through {@code Seat.setAvailable}, one thread alone and several threads on the same
+ * train. Each operation books a seat and releases it again, so the train never fills up.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookingBenchmark
+{
+	@State(Scope.Benchmark)
+	public static class Fleet
+	{
+		@Param({"2000"})
+		public int totalSeats;
+		
+		private List<?> seats;
+		
+		/**
+		 * Make the train every thread books on.
+		 *
+		 * @throws Throwable If the train cannot be made.
+		 */
+		@Setup
+		public void makeTrain () throws Throwable
+		{
+			seats = App.getSeats(App.newTrain(LocalTime.NOON, "Seattle", totalSeats));
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class Cursor
+	{
+		private int first;
+		private int stride;
+		private int seat;
+		
+		/**
+		 * Start each thread on its own seat, so threads meet on the same words of the seat bitmap without booking the
+		 * very same seat.
+		 *
+		 * @param threads The {@link ThreadParams} of this thread.
+		 */
+		@Setup
+		public void start (final ThreadParams threads)
+		{
+			first = threads.getThreadIndex();
+			stride = threads.getThreadCount();
+			seat = first;
+		}
+	}
+	
+	@Benchmark
+	@Threads(1)
+	public boolean bookAndRelease (final Fleet fleet, final Cursor cursor) throws Throwable
+	{
+		return book(fleet, cursor);
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public boolean bookAndReleaseContended (final Fleet fleet, final Cursor cursor) throws Throwable
+	{
+		return book(fleet, cursor);
+	}
+	
+	/**
+	 * Book the next seat of a thread and release it again.
+	 *
+	 * @param fleet  The {@link Fleet} holding the train.
+	 * @param cursor The {@link Cursor} of this thread.
+	 *
+	 * @return True if both the booking and the release changed the seat.
+	 *
+	 * @throws Throwable If booking fails.
+	 */
+	private static boolean book (final Fleet fleet, final Cursor cursor) throws Throwable
+	{
+		cursor.seat += cursor.stride;
+		if (cursor.seat >= fleet.totalSeats)
+		{
+			cursor.seat = cursor.first;
+		}
+		final Object seat = fleet.seats.get(cursor.seat);
+		return App.setAvailable(seat, false) & App.setAvailable(seat, true);
+	}
+}
\ No newline at end of file
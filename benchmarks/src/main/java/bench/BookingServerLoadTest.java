@@ -0,0 +1,246 @@
+package bench;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A load test of the HTTP booking API on localhost. Many clients each keep one request in flight, booking a random
+ * seat on a random train and cancelling it again, with an occasional look at a train's available seats; the latency of
+ * every request after the warm up is recorded. Run it with:
+ * <p>
+ * java -cp benchmarks/target/benchmarks.jar bench.BookingServerLoadTest [clients] [seconds] [url]
+ * <p>
+ * Without a url it serves 1,000 trains of 2,000 seats in this JVM, without a journal; with one, such as
+ * http://localhost:8080, it books against a server started with "java Driver --server".
+ */
+public final class BookingServerLoadTest
+{
+	private static final int TRAINS = 1000;
+	private static final int SEATS = 2000;
+	private static final Duration WARM_UP = Duration.ofSeconds(5);
+	
+	private final HttpClient client;
+	private final URI base;
+	private final int trains;
+	private final int seats;
+	private final long recordFrom;
+	private final long stopAt;
+	private final AtomicLong errors = new AtomicLong();
+	
+	/**
+	 * Construct a load test against a server.
+	 *
+	 * @param client   The {@link HttpClient} to send with.
+	 * @param base     The {@link URI} of the server, without a path.
+	 * @param trains   The number of trains to book on.
+	 * @param seats    The number of seats on the smallest of those trains.
+	 * @param duration The {@link Duration} to record for, after the warm up.
+	 */
+	private BookingServerLoadTest (final HttpClient client, final URI base, final int trains, final int seats, final Duration duration)
+	{
+		this.client = client;
+		this.base = base;
+		this.trains = trains;
+		this.seats = seats;
+		this.recordFrom = System.nanoTime() + WARM_UP.toNanos();
+		this.stopAt = recordFrom + duration.toNanos();
+	}
+	
+	/**
+	 * Run the load test and print its results.
+	 *
+	 * @param args The number of clients (2,000), the seconds to record for (20) and the url of a running server.
+	 *
+	 * @throws Throwable If the server cannot be started or reached.
+	 */
+	public static void main (final String[] args) throws Throwable
+	{
+		final int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		final Duration duration = Duration.ofSeconds(args.length > 1 ? Integer.parseInt(args[1]) : 20);
+		
+		Closeable server = null;
+		URI base;
+		int trains = TRAINS;
+		int seats = SEATS;
+		if (args.length > 2)
+		{
+			base = URI.create(args[2]);
+			final String listing = HttpClient.newHttpClient().send(HttpRequest.newBuilder(base.resolve("/trains")).build(), HttpResponse.BodyHandlers.ofString()).body();
+			trains = listing.split("\"id\":").length - 1;
+			seats = Arrays.stream(listing.split("\"totalSeats\":")).skip(1).mapToInt(field -> Integer.parseInt(field.substring(0, field.indexOf(',')))).min().orElse(0);
+		}
+		else
+		{
+			final List<Object> fleet = new ArrayList<>(TRAINS);
+			for (int i = 0; i < TRAINS; i++)
+			{
+				fleet.add(App.newTrain(LocalTime.of(i / 60 % 24, i % 60), "Destination " + i % 50, SEATS));
+			}
+			server = App.newBookingServer(new InetSocketAddress("localhost", 0), fleet);
+			App.startServer(server);
+			base = URI.create("http://localhost:" + App.serverAddress(server).getPort());
+		}
+		
+		final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+		final BookingServerLoadTest test = new BookingServerLoadTest(client, base, trains, seats, duration);
+		System.out.println("Booking against " + base + " with " + clients + " clients on " + trains + " trains for " + duration.toSeconds() + " s after a " + WARM_UP.toSeconds() + " s warm up...");
+		
+		final List<CompletableFuture<long[]>> running = new ArrayList<>(clients);
+		for (int i = 0; i < clients; i++)
+		{
+			running.add(test.runClient());
+		}
+		final long[] latencies = running.stream().map(CompletableFuture :: join).flatMapToLong(Arrays :: stream).sorted().toArray();
+		
+		if (server != null)
+		{
+			server.close();
+		}
+		test.report(latencies, duration);
+	}
+	
+	/**
+	 * Start one client, which sends requests one after another until the test ends.
+	 *
+	 * @return The {@link CompletableFuture} of the latencies, in nanoseconds, of the requests it recorded.
+	 */
+	private CompletableFuture<long[]> runClient ()
+	{
+		final Latencies recorded = new Latencies();
+		next(recorded);
+		return recorded.done;
+	}
+	
+	/**
+	 * Send the next request of a client, or finish if the test is over.
+	 *
+	 * @param recorded The {@link Latencies} recorded by the client so far.
+	 */
+	private void next (final Latencies recorded)
+	{
+		final long start = System.nanoTime();
+		if (start >= stopAt)
+		{
+			recorded.done.complete(recorded.toArray());
+			return;
+		}
+		
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final String train = "/trains/" + random.nextInt(trains);
+		final HttpRequest request;
+		if (recorded.booked != null)
+		{
+			request = HttpRequest.newBuilder(base.resolve(recorded.booked)).DELETE().build();
+			recorded.booked = null;
+		}
+		else if (random.nextInt(10) == 0)
+		{
+			request = HttpRequest.newBuilder(base.resolve(train)).GET().build();
+		}
+		else
+		{
+			final int seat = random.nextInt(seats);
+			recorded.booked = train + "/seats/" + (seat >> 1) + ((seat & 1) == 0 ? "W" : "A");
+			request = HttpRequest.newBuilder(base.resolve(recorded.booked)).POST(HttpRequest.BodyPublishers.noBody()).build();
+		}
+		client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> answered(recorded, start, response, failure));
+	}
+	
+	/**
+	 * Record the answer to a request of a client and send its next one. A seat that was not booked is not cancelled.
+	 *
+	 * @param recorded The {@link Latencies} recorded by the client so far.
+	 * @param start    The {@link System#nanoTime()} the request was sent.
+	 * @param response The {@link HttpResponse}, or null if the request failed.
+	 * @param failure  The {@link Throwable} the request failed with, or null.
+	 */
+	private void answered (final Latencies recorded, final long start, final HttpResponse<?> response, final Throwable failure)
+	{
+		final long end = System.nanoTime();
+		if (failure != null || (response.statusCode() != 200 && response.statusCode() != 409))
+		{
+			errors.incrementAndGet();
+		}
+		else if (start >= recordFrom)
+		{
+			recorded.add(end - start);
+		}
+		if (failure != null || response.statusCode() != 200)
+		{
+			recorded.booked = null;
+		}
+		next(recorded);
+	}
+	
+	/**
+	 * Print the throughput and latency percentiles of the test.
+	 *
+	 * @param latencies The sorted latencies, in nanoseconds, of every recorded request.
+	 * @param duration  The {@link Duration} recorded for.
+	 */
+	private void report (final long[] latencies, final Duration duration)
+	{
+		System.out.printf("requests: %d in %d s = %.0f requests/s, errors: %d%n", latencies.length, duration.toSeconds(), latencies.length / (double) duration.toSeconds(), errors.get());
+		if (latencies.length > 0)
+		{
+			System.out.printf("latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n", percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99), percentile(latencies, 99.9), latencies[latencies.length - 1] / 1e6);
+		}
+	}
+	
+	/**
+	 * Read a percentile from sorted latencies.
+	 *
+	 * @param latencies The sorted latencies in nanoseconds.
+	 * @param percent   The percentile wanted.
+	 *
+	 * @return The latency at the percentile in milliseconds.
+	 */
+	private static double percentile (final long[] latencies, final double percent)
+	{
+		return latencies[(int) Math.min(latencies.length - 1, Math.ceil(latencies.length * percent / 100) - 1)] / 1e6;
+	}
+	
+	private static final class Latencies
+	{
+		private final CompletableFuture<long[]> done = new CompletableFuture<>();
+		private long[] nanos = new long[1024];
+		private int size = 0;
+		private String booked;
+		
+		/**
+		 * Record the latency of one request.
+		 *
+		 * @param latency The latency in nanoseconds.
+		 */
+		private void add (final long latency)
+		{
+			if (size == nanos.length)
+			{
+				nanos = Arrays.copyOf(nanos, size * 2);
+			}
+			nanos[size++] = latency;
+		}
+		
+		/**
+		 * Get every latency recorded.
+		 *
+		 * @return The latencies in nanoseconds.
+		 */
+		private long[] toArray ()
+		{
+			return Arrays.copyOf(nanos, size);
+		}
+	}
+}
\ No newline at end of file
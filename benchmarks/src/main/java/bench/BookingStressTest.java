@@ -0,0 +1,214 @@
+package bench;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * A stress test of booking on one train from many threads at once. Each round makes a small train and has every thread
+ * book groups of seats spread over several words, book single seats, take the next free seat of a type and cancel
+ * seats at random, whoever booked them, counting every call that succeeded. Then it checks that each seat is booked
+ * exactly when it was booked once more than it was cancelled, that the seats remaining agree, and that taking the next
+ * free seat of each type until there is none takes every free seat. Run it with:
+ * <p>
+ * java -cp benchmarks/target/benchmarks.jar bench.BookingStressTest [threads] [seconds]
+ * <p>
+ * The defaults are twice the cores, at least 4, for 10 s in rounds of 100 ms on trains of 256 seats. It exits with 1 if
+ * anything was found wrong.
+ */
+public final class BookingStressTest
+{
+	private static final int SEATS = 256;
+	private static final Duration ROUND = Duration.ofMillis(100);
+	
+	private final Object train;
+	private final AtomicIntegerArray booked = new AtomicIntegerArray(SEATS);
+	private final AtomicIntegerArray cancelled = new AtomicIntegerArray(SEATS);
+	private final AtomicLong calls;
+	private final long stopAt;
+	
+	/**
+	 * Construct one round on a new train with every seat free.
+	 *
+	 * @param calls The {@link AtomicLong} counting the calls of every round.
+	 *
+	 * @throws Throwable If the train cannot be made.
+	 */
+	private BookingStressTest (final AtomicLong calls) throws Throwable
+	{
+		this.train = App.newTrain(LocalTime.NOON, "Stress", SEATS);
+		this.calls = calls;
+		this.stopAt = System.nanoTime() + ROUND.toNanos();
+	}
+	
+	/**
+	 * Run rounds until the time is up and print what was found.
+	 *
+	 * @param args The number of threads (twice the cores, at least 4) and the seconds to run for (10).
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	public static void main (final String[] args) throws Throwable
+	{
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		final Duration duration = Duration.ofSeconds(args.length > 1 ? Integer.parseInt(args[1]) : 10);
+		System.out.println("Booking and cancelling with " + threads + " threads on trains of " + SEATS + " seats for " + duration.toSeconds() + " s...");
+		
+		final AtomicLong calls = new AtomicLong();
+		final long end = System.nanoTime() + duration.toNanos();
+		int rounds = 0;
+		int failed = 0;
+		while (System.nanoTime() < end)
+		{
+			final BookingStressTest round = new BookingStressTest(calls);
+			round.run(threads);
+			final List<String> problems = round.check();
+			rounds++;
+			if (! problems.isEmpty())
+			{
+				failed++;
+				System.out.println("Round " + rounds + ": " + String.join("; ", problems));
+			}
+		}
+		System.out.printf("rounds: %d, calls: %d, rounds with problems: %d%n", rounds, calls.get(), failed);
+		if (failed > 0)
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Book and cancel from every thread until the round is over.
+	 *
+	 * @param threads The number of threads.
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	private void run (final int threads) throws Throwable
+	{
+		final List<Thread> running = new ArrayList<>(threads);
+		final Throwable[] failure = new Throwable[1];
+		for (int i = 0; i < threads; i++)
+		{
+			final Thread thread = new Thread(() ->
+											 {
+												 try
+												 {
+													 work();
+												 }
+												 catch (final Throwable e)
+												 {
+													 failure[0] = e;
+												 }
+											 });
+			thread.start();
+			running.add(thread);
+		}
+		for (final Thread thread : running)
+		{
+			thread.join();
+		}
+		if (failure[0] != null)
+		{
+			throw failure[0];
+		}
+	}
+	
+	/**
+	 * Make random calls on the train, counting those that succeed.
+	 *
+	 * @throws Throwable If a call fails.
+	 */
+	private void work () throws Throwable
+	{
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		long made = 0;
+		while (System.nanoTime() < stopAt)
+		{
+			final int call = random.nextInt(10);
+			if (call < 3)
+			{
+				// A group spread over the words, so that a seat taken late in it undoes the words claimed before.
+				final int[] seats = random.ints(2 + random.nextInt(3), 0, SEATS).distinct().toArray();
+				if (App.bookSeats(train, seats))
+				{
+					IntStream.of(seats).forEach(booked :: incrementAndGet);
+				}
+			}
+			else if (call < 6)
+			{
+				final int seat = random.nextInt(SEATS);
+				if (App.setSeatAvailable(train, seat, false))
+				{
+					booked.incrementAndGet(seat);
+				}
+			}
+			else if (call < 7)
+			{
+				final int seat = App.bookNextSeat(train, random.nextBoolean());
+				if (seat >= 0)
+				{
+					booked.incrementAndGet(seat);
+				}
+			}
+			else
+			{
+				final int seat = random.nextInt(SEATS);
+				if (App.setSeatAvailable(train, seat, true))
+				{
+					cancelled.incrementAndGet(seat);
+				}
+			}
+			made++;
+		}
+		calls.addAndGet(made);
+	}
+	
+	/**
+	 * Check the train against the calls that succeeded, then take every seat left with the next free seat of its type.
+	 *
+	 * @return The {@link List} of each {@link String} problem found; empty if none.
+	 *
+	 * @throws Throwable If a call fails.
+	 */
+	private List<String> check () throws Throwable
+	{
+		final List<String> problems = new ArrayList<>();
+		final int[] free = new int[2];
+		for (int seat = 0; seat < SEATS; seat++)
+		{
+			final int times = booked.get(seat) - cancelled.get(seat);
+			final boolean available = App.isSeatAvailable(train, seat);
+			if (times != (available ? 0 : 1))
+			{
+				problems.add("seat " + seat + " booked " + booked.get(seat) + " and cancelled " + cancelled.get(seat) + " times is " + (available ? "free" : "booked"));
+			}
+			if (available)
+			{
+				free[seat & 1]++;
+			}
+		}
+		if (App.getSeatsRemaining(train) != free[0] + free[1])
+		{
+			problems.add(free[0] + free[1] + " seats are free but " + App.getSeatsRemaining(train) + " remain");
+		}
+		for (int type = 0; type < 2; type++)
+		{
+			int taken = 0;
+			while (App.bookNextSeat(train, type == 0) >= 0)
+			{
+				taken++;
+			}
+			if (taken != free[type])
+			{
+				problems.add("the next free " + (type == 0 ? "window" : "aisle") + " seat was found " + taken + " times for " + free[type] + " free");
+			}
+		}
+		return problems;
+	}
+}
\ No newline at end of file
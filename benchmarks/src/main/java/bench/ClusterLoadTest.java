@@ -0,0 +1,194 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A load test of the fleet split across partition nodes on localhost. For each number of partitions it starts that
+ * many "java Driver --node" processes over one timetable in a scratch folder, then many clients book a random seat on a
+ * random train through a router and cancel it again, and the calls answered after the warm up are counted. Every node
+ * journals to disk, as in production. Run it with:
+ * <p>
+ * java -cp benchmarks/target/benchmarks.jar bench.ClusterLoadTest [clients] [seconds] [partitions,...]
+ * <p>
+ * The defaults are 64 clients for 10 s each on 1, 2 and 4 partitions, over 1,000 trains of 2,000 seats. The nodes
+ * share the machine with each other and with the clients, so the spread is only as wide as its cores.
+ */
+public final class ClusterLoadTest
+{
+	private static final int TRAINS = 1000;
+	private static final int SEATS = 2000;
+	private static final Duration WARM_UP = Duration.ofSeconds(3);
+	
+	/**
+	 * Run the load test on each number of partitions in turn and print its results.
+	 *
+	 * @param args The number of clients (64), the seconds to record for (10) and the numbers of partitions (1,2,4).
+	 *
+	 * @throws Throwable If a node cannot be started or reached.
+	 */
+	public static void main (final String[] args) throws Throwable
+	{
+		final int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		final Duration duration = Duration.ofSeconds(args.length > 1 ? Integer.parseInt(args[1]) : 10);
+		final int[] partitionCounts = Arrays.stream((args.length > 2 ? args[2] : "1,2,4").split(",")).mapToInt(Integer :: parseInt).toArray();
+		
+		final Path folder = Files.createTempDirectory("cluster-load-test");
+		final List<String> lines = new ArrayList<>(TRAINS);
+		for (int i = 0; i < TRAINS; i++)
+		{
+			lines.add(String.format("%02d.%02d,Destination %d,%d", i / 60 % 24, i % 60, i % 50, SEATS));
+		}
+		Files.write(folder.resolve("Train Data.txt"), lines);
+		
+		System.out.println("Booking through a router with " + clients + " clients on " + TRAINS + " trains for " + duration.toSeconds() + " s per run after a " + WARM_UP.toSeconds() + " s warm up, on " + Runtime.getRuntime().availableProcessors() + " core(s)...");
+		try
+		{
+			for (final int partitions : partitionCounts)
+			{
+				run(folder, partitions, clients, duration);
+			}
+		}
+		finally
+		{
+			try (Stream<Path> files = Files.walk(folder))
+			{
+				files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+			}
+		}
+	}
+	
+	/**
+	 * Start the nodes of one cluster, load it, print the results and stop the nodes.
+	 *
+	 * @param folder     The {@link Path} of the scratch folder holding the timetable.
+	 * @param partitions The number of partitions.
+	 * @param clients    The number of clients.
+	 * @param duration   The {@link Duration} to record for, after the warm up.
+	 *
+	 * @throws Throwable If a node cannot be started or reached.
+	 */
+	private static void run (final Path folder, final int partitions, final int clients, final Duration duration) throws Throwable
+	{
+		final List<Process> nodes = new ArrayList<>(partitions);
+		final List<InetSocketAddress> addresses = new ArrayList<>(partitions);
+		try
+		{
+			for (int i = 0; i < partitions; i++)
+			{
+				final Process node = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(), "-cp", System.getProperty("java.class.path"), "Driver", "--node", Integer.toString(i), Integer.toString(partitions), "0").directory(folder.toFile()).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+				nodes.add(node);
+				addresses.add(new InetSocketAddress("localhost", port(node)));
+			}
+			
+			try (Closeable router = App.newClusterRouter(addresses))
+			{
+				final long recordFrom = System.nanoTime() + WARM_UP.toNanos();
+				final long stopAt = recordFrom + duration.toNanos();
+				final AtomicLong calls = new AtomicLong();
+				final AtomicLong errors = new AtomicLong();
+				final List<Thread> threads = new ArrayList<>(clients);
+				for (int i = 0; i < clients; i++)
+				{
+					final Thread thread = new Thread(() -> book(router, recordFrom, stopAt, calls, errors));
+					thread.start();
+					threads.add(thread);
+				}
+				for (final Thread thread : threads)
+				{
+					thread.join();
+				}
+				
+				final long start = System.nanoTime();
+				final long seatsRemaining = App.routerFleetSeatsRemaining(router, null);
+				System.out.printf("partitions: %d, calls: %d in %d s = %.0f calls/s, errors: %d, fleet seats remaining %d gathered in %.2f ms%n", partitions, calls.get(), duration.toSeconds(), calls.get() / (double) duration.toSeconds(), errors.get(), seatsRemaining, (System.nanoTime() - start) / 1e6);
+			}
+		}
+		finally
+		{
+			for (final Process node : nodes)
+			{
+				node.destroy();
+			}
+			for (final Process node : nodes)
+			{
+				node.waitFor();
+			}
+		}
+	}
+	
+	/**
+	 * Read the port a node listens on from the line it prints once serving.
+	 *
+	 * @param node The {@link Process} of the node.
+	 *
+	 * @return The port.
+	 *
+	 * @throws IOException If the node exits before serving.
+	 */
+	private static int port (final Process node) throws IOException
+	{
+		final BufferedReader out = new BufferedReader(new InputStreamReader(node.getInputStream(), StandardCharsets.UTF_8));
+		final String line = out.readLine();
+		if (line == null || ! line.contains("localhost:"))
+		{
+			throw new IOException("A node exited before serving.");
+		}
+		return Integer.parseInt(line.substring(line.lastIndexOf(':') + 1).trim());
+	}
+	
+	/**
+	 * Book random seats through the router and cancel each booked, one call at a time, until the test ends.
+	 *
+	 * @param router     The router.
+	 * @param recordFrom The {@link System#nanoTime()} the warm up ends.
+	 * @param stopAt     The {@link System#nanoTime()} the test ends.
+	 * @param calls      The {@link AtomicLong} count of calls answered after the warm up.
+	 * @param errors     The {@link AtomicLong} count of calls that failed.
+	 */
+	private static void book (final Object router, final long recordFrom, final long stopAt, final AtomicLong calls, final AtomicLong errors)
+	{
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		long answered = 0;
+		long now;
+		while ((now = System.nanoTime()) < stopAt)
+		{
+			final int train = random.nextInt(TRAINS);
+			final LocalTime departureTime = LocalTime.of(train / 60 % 24, train % 60);
+			final String destination = "Destination " + train % 50;
+			final int seat = random.nextInt(SEATS);
+			try
+			{
+				final boolean booked = App.routerBook(router, null, departureTime, destination, seat);
+				if (booked)
+				{
+					App.routerCancel(router, null, departureTime, destination, seat);
+				}
+				if (now >= recordFrom)
+				{
+					answered += booked ? 2 : 1;
+				}
+			}
+			catch (final Throwable e)
+			{
+				errors.incrementAndGet();
+			}
+		}
+		calls.addAndGet(answered);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,238 @@
+package bench;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A stress test of booking on trains whose day is dropped from memory. Each round opens a schedule saving its days in
+ * a new directory, and has every thread take a train of a random day and book seats on it, both while holding the
+ * day and after letting it go, as an open seat map or a console still showing the train would. With more
+ * days booked than are kept in memory, days are saved and dropped all the time. Then the schedule is closed and opened
+ * again, and every seat must be booked exactly when a booking of it was accepted: a booking accepted on a train whose
+ * day was already saved would be lost, and its seat could be sold twice. Run it with:
+ * <p>
+ * java -cp benchmarks/target/benchmarks.jar bench.EvictionStressTest [threads] [seconds]
+ * <p>
+ * The defaults are twice the cores, at least 4, for 10 s in rounds of 1 s over 24 days of 4 trains of 64 seats. It
+ * exits with 1 if anything was found wrong.
+ */
+public final class EvictionStressTest
+{
+	private static final int DAYS = 24;
+	private static final int TRAINS = 4;
+	private static final int SEATS = 64;
+	private static final Duration ROUND = Duration.ofSeconds(1);
+	
+	private final Path directory;
+	private final List<Object> timetable = new ArrayList<>(TRAINS);
+	private final Closeable schedule;
+	private final LocalDate today;
+	// How often each seat of each train of each day was booked, by day, then train, then seat.
+	private final AtomicIntegerArray booked = new AtomicIntegerArray(DAYS * TRAINS * SEATS);
+	private final AtomicLong calls;
+	private final long stopAt;
+	
+	/**
+	 * Construct one round on a new schedule with every seat free.
+	 *
+	 * @param calls The {@link AtomicLong} counting the calls of every round.
+	 *
+	 * @throws Throwable If the schedule cannot be opened.
+	 */
+	private EvictionStressTest (final AtomicLong calls) throws Throwable
+	{
+		this.directory = Files.createTempDirectory("eviction");
+		for (int train = 0; train < TRAINS; train++)
+		{
+			timetable.add(App.newTrain(LocalTime.of(8 + train, 0), "Eviction", SEATS));
+		}
+		this.schedule = App.openSchedule(timetable, directory);
+		this.today = App.getToday(schedule);
+		this.calls = calls;
+		this.stopAt = System.nanoTime() + ROUND.toNanos();
+	}
+	
+	/**
+	 * Run rounds until the time is up and print what was found.
+	 *
+	 * @param args The number of threads (twice the cores, at least 4) and the seconds to run for (10).
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	public static void main (final String[] args) throws Throwable
+	{
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		final Duration duration = Duration.ofSeconds(args.length > 1 ? Integer.parseInt(args[1]) : 10);
+		System.out.println("Booking " + DAYS + " days of " + TRAINS + " trains of " + SEATS + " seats with " + threads + " threads for " + duration.toSeconds() + " s...");
+		
+		final AtomicLong calls = new AtomicLong();
+		final long end = System.nanoTime() + duration.toNanos();
+		int rounds = 0;
+		int failed = 0;
+		while (System.nanoTime() < end)
+		{
+			final EvictionStressTest round = new EvictionStressTest(calls);
+			round.run(threads);
+			final List<String> problems = round.check();
+			rounds++;
+			if (! problems.isEmpty())
+			{
+				failed++;
+				System.out.println("Round " + rounds + ": " + String.join("; ", problems));
+			}
+		}
+		System.out.printf("rounds: %d, calls: %d, rounds with problems: %d%n", rounds, calls.get(), failed);
+		if (failed > 0)
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Book from every thread until the round is over, then close the schedule.
+	 *
+	 * @param threads The number of threads.
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	private void run (final int threads) throws Throwable
+	{
+		final List<Thread> running = new ArrayList<>(threads);
+		final Throwable[] failure = new Throwable[1];
+		for (int i = 0; i < threads; i++)
+		{
+			final Thread thread = new Thread(() ->
+											 {
+												 try
+												 {
+													 work();
+												 }
+												 catch (final Throwable e)
+												 {
+													 failure[0] = e;
+												 }
+											 });
+			thread.start();
+			running.add(thread);
+		}
+		for (final Thread thread : running)
+		{
+			thread.join();
+		}
+		schedule.close();
+		if (failure[0] != null)
+		{
+			throw failure[0];
+		}
+	}
+	
+	/**
+	 * Take a train of a random day and book a random seat on it, then book one on the train taken the time before,
+	 * whose day was let go and may well have been dropped by now.
+	 *
+	 * @throws Throwable If a call fails.
+	 */
+	private void work () throws Throwable
+	{
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		long made = 0;
+		Object stale = null;
+		int staleAt = 0;
+		while (System.nanoTime() < stopAt)
+		{
+			final int day = random.nextInt(DAYS);
+			final LocalDate date = today.plusDays(day);
+			final int train = random.nextInt(TRAINS);
+			final Object held = App.acquire(schedule, date).get(train);
+			book(held, (day * TRAINS + train) * SEATS, random);
+			if (stale != null)
+			{
+				book(stale, staleAt, random);
+			}
+			App.release(schedule, date);
+			stale = held;
+			staleAt = (day * TRAINS + train) * SEATS;
+			made += 2;
+		}
+		calls.addAndGet(made);
+	}
+	
+	/**
+	 * Book a random seat on a train, counting it if the booking was accepted.
+	 *
+	 * @param train  The train.
+	 * @param first  The index in {@link #booked} of its first seat.
+	 * @param random The {@link ThreadLocalRandom} of the thread.
+	 *
+	 * @throws Throwable If the call fails.
+	 */
+	private void book (final Object train, final int first, final ThreadLocalRandom random) throws Throwable
+	{
+		final int seat = random.nextInt(SEATS);
+		if (App.setSeatAvailable(train, seat, false))
+		{
+			booked.incrementAndGet(first + seat);
+		}
+	}
+	
+	/**
+	 * Open the saved days again and check every seat against the bookings accepted, then delete the directory.
+	 *
+	 * @return The {@link List} of each {@link String} problem found; empty if none.
+	 *
+	 * @throws Throwable If the days cannot be loaded.
+	 */
+	private List<String> check () throws Throwable
+	{
+		final List<String> problems = new ArrayList<>();
+		try (Closeable reopened = App.openSchedule(timetable, directory))
+		{
+			for (int day = 0; day < DAYS; day++)
+			{
+				final LocalDate date = today.plusDays(day);
+				final List<?> trains = App.acquire(reopened, date);
+				for (int train = 0; train < TRAINS; train++)
+				{
+					for (int seat = 0; seat < SEATS; seat++)
+					{
+						final int times = booked.get((day * TRAINS + train) * SEATS + seat);
+						final boolean available = App.isSeatAvailable(trains.get(train), seat);
+						if (times > 1 || (times == 1) == available)
+						{
+							problems.add(date + " train " + train + " seat " + seat + " booked " + times + " times is " + (available ? "free" : "booked"));
+						}
+					}
+				}
+				App.release(reopened, date);
+			}
+		}
+		try (Stream<Path> files = Files.walk(directory))
+		{
+			files.sorted(Comparator.reverseOrder()).forEach(file ->
+															 {
+																 try
+																 {
+																	 Files.delete(file);
+																 }
+																 catch (final IOException e)
+																 {
+																	 throw new UncheckedIOException(e);
+																 }
+															 });
+		}
+		return problems.size() > 5 ? List.of(problems.size() + " seats wrong, e.g. " + problems.get(0)) : problems;
+	}
+}
\ No newline at end of file
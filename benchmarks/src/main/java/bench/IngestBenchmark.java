@@ -0,0 +1,71 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Import of a CSV schedule through {@code Driver.ingestData} at several file sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark
+{
+	@Param({"1000", "100000", "1000000"})
+	public int rows;
+	
+	private Path file;
+	
+	/**
+	 * Write a schedule of the given number of rows to a temporary file.
+	 *
+	 * @throws IOException If the file cannot be written.
+	 */
+	@Setup
+	public void writeSchedule () throws IOException
+	{
+		file = Files.createTempFile("schedule", ".txt");
+		try (BufferedWriter out = Files.newBufferedWriter(file))
+		{
+			Schedules.write(out, rows, new Random(rows));
+		}
+	}
+	
+	/**
+	 * Remove the temporary schedule.
+	 *
+	 * @throws IOException If the file cannot be deleted.
+	 */
+	@TearDown
+	public void deleteSchedule () throws IOException
+	{
+		Files.delete(file);
+	}
+	
+	@Benchmark
+	public List<?> ingestData () throws Throwable
+	{
+		return App.ingestData(file);
+	}
+}
\ No newline at end of file
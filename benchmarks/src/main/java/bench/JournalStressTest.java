@@ -0,0 +1,204 @@
+package bench;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A stress test of the booking journal under bookings and cancellations racing on the same seats. Each round opens a
+ * schedule saving its days in a new directory, has every thread book and cancel random seats of one small train, then
+ * waits for the journal to reach the disk and copies the directory as a crash would leave it. The copy is opened as a
+ * schedule of its own, replaying the journal, and every seat must be as the train left it: a booking and a
+ * cancellation journaled in the other order than they were made would bring the wrong one back. Run it with:
+ * <p>
+ * java -cp benchmarks/target/benchmarks.jar bench.JournalStressTest [threads] [seconds]
+ * <p>
+ * The defaults are twice the cores, at least 4, for 10 s in rounds of 50 ms on trains of 8 seats. It exits with 1 if
+ * anything was found wrong.
+ */
+public final class JournalStressTest
+{
+	private static final int SEATS = 8;
+	private static final Duration ROUND = Duration.ofMillis(50);
+	
+	private final Path directory;
+	private final List<?> timetable;
+	private final Closeable schedule;
+	private final LocalDate today;
+	private final Object train;
+	private final AtomicLong calls;
+	private final long stopAt;
+	
+	/**
+	 * Construct one round on a new schedule with every seat free.
+	 *
+	 * @param calls The {@link AtomicLong} counting the calls of every round.
+	 *
+	 * @throws Throwable If the schedule cannot be opened.
+	 */
+	private JournalStressTest (final AtomicLong calls) throws Throwable
+	{
+		this.directory = Files.createTempDirectory("journal");
+		this.timetable = List.of(App.newTrain(LocalTime.NOON, "Journal", SEATS));
+		this.schedule = App.openSchedule(timetable, directory.resolve("days"));
+		this.today = App.getToday(schedule);
+		this.train = App.acquire(schedule, today).get(0);
+		this.calls = calls;
+		this.stopAt = System.nanoTime() + ROUND.toNanos();
+	}
+	
+	/**
+	 * Run rounds until the time is up and print what was found.
+	 *
+	 * @param args The number of threads (twice the cores, at least 4) and the seconds to run for (10).
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	public static void main (final String[] args) throws Throwable
+	{
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		final Duration duration = Duration.ofSeconds(args.length > 1 ? Integer.parseInt(args[1]) : 10);
+		System.out.println("Journaling " + threads + " threads booking trains of " + SEATS + " seats for " + duration.toSeconds() + " s...");
+		
+		final AtomicLong calls = new AtomicLong();
+		final long end = System.nanoTime() + duration.toNanos();
+		int rounds = 0;
+		int failed = 0;
+		while (System.nanoTime() < end)
+		{
+			final JournalStressTest round = new JournalStressTest(calls);
+			round.run(threads);
+			final List<String> problems = round.check();
+			rounds++;
+			if (! problems.isEmpty())
+			{
+				failed++;
+				System.out.println("Round " + rounds + ": " + String.join("; ", problems));
+			}
+		}
+		System.out.printf("rounds: %d, calls: %d, rounds with problems: %d%n", rounds, calls.get(), failed);
+		if (failed > 0)
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Book and cancel from every thread until the round is over.
+	 *
+	 * @param threads The number of threads.
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	private void run (final int threads) throws Throwable
+	{
+		final List<Thread> running = new ArrayList<>(threads);
+		final Throwable[] failure = new Throwable[1];
+		for (int i = 0; i < threads; i++)
+		{
+			final Thread thread = new Thread(() ->
+											 {
+												 try
+												 {
+													 work();
+												 }
+												 catch (final Throwable e)
+												 {
+													 failure[0] = e;
+												 }
+											 });
+			thread.start();
+			running.add(thread);
+		}
+		for (final Thread thread : running)
+		{
+			thread.join();
+		}
+		if (failure[0] != null)
+		{
+			throw failure[0];
+		}
+	}
+	
+	/**
+	 * Book or cancel random seats until the round is over.
+	 *
+	 * @throws Throwable If a call fails.
+	 */
+	private void work () throws Throwable
+	{
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		long made = 0;
+		while (System.nanoTime() < stopAt)
+		{
+			App.setSeatAvailable(train, random.nextInt(SEATS), random.nextBoolean());
+			made++;
+		}
+		calls.addAndGet(made);
+	}
+	
+	/**
+	 * Copy the files of the schedule once the journal is on disk, open the copy and compare every seat with the train,
+	 * then close both and delete the directory.
+	 *
+	 * @return The {@link List} of each {@link String} problem found; empty if none.
+	 *
+	 * @throws Throwable If the copy cannot be made or opened.
+	 */
+	private List<String> check () throws Throwable
+	{
+		App.flush(schedule, today);
+		final Path crashed = directory.resolve("crashed");
+		try (Stream<Path> files = Files.walk(directory.resolve("days")))
+		{
+			for (final Path file : (Iterable<Path>) files :: iterator)
+			{
+				Files.copy(file, crashed.resolve(directory.resolve("days").relativize(file).toString()));
+			}
+		}
+		
+		final List<String> problems = new ArrayList<>();
+		try (Closeable replayed = App.openSchedule(timetable, crashed))
+		{
+			final Object copy = App.acquire(replayed, today).get(0);
+			for (int seat = 0; seat < SEATS; seat++)
+			{
+				final boolean available = App.isSeatAvailable(train, seat);
+				if (App.isSeatAvailable(copy, seat) != available)
+				{
+					problems.add("seat " + seat + " is " + (available ? "free" : "booked") + " but the journal has it " + (available ? "booked" : "free"));
+				}
+			}
+			App.release(replayed, today);
+		}
+		App.release(schedule, today);
+		schedule.close();
+		
+		try (Stream<Path> files = Files.walk(directory))
+		{
+			files.sorted(Comparator.reverseOrder()).forEach(file ->
+															 {
+																 try
+																 {
+																	 Files.delete(file);
+																 }
+																 catch (final IOException e)
+																 {
+																	 throw new UncheckedIOException(e);
+																 }
+															 });
+		}
+		return problems;
+	}
+}
\ No newline at end of file
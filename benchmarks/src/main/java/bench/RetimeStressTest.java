@@ -0,0 +1,188 @@
+package bench;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stress test of changing the size of a train in the timetable while it is being booked. Each round opens a schedule
+ * of one train and has every thread book random seats and cancel its own on whichever train is current, while the
+ * size of the train keeps changing back and forth by two seats, each change replacing the train by a copy holding its
+ * bookings. Then every seat must be booked exactly when a booking of it was accepted, and no change may have dropped a
+ * booking: a booking or cancellation made while its train was copied would be lost from the copy, and the seat could
+ * be sold twice. Run it with:
+ * <p>
+ * java -cp benchmarks/target/benchmarks.jar bench.RetimeStressTest [threads] [seconds]
+ * <p>
+ * The defaults are twice the cores, at least 4, for 10 s in rounds of 50 ms on trains of 256 and 258 seats, of which
+ * only the first 256 are booked. It exits with 1 if anything was found wrong.
+ */
+public final class RetimeStressTest
+{
+	private static final int SEATS = 256;
+	private static final Duration ROUND = Duration.ofMillis(50);
+	
+	private final Object schedule;
+	private final LocalDate today;
+	// How often each seat was booked.
+	private final AtomicIntegerArray booked = new AtomicIntegerArray(SEATS);
+	private final AtomicLong calls;
+	private final long stopAt;
+	private volatile boolean stopped = false;
+	
+	/**
+	 * Construct one round on a new schedule with every seat free.
+	 *
+	 * @param calls The {@link AtomicLong} counting the calls of every round.
+	 *
+	 * @throws Throwable If the schedule cannot be opened.
+	 */
+	private RetimeStressTest (final AtomicLong calls) throws Throwable
+	{
+		this.schedule = App.openSchedule(List.of(App.newTrain(LocalTime.NOON, "Retime", SEATS)));
+		this.today = App.getToday(schedule);
+		this.calls = calls;
+		this.stopAt = System.nanoTime() + ROUND.toNanos();
+	}
+	
+	/**
+	 * Run rounds until the time is up and print what was found.
+	 *
+	 * @param args The number of threads (twice the cores, at least 4) and the seconds to run for (10).
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	public static void main (final String[] args) throws Throwable
+	{
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		final Duration duration = Duration.ofSeconds(args.length > 1 ? Integer.parseInt(args[1]) : 10);
+		System.out.println("Resizing a train of " + SEATS + " seats while " + threads + " threads book it for " + duration.toSeconds() + " s...");
+		
+		final AtomicLong calls = new AtomicLong();
+		final long end = System.nanoTime() + duration.toNanos();
+		int rounds = 0;
+		int failed = 0;
+		while (System.nanoTime() < end)
+		{
+			final List<String> problems = new RetimeStressTest(calls).run(threads);
+			rounds++;
+			if (! problems.isEmpty())
+			{
+				failed++;
+				System.out.println("Round " + rounds + ": " + String.join("; ", problems));
+			}
+		}
+		System.out.printf("rounds: %d, calls: %d, rounds with problems: %d%n", rounds, calls.get(), failed);
+		if (failed > 0)
+		{
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Book from every thread while resizing the train, then check every seat of the train left.
+	 *
+	 * @param threads The number of threads.
+	 *
+	 * @return The {@link List} of each {@link String} problem found; empty if none.
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	private List<String> run (final int threads) throws Throwable
+	{
+		final List<Thread> running = new ArrayList<>(threads);
+		final Throwable[] failure = new Throwable[1];
+		for (int i = 0; i < threads; i++)
+		{
+			final Thread thread = new Thread(() ->
+											 {
+												 try
+												 {
+													 work();
+												 }
+												 catch (final Throwable e)
+												 {
+													 failure[0] = e;
+												 }
+											 });
+			thread.start();
+			running.add(thread);
+		}
+		
+		int dropped = 0;
+		for (int resizes = 0; System.nanoTime() < stopAt; resizes++)
+		{
+			dropped += App.setTimetable(schedule, List.of(App.newTrain(LocalTime.NOON, "Retime", SEATS + 2 * (~ resizes & 1))));
+			Thread.yield();
+		}
+		stopped = true;
+		for (final Thread thread : running)
+		{
+			thread.join();
+		}
+		if (failure[0] != null)
+		{
+			throw failure[0];
+		}
+		
+		final List<String> problems = new ArrayList<>();
+		if (dropped != 0)
+		{
+			problems.add(dropped + " bookings dropped though every seat booked is on every size of the train");
+		}
+		final Object train = App.acquire(schedule, today).get(0);
+		for (int seat = 0; seat < SEATS; seat++)
+		{
+			final int times = booked.get(seat);
+			final boolean available = App.isSeatAvailable(train, seat);
+			if (times > 1 || (times == 1) == available)
+			{
+				problems.add("seat " + seat + " booked " + times + " times is " + (available ? "free" : "booked"));
+			}
+		}
+		App.release(schedule, today);
+		return problems.size() > 5 ? List.of(problems.size() + " problems, e.g. " + problems.get(0)) : problems;
+	}
+	
+	/**
+	 * Book random seats on the train of the moment and cancel those booked before, at random, until the round is over.
+	 * Each thread only cancels its own bookings, so the seats never fill up for good.
+	 *
+	 * @throws Throwable If a call fails.
+	 */
+	private void work () throws Throwable
+	{
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final List<Integer> mine = new ArrayList<>();
+		long made = 0;
+		while (! stopped)
+		{
+			final Object train = App.acquire(schedule, today).get(0);
+			App.release(schedule, today);
+			if (! mine.isEmpty() && random.nextBoolean())
+			{
+				final int at = random.nextInt(mine.size());
+				if (App.setSeatAvailable(train, mine.get(at), true))
+				{
+					booked.decrementAndGet(mine.remove(at));
+				}
+			}
+			else
+			{
+				final int seat = random.nextInt(SEATS);
+				if (App.setSeatAvailable(train, seat, false))
+				{
+					booked.incrementAndGet(seat);
+					mine.add(seat);
+				}
+			}
+			made++;
+		}
+		calls.addAndGet(made);
+	}
+}
\ No newline at end of file
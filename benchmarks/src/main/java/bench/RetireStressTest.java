@@ -0,0 +1,159 @@
+package bench;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stress test of taking a train off the timetable while it is being booked. Each round opens a schedule of one small
+ * train, has every thread take the next free seat of a type and give it back again, and part way through changes the
+ * size of the train in the timetable, which retires it. Every thread must then come back from its booking: a search
+ * that kept finding the free seats a retired train refuses would never end. Run it with:
+ * <p>
+ * java -cp benchmarks/target/benchmarks.jar bench.RetireStressTest [threads] [seconds]
+ * <p>
+ * The defaults are twice the cores, at least 4, for 10 s in rounds of up to 20 ms on trains of 256 seats. It exits
+ * with 1 if anything was found wrong.
+ */
+public final class RetireStressTest
+{
+	private static final int SEATS = 256;
+	private static final Duration ROUND = Duration.ofMillis(20);
+	private static final Duration STUCK = Duration.ofSeconds(2);
+	
+	private final Object schedule;
+	private final Object train;
+	private final AtomicLong calls;
+	private volatile boolean retired = false;
+	
+	/**
+	 * Construct one round on a new schedule with every seat free.
+	 *
+	 * @param calls The {@link AtomicLong} counting the calls of every round.
+	 *
+	 * @throws Throwable If the schedule cannot be opened.
+	 */
+	private RetireStressTest (final AtomicLong calls) throws Throwable
+	{
+		this.schedule = App.openSchedule(List.of(App.newTrain(LocalTime.NOON, "Retire", SEATS)));
+		this.train = App.acquire(schedule, App.getToday(schedule)).get(0);
+		this.calls = calls;
+	}
+	
+	/**
+	 * Run rounds until the time is up and print what was found.
+	 *
+	 * @param args The number of threads (twice the cores, at least 4) and the seconds to run for (10).
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	public static void main (final String[] args) throws Throwable
+	{
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		final Duration duration = Duration.ofSeconds(args.length > 1 ? Integer.parseInt(args[1]) : 10);
+		System.out.println("Retiring trains of " + SEATS + " seats while " + threads + " threads book them for " + duration.toSeconds() + " s...");
+		
+		final AtomicLong calls = new AtomicLong();
+		final long end = System.nanoTime() + duration.toNanos();
+		int rounds = 0;
+		int failed = 0;
+		while (System.nanoTime() < end)
+		{
+			final List<String> problems = new RetireStressTest(calls).run(threads);
+			rounds++;
+			if (! problems.isEmpty())
+			{
+				failed++;
+				System.out.println("Round " + rounds + ": " + String.join("; ", problems));
+			}
+		}
+		System.out.printf("rounds: %d, calls: %d, rounds with problems: %d%n", rounds, calls.get(), failed);
+		// A thread still searching would keep the JVM from exiting.
+		System.exit(failed > 0 ? 1 : 0);
+	}
+	
+	/**
+	 * Book from every thread, retire the train part way through and wait for every thread to stop.
+	 *
+	 * @param threads The number of threads.
+	 *
+	 * @return The {@link List} of each {@link String} problem found; empty if none.
+	 *
+	 * @throws Throwable If a thread fails.
+	 */
+	private List<String> run (final int threads) throws Throwable
+	{
+		final List<Thread> running = new ArrayList<>(threads);
+		final Throwable[] failure = new Throwable[1];
+		for (int i = 0; i < threads; i++)
+		{
+			final Thread thread = new Thread(() ->
+											 {
+												 try
+												 {
+													 work();
+												 }
+												 catch (final Throwable e)
+												 {
+													 failure[0] = e;
+												 }
+											 });
+			thread.setDaemon(true);
+			thread.start();
+			running.add(thread);
+		}
+		
+		Thread.sleep(ThreadLocalRandom.current().nextLong(ROUND.toMillis() + 1));
+		final LocalDate today = App.getToday(schedule);
+		App.setTimetable(schedule, List.of(App.newTrain(LocalTime.NOON, "Retire", SEATS / 2)));
+		retired = true;
+		
+		final List<String> problems = new ArrayList<>();
+		final long deadline = System.nanoTime() + STUCK.toNanos();
+		int stuck = 0;
+		for (final Thread thread : running)
+		{
+			thread.join(Math.max(1, (deadline - System.nanoTime()) / 1_000_000));
+			stuck += thread.isAlive() ? 1 : 0;
+		}
+		if (stuck > 0)
+		{
+			problems.add(stuck + (stuck == 1 ? " thread" : " threads") + " still booking " + STUCK.toSeconds() + " s after the train was retired");
+		}
+		if (App.bookNextSeat(train, true) >= 0 || App.bookNextSeat(train, false) >= 0)
+		{
+			problems.add("a seat was booked on the retired train");
+		}
+		App.release(schedule, today);
+		if (failure[0] != null)
+		{
+			throw failure[0];
+		}
+		return problems;
+	}
+	
+	/**
+	 * Take the next free seat of a random type and give it back, until the train has been retired.
+	 *
+	 * @throws Throwable If a call fails.
+	 */
+	private void work () throws Throwable
+	{
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		long made = 0;
+		while (! retired)
+		{
+			final int seat = App.bookNextSeat(train, random.nextBoolean());
+			if (seat >= 0)
+			{
+				App.setSeatAvailable(train, seat, true);
+			}
+			made++;
+		}
+		calls.addAndGet(made);
+	}
+}
\ No newline at end of file
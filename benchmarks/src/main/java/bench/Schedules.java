@@ -0,0 +1,45 @@
+package bench;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Made-up schedule rows in the CSV format the application imports: departure time, destination, total seats.
+ */
+final class Schedules
+{
+	private static final String[] DESTINATIONS = {"Chicago", "Portland", "Seattle", "Denver", "Boston", "New York", "San Francisco", "Los Angeles", "Austin", "Miami"};
+	
+	private Schedules ()
+	{
+	}
+	
+	/**
+	 * Make one row.
+	 *
+	 * @param random The {@link Random} to draw the row from.
+	 *
+	 * @return The {@link String} row, without a line separator.
+	 */
+	static String row (final Random random)
+	{
+		return String.format("%02d.%02d,%s,%d", random.nextInt(24), random.nextInt(60), DESTINATIONS[random.nextInt(DESTINATIONS.length)], 12 + random.nextInt(500));
+	}
+	
+	/**
+	 * Write rows, one to a line.
+	 *
+	 * @param out    The {@link Appendable} to write to.
+	 * @param rows   The number of rows.
+	 * @param random The {@link Random} to draw the rows from.
+	 *
+	 * @throws IOException If the rows cannot be written.
+	 */
+	static void write (final Appendable out, final int rows, final Random random) throws IOException
+	{
+		for (int i = 0; i < rows; i++)
+		{
+			out.append(row(random)).append('\n');
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,125 @@
+package bench;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping seats remaining counts current: a train publishing its own count after one seat or a batch of seats changes,
+ * and the fleet total of the train selection window applying the change of one train. Summing every train again is
+ * measured alongside as the cost the fleet total avoids.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeatsRemainingBenchmark
+{
+	private static final int BATCH = 32;
+	
+	@Param({"10000"})
+	public int trains;
+	
+	private Object train;
+	private ObservableList<Object> fleet;
+	private Object total;
+	private boolean book = true;
+	private int next = 0;
+	
+	/**
+	 * Make a lone train and a fleet of trains under a fleet total.
+	 *
+	 * @throws Throwable If the trains cannot be made.
+	 */
+	@Setup
+	public void makeTrains () throws Throwable
+	{
+		train = App.newTrain(LocalTime.NOON, "Seattle", 2000);
+		App.seatsRemainingProperty(train).addListener((observable, oldValue, newValue) -> {});
+		
+		final Random random = new Random(42);
+		fleet = FXCollections.observableArrayList();
+		for (int i = 0; i < trains; i++)
+		{
+			fleet.add(App.parse(Schedules.row(random)));
+		}
+		total = App.newFleetTotal(fleet);
+	}
+	
+	@Benchmark
+	public boolean oneSeat () throws Throwable
+	{
+		book = ! book;
+		return App.setSeatAvailable(train, 0, book);
+	}
+	
+	@Benchmark
+	public void batchOfSeats () throws Throwable
+	{
+		book = ! book;
+		App.batchUpdate(train, () ->
+		{
+			try
+			{
+				for (int seat = 0; seat < BATCH; seat++)
+				{
+					App.setSeatAvailable(train, seat, book);
+				}
+			}
+			catch (final Throwable e)
+			{
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+	
+	@Benchmark
+	public int fleetTotal () throws Throwable
+	{
+		changeNextTrain();
+		return App.fleetSeatsRemaining(total);
+	}
+	
+	@Benchmark
+	public int fleetResum () throws Throwable
+	{
+		changeNextTrain();
+		int sum = 0;
+		for (final Object each : fleet)
+		{
+			sum += App.seatsRemainingProperty(each).get();
+		}
+		return sum;
+	}
+	
+	/**
+	 * Book or release the first seat of the next train of the fleet, going round the fleet booking and then releasing.
+	 *
+	 * @throws Throwable If the seat cannot be changed.
+	 */
+	private void changeNextTrain () throws Throwable
+	{
+		next = (next + 1) % trains;
+		if (next == 0)
+		{
+			book = ! book;
+		}
+		App.setSeatAvailable(fleet.get(next), 0, book);
+	}
+}
\ No newline at end of file
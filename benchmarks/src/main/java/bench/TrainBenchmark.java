@@ -0,0 +1,63 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of a train, both from a CSV row and from its parts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrainBenchmark
+{
+	private static final int ROWS = 1024;
+	
+	@Param({"48", "2000"})
+	public int totalSeats;
+	
+	private final String[] rows = new String[ROWS];
+	private int next = 0;
+	
+	/**
+	 * Make a set of rows to cycle through, so the parser sees varied input.
+	 */
+	@Setup
+	public void makeRows ()
+	{
+		final Random random = new Random(42);
+		for (int i = 0; i < ROWS; i++)
+		{
+			rows[i] = Schedules.row(random).replaceFirst("[0-9]+$", Integer.toString(totalSeats));
+		}
+	}
+	
+	@Benchmark
+	public Object parse () throws Throwable
+	{
+		next = (next + 1) & (ROWS - 1);
+		return App.parse(rows[next]);
+	}
+	
+	@Benchmark
+	public Object construct () throws Throwable
+	{
+		return App.newTrain(LocalTime.NOON, "Seattle", totalSeats);
+	}
+}
\ No newline at end of file